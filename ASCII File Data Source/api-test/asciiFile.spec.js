@@ -51,6 +51,7 @@ describe('ASCII file data source', function() {
             };
             
             saved.filePath = '/user/local/test2';
+            saved.tail = true;
             
             const localUpdate = Object.assign({}, saved);
             return saved.save().then(updated => {
@@ -186,6 +187,7 @@ describe('ASCII file data source', function() {
             quantize: true,
             useCron: false,
             filePath: '/user/local/test',
+            tail: false,
             modelType: 'ASCII FILE'
         });
     }
@@ -197,6 +199,7 @@ describe('ASCII file data source', function() {
         assert.strictEqual(saved.useCron, local.useCron);
 
         assert.strictEqual(saved.filePath, local.filePath);
+        assert.strictEqual(saved.tail, local.tail);
         
         assert.strictEqual(saved.modelType, local.modelType);
     }
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsciiFileTailReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AsciiFileTailReader reader = new AsciiFileTailReader(StandardCharsets.UTF_8);
+
+    @Test
+    public void testAppendedLines() throws IOException {
+        File file = folder.newFile("values.csv");
+        append(file, "a\nb\n");
+        assertEquals(Arrays.asList("a", "b"), read(file));
+
+        append(file, "c\n");
+        assertEquals(Collections.singletonList("c"), read(file));
+
+        //Nothing appended
+        assertEquals(Collections.emptyList(), read(file));
+        assertEquals(6, reader.getPosition());
+    }
+
+    @Test
+    public void testPartialLine() throws IOException {
+        File file = folder.newFile("values.csv");
+        append(file, "a\nb");
+        assertEquals(Collections.singletonList("a"), read(file));
+        assertEquals(2, reader.getPosition());
+
+        //The rest of the line arrives
+        append(file, "c\nd");
+        assertEquals(Collections.singletonList("bc"), read(file));
+    }
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        File file = folder.newFile("values.csv");
+        append(file, "a\r\nb\rc\n\nd\r");
+        assertEquals(Arrays.asList("a", "b", "c", "", "d"), read(file));
+
+        //The \n completes the \r that ended the last read
+        append(file, "\ne\r\n");
+        assertEquals(Collections.singletonList("e"), read(file));
+    }
+
+    @Test
+    public void testLineLongerThanBuffer() throws IOException {
+        File file = folder.newFile("values.csv");
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        String longLine = new String(chars);
+        append(file, longLine + "\r\n" + "y\n");
+        assertEquals(Arrays.asList(longLine, "y"), read(file));
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        File file = folder.newFile("values.csv");
+        append(file, "a\nb\n");
+        assertEquals(Arrays.asList("a", "b"), read(file));
+
+        Files.write(file.toPath(), "c\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(Collections.singletonList("c"), read(file));
+    }
+
+    @Test
+    public void testRotatedFile() throws IOException {
+        File file = folder.newFile("values.csv");
+        assumeNotNull(Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey());
+        append(file, "a\n");
+        assertEquals(Collections.singletonList("a"), read(file));
+
+        //A new file that is longer than the old one
+        assertTrue(file.renameTo(new File(folder.getRoot(), "values.csv.1")));
+        append(file, "x\ny\nz\n");
+        assertEquals(Arrays.asList("x", "y", "z"), read(file));
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        File file = folder.newFile("values.csv");
+        append(file, "a\n");
+        assertEquals(Collections.singletonList("a"), read(file));
+
+        reader.reset();
+        assertEquals(Collections.singletonList("a"), read(file));
+    }
+
+    private List<String> read(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        reader.read(file, lines::add);
+        return lines;
+    }
+
+    private void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.infiniteautomation.asciifile.AsciiFileDataSourceDefinition;
+import com.infiniteautomation.asciifile.AsciiFileSystemSettingsDefinition;
+import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
+import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
+import com.infiniteautomation.mango.rest.v2.model.AsciiFileBulkImportRequest;
+import com.infiniteautomation.mango.spring.service.DataSourceService;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.db.dao.SystemSettingsDao;
+import com.serotonin.m2m2.module.ModuleElementDefinition;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class AsciiFileDataSourceRestControllerTest extends MangoTestBase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AsciiFileBulkImportPool pool = new AsciiFileBulkImportPool(1, 1);
+
+    @BeforeClass
+    public static void setup() {
+        List<ModuleElementDefinition> definitions = new ArrayList<>();
+        definitions.add(new AsciiFileDataSourceDefinition());
+        definitions.add(new AsciiFileSystemSettingsDefinition());
+        addModule("asciiFile", definitions);
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testValidateAllowedPath() throws IOException {
+        File data = folder.newFolder("data");
+        restrict(folder.newFolder("restricted"));
+        write(new File(data, "values.csv"));
+
+        //Resolves to a file in the allowed folder
+        createController().validateFileExists(data.getPath() + "/../data/values.csv", admin());
+    }
+
+    @Test
+    public void testValidateRejectsTraversal() throws IOException {
+        File data = folder.newFolder("data");
+        File restricted = folder.newFolder("restricted");
+        restrict(restricted);
+        write(new File(restricted, "secret.csv"));
+
+        try {
+            createController().validateFileExists(data.getPath() + "/../restricted/secret.csv", admin());
+            fail("Path into the restricted folder was accepted");
+        }catch(AccessDeniedException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testBulkImportRejectsTraversal() throws IOException {
+        File data = folder.newFolder("data");
+        File restricted = folder.newFolder("restricted");
+        restrict(restricted);
+        write(new File(restricted, "secret.csv"));
+
+        AsciiFileDataSourceVO ds = createDataSource(new File(data, "values.csv"));
+        AsciiFileBulkImportRequest request = new AsciiFileBulkImportRequest();
+        request.setFilePath(data.getPath() + "/../restricted/secret.csv");
+
+        User admin = admin();
+        Common.getBean(PermissionService.class).runAsSystemAdmin(() -> {
+            try {
+                createController().bulkImport(ds.getXid(), request, admin, UriComponentsBuilder.newInstance());
+                fail("Path into the restricted folder was accepted");
+            }catch(AccessDeniedException e) {
+                //Expected
+            }
+        });
+    }
+
+    private AsciiFileDataSourceRestController createController() {
+        return new AsciiFileDataSourceRestController(Common.getBean(DataSourceService.class),
+                Common.getBean(PermissionService.class), null, null, pool);
+    }
+
+    private AsciiFileDataSourceVO createDataSource(File file) {
+        AsciiFileDataSourceVO vo = new AsciiFileDataSourceVO();
+        vo.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        vo.setName("Test ASCII DS");
+        vo.setFilePath(file.getPath());
+        DataSourceDao.getInstance().insert(vo);
+        return vo;
+    }
+
+    private User admin() {
+        return createUsers(1, PermissionHolder.SUPERADMIN_ROLE).get(0);
+    }
+
+    private void restrict(File path) throws IOException {
+        SystemSettingsDao.instance.setValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH, path.getCanonicalPath());
+    }
+
+    private void write(File file) throws IOException {
+        Files.write(file.toPath(), "value,1\n".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,11 +2,11 @@ package com.infiniteautomation.asciifile;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.infiniteautomation.asciifile.rt.AsciiFileTimestampParser;
 import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
 import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
 import com.serotonin.m2m2.DataTypes;
@@ -94,7 +94,7 @@ public class AsciiFileDataSourceDefinition extends PollingDataSourceDefinition<A
                 response.addContextualMessage("timestampFormat", "validate.invalidValue");
             else {
                 try {
-                    new SimpleDateFormat(pl.getTimestampFormat());
+                    AsciiFileTimestampParser.get(pl.getTimestampFormat());
                 } catch(IllegalArgumentException e) {
                     response.addContextualMessage("timestampFormat", "file.validate.invalidDateFormat", pl.getTimestampFormat(), e.getMessage());
                 }
@@ -0,0 +1,369 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Imports historical values from a file into the database.
+ *
+ * The file is memory mapped and split into line aligned chunks that are parsed in parallel on an executor
+ * shared by all imports. Only points that read their timestamp from the file are imported, all other points
+ * would receive the current time for every value.
+ *
+ * The values are handed to the point value dao's write behind, which batches them. A chunk waits while the
+ * write behind holds more than maxPendingValues so a large file can't fill the memory. The values bypass the
+ * runtime, the earliest time imported for each point is available from the statistics so caches of the
+ * points' values can be invalidated.
+ */
+public class AsciiFileBulkImporter {
+    private static final Log LOG = LogFactory.getLog(AsciiFileBulkImporter.class);
+
+    public static final long DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final int BATCH_SIZE = 1000;
+    private static final int LINE_END_SEARCH_SIZE = 64 * 1024;
+    private static final int CANCEL_CHECK_LINES = 1024;
+    private static final long PENDING_CHECK_MS = 50;
+
+    public static final String WRITE_BEHIND_ENTRIES_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.ENTRIES_MONITOR";
+
+    /**
+     * Notified after each chunk is processed
+     */
+    @FunctionalInterface
+    public static interface ImportProgressListener {
+        void progress(ImportStatistics statistics, int chunksComplete, int chunks);
+    }
+
+    private final File file;
+    private final List<DataPointVO> points;
+    private final PointValueDao dao;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final long chunkSize;
+    private final Charset charset;
+    private final int maxPendingValues;
+    private final ConcurrentMap<String, Pattern> patterns = new ConcurrentHashMap<>();
+    private final ImportStatistics statistics = new ImportStatistics();
+
+    /**
+     * @param file - file to import
+     * @param points - points of the data source, points without timestamps are ignored
+     * @param dao
+     * @param executor - runs the chunks, shared by all imports
+     * @param parallelism - number of chunks to parse concurrently
+     * @param chunkSize - target size of each chunk in bytes, chunks end on a line terminator
+     */
+    public AsciiFileBulkImporter(File file, List<DataPointVO> points, PointValueDao dao, ExecutorService executor, int parallelism, long chunkSize) {
+        this.file = file;
+        this.points = points.stream()
+                .filter(vo -> ((AsciiFilePointLocatorVO)vo.getPointLocator()).getHasTimestamp())
+                .collect(Collectors.toList());
+        this.dao = dao;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.charset = Charset.defaultCharset();
+        this.maxPendingValues = Common.envProps.getInt("asciiFile.bulkImport.maxPendingValues", 100000);
+    }
+
+    /**
+     * Run the import on the calling thread, returning once all chunks are complete. The chunks are parsed
+     * in order, at most parallelism chunks are submitted to the executor at a time.
+     *
+     * @param listener - progress listener
+     * @param cancelled - checked periodically, the import stops once it returns true
+     * @return
+     * @throws IOException
+     */
+    public ImportStatistics run(ImportProgressListener listener, BooleanSupplier cancelled) throws IOException {
+        if(points.isEmpty())
+            return statistics;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel);
+            listener.progress(statistics, 0, chunks.size());
+
+            Deque<Future<?>> running = new ArrayDeque<>(parallelism);
+            try {
+                int submitted = 0;
+                int complete = 0;
+                while(complete < chunks.size()) {
+                    while(submitted < chunks.size() && running.size() < parallelism && !cancelled.getAsBoolean()) {
+                        long[] chunk = chunks.get(submitted++);
+                        running.add(executor.submit(() -> {
+                            parseChunk(channel, chunk[0], chunk[1], cancelled);
+                            return null;
+                        }));
+                    }
+                    if(running.isEmpty())
+                        break;
+                    await(running.poll());
+                    complete++;
+                    if(cancelled.getAsBoolean())
+                        break;
+                    listener.progress(statistics, complete, chunks.size());
+                }
+            }finally {
+                //The channel is closed when we return, wait for the chunks still being parsed
+                for(Future<?> task : running) {
+                    try {
+                        task.get();
+                    }catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }catch(ExecutionException e) { }
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Wait for a chunk, rethrowing its failure
+     */
+    private static void await(Future<?> task) throws IOException {
+        try {
+            task.get();
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        }catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if(cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Split the file into chunks of approximately chunkSize that end on a line terminator
+     * @param channel
+     * @return list of [start, end) byte offsets
+     * @throws IOException
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while(start < size) {
+            long end = Math.min(start + chunkSize, size);
+            end = findLineEnd(channel, end, size);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the offset just after the next line terminator at or after position
+     */
+    private long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_END_SEARCH_SIZE);
+        long offset = position;
+        while(offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if(read <= 0)
+                break;
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '\n')
+                    return offset + i + 1;
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private void parseChunk(FileChannel channel, long start, long end, BooleanSupplier cancelled) throws IOException {
+        MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+        Map<Integer, List<PointValueTime>> batch = new HashMap<>();
+        int[] batchSize = new int[1];
+
+        AsciiFileMatcher matcher = AsciiFileMatcher.forDataPoints(points,
+                regex -> patterns.computeIfAbsent(regex, Pattern::compile),
+                vo -> new MatchCallback() {
+                    @Override
+                    public void onMatch(String pointIdentifier, PointValueTime value) {
+                        batch.computeIfAbsent(vo.getId(), k -> new ArrayList<>()).add(value);
+                        if(++batchSize[0] >= BATCH_SIZE) {
+                            flush(batch, cancelled);
+                            batchSize[0] = 0;
+                        }
+                    }
+
+                    @Override
+                    public void pointPatternMismatch(String message, String pointValueRegex) { }
+
+                    @Override
+                    public void messagePatternMismatch(String message, String messageRegex) { }
+
+                    @Override
+                    public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+                        statistics.errors.incrementAndGet();
+                    }
+
+                    @Override
+                    public void matchGeneralFailure(Exception e) {
+                        statistics.errors.incrementAndGet();
+                        if(statistics.firstError == null)
+                            statistics.firstError = e.getMessage();
+                        if(LOG.isDebugEnabled())
+                            LOG.debug("Failed to parse value for " + vo.getXid() + " during import", e);
+                    }
+                });
+
+        byte[] line = new byte[256];
+        int length = 0;
+        long lines = 0;
+        int limit = buffer.limit();
+        for(int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if(b == '\n' || i == limit - 1) {
+                if(b != '\n')
+                    line = append(line, length++, b);
+                int lineLength = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+                matcher.match(new String(line, 0, lineLength, charset));
+                length = 0;
+                if(++lines % CANCEL_CHECK_LINES == 0 && cancelled.getAsBoolean())
+                    break;
+            }else {
+                line = append(line, length++, b);
+            }
+        }
+        flush(batch, cancelled);
+        statistics.lines.addAndGet(lines);
+        statistics.bytes.addAndGet(end - start);
+    }
+
+    private static byte[] append(byte[] line, int position, byte b) {
+        if(position == line.length) {
+            byte[] larger = new byte[line.length * 2];
+            System.arraycopy(line, 0, larger, 0, line.length);
+            line = larger;
+        }
+        line[position] = b;
+        return line;
+    }
+
+    private void flush(Map<Integer, List<PointValueTime>> batch, BooleanSupplier cancelled) {
+        awaitWriteBehind(cancelled);
+        for(Map.Entry<Integer, List<PointValueTime>> entry : batch.entrySet()) {
+            int pointId = entry.getKey();
+            List<PointValueTime> values = entry.getValue();
+            if(values.isEmpty())
+                continue;
+
+            long earliest = Long.MAX_VALUE;
+            for(PointValueTime value : values) {
+                earliest = Math.min(earliest, value.getTime());
+                dao.savePointValueAsync(pointId, value, null);
+            }
+            statistics.earliest.merge(pointId, earliest, Math::min);
+            statistics.values.addAndGet(values.size());
+            values.clear();
+        }
+    }
+
+    /**
+     * Wait while the write behind holds more than maxPendingValues, the chunks parse faster than
+     * the values can be written
+     */
+    private void awaitWriteBehind(BooleanSupplier cancelled) {
+        ValueMonitor<?> monitor = Common.MONITORED_VALUES.getMonitor(WRITE_BEHIND_ENTRIES_MONITOR_ID);
+        if(monitor == null)
+            return;
+        while(!cancelled.getAsBoolean()) {
+            Object pending = monitor.getValue();
+            if(!(pending instanceof Number) || ((Number)pending).longValue() <= maxPendingValues)
+                return;
+            try {
+                TimeUnit.MILLISECONDS.sleep(PENDING_CHECK_MS);
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public ImportStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Running totals of an import
+     */
+    public static class ImportStatistics {
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong lines = new AtomicLong();
+        private final AtomicLong values = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final ConcurrentMap<Integer, Long> earliest = new ConcurrentHashMap<>();
+        private volatile String firstError;
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getLines() {
+            return lines.get();
+        }
+
+        public long getValues() {
+            return values.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public String getFirstError() {
+            return firstError;
+        }
+
+        /**
+         * @return earliest time of the values imported for each point id
+         */
+        public Map<Integer, Long> getEarliestTimes() {
+            return earliest;
+        }
+    }
+}
@@ -5,10 +5,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -52,6 +51,7 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
     private File file; // File
     private FileAlterationObserver fobs;
     private boolean restrictedPath;
+    private final AsciiFileTailReader tailReader = new AsciiFileTailReader();
 
     public AsciiFileDataSourceRT(AsciiFileDataSourceVO vo) {
         super(vo);
@@ -135,7 +135,7 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
     @Override
     public void onDirectoryChange(File dir) {
-        fileEvent(dataPoints);
+        fileEvent(dataPoints, vo.isTail());
     }
 
     @Override
@@ -160,12 +160,12 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
     @Override
     public void onFileChange(File f) {
-        fileEvent(dataPoints);
+        fileEvent(dataPoints, vo.isTail());
     }
 
     @Override
     public void onStart(FileAlterationObserver obs) {
-        fileEvent(dataPoints);
+        fileEvent(dataPoints, vo.isTail());
     }
 
     @Override
@@ -177,10 +177,16 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
     public void forcePointRead(DataPointRT dataPoint) {
         List<DataPointRT> dataPoints = new ArrayList<>(1);
         dataPoints.add(dataPoint);
-        fileEvent(dataPoints);
+        //Read the whole file so the position of the other points isn't consumed
+        fileEvent(dataPoints, false);
     }
 
-    private void fileEvent(List<DataPointRT> dataPoints) {
+    /**
+     * Read the file and match its lines against the points
+     * @param dataPoints
+     * @param tail - only read the lines appended since the last tail read
+     */
+    private void fileEvent(List<DataPointRT> dataPoints, boolean tail) {
         // Should never happen
         if (this.file == null) {
             raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -196,72 +202,28 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
         // The file is modified or we've just started, so read it.
         try {
+            if (tail) {
+                if (!dataPoints.isEmpty()) {
+                    AsciiFileMatcher matcher = new AsciiFileMatcher(dataPoints, this::createMatchCallback);
+                    tailReader.read(this.file, matcher::match);
+                    returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
+                }
+                return;
+            }
+
             BufferedReader reader = new BufferedReader(new FileReader(this.file));
 
             String msg;
             if (!dataPoints.isEmpty()) {
-
-                // TODO optimize to be better than numLines*numPoints
+                AsciiFileMatcher matcher = new AsciiFileMatcher(dataPoints, this::createMatchCallback);
                 while ((msg = reader.readLine()) != null) {
                     // Give all points the chance to find their data
-                    for (final DataPointRT dp : dataPoints) {
-                        AsciiFilePointLocatorRT pl = dp.getPointLocator();
-                        final AsciiFilePointLocatorVO plVo = pl.getVo();
-
-                        MatchCallback callback = new MatchCallback() {
-
-                            @Override
-                            public void onMatch(String pointIdentifier, PointValueTime value) {
-                                if (!plVo.getHasTimestamp())
-                                    dp.updatePointValue(value);
-                                else
-                                    dp.savePointValueDirectToCache(value, null, true, true, FireEvents.NEVER);
-                            }
-
-                            @Override
-                            public void pointPatternMismatch(String message, String pointValueRegex) {
-                                //N/A
-                            }
-
-                            @Override
-                            public void messagePatternMismatch(String message, String messageRegex) {
-                                //N/A
-                            }
-
-                            @Override
-                            public void pointNotIdentified(String message, String messageRegex,
-                                    int pointIdentifierIndex) {
-                                raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
-                                        new TranslatableMessage("file.event.insufficientGroups",
-                                                dp.getVO().getExtendedName()));
-                            }
-
-                            @Override
-                            public void matchGeneralFailure(Exception e) {
-                                if (e instanceof ParseException)
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
-                                else if (e instanceof NumberFormatException) {
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.notNumber", e.getMessage()));
-                                } else
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-                                            new TranslatableMessage("file.event.readFailed", e.getMessage()));
-                            }
-
-                        };
-
-                        matchPointValueTime(msg, pl.getValuePattern(), plVo.getPointIdentifier(),
-                                plVo.getPointIdentifierIndex(), plVo.getDataTypeId(),
-                                plVo.getValueIndex(), plVo.getHasTimestamp(), plVo.getTimestampIndex(),
-                                plVo.getTimestampFormat(), callback);
-
-                    }
+                    matcher.match(msg);
                 }
                 reader.close();
                 returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
             }
-        } catch (FileNotFoundException e) {
+        } catch (FileNotFoundException | NoSuchFileException e) {
             raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
                     new TranslatableMessage("file.event.fileNotFound", e.getMessage()));
         } catch (IOException e) {
@@ -274,6 +236,57 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
     }
 
+    /**
+     * Create the callback that receives matches for a point
+     * @param dp
+     * @return
+     */
+    private MatchCallback createMatchCallback(DataPointRT dp) {
+        final AsciiFilePointLocatorVO plVo = dp.getVO().getPointLocator();
+        return new MatchCallback() {
+
+            @Override
+            public void onMatch(String pointIdentifier, PointValueTime value) {
+                if (!plVo.getHasTimestamp())
+                    dp.updatePointValue(value);
+                else
+                    dp.savePointValueDirectToCache(value, null, true, true, FireEvents.NEVER);
+            }
+
+            @Override
+            public void pointPatternMismatch(String message, String pointValueRegex) {
+                //N/A
+            }
+
+            @Override
+            public void messagePatternMismatch(String message, String messageRegex) {
+                //N/A
+            }
+
+            @Override
+            public void pointNotIdentified(String message, String messageRegex,
+                    int pointIdentifierIndex) {
+                raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
+                        new TranslatableMessage("file.event.insufficientGroups",
+                                dp.getVO().getExtendedName()));
+            }
+
+            @Override
+            public void matchGeneralFailure(Exception e) {
+                if (e instanceof ParseException)
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
+                else if (e instanceof NumberFormatException) {
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.notNumber", e.getMessage()));
+                } else
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+                            new TranslatableMessage("file.event.readFailed", e.getMessage()));
+            }
+
+        };
+    }
+
     @Override
     protected void doPoll(long time) {
         if (restrictedPath) {
@@ -303,35 +316,8 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
                     if (LOG.isDebugEnabled())
                         LOG.debug("Point Identified: " + messageMatcher.group(pointIdentifierIndex));
 
-                    String value = messageMatcher.group(valueIndex);
-                    PointValueTime newValue;
-                    Date dt;
-                    if (hasTimestamp && !timestampFormat.equals(".")) {
-                        SimpleDateFormat fmt = new SimpleDateFormat(timestampFormat);
-                        dt = fmt.parse(messageMatcher.group(timestampIndex));
-                    } else if (hasTimestamp) {
-                        dt = new Date(Long.parseLong(messageMatcher.group(timestampIndex)));
-                    } else {
-                        dt = new Date();
-                    }
-
-                    // Switch on the type
-                    switch (dataTypeId) {
-                        case DataTypes.ALPHANUMERIC:
-                            newValue = new PointValueTime(value, dt.getTime());
-                            break;
-                        case DataTypes.NUMERIC:
-                            newValue = new PointValueTime(Double.parseDouble(value), dt.getTime());
-                            break;
-                        case DataTypes.MULTISTATE:
-                            newValue = new PointValueTime(Integer.parseInt(value), dt.getTime());
-                            break;
-                        case DataTypes.BINARY:
-                            newValue = new PointValueTime(Boolean.parseBoolean(value), dt.getTime());
-                            break;
-                        default:
-                            throw new ShouldNeverHappenException("Uknown Data type for point");
-                    }
+                    PointValueTime newValue = parsePointValueTime(messageMatcher, dataTypeId, valueIndex,
+                            hasTimestamp ? AsciiFileTimestampParser.get(timestampFormat) : null, timestampIndex);
                     callback.onMatch(messageMatcher.group(pointIdentifierIndex), newValue);
                 }
             } catch (Exception e) {
@@ -341,6 +327,37 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
         }
     }
 
+    /**
+     * Parse the value and timestamp out of a matcher that has already found its match
+     *
+     * @param timestampParser - parser for the timestamp group or null to use the current time
+     * @throws ParseException if the timestamp cannot be parsed
+     * @throws NumberFormatException if the value or timestamp is not a number
+     */
+    static PointValueTime parsePointValueTime(Matcher messageMatcher, int dataTypeId, int valueIndex,
+            AsciiFileTimestampParser timestampParser, int timestampIndex) throws ParseException {
+        String value = messageMatcher.group(valueIndex);
+        long time;
+        if (timestampParser != null)
+            time = timestampParser.parse(messageMatcher.group(timestampIndex));
+        else
+            time = Common.timer.currentTimeMillis();
+
+        // Switch on the type
+        switch (dataTypeId) {
+            case DataTypes.ALPHANUMERIC:
+                return new PointValueTime(value, time);
+            case DataTypes.NUMERIC:
+                return new PointValueTime(Double.parseDouble(value), time);
+            case DataTypes.MULTISTATE:
+                return new PointValueTime(Integer.parseInt(value), time);
+            case DataTypes.BINARY:
+                return new PointValueTime(Boolean.parseBoolean(value), time);
+            default:
+                throw new ShouldNeverHappenException("Uknown Data type for point");
+        }
+    }
+
     @Override
     public void systemSettingsSaved(String key, String oldValue, String newValue) {
         this.restrictedPath = isPathRestricted(newValue);
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Matches lines against every point of an ASCII file data source in a single pass.
+ *
+ * Points that share a value regex and identifier index are grouped together so each distinct
+ * pattern is run only once per line, the captured identifier is then used to look up the points
+ * that should receive the value.
+ */
+public class AsciiFileMatcher {
+
+    private final List<PatternGroup> groups;
+
+    /**
+     * @param dataPoints - points to match
+     * @param callbackFactory - creates the callback used for each point, called once per point
+     */
+    public AsciiFileMatcher(List<DataPointRT> dataPoints, Function<DataPointRT, MatchCallback> callbackFactory) {
+        this(dataPoints, dp -> ((AsciiFilePointLocatorRT)dp.getPointLocator()).getValuePattern(),
+                dp -> dp.getVO().getPointLocator(),
+                dp -> ((AsciiFilePointLocatorRT)dp.getPointLocator()).getTimestampParser(),
+                callbackFactory);
+    }
+
+    private <T> AsciiFileMatcher(List<T> points, Function<T, Pattern> patternFactory,
+            Function<T, AsciiFilePointLocatorVO> locatorFactory, Function<T, AsciiFileTimestampParser> parserFactory,
+            Function<T, MatchCallback> callbackFactory) {
+        Map<String, PatternGroup> grouped = new LinkedHashMap<>();
+        for(T point : points) {
+            AsciiFilePointLocatorVO plVo = locatorFactory.apply(point);
+            String key = plVo.getPointIdentifierIndex() + ":" + plVo.getValueRegex();
+            PatternGroup group = grouped.get(key);
+            if(group == null) {
+                group = new PatternGroup(patternFactory.apply(point), plVo.getPointIdentifierIndex());
+                grouped.put(key, group);
+            }
+            group.add(new PointEntry(plVo, plVo.getHasTimestamp() ? parserFactory.apply(point) : null,
+                    callbackFactory.apply(point)));
+        }
+        this.groups = new ArrayList<>(grouped.values());
+    }
+
+    /**
+     * Create a matcher for points that may not be running
+     *
+     * @param dataPoints - points to match
+     * @param patterns - supplies the compiled value pattern for a regex
+     * @param callbackFactory - creates the callback used for each point, called once per point
+     * @return
+     */
+    public static AsciiFileMatcher forDataPoints(List<DataPointVO> dataPoints, Function<String, Pattern> patterns,
+            Function<DataPointVO, MatchCallback> callbackFactory) {
+        return new AsciiFileMatcher(dataPoints,
+                vo -> patterns.apply(((AsciiFilePointLocatorVO)vo.getPointLocator()).getValueRegex()),
+                DataPointVO::getPointLocator,
+                vo -> AsciiFileTimestampParser.get(((AsciiFilePointLocatorVO)vo.getPointLocator()).getTimestampFormat()),
+                callbackFactory);
+    }
+
+    /**
+     * Match a line against all points, calling back to the points that are identified in it
+     * @param message
+     */
+    public void match(String message) {
+        for(PatternGroup group : groups)
+            group.match(message);
+    }
+
+    /**
+     * @return the number of distinct patterns run per line
+     */
+    public int getPatternCount() {
+        return groups.size();
+    }
+
+    /**
+     * Points sharing a compiled pattern and identifier index
+     */
+    private static class PatternGroup {
+        private final Pattern pattern;
+        private final int pointIdentifierIndex;
+        private final Matcher matcher;
+        private final Map<String, List<PointEntry>> byIdentifier = new HashMap<>();
+        private final List<PointEntry> all = new ArrayList<>();
+
+        PatternGroup(Pattern pattern, int pointIdentifierIndex) {
+            this.pattern = pattern;
+            this.pointIdentifierIndex = pointIdentifierIndex;
+            this.matcher = pattern.matcher("");
+        }
+
+        void add(PointEntry entry) {
+            all.add(entry);
+            byIdentifier.computeIfAbsent(entry.vo.getPointIdentifier(), k -> new ArrayList<>(1)).add(entry);
+        }
+
+        void match(String message) {
+            matcher.reset(message);
+            if(!matcher.find())
+                return;
+
+            int groupCount = matcher.groupCount();
+            if(pointIdentifierIndex > groupCount) {
+                for(PointEntry entry : all)
+                    entry.callback.pointNotIdentified(message, pattern.pattern(), pointIdentifierIndex);
+                return;
+            }
+
+            List<PointEntry> entries;
+            try {
+                String identifier = matcher.group(pointIdentifierIndex);
+                entries = identifier == null ? null : byIdentifier.get(identifier);
+            }catch(Exception e) {
+                for(PointEntry entry : all)
+                    entry.callback.matchGeneralFailure(e);
+                return;
+            }
+            if(entries == null)
+                return;
+
+            for(PointEntry entry : entries) {
+                AsciiFilePointLocatorVO vo = entry.vo;
+                if(vo.getValueIndex() > groupCount) {
+                    entry.callback.pointNotIdentified(message, pattern.pattern(), pointIdentifierIndex);
+                    continue;
+                }
+                try {
+                    AsciiFileTimestampParser parser = entry.timestampParser;
+                    if(parser == null && vo.getHasTimestamp())
+                        parser = AsciiFileTimestampParser.get(vo.getTimestampFormat());
+                    entry.callback.onMatch(vo.getPointIdentifier(),
+                            AsciiFileDataSourceRT.parsePointValueTime(matcher, vo.getDataTypeId(),
+                                    vo.getValueIndex(), parser, vo.getTimestampIndex()));
+                }catch(Exception e) {
+                    entry.callback.matchGeneralFailure(e);
+                }
+            }
+        }
+    }
+
+    private static class PointEntry {
+        private final AsciiFilePointLocatorVO vo;
+        private final AsciiFileTimestampParser timestampParser;
+        private final MatchCallback callback;
+
+        PointEntry(AsciiFilePointLocatorVO vo, AsciiFileTimestampParser timestampParser, MatchCallback callback) {
+            this.vo = vo;
+            this.timestampParser = timestampParser;
+            this.callback = callback;
+        }
+    }
+}
@@ -12,10 +12,18 @@ import com.serotonin.m2m2.rt.dataSource.PointLocatorRT;
 public class AsciiFilePointLocatorRT extends PointLocatorRT<AsciiFilePointLocatorVO>{
 
 	private Pattern valuePattern;
+	private AsciiFileTimestampParser timestampParser;
 	
 	public AsciiFilePointLocatorRT(AsciiFilePointLocatorVO vo){
 		super(vo);
 		valuePattern = Pattern.compile(vo.getValueRegex());
+		if(vo.getHasTimestamp()) {
+			try {
+				timestampParser = AsciiFileTimestampParser.get(vo.getTimestampFormat());
+			}catch(IllegalArgumentException e) {
+				//Invalid format, will be reported when a value is parsed
+			}
+		}
 	}
 	
 	@Override
@@ -34,4 +42,11 @@ public class AsciiFilePointLocatorRT extends PointLocatorRT<AsciiFilePointLocato
 	public void setValuePattern(Pattern valuePattern) {
 		this.valuePattern = valuePattern;
 	}
+	
+	/**
+	 * @return the parser for the timestamp format or null if the point doesn't read timestamps
+	 */
+	public AsciiFileTimestampParser getTimestampParser() {
+		return timestampParser;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads only the lines appended to a file since the last read.
+ *
+ * The byte offset of the end of the last complete line is remembered along with the file key (inode)
+ * and size. If the file shrinks it is considered truncated and if the file key changes it is considered
+ * rotated, in both cases the file is read again from the start. A trailing line without a terminator is
+ * left unread until its terminator arrives.
+ *
+ * Lines end at \n, \r\n or a lone \r. A \r at the end of a read ends its line, a \n at the start of the
+ * next read completes that terminator.
+ */
+public class AsciiFileTailReader {
+    private static final Log LOG = LogFactory.getLog(AsciiFileTailReader.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Charset charset;
+    private long position;
+    private Object fileKey;
+    private long size;
+    //The last byte consumed was a \r, a \n following it is part of the same terminator
+    private boolean skipLineFeed;
+
+    public AsciiFileTailReader() {
+        this(Charset.defaultCharset());
+    }
+
+    public AsciiFileTailReader(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Read all complete lines appended since the last read
+     *
+     * @param file
+     * @param lineConsumer - receives each line without its terminator
+     * @return number of bytes consumed
+     * @throws IOException
+     */
+    public long read(File file, Consumer<String> lineConsumer) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        Object key = attributes.fileKey();
+        long currentSize = attributes.size();
+
+        if(fileKey != null && key != null && !fileKey.equals(key)) {
+            if(LOG.isDebugEnabled())
+                LOG.debug("File " + file.getPath() + " was rotated, reading from start");
+            position = 0;
+            skipLineFeed = false;
+        }else if(currentSize < position || currentSize < size) {
+            if(LOG.isDebugEnabled())
+                LOG.debug("File " + file.getPath() + " was truncated, reading from start");
+            position = 0;
+            skipLineFeed = false;
+        }
+        fileKey = key;
+        size = currentSize;
+
+        if(currentSize == position)
+            return 0;
+
+        long start = position;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = position;
+            while(channel.read(buffer) > 0) {
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                int lineStart = 0;
+                int limit = buffer.limit();
+                for(int i = 0; i < limit; i++) {
+                    byte b = bytes[i];
+                    if(b == '\n' && skipLineFeed) {
+                        //End of a \r\n terminator
+                        skipLineFeed = false;
+                        lineStart = i + 1;
+                        position = offset + lineStart;
+                        continue;
+                    }
+                    skipLineFeed = false;
+                    if(b == '\n' || b == '\r') {
+                        line.write(bytes, lineStart, i - lineStart);
+                        lineConsumer.accept(new String(line.toByteArray(), charset));
+                        line.reset();
+                        lineStart = i + 1;
+                        position = offset + lineStart;
+                        skipLineFeed = b == '\r';
+                    }
+                }
+                line.write(bytes, lineStart, limit - lineStart);
+                offset += limit;
+                buffer.clear();
+            }
+        }
+        return position - start;
+    }
+
+    /**
+     * Forget the position so the next read starts at the beginning of the file
+     */
+    public void reset() {
+        position = 0;
+        fileKey = null;
+        size = 0;
+        skipLineFeed = false;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+}
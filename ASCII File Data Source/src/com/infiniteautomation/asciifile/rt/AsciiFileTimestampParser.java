@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe parser for the timestamp format of a point locator, instances are cached by format.
+ *
+ * The format "." means the timestamp is epoch milliseconds, any other format is a SimpleDateFormat
+ * pattern and is parsed exactly as SimpleDateFormat parses it. Each thread parses with its own copy
+ * of the compiled format so the pattern is only compiled once per thread.
+ */
+public class AsciiFileTimestampParser {
+
+    public static final String EPOCH_MILLISECONDS_FORMAT = ".";
+
+    private static final ConcurrentMap<String, AsciiFileTimestampParser> CACHE = new ConcurrentHashMap<>();
+
+    private final String format;
+    private final ThreadLocal<SimpleDateFormat> formatter;
+
+    private AsciiFileTimestampParser(String format) {
+        this.format = format;
+        if(EPOCH_MILLISECONDS_FORMAT.equals(format)) {
+            this.formatter = null;
+        }else {
+            //Compile once to validate the pattern, each thread clones it
+            SimpleDateFormat compiled = new SimpleDateFormat(format);
+            this.formatter = ThreadLocal.withInitial(() -> (SimpleDateFormat) compiled.clone());
+        }
+    }
+
+    /**
+     * Get the parser for a format, creating it if necessary
+     * @param format
+     * @return
+     * @throws IllegalArgumentException if the format is not a valid pattern
+     */
+    public static AsciiFileTimestampParser get(String format) {
+        return CACHE.computeIfAbsent(format, AsciiFileTimestampParser::new);
+    }
+
+    /**
+     * Parse a timestamp into epoch milliseconds
+     *
+     * @param timestamp
+     * @return
+     * @throws ParseException if the timestamp doesn't match the format
+     * @throws NumberFormatException if the format is epoch milliseconds and the timestamp isn't a number
+     */
+    public long parse(CharSequence timestamp) throws ParseException {
+        if(formatter == null)
+            return Long.parseLong(timestamp.toString());
+        return formatter.get().parse(timestamp.toString()).getTime();
+    }
+
+    public String getFormat() {
+        return format;
+    }
+}
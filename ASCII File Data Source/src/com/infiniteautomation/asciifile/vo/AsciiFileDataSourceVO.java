@@ -31,6 +31,8 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO {
 
     @JsonProperty
     private String filePath;
+    @JsonProperty
+    private boolean tail;
 
     @Override
     public TranslatableMessage getConnectionDescription() {
@@ -76,6 +78,17 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO {
         this.filePath = filePath;
     }
 
+    /**
+     * Only read lines appended since the last read instead of the whole file
+     */
+    public boolean isTail() {
+        return tail;
+    }
+
+    public void setTail(boolean tail) {
+        this.tail = tail;
+    }
+
     @Override
     public int getUpdatePeriods() {
         return this.updatePeriods;
@@ -102,11 +115,12 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO {
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 2;
+    private static final int version = 3;
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeInt(version);
         SerializationHelper.writeSafeUTF(out, this.filePath);
+        out.writeBoolean(tail);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -119,6 +133,9 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO {
             updatePeriods = in.readInt();
         }else if(ver == 2) {
             filePath = SerializationHelper.readSafeUTF(in);
+        }else if(ver == 3) {
+            filePath = SerializationHelper.readSafeUTF(in);
+            tail = in.readBoolean();
         }
     }
 }
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+import com.serotonin.m2m2.Common;
+
+/**
+ * Threads shared by all bulk imports to parse and write the chunks of their files. The chunks write to the
+ * database so they have their own threads, the number of threads caps the chunks imported at once across all
+ * imports and at most queueSize more wait for a thread. When the queue is full the import's own thread parses
+ * the chunk, which stops it from submitting more until the chunk is done.
+ *
+ * @see AsciiFileBulkImporter
+ */
+@Component
+public class AsciiFileBulkImportPool {
+
+    private final ThreadPoolExecutor executor;
+
+    public AsciiFileBulkImportPool() {
+        this(Common.envProps.getInt("asciiFile.bulkImport.threads", Runtime.getRuntime().availableProcessors()),
+                Common.envProps.getInt("asciiFile.bulkImport.queueSize", 16));
+    }
+
+    /**
+     * @param threads - number of threads
+     * @param queueSize - number of chunks that can wait for a thread
+     */
+    public AsciiFileBulkImportPool(int threads, int queueSize) {
+        int size = Math.max(1, threads);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+            Thread thread = new Thread(r, "ASCII file bulk import " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (r, e) -> {
+            //Caller runs, unless we are shut down as the caller would wait for the task forever
+            if(e.isShutdown())
+                throw new RejectedExecutionException("ASCII file bulk import pool is shut down");
+            r.run();
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the executor the imports submit their chunks to
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the maximum number of chunks imported at once
+     */
+    public int getMaxParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -4,6 +4,7 @@
 package com.infiniteautomation.mango.rest.v2;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -12,6 +13,9 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,16 +23,31 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.infiniteautomation.asciifile.AsciiFileSystemSettingsDefinition;
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter;
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter.ImportStatistics;
 import com.infiniteautomation.asciifile.rt.AsciiFileDataSourceRT;
 import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
 import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
 import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
 import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
 import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.model.AsciiFileBulkImportRequest;
+import com.infiniteautomation.mango.rest.v2.model.AsciiFileBulkImportResult;
 import com.infiniteautomation.mango.rest.v2.model.AsciiFileTestResultModel;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.PointValueRollupCache;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
 import com.infiniteautomation.mango.spring.service.DataSourceService;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
@@ -50,11 +69,20 @@ import io.swagger.annotations.ApiParam;
 @RequestMapping("/ascii-file-data-source")
 public class AsciiFileDataSourceRestController {
 
+    private static final String RESOURCE_TYPE_BULK_ASCII_FILE_IMPORT = "BULK_ASCII_FILE_IMPORT";
+
     private final DataSourceService service;
+    private final PointValueRollupCache rollupCache;
+    private final AsciiFileBulkImportPool importPool;
+    private final TemporaryResourceManager<AsciiFileBulkImportResult, AbstractRestV2Exception> importResourceManager;
 
     @Autowired
-    public AsciiFileDataSourceRestController(DataSourceService service) {
+    public AsciiFileDataSourceRestController(DataSourceService service, PermissionService permissionService,
+            TemporaryResourceWebSocketHandler websocket, PointValueRollupCache rollupCache, AsciiFileBulkImportPool importPool) {
         this.service = service;
+        this.rollupCache = rollupCache;
+        this.importPool = importPool;
+        this.importResourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket);
     }
 
     @PreAuthorize("hasDataSourcePermission()")
@@ -64,20 +92,7 @@ public class AsciiFileDataSourceRestController {
             @RequestBody
             String path,
             @AuthenticationPrincipal User user) {
-        File verify = new File(path);
-        try {
-            verify.getCanonicalPath();
-        }catch(Exception e) {
-            throw new BadRequestException(new TranslatableMessage("dsEdit.file.ioexceptionCanonical", path));
-        }
-
-        String restrictedPaths = SystemSettingsDao.instance.getValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH);
-        if(!StringUtils.isEmpty(restrictedPaths))
-            for(String p : restrictedPaths.split(";"))
-                if(path.startsWith(p)) {
-                    throw new AccessDeniedException(new TranslatableMessage("dsEdit.file.pathRestrictedBy", path));
-                }
-
+        File verify = resolvePath(path);
         if (!verify.exists() || !verify.canRead())
             throw new AccessDeniedException(new TranslatableMessage("dsEdit.file.cannotRead"));
     }
@@ -169,4 +184,134 @@ public class AsciiFileDataSourceRestController {
         return results;
     }
 
+    @ApiOperation(value = "Import historical values from a file", notes = "Only points that read their timestamp from the file are imported. User must have edit permission for the data source.")
+    @RequestMapping(method = RequestMethod.POST, value = "/bulk-import/{xid}")
+    public ResponseEntity<TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception>> bulkImport(
+            @ApiParam(value = "Valid ASCII data source XID", required = true, allowMultiple = false)
+            @PathVariable String xid,
+            @RequestBody
+            AsciiFileBulkImportRequest requestBody,
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) {
+
+        DataSourceVO ds = service.get(xid);
+        if(!(ds instanceof AsciiFileDataSourceVO))
+            throw new BadRequestException(new TranslatableMessage("validate.incompatibleDataSourceType"));
+        service.ensureEditPermission(user, ds);
+
+        String path = requestBody.getFilePath() == null ? ((AsciiFileDataSourceVO)ds).getFilePath() : requestBody.getFilePath();
+        File file = resolvePath(path);
+        if (!file.exists() || !file.canRead())
+            throw new AccessDeniedException(new TranslatableMessage("dsEdit.file.cannotRead"));
+
+        int parallelism = requestBody.getParallelism() == null ? importPool.getMaxParallelism() :
+            Math.max(1, Math.min(requestBody.getParallelism(), importPool.getMaxParallelism()));
+        long chunkSize = requestBody.getChunkSize() == null ? AsciiFileBulkImporter.DEFAULT_CHUNK_SIZE : requestBody.getChunkSize();
+        if(chunkSize <= 0 || chunkSize > Integer.MAX_VALUE / 2)
+            throw new BadRequestException(new TranslatableMessage("validate.invalidValue"));
+
+        List<DataPointVO> points = DataPointDao.getInstance().getDataPoints(ds.getId());
+
+        TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> responseBody =
+                importResourceManager.newTemporaryResource(RESOURCE_TYPE_BULK_ASCII_FILE_IMPORT, requestBody.getId(), user.getId(),
+                        requestBody.getExpiration(), requestBody.getTimeout(), (resource) -> {
+                            AsciiFileBulkImporter importer = new AsciiFileBulkImporter(file, points,
+                                    Common.databaseProxy.newPointValueDao(), importPool.getExecutor(), parallelism, chunkSize);
+                            ImportStatistics statistics;
+                            try {
+                                statistics = importer.run((stats, complete, total) -> {
+                                    if(complete < total)
+                                        resource.progress(new AsciiFileBulkImportResult(stats), complete, total);
+                                }, resource::isComplete);
+                            }finally {
+                                //The values bypass the runtime, remove the statistics they change
+                                importer.getStatistics().getEarliestTimes().forEach(rollupCache::invalidate);
+                            }
+                            if(!resource.isComplete())
+                                resource.success(new AsciiFileBulkImportResult(statistics));
+                            return null;
+                        });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/ascii-file-data-source/bulk-import/{id}").buildAndExpand(responseBody.getId()).toUri());
+        return new ResponseEntity<TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception>>(responseBody, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Get the status of a bulk import using its id", notes = "User can only get their own bulk imports unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value = "/bulk-import/{id}")
+    public TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> getBulkImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @AuthenticationPrincipal User user) {
+
+        TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> resource = importResourceManager.get(id);
+        if (!user.hasAdminRole() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+        return resource;
+    }
+
+    @ApiOperation(value = "Update a bulk import using its id", notes = "Only allowed operation is to change the status to CANCELLED. " +
+            "User can only update their own bulk imports unless they are an admin.")
+    @RequestMapping(method = RequestMethod.PUT, value = "/bulk-import/{id}")
+    public TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> updateBulkImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @RequestBody
+            TemporaryResourceStatusUpdate body,
+            @AuthenticationPrincipal User user) {
+
+        TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> resource = importResourceManager.get(id);
+        if (!user.hasAdminRole() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            resource.cancel();
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+        return resource;
+    }
+
+    @ApiOperation(value = "Remove a bulk import using its id", notes = "Will only remove a bulk import if it is complete. " +
+            "User can only remove their own bulk imports unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value = "/bulk-import/{id}")
+    public void removeBulkImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+            @AuthenticationPrincipal User user) {
+
+        TemporaryResource<AsciiFileBulkImportResult, AbstractRestV2Exception> resource = importResourceManager.get(id);
+        if (!user.hasAdminRole() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+        resource.remove();
+    }
+
+    /**
+     * Resolve the canonical file so relative segments and links can't escape the restricted paths,
+     * the canonical file is the one that must be read
+     * @param path
+     * @return
+     */
+    private File resolvePath(String path) {
+        File file;
+        try {
+            file = new File(path).getCanonicalFile();
+        }catch(IOException | RuntimeException e) {
+            throw new BadRequestException(new TranslatableMessage("dsEdit.file.ioexceptionCanonical", path));
+        }
+        ensurePathNotRestricted(file.getPath());
+        return file;
+    }
+
+    private void ensurePathNotRestricted(String path) {
+        String restrictedPaths = SystemSettingsDao.instance.getValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH);
+        if(!StringUtils.isEmpty(restrictedPaths))
+            for(String p : restrictedPaths.split(";"))
+                if(path.startsWith(p)) {
+                    throw new AccessDeniedException(new TranslatableMessage("dsEdit.file.pathRestrictedBy", path));
+                }
+    }
 }
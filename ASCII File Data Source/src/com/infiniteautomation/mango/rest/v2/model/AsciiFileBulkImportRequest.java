@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+/**
+ * Request to import the historical values of a file into the points of an ASCII file data source
+ */
+public class AsciiFileBulkImportRequest {
+
+    private String id;
+    private String filePath;
+    private Integer parallelism;
+    private Long chunkSize;
+    private Long timeout;
+    private Long expiration;
+
+    public String getId() {
+        return id;
+    }
+    public void setId(String id) {
+        this.id = id;
+    }
+    /**
+     * @return the file to import, if null the data source's file is imported
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    /**
+     * @return number of chunks to parse concurrently, if null the number of processors is used
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+    /**
+     * @return approximate size of each chunk in bytes
+     */
+    public Long getChunkSize() {
+        return chunkSize;
+    }
+    public void setChunkSize(Long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+    public Long getTimeout() {
+        return timeout;
+    }
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+    public Long getExpiration() {
+        return expiration;
+    }
+    public void setExpiration(Long expiration) {
+        this.expiration = expiration;
+    }
+}
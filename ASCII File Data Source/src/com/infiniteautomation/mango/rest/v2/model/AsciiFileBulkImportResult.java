@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model;
+
+import com.infiniteautomation.asciifile.rt.AsciiFileBulkImporter.ImportStatistics;
+
+/**
+ * Progress of a bulk import
+ */
+public class AsciiFileBulkImportResult {
+
+    private long bytes;
+    private long lines;
+    private long values;
+    private long errors;
+    private String firstError;
+
+    public AsciiFileBulkImportResult() { }
+
+    public AsciiFileBulkImportResult(ImportStatistics statistics) {
+        this.bytes = statistics.getBytes();
+        this.lines = statistics.getLines();
+        this.values = statistics.getValues();
+        this.errors = statistics.getErrors();
+        this.firstError = statistics.getFirstError();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+    public long getLines() {
+        return lines;
+    }
+    public void setLines(long lines) {
+        this.lines = lines;
+    }
+    public long getValues() {
+        return values;
+    }
+    public void setValues(long values) {
+        this.values = values;
+    }
+    public long getErrors() {
+        return errors;
+    }
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+    public String getFirstError() {
+        return firstError;
+    }
+    public void setFirstError(String firstError) {
+        this.firstError = firstError;
+    }
+}
@@ -176,6 +176,8 @@ describe('MBus ip data source', function() {
                 type: 'SECONDS'
             },
             quantize: true,
+            persistentConnection: true,
+            tcpIpConnections: 4,
             useCron: false,
             editPermission: [],
             eventAlarmLevels: [
@@ -211,6 +213,8 @@ describe('MBus ip data source', function() {
         assert.strictEqual(saved.pollPeriod.periods, local.pollPeriod.periods);
         assert.strictEqual(saved.pollPeriod.type, local.pollPeriod.type);
         assert.strictEqual(saved.quantize, local.quantize);
+        assert.strictEqual(saved.persistentConnection, local.persistentConnection);
+        assert.strictEqual(saved.tcpIpConnections, local.tcpIpConnections);
         assert.strictEqual(saved.useCron, local.useCron);
         
         assert.strictEqual(saved.connection.bitPerSecond, local.connection.bitPerSecond);
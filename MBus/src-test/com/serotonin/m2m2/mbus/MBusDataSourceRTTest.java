@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import static com.serotonin.m2m2.mbus.MBusFrameLayoutTest.frame;
+import static com.serotonin.m2m2.mbus.MBusFrameLayoutTest.integer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.mbus.MBusDataSourceRT.MBusDevice;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+
+import net.sf.mbus4j.Connection;
+import net.sf.mbus4j.MBusAddressing;
+import net.sf.mbus4j.TcpIpConnection;
+import net.sf.mbus4j.dataframes.UserDataResponse;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+import net.sf.mbus4j.master.MBusMaster;
+
+public class MBusDataSourceRTTest extends MangoTestBase {
+
+    private int nextId = 1;
+
+    @Test
+    public void testGroupByDevice() {
+        MBusDataSourceVO vo = createDataSource(1);
+        List<DataPointRT> points = new ArrayList<>();
+        points.add(createPoint(vo, primary(1), 0));
+        points.add(createPoint(vo, secondary(14491001, "DBW"), 0));
+        points.add(createPoint(vo, primary(2), 0));
+        points.add(createPoint(vo, primary(1), 1));
+        points.add(createPoint(vo, secondary(14491001, "DBW"), 1));
+        points.add(createPoint(vo, secondary(14491008, "DBW"), 0));
+
+        List<MBusDevice> devices = MBusDataSourceRT.groupByDevice(points);
+
+        //In order of their first point
+        assertEquals(4, devices.size());
+        assertEquals(Arrays.asList(points.get(0), points.get(3)), devices.get(0).points);
+        assertEquals(Arrays.asList(points.get(1), points.get(4)), devices.get(1).points);
+        assertEquals(Arrays.asList(points.get(2)), devices.get(2).points);
+        assertEquals(Arrays.asList(points.get(5)), devices.get(3).points);
+
+        //Devices are spread over the connections in turn
+        List<List<MBusDevice>> partitions = MBusDataSourceRT.partition(devices, 3);
+        assertEquals(Arrays.asList(devices.get(0), devices.get(3)), partitions.get(0));
+        assertEquals(Arrays.asList(devices.get(1)), partitions.get(1));
+        assertEquals(Arrays.asList(devices.get(2)), partitions.get(2));
+    }
+
+    @Test
+    public void testConcurrentPoll() {
+        MBusDataSourceVO vo = createDataSource(2);
+        TestDataSourceRT rt = new TestDataSourceRT(vo);
+        List<DataPointRT> points = new ArrayList<>();
+        for (int address = 1; address <= 4; address++) {
+            //Two points of each device, one per block
+            points.add(rt.add(createPoint(vo, primary(address), 0)));
+            points.add(rt.add(createPoint(vo, primary(address), 1)));
+            rt.responses.put((byte) address, frame(integer(0, address * 10), integer(1, address * 10 + 1)));
+        }
+
+        rt.initialize();
+        try {
+            rt.doPoll(timer.currentTimeMillis());
+
+            //Each connection read its own devices on a poll thread
+            assertEquals(2, rt.masters.size());
+            assertEquals(Arrays.asList((byte) 1, (byte) 3), rt.masters.get(0).read);
+            assertEquals(Arrays.asList((byte) 2, (byte) 4), rt.masters.get(1).read);
+            for (TestMaster master : rt.masters) {
+                for (String thread : master.threads) {
+                    assertTrue(thread.startsWith("MBus poll"));
+                }
+            }
+            for (int i = 0; i < points.size(); i++) {
+                assertValue(rt.responses.get((byte) (i / 2 + 1)).getDataBlock(i % 2), points.get(i));
+            }
+
+            //Device 2 swaps its blocks, the layout no longer matches so the cached indices are checked
+            //and its points are not read from the wrong blocks
+            UserDataResponse previous = rt.responses.get((byte) 2);
+            rt.responses.put((byte) 2, frame(integer(1, 201), integer(0, 200)));
+            //Device 3 keeps its layout, its points are read from the cached indices
+            rt.responses.put((byte) 3, frame(integer(0, 300), integer(1, 301)));
+            rt.doPoll(timer.currentTimeMillis());
+
+            assertValue(previous.getDataBlock(0), points.get(2));
+            assertValue(previous.getDataBlock(1), points.get(3));
+            assertValue(rt.responses.get((byte) 3).getDataBlock(0), points.get(4));
+            assertValue(rt.responses.get((byte) 3).getDataBlock(1), points.get(5));
+        } finally {
+            rt.terminate();
+        }
+    }
+
+    private void assertValue(DataBlock db, DataPointRT point) {
+        MBusPointLocatorRT locatorRT = point.getPointLocator();
+        double expected = DataBlockReader.forBlock(db).read(db, locatorRT, locatorRT.getVo().effectiveSiPrefix(), 0).getDoubleValue();
+        assertNotNull(point.getPointValue());
+        assertEquals(expected, point.getPointValue().getDoubleValue(), 0d);
+    }
+
+    private MBusDataSourceVO createDataSource(int connections) {
+        MBusDataSourceVO vo = new MBusDataSourceVO();
+        vo.setXid("DS_MBUS_TEST");
+        vo.setName("MBus test");
+        vo.setConnection(new TcpIpConnection("localhost", 10001, Connection.DEFAULT_BAUDRATE, TcpIpConnection.DEFAULT_RESPONSE_TIMEOUT_OFFSET));
+        vo.setTcpIpConnections(connections);
+        vo.setPersistentConnection(true);
+        return vo;
+    }
+
+    private MBusPointLocatorVO primary(int address) {
+        MBusPointLocatorVO locator = new MBusPointLocatorVO();
+        locator.setAddressing(MBusAddressing.PRIMARY);
+        locator.setAddress((byte) address);
+        return locator;
+    }
+
+    private MBusPointLocatorVO secondary(int identNumber, String manufacturer) {
+        MBusPointLocatorVO locator = new MBusPointLocatorVO();
+        locator.setAddressing(MBusAddressing.SECONDARY);
+        locator.setIdentNumber(identNumber);
+        locator.setManufacturer(manufacturer);
+        return locator;
+    }
+
+    /**
+     * A point of the block with a storage number in the frames of the test
+     */
+    private DataPointRT createPoint(MBusDataSourceVO ds, MBusPointLocatorVO locator, long storageNumber) {
+        MBusPointLocatorVO fields = MBusFrameLayoutTest.locator(integer(storageNumber, 0));
+        locator.setDifCode(fields.getDifCode());
+        locator.setFunctionField(fields.getFunctionField());
+        locator.setUnitOfMeasurement(fields.getUnitOfMeasurement());
+        locator.setStorageNumber(storageNumber);
+        locator.setDbIndex(-1);
+
+        DataPointVO vo = new DataPointVO();
+        vo.setId(nextId);
+        vo.setXid("DP_MBUS_" + nextId);
+        vo.setName("MBus point " + nextId++);
+        vo.setPointLocator(locator);
+        return new DataPointRT(new DataPointWithEventDetectors(vo, new ArrayList<>()), locator.createRuntime(), ds, null, null);
+    }
+
+    /**
+     * Reads the devices from test masters instead of gateway connections
+     */
+    private static class TestDataSourceRT extends MBusDataSourceRT {
+        final Map<Byte, UserDataResponse> responses = new ConcurrentHashMap<>();
+        final List<TestMaster> masters = new ArrayList<>();
+
+        TestDataSourceRT(MBusDataSourceVO vo) {
+            super(vo);
+        }
+
+        DataPointRT add(DataPointRT point) {
+            dataPoints.add(point);
+            return point;
+        }
+
+        @Override
+        protected MBusMaster createMaster(int index) {
+            TestMaster master = new TestMaster(responses);
+            masters.add(master);
+            return master;
+        }
+    }
+
+    /**
+     * Records the addresses it reads and the threads it reads them on
+     */
+    private static class TestMaster extends MBusMaster {
+        final Map<Byte, UserDataResponse> responses;
+        final List<Byte> read = new ArrayList<>();
+        final List<String> threads = new ArrayList<>();
+
+        TestMaster(Map<Byte, UserDataResponse> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public UserDataResponse readResponse(byte address) {
+            read.add(address);
+            threads.add(Thread.currentThread().getName());
+            return responses.get(address);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+import net.sf.mbus4j.dataframes.UserDataResponse;
+import net.sf.mbus4j.dataframes.datablocks.BigDecimalDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.ByteDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+import net.sf.mbus4j.dataframes.datablocks.IntegerDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.LongDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.RealDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.ShortDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.StringDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.dif.DataFieldCode;
+import net.sf.mbus4j.dataframes.datablocks.vif.VifPrimary;
+
+/**
+ * Compares decoding the points of a response frame by searching for their blocks and testing the block
+ * type on every poll with decoding through the frame layout, cached block index and resolved reader.
+ *
+ * The frames mirror the meters simulated by MBusSlave, each block has its own storage number so every
+ * point maps to exactly one block.
+ *
+ * Run as a Java application, optional arguments are the number of blocks per frame and the number of polls.
+ */
+public class MBusFrameLayoutBenchmark {
+
+    public static void main(String[] args) {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int polls = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        UserDataResponse udr = createFrame(blocks);
+        List<MBusPointLocatorRT> locators = createLocators(udr);
+
+        //Warm up both paths
+        for (int i = 0; i < 3; i++) {
+            legacy(udr, locators, polls / 10);
+            cached(udr, locators, polls / 10);
+        }
+
+        long start = System.nanoTime();
+        double legacySum = legacy(udr, locators, polls);
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double cachedSum = cached(udr, locators, polls);
+        long cachedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%d blocks, %d polls", blocks, polls));
+        System.out.println(String.format("Search and instanceof: %d ns/poll (%f)", legacyNanos / polls, legacySum));
+        System.out.println(String.format("Layout and reader:     %d ns/poll (%f)", cachedNanos / polls, cachedSum));
+    }
+
+    private static UserDataResponse createFrame(int blocks) {
+        UserDataResponse udr = new UserDataResponse();
+        VifPrimary[] vifs = VifPrimary.values();
+        for (int i = 0; i < blocks; i++) {
+            DataBlock db;
+            switch (i % 3) {
+                case 0:
+                    IntegerDataBlock intBlock = new IntegerDataBlock(DataFieldCode._32_BIT_INTEGER, vifs[i % vifs.length]);
+                    intBlock.setValue(i * 1000);
+                    db = intBlock;
+                    break;
+                case 1:
+                    LongDataBlock longBlock = new LongDataBlock(DataFieldCode._48_BIT_INTEGER, vifs[i % vifs.length]);
+                    longBlock.setValue(i * 100000L);
+                    db = longBlock;
+                    break;
+                default:
+                    RealDataBlock realBlock = new RealDataBlock(DataFieldCode._32_BIT_REAL, vifs[i % vifs.length]);
+                    realBlock.setValue(i * 1.5f);
+                    db = realBlock;
+                    break;
+            }
+            db.setStorageNumber(i);
+            udr.addDataBlock(db);
+        }
+        return udr;
+    }
+
+    private static List<MBusPointLocatorRT> createLocators(UserDataResponse udr) {
+        List<MBusPointLocatorRT> locators = new ArrayList<>();
+        for (int i = 0; i < udr.getDataBlockCount(); i++) {
+            DataBlock db = udr.getDataBlock(i);
+            MBusPointLocatorVO vo = new MBusPointLocatorVO();
+            vo.setDifCode(db.getDataFieldCode().getLabel());
+            vo.setFunctionField(db.getFunctionField().getLabel());
+            vo.setUnitOfMeasurement(db.getUnitOfMeasurement() == null ? null : db.getUnitOfMeasurement().getLabel());
+            vo.setStorageNumber(db.getStorageNumber());
+            vo.setSubUnit(db.getSubUnit());
+            vo.setTariff(db.getTariff());
+            locators.add(vo.createRuntime());
+        }
+        return locators;
+    }
+
+    /**
+     * Decode as the data source did before caching, searching all blocks for every point on every poll
+     */
+    private static double legacy(UserDataResponse udr, List<MBusPointLocatorRT> locators, int polls) {
+        double sum = 0;
+        for (int p = 0; p < polls; p++) {
+            for (MBusPointLocatorRT locatorRT : locators) {
+                MBusPointLocatorVO locatorVo = locatorRT.getVo();
+                List<Integer> found = new ArrayList<>();
+                for (int i = 0; i < udr.getDataBlockCount(); i++) {
+                    DataBlock db = udr.getDataBlock(i);
+                    if (Objects.equals(db.getDataFieldCode(), locatorVo.difCode())
+                            && Objects.equals(db.getUnitOfMeasurement(), locatorVo.unitOfMeasurement())
+                            && Objects.equals(db.getFunctionField(), locatorVo.functionField())
+                            && (db.getStorageNumber() == locatorVo.getStorageNumber())
+                            && (db.getSubUnit() == locatorVo.getSubUnit())
+                            && (db.getTariff() == locatorVo.getTariff())) {
+                        found.add(i);
+                    }
+                }
+                DataBlock db = udr.getDataBlock(found.get(0));
+                sum += legacyValue(db, locatorRT, locatorVo, p).getDoubleValue();
+            }
+        }
+        return sum;
+    }
+
+    private static PointValueTime legacyValue(DataBlock db, MBusPointLocatorRT locatorRT, MBusPointLocatorVO locatorVo, long time) {
+        double value;
+        if (db instanceof ByteDataBlock) {
+            value = ((ByteDataBlock) db).getValue();
+        } else if (db instanceof ShortDataBlock) {
+            value = ((ShortDataBlock) db).getValue();
+        } else if (db instanceof IntegerDataBlock) {
+            value = ((IntegerDataBlock) db).getValue();
+        } else if (db instanceof LongDataBlock) {
+            value = ((LongDataBlock) db).getValue();
+        } else if (db instanceof RealDataBlock) {
+            value = ((RealDataBlock) db).getValue();
+        } else if (db instanceof BigDecimalDataBlock) {
+            value = ((BigDecimalDataBlock) db).getValue().doubleValue();
+        } else if (db instanceof StringDataBlock) {
+            return new PointValueTime(((StringDataBlock) db).getValue(), time);
+        } else {
+            throw new IllegalStateException("Dont know how to save");
+        }
+        return new PointValueTime(locatorRT.calcCorrectedValue(value,
+                db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time);
+    }
+
+    /**
+     * Decode as the data source does now, the blocks are only searched for when the layout changes
+     */
+    private static double cached(UserDataResponse udr, List<MBusPointLocatorRT> locators, int polls) {
+        double sum = 0;
+        MBusFrameLayout layout = null;
+        for (int p = 0; p < polls; p++) {
+            boolean resolve = layout == null || !layout.matches(udr);
+            if (resolve) {
+                layout = MBusFrameLayout.of(udr);
+            }
+            for (MBusPointLocatorRT locatorRT : locators) {
+                MBusPointLocatorVO locatorVo = locatorRT.getVo();
+                if (resolve) {
+                    locatorVo.setDbIndex(MBusFrameLayout.findDataBlocks(udr, locatorVo)[0]);
+                }
+                DataBlock db = udr.getDataBlock(locatorVo.getDbIndex());
+                if (resolve) {
+                    locatorRT.resolve(db);
+                }
+                sum += locatorRT.getReader().read(db, locatorRT, locatorVo.effectiveSiPrefix(), p).getDoubleValue();
+            }
+        }
+        return sum;
+    }
+}
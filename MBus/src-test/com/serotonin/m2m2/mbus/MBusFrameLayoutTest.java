@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.sf.mbus4j.dataframes.UserDataResponse;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+import net.sf.mbus4j.dataframes.datablocks.IntegerDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.LongDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.dif.DataFieldCode;
+import net.sf.mbus4j.dataframes.datablocks.vif.VifPrimary;
+
+public class MBusFrameLayoutTest {
+
+    private static final VifPrimary VIF = VifPrimary.values()[0];
+
+    @Test
+    public void testSameLayoutMatches() {
+        UserDataResponse first = frame(integer(0, 10), integer(1, 20), longBlock(2, 30));
+        //The next response of the meter, only the values changed
+        UserDataResponse second = frame(integer(0, 11), integer(1, 21), longBlock(2, 31));
+
+        MBusFrameLayout layout = MBusFrameLayout.of(first);
+        assertTrue(layout.matches(first));
+        assertTrue(layout.matches(second));
+
+        //The index resolved against the first response is valid for the second
+        MBusPointLocatorVO locator = locator(second.getDataBlock(1));
+        assertArrayEquals(new int[] {1}, MBusFrameLayout.findDataBlocks(first, locator));
+        assertArrayEquals(new int[] {1}, MBusFrameLayout.findDataBlocks(second, locator));
+    }
+
+    @Test
+    public void testChangedLayoutDoesNotMatch() {
+        MBusFrameLayout layout = MBusFrameLayout.of(frame(integer(0, 10), integer(1, 20), longBlock(2, 30)));
+
+        //Block added
+        assertFalse(layout.matches(frame(integer(0, 10), integer(1, 20), longBlock(2, 30), integer(3, 40))));
+        //Block removed
+        assertFalse(layout.matches(frame(integer(0, 10), integer(1, 20))));
+        //Storage number changed
+        assertFalse(layout.matches(frame(integer(0, 10), integer(5, 20), longBlock(2, 30))));
+        //Block type changed
+        assertFalse(layout.matches(frame(integer(0, 10), longBlock(1, 20), longBlock(2, 30))));
+        //Tariff changed
+        IntegerDataBlock tariff = integer(1, 20);
+        tariff.setTariff(1);
+        assertFalse(layout.matches(frame(integer(0, 10), tariff, longBlock(2, 30))));
+    }
+
+    @Test
+    public void testReorderedBlocksAreFoundAgain() {
+        UserDataResponse first = frame(integer(0, 10), integer(1, 20), longBlock(2, 30));
+        MBusPointLocatorVO locator = locator(first.getDataBlock(2));
+        MBusFrameLayout layout = MBusFrameLayout.of(first);
+        assertArrayEquals(new int[] {2}, MBusFrameLayout.findDataBlocks(first, locator));
+
+        //The meter moved the block, the layout no longer matches and the search finds its new index
+        UserDataResponse reordered = frame(longBlock(2, 31), integer(0, 11), integer(1, 21));
+        assertFalse(layout.matches(reordered));
+        assertArrayEquals(new int[] {0}, MBusFrameLayout.findDataBlocks(reordered, locator));
+    }
+
+    @Test
+    public void testFindDataBlocks() {
+        UserDataResponse udr = frame(integer(0, 10), integer(1, 20), integer(1, 21), longBlock(2, 30));
+
+        assertArrayEquals(new int[] {0}, MBusFrameLayout.findDataBlocks(udr, locator(udr.getDataBlock(0))));
+        //Blocks with the same fields all match
+        assertArrayEquals(new int[] {1, 2}, MBusFrameLayout.findDataBlocks(udr, locator(udr.getDataBlock(1))));
+
+        MBusPointLocatorVO missing = locator(udr.getDataBlock(3));
+        missing.setStorageNumber(9);
+        assertEquals(0, MBusFrameLayout.findDataBlocks(udr, missing).length);
+
+        //Every block matches
+        UserDataResponse same = frame(integer(0, 10), integer(0, 11));
+        assertArrayEquals(new int[] {0, 1}, MBusFrameLayout.findDataBlocks(same, locator(same.getDataBlock(0))));
+    }
+
+    static UserDataResponse frame(DataBlock... blocks) {
+        UserDataResponse udr = new UserDataResponse();
+        for (DataBlock db : blocks) {
+            udr.addDataBlock(db);
+        }
+        return udr;
+    }
+
+    static IntegerDataBlock integer(long storageNumber, int value) {
+        IntegerDataBlock db = new IntegerDataBlock(DataFieldCode._32_BIT_INTEGER, VIF);
+        db.setValue(value);
+        db.setStorageNumber(storageNumber);
+        return db;
+    }
+
+    static LongDataBlock longBlock(long storageNumber, long value) {
+        LongDataBlock db = new LongDataBlock(DataFieldCode._48_BIT_INTEGER, VIF);
+        db.setValue(value);
+        db.setStorageNumber(storageNumber);
+        return db;
+    }
+
+    /**
+     * A locator that matches the fields of a block
+     */
+    static MBusPointLocatorVO locator(DataBlock db) {
+        MBusPointLocatorVO vo = new MBusPointLocatorVO();
+        vo.setDifCode(db.getDataFieldCode().getLabel());
+        vo.setFunctionField(db.getFunctionField().getLabel());
+        vo.setUnitOfMeasurement(db.getUnitOfMeasurement() == null ? null : db.getUnitOfMeasurement().getLabel());
+        vo.setStorageNumber(db.getStorageNumber());
+        vo.setSubUnit(db.getSubUnit());
+        vo.setTariff(db.getTariff());
+        return vo;
+    }
+}
@@ -20,6 +20,8 @@ import net.sf.mbus4j.TcpIpConnection;
 public class MBusDataSourceModel extends AbstractPollingDataSourceModel<MBusDataSourceVO>{
     
     private ConnectionModel<?> connection;
+    private boolean persistentConnection;
+    private int tcpIpConnections;
     
     public MBusDataSourceModel() {
 
@@ -39,6 +41,8 @@ public class MBusDataSourceModel extends AbstractPollingDataSourceModel<MBusData
         MBusDataSourceVO vo = super.toVO();
         if(connection != null)
             vo.setConnection(connection.toVO());
+        vo.setPersistentConnection(persistentConnection);
+        vo.setTcpIpConnections(tcpIpConnections);
         return vo;
     }
     
@@ -50,7 +54,8 @@ public class MBusDataSourceModel extends AbstractPollingDataSourceModel<MBusData
             connection = new SerialPortConnectionModel((SerialPortConnection) conn);
         else if(conn instanceof TcpIpConnection)
             connection = new TcpIpConnectionModel((TcpIpConnection) conn);
-            
+        persistentConnection = vo.isPersistentConnection();
+        tcpIpConnections = vo.getTcpIpConnections();
     }
     
     /**
@@ -66,5 +71,33 @@ public class MBusDataSourceModel extends AbstractPollingDataSourceModel<MBusData
     public void setConnection(ConnectionModel<?> connection) {
         this.connection = connection;
     }
+
+    /**
+     * @return the persistentConnection
+     */
+    public boolean isPersistentConnection() {
+        return persistentConnection;
+    }
+
+    /**
+     * @param persistentConnection the persistentConnection to set
+     */
+    public void setPersistentConnection(boolean persistentConnection) {
+        this.persistentConnection = persistentConnection;
+    }
+
+    /**
+     * @return the tcpIpConnections
+     */
+    public int getTcpIpConnections() {
+        return tcpIpConnections;
+    }
+
+    /**
+     * @param tcpIpConnections the tcpIpConnections to set
+     */
+    public void setTcpIpConnections(int tcpIpConnections) {
+        this.tcpIpConnections = tcpIpConnections;
+    }
     
 }
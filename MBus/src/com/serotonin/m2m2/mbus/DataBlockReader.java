@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+import net.sf.mbus4j.dataframes.datablocks.BigDecimalDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.ByteDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+import net.sf.mbus4j.dataframes.datablocks.IntegerDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.LongDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.RealDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.ShortDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.StringDataBlock;
+import net.sf.mbus4j.dataframes.datablocks.vif.SiPrefix;
+
+/**
+ * Reads the value of a data block, resolved once from the class of the block a point is
+ * mapped to so the value can be read on each poll without testing the block type.
+ */
+public enum DataBlockReader {
+
+    BYTE {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((ByteDataBlock) db).getValue();
+        }
+    },
+    SHORT {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((ShortDataBlock) db).getValue();
+        }
+    },
+    INTEGER {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((IntegerDataBlock) db).getValue();
+        }
+    },
+    LONG {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((LongDataBlock) db).getValue();
+        }
+    },
+    REAL {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((RealDataBlock) db).getValue();
+        }
+    },
+    BIG_DECIMAL {
+        @Override
+        double numericValue(DataBlock db) {
+            return ((BigDecimalDataBlock) db).getValue().doubleValue();
+        }
+    },
+    STRING {
+        @Override
+        public PointValueTime read(DataBlock db, MBusPointLocatorRT locatorRT, SiPrefix siPrefix, long time) {
+            return new PointValueTime(((StringDataBlock) db).getValue(), time);
+        }
+    },
+    UNSUPPORTED {
+        @Override
+        public boolean isSupported() {
+            return false;
+        }
+
+        @Override
+        public PointValueTime read(DataBlock db, MBusPointLocatorRT locatorRT, SiPrefix siPrefix, long time) {
+            throw new UnsupportedOperationException("Unsupported data block " + db.getClass().getSimpleName());
+        }
+    };
+
+    /**
+     * Get the reader for a block
+     * @param db
+     * @return
+     */
+    public static DataBlockReader forBlock(DataBlock db) {
+        if (db instanceof ByteDataBlock) {
+            return BYTE;
+        } else if (db instanceof ShortDataBlock) {
+            return SHORT;
+        } else if (db instanceof IntegerDataBlock) {
+            return INTEGER;
+        } else if (db instanceof LongDataBlock) {
+            return LONG;
+        } else if (db instanceof RealDataBlock) {
+            return REAL;
+        } else if (db instanceof BigDecimalDataBlock) {
+            return BIG_DECIMAL;
+        } else if (db instanceof StringDataBlock) {
+            return STRING;
+        } else {
+            return UNSUPPORTED;
+        }
+    }
+
+    public boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Read the value of a block, numeric values are corrected by the exponent and correction constant of the block
+     *
+     * @param db - block of the type this reader was resolved from
+     * @param locatorRT
+     * @param siPrefix - effective si prefix of the point
+     * @param time
+     * @return
+     */
+    public PointValueTime read(DataBlock db, MBusPointLocatorRT locatorRT, SiPrefix siPrefix, long time) {
+        return new PointValueTime(locatorRT.calcCorrectedValue(numericValue(db), db.getCorrectionExponent(siPrefix), db.getCorrectionConstant()), time);
+    }
+
+    double numericValue(DataBlock db) {
+        throw new UnsupportedOperationException();
+    }
+}
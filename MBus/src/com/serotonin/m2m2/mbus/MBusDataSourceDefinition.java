@@ -53,6 +53,8 @@ public class MBusDataSourceDefinition extends PollingDataSourceDefinition<MBusDa
                     response.addContextualMessage("ipAddressOrHostname", "validate.required");
                 if(cnxn.getPort() < 1)
                     response.addContextualMessage("tcpPort", "validate.greaterThanZero");
+                if(vo.getTcpIpConnections() < 1)
+                    response.addContextualMessage("tcpIpConnections", "validate.greaterThanZero");
             } else if (vo.getConnection() instanceof SerialPortConnection) {
                 SerialPortConnection cnxn = ((SerialPortConnection) vo.getConnection());
                 if(StringUtils.isEmpty(cnxn.getPortName())){
@@ -24,27 +24,34 @@ import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.rt.dataSource.PollingDataSource;
 import java.io.IOException;
-import java.util.Arrays;
-
-import net.sf.mbus4j.dataframes.datablocks.BigDecimalDataBlock;
-import net.sf.mbus4j.dataframes.datablocks.IntegerDataBlock;
-import net.sf.mbus4j.dataframes.datablocks.LongDataBlock;
-import net.sf.mbus4j.dataframes.datablocks.RealDataBlock;
-import net.sf.mbus4j.dataframes.datablocks.ShortDataBlock;
-import net.sf.mbus4j.dataframes.datablocks.StringDataBlock;
+
 import net.sf.mbus4j.master.MBusMaster;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+import com.serotonin.m2m2.Common;
+import net.sf.mbus4j.Connection;
 import net.sf.mbus4j.MBusUtils;
 import net.sf.mbus4j.SerialPortConnection;
+import net.sf.mbus4j.TcpIpConnection;
 import net.sf.mbus4j.dataframes.UserDataResponse;
 import net.sf.mbus4j.dataframes.datablocks.BcdValue;
-import net.sf.mbus4j.dataframes.datablocks.ByteDataBlock;
 import net.sf.mbus4j.dataframes.datablocks.DataBlock;
 
 /**
@@ -57,169 +64,335 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
     public static final int POINT_READ_EXCEPTION_EVENT = 2;
     public static final int POINT_WRITE_EXCEPTION_EVENT = 3;
     public static final int POLL_ABORTED_EVENT = 4;
-    private final MBusMaster master = new MBusMaster();
+
+    //Masters are only used while holding the lock on this data source
+    private final List<MBusMaster> masters = new ArrayList<>();
+    private boolean connected;
+    private ExecutorService pollExecutor;
+
+    //Points grouped by device, rebuilt on the next poll after the points change
+    private volatile boolean devicesChanged = true;
+    private List<MBusDevice> devices = Collections.emptyList();
+    //Devices spread over the gateway connections when reading concurrently
+    private List<List<MBusDevice>> partitions = Collections.emptyList();
+
+    private final String latencyMonitorIdPrefix;
+    private final ConcurrentMap<String, ValueMonitor<Long>> latencyMonitors = new ConcurrentHashMap<>();
 
     public MBusDataSourceRT(MBusDataSourceVO vo) {
         super(vo);
+        latencyMonitorIdPrefix = MBusDataSourceRT.class.getCanonicalName() + "_" + vo.getXid() + "_";
     }
 
     @Override
     public void initialize() {
+        int connections = getConnectionCount();
+        if (connections > 1) {
+            AtomicInteger threadCount = new AtomicInteger();
+            pollExecutor = Executors.newFixedThreadPool(connections,
+                    r -> new Thread(r, "MBus poll " + vo.getXid() + " " + threadCount.incrementAndGet()));
+        }
         super.initialize();
     }
 
     @Override
     public void terminate() {
         super.terminate();
+        synchronized (this) {
+            closeConnection();
+        }
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+        for (String id : latencyMonitors.keySet()) {
+            Common.MONITORED_VALUES.remove(id);
+        }
+        latencyMonitors.clear();
+    }
+
+    @Override
+    public void addDataPoint(DataPointRT dataPoint) {
+        super.addDataPoint(dataPoint);
+        devicesChanged = true;
+    }
+
+    @Override
+    public void removeDataPoint(DataPointRT dataPoint) {
+        super.removeDataPoint(dataPoint);
+        devicesChanged = true;
     }
 
     @Override
     protected synchronized void doPoll(long time) {
-        boolean pointError = false;
+        if (devicesChanged) {
+            devicesChanged = false;
+            devices = groupByDevice(dataPoints);
+            partitions = partition(devices, getConnectionCount());
+        }
 
-        final List<UserDataResponse> udrs = new LinkedList<>();
+        final AtomicBoolean pointError = new AtomicBoolean();
+        boolean connectionFailed = false;
 
         if (openConnection()) {
             try {
-                for (DataPointRT point : dataPoints) {
-                    final MBusPointLocatorRT locatorRT = point.getPointLocator();
-                    final MBusPointLocatorVO locatorVo = locatorRT.getVo();
-
-                    UserDataResponse udr = getUdr(udrs, locatorVo);
-                    if (udr == null) {
-                        if (locatorVo.isPrimaryAddressing()) {
-                            udr = master.readResponse(locatorVo.getAddress());
-                        } else {
-                            udr = master.readResponseBySecondary(MBusUtils.int2Bcd(locatorVo.getIdentNumber()), locatorVo.getManufacturer(), locatorVo.getVersion(), locatorVo.getMedium());
-                        }
-                        if (udr == null) {
-                            //insert empty UDR to prevent rurter tries in this polling round
-                            locatorRT.needCheckDifAndVif = true;
-                            udr = new UserDataResponse();
-                            udr.setIdentNumber(locatorVo.getIdentNumber());
-                            udr.setMedium(locatorVo.getMedium());
-                            udr.setManufacturer(locatorVo.getManufacturer());
-                            udr.setVersion(locatorVo.getVersion());
-                            udrs.add(udr);
-                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                    new TranslatableMessage("event.exception2", locatorVo.getDeviceName(), "Can't read device"));
-                            pointError = true;
-                        } else {
-                            udrs.add(udr);
-                        }
-                    }
-                    try {
-                        if ((locatorVo.getDbIndex() == -1) || locatorRT.needCheckDifAndVif) {
-                            int[] idx = findDataBlocks(udr, locatorVo);
-                            switch (idx.length) {
-                                case 0:
-                                    LOG.fatal("DataBlock not found: " + locatorVo.toString());
-                                    LOG.fatal(udr.toString());
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                            new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find datablock"));
-                                    pointError = true;
-                                    return;
-                                case 1:
-                                    if (locatorVo.getDbIndex() == idx[0]) {
-                                        locatorRT.needCheckDifAndVif = false;
-                                    } else if (locatorVo.getDbIndex() == -1) {
-                                        LOG.info("Set DB Index: " + locatorVo.toString());
-                                        locatorVo.setDbIndex(idx[0]);
-                                        locatorRT.needCheckDifAndVif = false;
-                                    } else {
-                                        LOG.fatal("Index changed of datablock: " + locatorVo.toString());
-                                        LOG.fatal(udr.toString());
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Index changed of datablock Please maually correct the dbIndex"));
-                                        return;
-                                    }
-                                    break;
-                                default:
-                                    if (locatorVo.getDbIndex() == -1) {
-                                        LOG.fatal("too many dataBlocks found: " + locatorVo.toString());
-                                        LOG.fatal(udr.toString());
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Found more then one datablock! Please specify dbIndex manually!"));
-                                        return;
-                                    } else {
-                                        for (int i : idx) {
-                                            if (i == locatorVo.getDbIndex()) {
-                                                locatorRT.needCheckDifAndVif = false;
-                                                break;
-                                            }
-                                        }
-                                        if (locatorRT.needCheckDifAndVif) {
-                                            LOG.fatal("Matching dataBlock not found: " + locatorVo.toString());
-                                            LOG.fatal(udr.toString());
-                                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find matching datablock! Please specify dbIndex manually!"));
-                                            pointError = true;
-                                            return;
-                                        }
-                                    }
-                            }
-                        }
-                        final DataBlock db = udr.getDataBlock(locatorVo.getDbIndex());
-                        pointError = setValue(db, pointError, time, point, locatorRT, locatorVo);
-
-                    } catch (IndexOutOfBoundsException ex) {
-                        // Handle if datablock is not there...
-                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                new TranslatableMessage("event.exception2", point.getVO().getExtendedName(),
-                                        "No Data"));
-                        pointError = true;
+                if (masters.size() == 1) {
+                    MBusMaster master = masters.get(0);
+                    for (MBusDevice device : devices) {
+                        pollDevice(master, device, time, pointError);
                     }
+                } else {
+                    pollConcurrently(time, pointError);
                 }
 
-                if (!pointError) {
+                if (!pointError.get()) {
                     returnToNormal(POINT_READ_EXCEPTION_EVENT, time);
                 }
 
                 returnToNormal(DATA_SOURCE_EXCEPTION_EVENT, time);
             } catch (InterruptedException ex) {
+                connectionFailed = true;
                 LOG.error("doPoll() interrupted", ex);
                 raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage(
                         "event.exception2", ex.getMessage(), "doPoll() Interrupted"));
             } catch (IOException ex) {
+                connectionFailed = true;
                 LOG.error("doPoll() IO Ex", ex);
                 raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage(
                         "event.exception2", ex.getMessage(), "doPoll() IO Ex"));
             } finally {
-                closeConnection();
+                if (connectionFailed || !vo.isPersistentConnection()) {
+                    closeConnection();
+                }
+            }
+        }
+    }
+
+    /**
+     * Spread the devices over the gateway connections and read them concurrently,
+     * each connection reads its devices one after the other.
+     */
+    private void pollConcurrently(long time, AtomicBoolean pointError) throws IOException, InterruptedException {
+        List<Future<Void>> futures = new ArrayList<>(masters.size());
+        for (int i = 0; i < masters.size(); i++) {
+            final MBusMaster master = masters.get(i);
+            final List<MBusDevice> partition = partitions.get(i);
+            if (partition.isEmpty()) {
+                continue;
+            }
+            futures.add(pollExecutor.submit(() -> {
+                for (MBusDevice device : partition) {
+                    pollDevice(master, device, time, pointError);
+                }
+                return null;
+            }));
+        }
+
+        Exception failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null && e.getCause() instanceof Exception) {
+                    failure = (Exception) e.getCause();
+                }
+            } catch (InterruptedException e) {
+                for (Future<Void> f : futures) {
+                    f.cancel(true);
+                }
+                throw e;
+            }
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof InterruptedException) {
+            throw (InterruptedException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    /**
+     * Read one response from a device and update all of its points
+     */
+    private void pollDevice(MBusMaster master, MBusDevice device, long time, AtomicBoolean pointError) throws IOException, InterruptedException {
+        final MBusPointLocatorVO addressing = device.addressing;
+
+        long start = System.nanoTime();
+        UserDataResponse udr;
+        if (addressing.isPrimaryAddressing()) {
+            udr = master.readResponse(addressing.getAddress());
+        } else {
+            udr = master.readResponseBySecondary(MBusUtils.int2Bcd(addressing.getIdentNumber()), addressing.getManufacturer(), addressing.getVersion(), addressing.getMedium());
+        }
+        recordReadLatency(device, System.nanoTime() - start);
+
+        if (udr == null) {
+            device.layout = null;
+            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                    new TranslatableMessage("event.exception2", addressing.getDeviceName(), "Can't read device"));
+            pointError.set(true);
+            return;
+        }
+
+        //Only search for the blocks of the points again if the layout of the response changed
+        if (device.layout == null || !device.layout.matches(udr)) {
+            for (DataPointRT point : device.points) {
+                ((MBusPointLocatorRT) point.getPointLocator()).needCheckDifAndVif = true;
+            }
+            device.layout = MBusFrameLayout.of(udr);
+        }
+
+        for (DataPointRT point : device.points) {
+            if (readPoint(udr, point, time)) {
+                pointError.set(true);
+            }
+        }
+    }
+
+    /**
+     * Find the data block of a point in the response and update the point
+     *
+     * @return true if there was an error
+     */
+    private boolean readPoint(UserDataResponse udr, DataPointRT point, long time) {
+        final MBusPointLocatorRT locatorRT = point.getPointLocator();
+        final MBusPointLocatorVO locatorVo = locatorRT.getVo();
+        boolean pointError = false;
+        try {
+            boolean resolve = (locatorVo.getDbIndex() == -1) || locatorRT.needCheckDifAndVif;
+            if (resolve) {
+                int[] idx = MBusFrameLayout.findDataBlocks(udr, locatorVo);
+                switch (idx.length) {
+                    case 0:
+                        LOG.fatal("DataBlock not found: " + locatorVo.toString());
+                        LOG.fatal(udr.toString());
+                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find datablock"));
+                        return true;
+                    case 1:
+                        if (locatorVo.getDbIndex() == idx[0]) {
+                            locatorRT.needCheckDifAndVif = false;
+                        } else if (locatorVo.getDbIndex() == -1) {
+                            LOG.info("Set DB Index: " + locatorVo.toString());
+                            locatorVo.setDbIndex(idx[0]);
+                            locatorRT.needCheckDifAndVif = false;
+                        } else {
+                            LOG.fatal("Index changed of datablock: " + locatorVo.toString());
+                            LOG.fatal(udr.toString());
+                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Index changed of datablock Please maually correct the dbIndex"));
+                            return true;
+                        }
+                        break;
+                    default:
+                        if (locatorVo.getDbIndex() == -1) {
+                            LOG.fatal("too many dataBlocks found: " + locatorVo.toString());
+                            LOG.fatal(udr.toString());
+                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Found more then one datablock! Please specify dbIndex manually!"));
+                            return true;
+                        } else {
+                            for (int i : idx) {
+                                if (i == locatorVo.getDbIndex()) {
+                                    locatorRT.needCheckDifAndVif = false;
+                                    break;
+                                }
+                            }
+                            if (locatorRT.needCheckDifAndVif) {
+                                LOG.fatal("Matching dataBlock not found: " + locatorVo.toString());
+                                LOG.fatal(udr.toString());
+                                raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                        new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find matching datablock! Please specify dbIndex manually!"));
+                                return true;
+                            }
+                        }
+                }
+            }
+            final DataBlock db = udr.getDataBlock(locatorVo.getDbIndex());
+            if (resolve || locatorRT.getReader() == null) {
+                locatorRT.resolve(db);
+            }
+            pointError = setValue(db, pointError, time, point, locatorRT, locatorVo);
+
+        } catch (IndexOutOfBoundsException ex) {
+            // Handle if datablock is not there...
+            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                    new TranslatableMessage("event.exception2", point.getVO().getExtendedName(),
+                            "No Data"));
+            pointError = true;
+        }
+        return pointError;
+    }
+
+    /**
+     * Group points by the device they are read from, primary addressed points by address and
+     * secondary addressed points by their identification
+     */
+    static List<MBusDevice> groupByDevice(List<DataPointRT> points) {
+        Map<String, MBusDevice> grouped = new LinkedHashMap<>();
+        for (DataPointRT point : points) {
+            MBusPointLocatorVO locatorVo = ((MBusPointLocatorRT) point.getPointLocator()).getVo();
+            String key;
+            if (locatorVo.isPrimaryAddressing()) {
+                key = "P" + (locatorVo.getAddress() & 0xFF);
+            } else {
+                key = "S" + locatorVo.getIdentNumber() + "_" + locatorVo.getManufacturer() + "_" + locatorVo.getVersion() + "_" + locatorVo.getMedium();
+            }
+            MBusDevice device = grouped.get(key);
+            if (device == null) {
+                device = new MBusDevice(key, locatorVo);
+                grouped.put(key, device);
             }
+            device.points.add(point);
         }
+        return new ArrayList<>(grouped.values());
+    }
+
+    private void recordReadLatency(MBusDevice device, long nanos) {
+        ValueMonitor<Long> monitor = latencyMonitors.computeIfAbsent(latencyMonitorIdPrefix + device.key + "_READ_LATENCY",
+                id -> Common.MONITORED_VALUES.<Long>create(id)
+                        .name(new TranslatableMessage("internal.monitor.MBUS_DEVICE_READ_LATENCY", vo.getName(), device.addressing.getDeviceName()))
+                        .value(0L)
+                        .build());
+        monitor.setValue(nanos / 1000000L);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + device.addressing.getDeviceName() + " in " + (nanos / 1000000L) + "ms");
+        }
+    }
+
+    static List<List<MBusDevice>> partition(List<MBusDevice> devices, int count) {
+        List<List<MBusDevice>> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new ArrayList<>());
+        }
+        for (int i = 0; i < devices.size(); i++) {
+            result.get(i % count).add(devices.get(i));
+        }
+        return result;
+    }
+
+    private int getConnectionCount() {
+        if (vo.getConnection() instanceof TcpIpConnection) {
+            return Math.max(1, vo.getTcpIpConnections());
+        }
+        return 1;
     }
 
     protected boolean setValue(DataBlock db, boolean pointError, long time, DataPointRT point, final MBusPointLocatorRT locatorRT, final MBusPointLocatorVO locatorVo) {
         try {
-            if ((db instanceof BcdValue) && ((BcdValue) db).isBcdError()) {
+            DataBlockReader reader = locatorRT.getReader();
+            if (locatorRT.isBcdValue() && ((BcdValue) db).isBcdError()) {
                 pointError = true;
                 LOG.fatal("BCD Error : " + ((BcdValue) db).getBcdError());
                 raiseEvent(POINT_READ_EXCEPTION_EVENT, time, true,
                         new TranslatableMessage("event.exception2", point.getVO().getExtendedName(),
                                 "BCD error value: " + ((BcdValue) db).getBcdError()));
                 pointError = true;
-            } else if (db instanceof ByteDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((ByteDataBlock) db).getValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof ShortDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((ShortDataBlock) db).getValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof IntegerDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((IntegerDataBlock) db).getValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof LongDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((LongDataBlock) db).getValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof RealDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((RealDataBlock) db).getValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof BigDecimalDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(locatorRT.calcCorrectedValue(((BigDecimalDataBlock) db).getValue().doubleValue(), db.getCorrectionExponent(locatorVo.effectiveSiPrefix()), db.getCorrectionConstant()), time));
-            } else if (db instanceof StringDataBlock) {
-                point.updatePointValue(
-                        new PointValueTime(((StringDataBlock) db).getValue(), time));
+            } else if (reader.isSupported()) {
+                point.updatePointValue(reader.read(db, locatorRT, locatorVo.effectiveSiPrefix(), time));
             } else {
                 LOG.fatal("Dont know how to save: " + point.getVO().getExtendedName());
                 raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -245,65 +418,83 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
     }
 
     private boolean openConnection() {
+        if (connected) {
+            return true;
+        }
         try {
             LOG.debug("MBus Try open serial port");
-            if (vo.getConnection() instanceof SerialPortConnection) {
-                //replace with buggy jssc
-                SerialPortConnection spc = (SerialPortConnection) vo.getConnection();
-                master.setConnection(new MangoMBusSerialConnection("MBus " + this.vo.getXid(), spc.getPortName(), spc.getBitPerSecond(), 1000));
-            } else {
-                master.setConnection(vo.getConnection());
+            int count = getConnectionCount();
+            for (int i = 0; i < count; i++) {
+                MBusMaster master = createMaster(i);
+                masters.add(master);
+                master.open();
             }
-            master.open();
+            connected = true;
             return true;
         } catch (IOException ex) {
             LOG.fatal("MBus Open serial port exception", ex);
-            master.setConnection(null);
+            closeConnection();
             raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage(
                     "event.exception2", "openConnection() Failed", ex.getMessage()));
             return false;
         }
     }
 
-    private void closeConnection() {
-        try {
-            master.close();
-        } catch (IOException ex) {
-            LOG.fatal("Close port", ex);
-            raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage(
-                    "event.exception2", "closeConnection() Failed", ex.getMessage()));
-        } finally {
-            master.setConnection(null);
+    /**
+     * Create the master for a connection, it is opened by the caller
+     */
+    protected MBusMaster createMaster(int index) {
+        MBusMaster master = new MBusMaster();
+        master.setConnection(createConnection(index));
+        return master;
+    }
+
+    /**
+     * Create the connection for a master, only TCP/IP gateways have more than one
+     */
+    private Connection createConnection(int index) {
+        if (vo.getConnection() instanceof SerialPortConnection) {
+            //replace with buggy jssc
+            SerialPortConnection spc = (SerialPortConnection) vo.getConnection();
+            return new MangoMBusSerialConnection("MBus " + this.vo.getXid(), spc.getPortName(), spc.getBitPerSecond(), 1000);
+        } else if (index > 0 && vo.getConnection() instanceof TcpIpConnection) {
+            TcpIpConnection tcp = (TcpIpConnection) vo.getConnection();
+            return new TcpIpConnection(tcp.getHost(), tcp.getPort(), tcp.getBitPerSecond(), tcp.getResponseTimeOutOffset());
+        } else {
+            return vo.getConnection();
         }
     }
 
-    private UserDataResponse getUdr(List<UserDataResponse> udrs, MBusPointLocatorVO locatorVo) {
-        for (UserDataResponse udr : udrs) {
-            if ((udr.getIdentNumber() == locatorVo.getIdentNumber())
-                    && Objects.equals(udr.getManufacturer(), locatorVo.getManufacturer())
-                    && Objects.equals(udr.getMedium(), locatorVo.getMedium())
-                    && (udr.getVersion() == locatorVo.getVersion())) {
-                return udr;
+    private void closeConnection() {
+        connected = false;
+        for (MBusMaster master : masters) {
+            try {
+                master.close();
+            } catch (IOException ex) {
+                LOG.fatal("Close port", ex);
+                raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage(
+                        "event.exception2", "closeConnection() Failed", ex.getMessage()));
+            } finally {
+                master.setConnection(null);
             }
         }
-        return null;
+        masters.clear();
     }
 
-    private int[] findDataBlocks(UserDataResponse userDataResponse, MBusPointLocatorVO locatorVo) {
-        int[] result = new int[0];
-        for (int i = 0; i < userDataResponse.getDataBlockCount(); i++) {
-            DataBlock db = userDataResponse.getDataBlock(i);
-            if (Objects.equals(db.getDataFieldCode(), locatorVo.difCode())
-                    && Objects.equals(db.getUnitOfMeasurement(), locatorVo.unitOfMeasurement())
-                    && Objects.equals(db.getFunctionField(), locatorVo.functionField())
-                    && (db.getStorageNumber() == locatorVo.getStorageNumber())
-                    && (db.getSubUnit() == locatorVo.getSubUnit())
-                    && (db.getTariff() == locatorVo.getTariff())) {
-                result = Arrays.copyOf(result, result.length + 1);
-                result[result.length - 1] = i;
-            }
+    /**
+     * Points that are read from the same device in one request
+     */
+    static class MBusDevice {
+        final String key;
+        final MBusPointLocatorVO addressing;
+        final List<DataPointRT> points = new ArrayList<>();
+        //Layout of the last response, the points' block indices were resolved against it
+        MBusFrameLayout layout;
+
+        MBusDevice(String key, MBusPointLocatorVO addressing) {
+            this.key = key;
+            this.addressing = addressing;
         }
-        return result;
     }
 
 }
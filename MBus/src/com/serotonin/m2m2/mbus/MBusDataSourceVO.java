@@ -29,6 +29,7 @@ import com.serotonin.json.JsonException;
 import com.serotonin.json.JsonReader;
 import com.serotonin.json.ObjectWriter;
 import com.serotonin.json.spi.JsonEntity;
+import com.serotonin.json.spi.JsonProperty;
 import com.serotonin.json.type.JsonObject;
 import com.serotonin.m2m2.i18n.TranslatableJsonException;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
@@ -65,6 +66,10 @@ public class MBusDataSourceVO extends PollingDataSourceVO {
     }
 
     private Connection connection;
+    @JsonProperty
+    private boolean persistentConnection;
+    @JsonProperty
+    private int tcpIpConnections = 1;
 
     @Override
     protected void addEventTypes(List<EventTypeVO> eventTypes) {
@@ -109,12 +114,14 @@ public class MBusDataSourceVO extends PollingDataSourceVO {
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int SERIAL_VERSION = 5;
+    private static final int SERIAL_VERSION = 6;
 
     // Serialization for saveDataSource
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeInt(SERIAL_VERSION);
         out.writeObject(connection);
+        out.writeBoolean(persistentConnection);
+        out.writeInt(tcpIpConnections);
     }
 
     private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
@@ -176,6 +183,15 @@ public class MBusDataSourceVO extends PollingDataSourceVO {
             readObjectVer4(in);
         }else if( ver == 5) {
             connection = (Connection) in.readObject();
+        }else if( ver == 6) {
+            connection = (Connection) in.readObject();
+            persistentConnection = in.readBoolean();
+            tcpIpConnections = in.readInt();
+        }
+
+        if (ver < 6) {
+            persistentConnection = false;
+            tcpIpConnections = 1;
         }
 
     }
@@ -206,6 +222,28 @@ public class MBusDataSourceVO extends PollingDataSourceVO {
         return connection;
     }
 
+    /**
+     * @return true if the connection is kept open between polls
+     */
+    public boolean isPersistentConnection() {
+        return persistentConnection;
+    }
+
+    public void setPersistentConnection(boolean persistentConnection) {
+        this.persistentConnection = persistentConnection;
+    }
+
+    /**
+     * @return number of sockets opened to a TCP/IP gateway, devices are read concurrently across them
+     */
+    public int getTcpIpConnections() {
+        return tcpIpConnections;
+    }
+
+    public void setTcpIpConnections(int tcpIpConnections) {
+        this.tcpIpConnections = tcpIpConnections;
+    }
+
     private void readObjectVer4(ObjectInputStream in) throws IOException, ClassNotFoundException {
         connection = (Connection) in.readObject();
         updatePeriodType = in.readInt();
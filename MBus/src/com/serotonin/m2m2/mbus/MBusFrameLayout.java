@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import net.sf.mbus4j.dataframes.UserDataResponse;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+
+/**
+ * The layout of a response frame, the type of each block and the fields used to match points to blocks.
+ *
+ * While the layout of a meter's responses stays the same the block indices and readers resolved for its
+ * points remain valid and don't need to be searched for again. Layouts are compared field by field.
+ */
+public final class MBusFrameLayout {
+
+    //Per block: block class, DIF code, unit of measurement and function field
+    private static final int OBJECT_FIELDS = 4;
+
+    private final Object[] fields;
+    private final long[] storageNumbers;
+    private final int[] subUnits;
+    private final int[] tariffs;
+
+    private MBusFrameLayout(UserDataResponse udr) {
+        int count = udr.getDataBlockCount();
+        this.fields = new Object[count * OBJECT_FIELDS];
+        this.storageNumbers = new long[count];
+        this.subUnits = new int[count];
+        this.tariffs = new int[count];
+        for (int i = 0; i < count; i++) {
+            DataBlock db = udr.getDataBlock(i);
+            int offset = i * OBJECT_FIELDS;
+            fields[offset] = db.getClass();
+            fields[offset + 1] = db.getDataFieldCode();
+            fields[offset + 2] = db.getUnitOfMeasurement();
+            fields[offset + 3] = db.getFunctionField();
+            storageNumbers[i] = db.getStorageNumber();
+            subUnits[i] = db.getSubUnit();
+            tariffs[i] = db.getTariff();
+        }
+    }
+
+    /**
+     * Capture the layout of a response
+     * @param udr
+     * @return
+     */
+    public static MBusFrameLayout of(UserDataResponse udr) {
+        return new MBusFrameLayout(udr);
+    }
+
+    /**
+     * Does the response have this layout
+     * @param udr
+     * @return
+     */
+    public boolean matches(UserDataResponse udr) {
+        int count = udr.getDataBlockCount();
+        if (count != storageNumbers.length) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            DataBlock db = udr.getDataBlock(i);
+            int offset = i * OBJECT_FIELDS;
+            if (fields[offset] != db.getClass()
+                    || !Objects.equals(fields[offset + 1], db.getDataFieldCode())
+                    || !Objects.equals(fields[offset + 2], db.getUnitOfMeasurement())
+                    || !Objects.equals(fields[offset + 3], db.getFunctionField())
+                    || storageNumbers[i] != db.getStorageNumber()
+                    || subUnits[i] != db.getSubUnit()
+                    || tariffs[i] != db.getTariff()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the indices of all blocks in the response that match the locator
+     * @param udr
+     * @param locatorVo
+     * @return
+     */
+    public static int[] findDataBlocks(UserDataResponse udr, MBusPointLocatorVO locatorVo) {
+        int count = udr.getDataBlockCount();
+        int[] result = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            if (matches(udr.getDataBlock(i), locatorVo)) {
+                result[found++] = i;
+            }
+        }
+        return found == count ? result : Arrays.copyOf(result, found);
+    }
+
+    /**
+     * Does the block match the locator
+     * @param db
+     * @param locatorVo
+     * @return
+     */
+    public static boolean matches(DataBlock db, MBusPointLocatorVO locatorVo) {
+        return Objects.equals(db.getDataFieldCode(), locatorVo.difCode())
+                && Objects.equals(db.getUnitOfMeasurement(), locatorVo.unitOfMeasurement())
+                && Objects.equals(db.getFunctionField(), locatorVo.functionField())
+                && (db.getStorageNumber() == locatorVo.getStorageNumber())
+                && (db.getSubUnit() == locatorVo.getSubUnit())
+                && (db.getTariff() == locatorVo.getTariff());
+    }
+}
@@ -20,11 +20,17 @@ package com.serotonin.m2m2.mbus;
 
 import com.serotonin.m2m2.rt.dataSource.PointLocatorRT;
 
+import net.sf.mbus4j.dataframes.datablocks.BcdValue;
+import net.sf.mbus4j.dataframes.datablocks.DataBlock;
+
 public class MBusPointLocatorRT extends PointLocatorRT<MBusPointLocatorVO> {
 
     private int effectiveExponent;
     private double effectiveCorrectionFactor = 1;
     boolean needCheckDifAndVif = true;
+    //Resolved from the data block at dbIndex when the layout of the meter's responses is checked
+    private DataBlockReader reader;
+    private boolean bcdValue;
 
     public MBusPointLocatorRT(MBusPointLocatorVO vo) {
     	super(vo);
@@ -35,6 +41,23 @@ public class MBusPointLocatorRT extends PointLocatorRT<MBusPointLocatorVO> {
         return false;
     }
 
+    /**
+     * Resolve how to read values from the block this point is mapped to
+     * @param db
+     */
+    void resolve(DataBlock db) {
+        reader = DataBlockReader.forBlock(db);
+        bcdValue = db instanceof BcdValue;
+    }
+
+    DataBlockReader getReader() {
+        return reader;
+    }
+
+    boolean isBcdValue() {
+        return bcdValue;
+    }
+
     public double calcCorrectedValue(final double value, final int exponent, final double correctionConstant) {
         if (exponent != effectiveExponent) {
             effectiveExponent = exponent;
@@ -57,6 +57,8 @@ const mbusSourceModule = angular.module('maMbusDataSource', ['maUiApp'])
             pollPeriod: {periods: 5, type: 'MINUTES'},
             purgeSettings: {override: false, frequency: {periods: 1, type: 'YEARS'}},
             quantize: false,
+            persistentConnection: false,
+            tcpIpConnections: 1,
             useCron: false,
         },
         defaultDataPoint: {
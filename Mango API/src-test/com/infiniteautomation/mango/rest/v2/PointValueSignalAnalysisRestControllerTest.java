@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import static org.junit.Assert.fail;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.serotonin.m2m2.MangoTestBase;
+
+public class PointValueSignalAnalysisRestControllerTest extends MangoTestBase {
+
+    private final PointValueSignalAnalysisRestController controller = new PointValueSignalAnalysisRestController(null);
+
+    @Test
+    public void testResampleAtLimit() {
+        ZonedDateTime from = ZonedDateTime.now();
+        controller.validateResamplePeriod(info(from, from.plus(PointValueSignalAnalysisRestController.MAX_RESAMPLED_SAMPLES, ChronoUnit.MILLIS)), 1L);
+    }
+
+    @Test
+    public void testResampleOverLimitIsRejected() {
+        ZonedDateTime from = ZonedDateTime.now();
+        try {
+            controller.validateResamplePeriod(info(from, from.plus(PointValueSignalAnalysisRestController.MAX_RESAMPLED_SAMPLES + 1, ChronoUnit.MILLIS)), 1L);
+            fail("Range with too many samples was accepted");
+        }catch(BadRequestException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testPartialPeriodIsCounted() {
+        ZonedDateTime from = ZonedDateTime.now();
+        try {
+            //The last sample is at MAX * 10ms, before the end of the range
+            controller.validateResamplePeriod(info(from, from.plus(PointValueSignalAnalysisRestController.MAX_RESAMPLED_SAMPLES * 10 + 1, ChronoUnit.MILLIS)), 10L);
+            fail("Range with too many samples was accepted");
+        }catch(BadRequestException e) {
+            //Expected
+        }
+    }
+
+    private static ZonedDateTimeRangeQueryInfo info(ZonedDateTime from, ZonedDateTime to) {
+        return new ZonedDateTimeRangeQueryInfo(from, to, null, null, RollupEnum.NONE, null, null,
+                false, true, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+    }
+}
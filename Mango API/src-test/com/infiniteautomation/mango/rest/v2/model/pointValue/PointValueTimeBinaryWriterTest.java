@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.serotonin.m2m2.MangoTestBase;
+
+public class PointValueTimeBinaryWriterTest extends MangoTestBase {
+
+    @Test
+    public void testSingleArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(), bytes);
+        writer.writeStartArray();
+        row(writer, 1000, 1.5);
+        row(writer, 2000, null);
+        row(writer, 3000, 2.5);
+        writer.writeEndArray();
+        writer.finish();
+
+        List<Series> series = decode(bytes.toByteArray());
+        assertEquals(1, series.size());
+        assertEquals("", series.get(0).name);
+        assertEquals(Arrays.asList(1000L, 2000L, 3000L), series.get(0).columns.get(PointValueTimeWriter.TIMESTAMP));
+        assertEquals(Arrays.asList(1.5, null, 2.5), series.get(0).columns.get(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void testMultipleArraysAndNesting() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(), bytes);
+        writer.writeStartArray("DP_1");
+        writer.writeStartObject();
+        writer.writeStartObject("first");
+        writer.writeIntegerField(PointValueTimeWriter.VALUE, 1);
+        writer.writeEndObject();
+        writer.writeStringField(PointValueTimeWriter.ANNOTATION, "note");
+        writer.writeEndObject();
+        writer.writeStartObject();
+        writer.writeStartObject("first");
+        //Widens the column to doubles
+        writer.writeDoubleField(PointValueTimeWriter.VALUE, 2.5);
+        writer.writeEndObject();
+        writer.writeEndObject();
+        writer.writeEndArray();
+        writer.writeStartArray("DP_2");
+        writer.writeStartObject();
+        writer.writeBooleanField(PointValueTimeWriter.VALUE, true);
+        writer.writeEndObject();
+        writer.writeEndArray();
+        writer.finish();
+
+        List<Series> series = decode(bytes.toByteArray());
+        assertEquals(2, series.size());
+        assertEquals("DP_1", series.get(0).name);
+        assertEquals(Arrays.asList(1d, 2.5), series.get(0).columns.get("first.value"));
+        assertEquals(Arrays.asList("note", null), series.get(0).columns.get(PointValueTimeWriter.ANNOTATION));
+        assertEquals("DP_2", series.get(1).name);
+        assertEquals(Arrays.asList(true), series.get(1).columns.get(PointValueTimeWriter.VALUE));
+    }
+
+    @Test
+    public void testFrames() throws IOException {
+        int count = PointValueTimeBinaryWriter.FRAME_ROWS * 2 + 10;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(), bytes);
+        writer.writeStartArray();
+        for(int i = 0; i < count; i++)
+            row(writer, 1000L * i, (double)i);
+        writer.writeEndArray();
+        writer.finish();
+
+        Series series = decode(bytes.toByteArray()).get(0);
+        List<Object> timestamps = series.columns.get(PointValueTimeWriter.TIMESTAMP);
+        assertEquals(count, timestamps.size());
+        for(int i = 0; i < count; i++)
+            assertEquals(1000L * i, timestamps.get(i));
+        //Deltas of timestamps at a regular interval fit in 2 bytes, values take 8
+        assertTrue(bytes.size() < count * 11);
+    }
+
+    @Test
+    public void testSparseColumnsGrowAndAreDropped() throws IOException {
+        int count = PointValueTimeBinaryWriter.FRAME_ROWS + 10;
+        int sparseRow = 200;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(info(), bytes);
+        writer.writeStartArray();
+        for(int i = 0; i < count; i++) {
+            writer.writeStartObject();
+            writer.writeStartObject("DP_1");
+            writer.writeDoubleField(PointValueTimeWriter.VALUE, i);
+            writer.writeEndObject();
+            //Only in one row of the first frame, past the initial size of the buffers
+            if(i == sparseRow) {
+                writer.writeStartObject("DP_2");
+                writer.writeStringField(PointValueTimeWriter.VALUE, "sparse");
+                writer.writeEndObject();
+            }
+            writer.writeEndObject();
+        }
+        writer.writeEndArray();
+        writer.finish();
+
+        //DP_2 has no value in the second frame, its column is dropped when the frame is written
+        Map<?, ?> columns = (Map<?, ?>)ReflectionTestUtils.getField(writer, "columns");
+        assertEquals(1, columns.size());
+        assertTrue(columns.containsKey("DP_1.value"));
+
+        Series series = decode(bytes.toByteArray()).get(0);
+        List<Object> dense = series.columns.get("DP_1.value");
+        List<Object> sparse = series.columns.get("DP_2.value");
+        assertEquals(count, dense.size());
+        assertEquals(count, sparse.size());
+        for(int i = 0; i < count; i++) {
+            assertEquals((double)i, dense.get(i));
+            assertEquals(i == sparseRow ? "sparse" : null, sparse.get(i));
+        }
+    }
+
+    private static void row(PointValueTimeWriter writer, long timestamp, Double value) throws IOException {
+        writer.writeStartObject();
+        writer.writeLongField(PointValueTimeWriter.TIMESTAMP, timestamp);
+        writer.writeDoubleField(PointValueTimeWriter.VALUE, value);
+        writer.writeEndObject();
+    }
+
+    private static ZonedDateTimeRangeQueryInfo info() {
+        ZonedDateTime now = ZonedDateTime.now();
+        return new ZonedDateTimeRangeQueryInfo(now.minusDays(1), now, null, null, RollupEnum.NONE, null, null,
+                false, true, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+    }
+
+    private static class Series {
+        final String name;
+        //Values of each column, null where a row has no value
+        final Map<String, List<Object>> columns = new LinkedHashMap<>();
+        int rows;
+
+        Series(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Decode a stream into columns
+     */
+    private static List<Series> decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertArrayEquals(PointValueTimeBinaryWriter.MAGIC, magic);
+        assertEquals(PointValueTimeBinaryWriter.VERSION, in.readByte());
+
+        List<Series> result = new ArrayList<>();
+        Series current = null;
+        while(true) {
+            byte frame = in.readByte();
+            switch(frame) {
+                case PointValueTimeBinaryWriter.FRAME_END:
+                    assertEquals(-1, in.read());
+                    return result;
+                case PointValueTimeBinaryWriter.FRAME_SERIES_START:
+                    current = new Series(readString(in));
+                    result.add(current);
+                    break;
+                case PointValueTimeBinaryWriter.FRAME_SERIES_END:
+                    current = null;
+                    break;
+                case PointValueTimeBinaryWriter.FRAME_ROWS_TYPE:
+                    int rows = (int)readVarint(in);
+                    int columns = (int)readVarint(in);
+                    for(int c = 0; c < columns; c++)
+                        readColumn(in, current, rows);
+                    current.rows += rows;
+                    for(List<Object> values : current.columns.values())
+                        while(values.size() < current.rows)
+                            values.add(null);
+                    break;
+                default:
+                    throw new IOException("Unknown frame " + frame);
+            }
+        }
+    }
+
+    private static void readColumn(DataInputStream in, Series series, int rows) throws IOException {
+        String name = readString(in);
+        byte type = in.readByte();
+        byte[] presence = new byte[(rows + 7) / 8];
+        in.readFully(presence);
+
+        List<Object> values = series.columns.get(name);
+        if(values == null) {
+            values = new ArrayList<>();
+            series.columns.put(name, values);
+        }
+        while(values.size() < series.rows)
+            values.add(null);
+
+        long previous = 0;
+        for(int row = 0; row < rows; row++) {
+            if((presence[row >> 3] & (1 << (row & 7))) == 0) {
+                values.add(null);
+                continue;
+            }
+            switch(type) {
+                case PointValueTimeBinaryWriter.TYPE_LONG:
+                    long zigZag = readVarint(in);
+                    previous += (zigZag >>> 1) ^ -(zigZag & 1);
+                    values.add(previous);
+                    break;
+                case PointValueTimeBinaryWriter.TYPE_DOUBLE:
+                    values.add(in.readDouble());
+                    break;
+                case PointValueTimeBinaryWriter.TYPE_BOOLEAN:
+                    values.add(in.readByte() != 0);
+                    break;
+                case PointValueTimeBinaryWriter.TYPE_STRING:
+                    values.add(readString(in));
+                    break;
+                default:
+                    fail("Value in a column of type " + type);
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int)readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for(int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+    }
+}
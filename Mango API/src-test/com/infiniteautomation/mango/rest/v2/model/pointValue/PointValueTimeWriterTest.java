@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZonedDateTime;
+
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+/**
+ * The primitive field methods and cached unit converters must write the same output as the boxed
+ * methods with a converter looked up for every value.
+ */
+public class PointValueTimeWriterTest extends MangoTestBase {
+
+    private static final double[] VALUES = {0d, -40d, 21.5d, 1e-9d, 1234567.891d};
+
+    @Test
+    public void testNumericMatchesBoxed() throws IOException {
+        DataPointVO celsius = createPoint(1, SI.CELSIUS, NonSI.FAHRENHEIT);
+        DataPointVO kelvin = createPoint(2, SI.KELVIN, SI.CELSIUS);
+        DataPointVO plain = createPoint(3, Unit.ONE, Unit.ONE);
+
+        JsonNode primitive = write(writer -> {
+            //Alternate points so the cached converter is switched on every value
+            for(double value : VALUES) {
+                for(DataPointVO vo : new DataPointVO[] {celsius, kelvin, plain}) {
+                    writer.writeStartObject();
+                    writer.writeLongField(PointValueTimeWriter.TIMESTAMP, 1000L);
+                    writer.writeNumericValue(PointValueTimeWriter.VALUE, vo, value, false);
+                    writer.writeNumericValue(PointValueTimeWriter.DOT_VALUE, vo, value, true);
+                    writer.writeEndObject();
+                }
+            }
+        });
+
+        JsonNode boxed = write(writer -> {
+            for(double value : VALUES) {
+                for(DataPointVO vo : new DataPointVO[] {celsius, kelvin, plain}) {
+                    writer.writeStartObject();
+                    writer.writeLongField(PointValueTimeWriter.TIMESTAMP, Long.valueOf(1000L));
+                    writer.writeDoubleField(PointValueTimeWriter.VALUE,
+                            Double.valueOf(vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value)));
+                    writer.writeDoubleField(PointValueTimeWriter.DOT_VALUE, Double.valueOf(value));
+                    writer.writeEndObject();
+                }
+            }
+        });
+
+        assertEquals(VALUES.length * 3, primitive.size());
+        assertEquals(boxed, primitive);
+    }
+
+    @Test
+    public void testAnalogStatisticMatchesBoxed() throws IOException {
+        DataPointVO vo = createPoint(1, SI.CELSIUS, NonSI.FAHRENHEIT);
+        JsonNode primitive = write(writer -> {
+            writer.writeStartObject();
+            writer.writeAnalogStatistic(PointValueTimeWriter.AVERAGE, vo, 21.5d, false, false);
+            writer.writeAnalogStatistic(PointValueTimeWriter.MINIMUM, vo, null, false, false);
+            writer.writeEndObject();
+        });
+        JsonNode boxed = write(writer -> {
+            writer.writeStartObject();
+            writer.writeDoubleField(PointValueTimeWriter.AVERAGE, Double.valueOf(SI.CELSIUS.getConverterTo(NonSI.FAHRENHEIT).convert(21.5d)));
+            writer.writeDoubleField(PointValueTimeWriter.MINIMUM, (Double)null);
+            writer.writeEndObject();
+        });
+        assertEquals(boxed, primitive);
+    }
+
+    @Test
+    public void testBoxedNullWritesNull() throws IOException {
+        JsonNode node = write(writer -> {
+            writer.writeStartObject();
+            writer.writeDoubleField("double", (Double)null);
+            writer.writeIntegerField("integer", (Integer)null);
+            writer.writeLongField("long", (Long)null);
+            writer.writeTimestamp((Long)null);
+            writer.writeEndObject();
+        });
+        assertEquals(4, node.get(0).size());
+        node.get(0).forEach(field -> assertTrue(field.isNull()));
+    }
+
+    @FunctionalInterface
+    private interface WriterAction {
+        void write(PointValueTimeWriter writer) throws IOException;
+    }
+
+    /**
+     * Write into an array and parse the output
+     */
+    private JsonNode write(WriterAction action) throws IOException {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
+                now.minusDays(1), now, null, null, RollupEnum.NONE, null, null,
+                false, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+        StringWriter output = new StringWriter();
+        try(JsonGenerator jgen = new JsonFactory().createGenerator(output)) {
+            PointValueTimeWriter writer = new PointValueTimeJsonWriter(info, jgen);
+            writer.writeStartArray();
+            action.write(writer);
+            writer.writeEndArray();
+        }
+        return new ObjectMapper().readTree(output.toString());
+    }
+
+    private DataPointVO createPoint(int id, Unit<?> unit, Unit<?> renderedUnit) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setUnit(unit);
+        vo.setRenderedUnit(renderedUnit);
+        return vo;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeJsonWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream.StreamContentType;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriod;
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.DataPointVO.LoggingTypes;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+/**
+ * Multiple array queries quantized in parallel must return what the query returns on one thread,
+ * single array queries must write every period of every point once in time order
+ */
+public class MultiDataPointStatisticsQuantizerStreamTest extends MangoTestBase {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime FROM = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, UTC);
+    private static final ZonedDateTime TO = FROM.plusDays(1);
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        Map<Integer, DataPointVO> voMap = createPoints(6);
+        StatisticsQuantizerPool pool = new StatisticsQuantizerPool(2, 10);
+        try {
+            JsonNode expected = stream(createInfo(1, null), voMap, null);
+            JsonNode actual = stream(createInfo(3, null), voMap, pool);
+
+            assertEquals(voMap.size(), actual.size());
+            //More periods per point than a partition hands over at once
+            for(DataPointVO vo : voMap.values())
+                assertEquals(24 * 60, actual.get(vo.getXid()).size());
+            assertEquals(expected, actual);
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelLimitMatchesSequential() throws IOException {
+        Map<Integer, DataPointVO> voMap = createPoints(4);
+        StatisticsQuantizerPool pool = new StatisticsQuantizerPool(4, 10);
+        try {
+            assertEquals(stream(createInfo(1, 2000), voMap, null), stream(createInfo(4, 2000), voMap, pool));
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaturatedPoolQuantizesOnCallingThread() throws IOException, InterruptedException {
+        Map<Integer, DataPointVO> voMap = createPoints(3);
+        StatisticsQuantizerPool pool = new StatisticsQuantizerPool(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            //Occupy the thread and the queue
+            pool.submit(() -> {
+                try {
+                    release.await();
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            pool.submit(() -> { });
+
+            assertEquals(stream(createInfo(1, null), voMap, null), stream(createInfo(2, null), voMap, pool));
+        }finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleArraySparseAndDensePoints() throws IOException {
+        Map<Integer, DataPointVO> voMap = createPoints(1);
+        DataPointVO dense = voMap.values().iterator().next();
+        DataPointVO sparse = createPoint(dense.getDataSourceId(), "Sparse point");
+        voMap.put(sparse.getId(), sparse);
+        //Values only before and after a gap of many periods
+        PointValueDao dao = Common.databaseProxy.newPointValueDao();
+        dao.savePointValueSync(sparse.getId(), new PointValueTime(5d, FROM.plusHours(1).toInstant().toEpochMilli()), null);
+        dao.savePointValueSync(sparse.getId(), new PointValueTime(7d, FROM.plusHours(22).toInstant().toEpochMilli()), null);
+
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(FROM, TO, null, null, RollupEnum.AVERAGE,
+                new TimePeriod(1, TimePeriodType.HOURS), null, true, true, true, PointValueTimeCacheControl.NONE,
+                null, null, true, null);
+        String output = streamText(info, voMap, null);
+        JsonNode rows = new ObjectMapper().readTree(output);
+
+        //One row per period, aligned to the period starts
+        assertEquals(24, rows.size());
+        for(int i = 0; i < rows.size(); i++) {
+            JsonNode row = rows.get(i);
+            assertEquals(FROM.plusHours(i).toInstant().toEpochMilli(), row.get(PointValueTimeWriter.TIMESTAMP).asLong());
+            assertTrue(row.has(dense.getXid()));
+            assertTrue(row.has(sparse.getXid()));
+        }
+        //Each point once per row, the sparse point is not held back or repeated across the gap
+        assertEquals(24, count(output, dense.getXid()));
+        assertEquals(24, count(output, sparse.getXid()));
+        for(int i = 2; i < 22; i++)
+            assertEquals(5d, rows.get(i).get(sparse.getXid()).get(PointValueTimeWriter.VALUE).asDouble(), 0d);
+        assertEquals(7d, rows.get(23).get(sparse.getXid()).get(PointValueTimeWriter.VALUE).asDouble(), 0d);
+    }
+
+    private static int count(String output, String xid) {
+        Matcher matcher = Pattern.compile(Pattern.quote("\"" + xid + "\"")).matcher(output);
+        int count = 0;
+        while(matcher.find())
+            count++;
+        return count;
+    }
+
+    private JsonNode stream(ZonedDateTimeRangeQueryInfo info, Map<Integer, DataPointVO> voMap, StatisticsQuantizerPool pool) throws IOException {
+        return new ObjectMapper().readTree(streamText(info, voMap, pool));
+    }
+
+    private String streamText(ZonedDateTimeRangeQueryInfo info, Map<Integer, DataPointVO> voMap, StatisticsQuantizerPool pool) throws IOException {
+        MultiDataPointStatisticsQuantizerStream<Object, ZonedDateTimeRangeQueryInfo> stream =
+                new MultiDataPointStatisticsQuantizerStream<>(info, voMap, Common.databaseProxy.newPointValueDao(), null, pool);
+        StringWriter output = new StringWriter();
+        try(JsonGenerator jgen = new JsonFactory().createGenerator(output)) {
+            PointValueTimeWriter writer = new PointValueTimeJsonWriter(info, jgen);
+            stream.setContentType(StreamContentType.JSON);
+            stream.start(writer);
+            stream.streamData(writer);
+            stream.finish(writer);
+        }
+        return output.toString();
+    }
+
+    private ZonedDateTimeRangeQueryInfo createInfo(int parallelism, Integer limit) {
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(FROM, TO, null, null, RollupEnum.AVERAGE,
+                new TimePeriod(1, TimePeriodType.MINUTES), limit, true, true, false, PointValueTimeCacheControl.NONE,
+                null, null, true, null);
+        info.setParallelism(parallelism);
+        return info;
+    }
+
+    /**
+     * Points with a value every 5 minutes, different for each point
+     */
+    private Map<Integer, DataPointVO> createPoints(int count) {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().insert(ds);
+
+        PointValueDao dao = Common.databaseProxy.newPointValueDao();
+        Map<Integer, DataPointVO> voMap = new LinkedHashMap<>();
+        for(int i = 0; i < count; i++) {
+            DataPointVO vo = createPoint(ds.getId(), "Test point " + i);
+            voMap.put(vo.getId(), vo);
+
+            for(long time = FROM.toInstant().toEpochMilli(); time < TO.toInstant().toEpochMilli(); time += 300000)
+                dao.savePointValueSync(vo.getId(), new PointValueTime((double)(time / 60000 % 97) * (i + 1), time), null);
+        }
+        return voMap;
+    }
+
+    private DataPointVO createPoint(int dataSourceId, String name) {
+        DataPointVO vo = new DataPointVO();
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setXid(DataPointDao.getInstance().generateUniqueXid());
+        vo.setName(name);
+        vo.setLoggingType(LoggingTypes.ALL);
+        vo.setDataSourceId(dataSourceId);
+        DataPointDao.getInstance().insert(vo);
+        return vo;
+    }
+}
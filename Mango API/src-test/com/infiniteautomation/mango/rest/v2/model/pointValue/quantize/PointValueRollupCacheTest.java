@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriod;
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class PointValueRollupCacheTest extends MangoTestBase {
+
+    private static final long HOUR = 3600000L;
+    private static final TimePeriod HOURS = new TimePeriod(1, TimePeriodType.HOURS);
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    protected static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.listeners.clear();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        PointValueRollupCache cache = new PointValueRollupCache(100, 0);
+        DataPointVO vo = createPoint(1);
+        StatisticsGenerator generator = period(0);
+        cache.put(vo, HOURS, UTC, generator);
+
+        assertSame(generator, cache.get(vo, HOURS, UTC, 0, HOUR));
+        assertNull(cache.get(vo, HOURS, UTC, 0, 2 * HOUR));
+        assertNull(cache.get(vo, new TimePeriod(2, TimePeriodType.HOURS), UTC, 0, HOUR));
+        assertNull(cache.get(vo, HOURS, ZoneId.of("Australia/Sydney"), 0, HOUR));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        PointValueRollupCache cache = new PointValueRollupCache(0, 0);
+        DataPointVO vo = createPoint(1);
+        cache.put(vo, HOURS, UTC, period(0));
+
+        assertNull(cache.get(vo, HOURS, UTC, 0, HOUR));
+        assertEquals(0, cache.size());
+        assertTrue(runtimeManager.listeners.isEmpty());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedSeries() {
+        PointValueRollupCache cache = new PointValueRollupCache(4, 0);
+        DataPointVO first = createPoint(1);
+        DataPointVO second = createPoint(2);
+        DataPointVO third = createPoint(3);
+        for(int i = 0; i < 2; i++) {
+            cache.put(first, HOURS, UTC, period(i));
+            cache.put(second, HOURS, UTC, period(i));
+        }
+
+        //Use the first series so the second is the eldest
+        assertNotNull(cache.get(first, HOURS, UTC, 0, HOUR));
+        cache.put(third, HOURS, UTC, period(0));
+
+        assertNotNull(cache.get(first, HOURS, UTC, 0, HOUR));
+        assertNull(cache.get(second, HOURS, UTC, 0, HOUR));
+        assertNull(cache.get(second, HOURS, UTC, HOUR, 2 * HOUR));
+        assertNotNull(cache.get(third, HOURS, UTC, 0, HOUR));
+        assertEquals(3, cache.size());
+        assertNull(runtimeManager.listeners.get(2));
+    }
+
+    @Test
+    public void testInvalidateFrom() {
+        PointValueRollupCache cache = new PointValueRollupCache(100, 0);
+        DataPointVO vo = createPoint(1);
+        for(int i = 0; i < 4; i++)
+            cache.put(vo, HOURS, UTC, period(i));
+
+        //A value inside the second period changes it and the start values of all later periods
+        cache.invalidate(vo.getId(), HOUR + 1);
+
+        assertNotNull(cache.get(vo, HOURS, UTC, 0, HOUR));
+        for(int i = 1; i < 4; i++)
+            assertNull(cache.get(vo, HOURS, UTC, i * HOUR, (i + 1) * HOUR));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidatePoint() {
+        PointValueRollupCache cache = new PointValueRollupCache(100, 0);
+        DataPointVO vo = createPoint(1);
+        DataPointVO other = createPoint(2);
+        cache.put(vo, HOURS, UTC, period(0));
+        cache.put(vo, new TimePeriod(2, TimePeriodType.HOURS), UTC, period(0));
+        cache.put(other, HOURS, UTC, period(0));
+
+        cache.invalidate(vo.getId());
+
+        assertNull(cache.get(vo, HOURS, UTC, 0, HOUR));
+        assertNotNull(cache.get(other, HOURS, UTC, 0, HOUR));
+        assertEquals(1, cache.size());
+        assertNull(runtimeManager.listeners.get(1));
+        assertNotNull(runtimeManager.listeners.get(2));
+    }
+
+    @Test
+    public void testBackdatedValueInvalidates() {
+        PointValueRollupCache cache = new PointValueRollupCache(100, 0);
+        DataPointVO vo = createPoint(1);
+        for(int i = 0; i < 3; i++)
+            cache.put(vo, HOURS, UTC, period(i));
+
+        DataPointListener listener = runtimeManager.listeners.get(vo.getId());
+        assertNotNull(listener);
+        listener.pointBackdated(new PointValueTime(1.0, 2 * HOUR + 10));
+
+        assertNotNull(cache.get(vo, HOURS, UTC, HOUR, 2 * HOUR));
+        assertNull(cache.get(vo, HOURS, UTC, 2 * HOUR, 3 * HOUR));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testClearAll() {
+        PointValueRollupCache cache = new PointValueRollupCache(100, 0);
+        cache.initialize();
+        try {
+            DataPointVO vo = createPoint(1);
+            cache.put(vo, HOURS, UTC, period(0));
+
+            new PointValueRollupCachePurgeDefinition().execute(System.currentTimeMillis());
+
+            assertNull(cache.get(vo, HOURS, UTC, 0, HOUR));
+            assertEquals(0, cache.size());
+            assertTrue(runtimeManager.listeners.isEmpty());
+        }finally {
+            cache.terminate();
+        }
+    }
+
+    private StatisticsGenerator period(int hour) {
+        List<PointValueTime> values = Collections.singletonList(new PointValueTime((double) hour, hour * HOUR));
+        return new AnalogStatistics(hour * HOUR, (hour + 1) * HOUR, null, values);
+    }
+
+    private DataPointVO createPoint(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        return vo;
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, enableH2Web, h2WebPort, runtimeManager);
+    }
+
+    class TestLifecycle extends MockMangoLifecycle {
+
+        public TestLifecycle(List<Module> modules, boolean enableWebConsole, int webPort, TestRuntimeManager runtimeManager) {
+            super(modules, enableWebConsole, webPort);
+            this.runtimeManager = runtimeManager;
+        }
+
+    }
+
+    static class TestRuntimeManager extends MockRuntimeManager {
+
+        Map<Integer, DataPointListener> listeners = new HashMap<>();
+
+        @Override
+        public void addDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.put(dataPointId, l);
+        }
+
+        @Override
+        public void removeDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.remove(dataPointId, l);
+        }
+    }
+}
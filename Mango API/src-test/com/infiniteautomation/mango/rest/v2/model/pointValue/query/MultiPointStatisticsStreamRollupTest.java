@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueField;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeJsonWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream.StreamContentType;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.PointValueRollupStore;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.DataPointVO.LoggingTypes;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+/**
+ * Statistics assembled from stored rollups must be the statistics of the raw values
+ */
+public class MultiPointStatisticsStreamRollupTest extends MangoTestBase {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = PointValueRollupStore.HOUR;
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime START = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, UTC);
+    //Values every 25 minutes are exactly on the hour every 5 hours
+    private static final long INTERVAL = 25 * MINUTE;
+
+    protected static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.points.clear();
+    }
+
+    @Test
+    public void testUnalignedRange() throws IOException {
+        //The stored periods end at 50h where there is a value
+        test(START.plusMinutes(70), START.plusHours(50).plusMinutes(10));
+    }
+
+    @Test
+    public void testValueAtStartOfRange() throws IOException {
+        test(START.plusHours(5), START.plusHours(47).plusMinutes(30));
+    }
+
+    @Test
+    public void testNoValueAtStartOfRange() throws IOException {
+        test(START.plusHours(1), START.plusHours(47).plusMinutes(30));
+    }
+
+    @Test
+    public void testRangeOfStoredPeriods() throws IOException {
+        test(START.plusHours(10), START.plusHours(60));
+    }
+
+    private void test(ZonedDateTime from, ZonedDateTime to) throws IOException {
+        Map<Integer, DataPointVO> voMap = createPoints();
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 100000, 0);
+
+        //Store the hours and days of all the values
+        stream(START, START.plusHours(72), voMap, store);
+        for(DataPointVO vo : voMap.values())
+            assertNotNull(store.getCovering(vo, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()));
+
+        JsonNode expected = stream(from, to, voMap, null);
+        JsonNode actual = stream(from, to, voMap, store);
+        assertEquals(voMap.size(), actual.size());
+        assertSameStatistics("", expected, actual);
+    }
+
+    private JsonNode stream(ZonedDateTime from, ZonedDateTime to, Map<Integer, DataPointVO> voMap, PointValueRollupStore store) throws IOException {
+        ZonedDateTimeStatisticsQueryInfo info = new ZonedDateTimeStatisticsQueryInfo(from, to, null, UTC.getId(),
+                PointValueTimeCacheControl.NONE, PointValueField.values());
+        MultiPointStatisticsStream stream = new MultiPointStatisticsStream(info, voMap, Common.databaseProxy.newPointValueDao(), store);
+        StringWriter output = new StringWriter();
+        try(JsonGenerator jgen = new JsonFactory().createGenerator(output)) {
+            PointValueTimeWriter writer = new PointValueTimeJsonWriter(stream.getQueryInfo(), jgen);
+            stream.setContentType(StreamContentType.JSON);
+            stream.start(writer);
+            stream.streamData(writer);
+            stream.finish(writer);
+        }
+        return new ObjectMapper().readTree(output.toString());
+    }
+
+    /**
+     * Sums are added up in a different order so fractional numbers may differ in the last digits
+     */
+    private void assertSameStatistics(String path, JsonNode expected, JsonNode actual) {
+        if(expected.isFloatingPointNumber() && actual.isNumber()) {
+            assertEquals(path, expected.asDouble(), actual.asDouble(), Math.abs(expected.asDouble()) * 1e-9 + 1e-9);
+            return;
+        }
+        assertEquals(path, expected.getNodeType(), actual.getNodeType());
+        assertEquals(path, expected.size(), actual.size());
+        if(expected.isObject()) {
+            Iterator<String> names = expected.fieldNames();
+            while(names.hasNext()) {
+                String name = names.next();
+                assertNotNull(path + "." + name, actual.get(name));
+                assertSameStatistics(path + "." + name, expected.get(name), actual.get(name));
+            }
+        }else if(expected.isArray()) {
+            for(int i = 0; i < expected.size(); i++)
+                assertSameStatistics(path + "[" + i + "]", expected.get(i), actual.get(i));
+        }else {
+            assertEquals(path, expected, actual);
+        }
+    }
+
+    /**
+     * Numeric, multistate and alphanumeric points with values every 25 minutes for 3 days, states repeat
+     */
+    private Map<Integer, DataPointVO> createPoints() {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().insert(ds);
+
+        PointValueDao dao = Common.databaseProxy.newPointValueDao();
+        Map<Integer, DataPointVO> voMap = new LinkedHashMap<>();
+        for(int dataType : new int[] {DataTypes.NUMERIC, DataTypes.MULTISTATE, DataTypes.ALPHANUMERIC}) {
+            DataPointVO vo = new DataPointVO();
+            vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+            vo.setXid(DataPointDao.getInstance().generateUniqueXid());
+            vo.setName("Test point " + dataType);
+            vo.setLoggingType(LoggingTypes.ALL);
+            vo.setDataSourceId(ds.getId());
+            DataPointDao.getInstance().insert(vo);
+            voMap.put(vo.getId(), vo);
+            runtimeManager.points.add(new DataPointRT(new DataPointWithEventDetectors(vo, new ArrayList<>()),
+                    vo.getPointLocator().createRuntime(), ds, null, timer));
+
+            long start = START.toInstant().toEpochMilli();
+            for(int i = 0; start + i * INTERVAL < start + 72 * HOUR; i++)
+                dao.savePointValueSync(vo.getId(), new PointValueTime(value(dataType, i), start + i * INTERVAL), null);
+        }
+        return voMap;
+    }
+
+    private DataValue value(int dataType, int i) {
+        switch(dataType) {
+            case DataTypes.NUMERIC:
+                return new NumericValue((i * 37 % 101) / 4d);
+            case DataTypes.MULTISTATE:
+                return new MultistateValue(i / 2 % 3);
+            default:
+                return new AlphanumericValue("v" + (i / 3 % 4));
+        }
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, enableH2Web, h2WebPort, runtimeManager);
+    }
+
+    class TestLifecycle extends MockMangoLifecycle {
+
+        public TestLifecycle(List<Module> modules, boolean enableWebConsole, int webPort, TestRuntimeManager runtimeManager) {
+            super(modules, enableWebConsole, webPort);
+            this.runtimeManager = runtimeManager;
+        }
+
+    }
+
+    static class TestRuntimeManager extends MockRuntimeManager {
+
+        List<DataPointRT> points = new ArrayList<>();
+
+        @Override
+        public DataPointRT getDataPoint(int dataPointId) {
+            for(DataPointRT rt : points) {
+                if(rt.getVO().getId() == dataPointId)
+                    return rt;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+public class PointValueCacheCursorTest {
+
+    @Test
+    public void testDescendingInPlace() {
+        List<PointValueTime> cache = newestFirst(50, 40, 30, 20, 10);
+        List<PointValueTime> unmodified = new ArrayList<>(cache);
+        PointValueCacheCursor cursor = new PointValueCacheCursor(1, cache, true, pvt -> pvt.getTime() < 45);
+
+        assertTimes(cursor, 40, 30, 20, 10);
+        assertEquals(unmodified, cache);
+        assertEquals(10, cursor.last(100).getValue().getDoubleValue(), 0);
+        assertEquals(100, cursor.last(100).getTime());
+    }
+
+    @Test
+    public void testAscendingInPlace() {
+        List<PointValueTime> cache = newestFirst(50, 40, 30, 20, 10);
+        PointValueCacheCursor cursor = new PointValueCacheCursor(1, cache, false, pvt -> pvt.getTime() >= 20 && pvt.getTime() < 50);
+
+        assertTimes(cursor, 20, 30, 40);
+        assertEquals(40, cursor.last(50).getValue().getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testUnorderedCache() {
+        List<PointValueTime> cache = newestFirst(30, 50, 10, 40, 20);
+        PointValueCacheCursor cursor = new PointValueCacheCursor(1, cache, false, pvt -> true);
+        assertTimes(cursor, 10, 20, 30, 40, 50);
+    }
+
+    @Test
+    public void testNothingIncluded() {
+        PointValueCacheCursor cursor = new PointValueCacheCursor(1, newestFirst(30, 20), true, pvt -> false);
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.last(0));
+    }
+
+    @Test
+    public void testMergeOrder() {
+        PriorityQueue<PointValueCacheCursor> heads = new PriorityQueue<>(PointValueCacheCursor.STREAM_ORDER);
+        heads.add(new PointValueCacheCursor(1, newestFirst(50, 30, 10), true, pvt -> true));
+        heads.add(new PointValueCacheCursor(2, newestFirst(40, 30, 20), true, pvt -> true));
+
+        List<String> merged = new ArrayList<>();
+        while(!heads.isEmpty()) {
+            PointValueCacheCursor cursor = heads.poll();
+            IdPointValueTime value = cursor.next();
+            merged.add(value.getId() + ":" + value.getTime());
+            if(cursor.hasNext())
+                heads.add(cursor);
+        }
+        assertEquals(Arrays.asList("1:50", "2:40", "1:30", "2:30", "2:20", "1:10"), merged);
+    }
+
+    private static List<PointValueTime> newestFirst(long... times) {
+        List<PointValueTime> values = new ArrayList<>();
+        for(long time : times)
+            values.add(new PointValueTime((double)time, time));
+        return Collections.unmodifiableList(values);
+    }
+
+    private static void assertTimes(PointValueCacheCursor cursor, long... times) {
+        for(long time : times) {
+            assertEquals(time, cursor.peekTime());
+            assertEquals(time, cursor.next().getTime());
+        }
+        assertFalse(cursor.hasNext());
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
+
+public class PointValueQueryStatisticsTest {
+
+    @Test
+    public void testNestedPhasesAreExclusive() throws InterruptedException {
+        PointValueQueryStatistics statistics = new PointValueQueryStatistics(null);
+        statistics.start();
+
+        Phase database = statistics.enter(Phase.DATABASE);
+        sleep(20);
+        Phase write = statistics.enter(Phase.WRITE);
+        sleep(20);
+        statistics.exit(write);
+        statistics.exit(database);
+        statistics.stop();
+
+        long db = statistics.getNanos(Phase.DATABASE);
+        long writing = statistics.getNanos(Phase.WRITE);
+        assertTrue(db >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(writing >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        //The write is not also counted as database time
+        long sum = 0;
+        for(Phase phase : Phase.values())
+            sum += statistics.getNanos(phase);
+        assertEquals(statistics.getNanos(), sum);
+    }
+
+    @Test
+    public void testOtherThreadsAreNotTimed() throws InterruptedException {
+        PointValueQueryStatistics statistics = new PointValueQueryStatistics(null);
+        statistics.start();
+
+        Phase[] entered = new Phase[] {Phase.QUANTIZE};
+        Thread partition = new Thread(() -> {
+            entered[0] = statistics.enter(Phase.DATABASE);
+            statistics.rowScanned();
+        });
+        partition.start();
+        partition.join();
+        statistics.stop();
+
+        assertNull(entered[0]);
+        assertEquals(0, statistics.getNanos(Phase.DATABASE));
+        assertEquals(1, statistics.getRowsScanned());
+    }
+
+    @Test
+    public void testNotStarted() {
+        PointValueQueryStatistics statistics = new PointValueQueryStatistics(null);
+        assertNull(statistics.enter(Phase.WRITE));
+        statistics.exit(null);
+        assertEquals(0, statistics.getNanos());
+    }
+
+    @Test
+    public void testServerTiming() {
+        PointValueQueryStatistics statistics = new PointValueQueryStatistics(null);
+        statistics.start();
+        statistics.rowScanned();
+        statistics.rowScanned();
+        statistics.rowsEmitted(1);
+        statistics.cacheHit();
+        statistics.stop();
+
+        String timing = statistics.toServerTiming(TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(timing, timing.startsWith("plan;dur="));
+        assertTrue(timing, timing.contains(", db;dur="));
+        assertTrue(timing, timing.contains(", total;dur=5.000"));
+        assertTrue(timing, timing.endsWith(", rows;desc=\"scanned=2 emitted=1 cached=1\""));
+    }
+
+    private static void sleep(long ms) throws InterruptedException {
+        Thread.sleep(ms);
+    }
+}
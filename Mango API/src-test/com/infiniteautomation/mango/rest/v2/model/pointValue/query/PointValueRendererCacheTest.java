@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.view.text.AnalogRenderer;
+import com.serotonin.m2m2.view.text.PlainRenderer;
+import com.serotonin.m2m2.view.text.TextRenderer;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class PointValueRendererCacheTest extends MangoTestBase {
+
+    private static final double[] VALUES = {0d, -0.004d, 0.005d, 1d, 21.456d, -40d, 1234567.891d, 1e-9d, Double.NaN};
+
+    @Test
+    public void testAnalogMatchesRenderer() {
+        AnalogRenderer renderer = new AnalogRenderer();
+        renderer.setFormat("0.00");
+        renderer.setSuffix(" kW");
+        DataPointVO vo = createPoint(1, DataTypes.NUMERIC, renderer);
+
+        PointValueRendererCache cache = new PointValueRendererCache();
+        for(double value : VALUES) {
+            assertEquals(renderer.getText(value, TextRenderer.HINT_FULL), cache.render(vo, value).toString());
+            assertEquals(renderer.getText(new NumericValue(value), TextRenderer.HINT_FULL), cache.render(vo, new NumericValue(value)).toString());
+        }
+    }
+
+    @Test
+    public void testAnalogRenderedUnitMatchesRenderer() {
+        DataPointVO vo = createPoint(1, DataTypes.NUMERIC, null);
+        vo.setUnit(SI.CELSIUS);
+        vo.setRenderedUnit(NonSI.FAHRENHEIT);
+        AnalogRenderer renderer = new AnalogRenderer();
+        renderer.setFormat("0.0");
+        renderer.setUseUnitAsSuffix(true);
+        vo.setTextRenderer(renderer);
+
+        PointValueRendererCache cache = new PointValueRendererCache();
+        for(double value : VALUES)
+            assertEquals(vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL), cache.render(vo, value).toString());
+    }
+
+    @Test
+    public void testAnalogConvertedWithSuffixMatchesRenderer() {
+        DataPointVO vo = createPoint(1, DataTypes.NUMERIC, null);
+        vo.setUnit(SI.METRE);
+        vo.setRenderedUnit(NonSI.FOOT);
+        AnalogRenderer renderer = new AnalogRenderer();
+        renderer.setFormat("#,##0.###");
+        renderer.setSuffix(" ft above sea level");
+        vo.setTextRenderer(renderer);
+
+        PointValueRendererCache cache = new PointValueRendererCache();
+        for(double value : VALUES)
+            assertEquals(vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL), cache.render(vo, value).toString());
+    }
+
+    @Test
+    public void testAnalogWithoutSuffixMatchesRenderer() {
+        AnalogRenderer renderer = new AnalogRenderer();
+        renderer.setFormat("0.#####");
+        DataPointVO vo = createPoint(1, DataTypes.NUMERIC, renderer);
+
+        PointValueRendererCache cache = new PointValueRendererCache();
+        for(double value : VALUES)
+            assertEquals(renderer.getText(value, TextRenderer.HINT_FULL), cache.render(vo, value).toString());
+    }
+
+    @Test
+    public void testStatesAreKept() {
+        DataPointVO vo = createPoint(2, DataTypes.BINARY, new PlainRenderer());
+
+        PointValueRendererCache cache = new PointValueRendererCache();
+        CharSequence one = cache.render(vo, BinaryValue.ONE);
+        CharSequence zero = cache.render(vo, BinaryValue.ZERO);
+        assertEquals(vo.getTextRenderer().getText(BinaryValue.ONE, TextRenderer.HINT_FULL), one);
+        assertEquals(vo.getTextRenderer().getText(BinaryValue.ZERO, TextRenderer.HINT_FULL), zero);
+        assertSame(one, cache.render(vo, BinaryValue.ONE));
+        assertSame(zero, cache.render(vo, BinaryValue.ZERO));
+    }
+
+    private DataPointVO createPoint(int id, int dataType, TextRenderer renderer) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+        if(renderer != null)
+            vo.setTextRenderer(renderer);
+        return vo;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.infiniteautomation.mango.db.query.BookendQueryCallback;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.DataPointVOPointValueTimeBookend;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeJsonWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream.StreamContentType;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryCancelledException.Reason;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+
+public class PointValueTimeDatabaseStreamTest extends MangoTestBase {
+
+    @Test
+    public void testClientWriteFailureDisconnects() throws IOException {
+        TestStream stream = new TestStream(createInfo(), callback -> rows(callback, 100000));
+        try(JsonGenerator jgen = new JsonFactory().createGenerator(new FailingWriter())) {
+            stream(stream, jgen);
+            fail("Query should have been cancelled");
+        }catch(PointValueQueryCancelledException e) {
+            assertEquals(Reason.DISCONNECTED, e.getReason());
+        }catch(IOException e) {
+            //Closing the generator fails too
+        }
+        assertEquals(Reason.DISCONNECTED, stream.getCancelReason());
+        assertTrue(stream.rows < 100000);
+    }
+
+    @Test
+    public void testProcessingErrorIsNotDisconnect() throws IOException {
+        IOException failure = new IOException("Not a client failure");
+        TestStream stream = new TestStream(createInfo(), callback -> rows(callback, 100));
+        stream.failAt = 10;
+        stream.failure = failure;
+        StringWriter output = new StringWriter();
+        JsonGenerator jgen = new JsonFactory().createGenerator(output);
+        try {
+            stream(stream, jgen);
+            fail("Query should have failed");
+        }catch(IOException e) {
+            assertSame(failure, e);
+        }
+        assertNull(stream.getCancelReason());
+        assertTrue(output.toString().endsWith(errorEntry("rest.pointValues.queryFailed")));
+    }
+
+    @Test
+    public void testDeadlineWritesError() throws IOException {
+        ZonedDateTimeRangeQueryInfo info = createInfo();
+        info.setTimeout(1000L);
+        TestStream stream = new TestStream(info, callback -> {
+            rows(callback, 10);
+            timer.fastForwardTo(timer.currentTimeMillis() + 2000);
+            rows(callback, 5000);
+        });
+        StringWriter output = new StringWriter();
+        JsonGenerator jgen = new JsonFactory().createGenerator(output);
+        try {
+            stream(stream, jgen);
+            fail("Query should have been cancelled");
+        }catch(PointValueQueryCancelledException e) {
+            assertEquals(Reason.DEADLINE, e.getReason());
+        }
+        assertTrue(stream.rows < 5010);
+        assertTrue(output.toString().endsWith(errorEntry("rest.pointValues.queryDeadline")));
+    }
+
+    @Test
+    public void testCancelStopsExecutingStatement() throws Exception {
+        CountDownLatch executing = new CountDownLatch(1);
+        TestStream stream = new TestStream(createInfo(), callback -> {
+            executing.countDown();
+            //Runs for minutes unless the statement is cancelled
+            new JdbcTemplate(Common.databaseProxy.getDataSource()).queryForObject("SELECT SUM(X) FROM SYSTEM_RANGE(1, 100000000000)", Long.class);
+        });
+        CompletableFuture<Void> result = CompletableFuture.runAsync(() -> {
+            try {
+                stream(stream, new JsonFactory().createGenerator(new StringWriter()));
+            }catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertTrue(executing.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        stream.cancel(Reason.DISCONNECTED);
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Query should have been cancelled");
+        }catch(ExecutionException e) {
+            PointValueQueryCancelledException cancellation = PointValueQueryCancelledException.find(e);
+            assertEquals(Reason.DISCONNECTED, cancellation.getReason());
+        }
+    }
+
+    private void stream(TestStream stream, JsonGenerator jgen) throws IOException {
+        PointValueTimeWriter writer = new PointValueTimeJsonWriter(stream.getQueryInfo(), jgen);
+        stream.setContentType(StreamContentType.JSON);
+        stream.start(writer);
+        stream.streamData(writer);
+        stream.finish(writer);
+    }
+
+    private void rows(BookendQueryCallback<IdPointValueTime> callback, int count) throws IOException {
+        for(int i = 0; i < count; i++)
+            callback.row(new IdPointValueTime(1, new NumericValue(i), i), i);
+    }
+
+    private String errorEntry(String key) {
+        return "{\"" + PointValueTimeWriter.ERROR + "\":\"" + new TranslatableMessage(key).translate(Common.getTranslations()) + "\"}";
+    }
+
+    private ZonedDateTimeRangeQueryInfo createInfo() {
+        ZonedDateTime now = ZonedDateTime.now();
+        return new ZonedDateTimeRangeQueryInfo(now.minusDays(1), now, null, null, RollupEnum.NONE, null, null,
+                false, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+        void run(BookendQueryCallback<IdPointValueTime> callback) throws IOException;
+    }
+
+    /**
+     * Writes every row it is passed to a single array
+     */
+    private static class TestStream extends PointValueTimeDatabaseStream<Object, ZonedDateTimeRangeQueryInfo> {
+        private final RowSource source;
+        private final DataPointVO vo;
+        volatile int rows;
+        int failAt = -1;
+        IOException failure;
+
+        TestStream(ZonedDateTimeRangeQueryInfo info, RowSource source) {
+            super(info, null, null);
+            this.source = source;
+            this.vo = new DataPointVO();
+            vo.setId(1);
+            vo.setXid("DP_1");
+            vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        }
+
+        @Override
+        public void streamData(PointValueTimeWriter writer) throws IOException {
+            query(callback -> source.run(callback));
+        }
+
+        @Override
+        public void firstValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
+            row(value, index);
+        }
+
+        @Override
+        public void row(IdPointValueTime value, int index) throws IOException {
+            if(++rows == failAt)
+                throw failure;
+            writeDataPointValue(new DataPointVOPointValueTimeBookend(vo, value));
+        }
+
+        @Override
+        public void lastValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
+            row(value, index);
+        }
+    }
+
+    /**
+     * A response whose client has gone away
+     */
+    private static class FailingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            throw new IOException("Connection reset by peer");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            throw new IOException("Connection reset by peer");
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class PointValueRollupStoreTest extends MangoTestBase {
+
+    private static final long HOUR = PointValueRollupStore.HOUR;
+    //2017-01-01T00:00:00Z
+    private static final long START = 1483228800000L;
+
+    protected static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.points.clear();
+        runtimeManager.listeners.clear();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyQueriedPoints() {
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 10, 0);
+        DataPointVO first = createPoint(1);
+        DataPointVO second = createPoint(2);
+        DataPointVO third = createPoint(3);
+
+        fill(store, first, 4);
+        fill(store, second, 4);
+        assertEquals(8, store.size());
+
+        //The first point is queried again so the second is the least recently queried
+        assertNotNull(store.getCovering(first, START, START + 4 * HOUR));
+        fill(store, third, 4);
+
+        assertEquals(8, store.size());
+        assertFalse(runtimeManager.listeners.containsKey(second.getId()));
+        assertTrue(runtimeManager.listeners.containsKey(first.getId()));
+        assertTrue(runtimeManager.listeners.containsKey(third.getId()));
+        assertCovered(store, first, 4);
+        assertCovered(store, third, 4);
+        assertNull(store.getCovering(second, START, START + 4 * HOUR));
+    }
+
+    @Test
+    public void testDaysCountTowardsTotal() {
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 1000, 0);
+        DataPointVO vo = createPoint(1);
+
+        //24 hours and the day built from them
+        fill(store, vo, 24);
+        assertEquals(25, store.size());
+
+        store.invalidate(vo.getId(), START + 12 * HOUR);
+        assertEquals(12, store.size());
+        assertCovered(store, vo, 12);
+    }
+
+    @Test
+    public void testDeletedPointIsRemoved() {
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 1000, 0);
+        DataPointVO vo = createPoint(1);
+        fill(store, vo, 4);
+
+        store.handleDataPointEvent(new DaoEvent<>(this, DaoEventType.DELETE, vo, null));
+
+        assertEquals(0, store.size());
+        assertTrue(runtimeManager.listeners.isEmpty());
+    }
+
+    @Test
+    public void testDisabledPointIsRemoved() {
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 1000, 0);
+        DataPointVO vo = createPoint(1);
+        fill(store, vo, 4);
+
+        //Other changes keep the rollups
+        store.handleDataPointEvent(new DaoEvent<>(this, DaoEventType.UPDATE, vo, vo));
+        assertEquals(4, store.size());
+
+        DataPointVO disabled = vo.copy();
+        disabled.setEnabled(false);
+        store.handleDataPointEvent(new DaoEvent<>(this, DaoEventType.UPDATE, disabled, vo));
+
+        assertEquals(0, store.size());
+        assertTrue(runtimeManager.listeners.isEmpty());
+    }
+
+    @Test
+    public void testTerminatedPointIsRemoved() {
+        PointValueRollupStore store = new PointValueRollupStore(true, 1000, 100, 1000, 0);
+        DataPointVO vo = createPoint(1);
+        fill(store, vo, 4);
+
+        runtimeManager.listeners.get(vo.getId()).pointTerminated(vo);
+
+        assertEquals(0, store.size());
+        assertTrue(runtimeManager.listeners.isEmpty());
+    }
+
+    /**
+     * Store the hours from the start as a query reading a constant value would
+     */
+    private void fill(PointValueRollupStore store, DataPointVO vo, int hours) {
+        HourlyRollupBuilder builder = store.createBackfill(vo, START + hours * HOUR);
+        builder.start(START, new NumericValue(1));
+        builder.advance(START + hours * HOUR);
+    }
+
+    private void assertCovered(PointValueRollupStore store, DataPointVO vo, int hours) {
+        RollupAggregate covering = store.getCovering(vo, START, START + hours * HOUR);
+        assertNotNull(covering);
+        assertEquals(START, covering.getPeriodStart());
+        assertEquals(START + hours * HOUR, covering.getPeriodEnd());
+    }
+
+    private DataPointVO createPoint(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setEnabled(true);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        runtimeManager.points.add(new DataPointRT(new DataPointWithEventDetectors(vo, new ArrayList<>()),
+                vo.getPointLocator().createRuntime(), new MockDataSourceVO(), null, timer));
+        return vo;
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, enableH2Web, h2WebPort, runtimeManager);
+    }
+
+    class TestLifecycle extends MockMangoLifecycle {
+
+        public TestLifecycle(List<Module> modules, boolean enableWebConsole, int webPort, TestRuntimeManager runtimeManager) {
+            super(modules, enableWebConsole, webPort);
+            this.runtimeManager = runtimeManager;
+        }
+
+    }
+
+    static class TestRuntimeManager extends MockRuntimeManager {
+
+        List<DataPointRT> points = new ArrayList<>();
+        Map<Integer, DataPointListener> listeners = new HashMap<>();
+
+        @Override
+        public DataPointRT getDataPoint(int dataPointId) {
+            for(DataPointRT rt : points) {
+                if(rt.getVO().getId() == dataPointId)
+                    return rt;
+            }
+            return null;
+        }
+
+        @Override
+        public void addDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.put(dataPointId, l);
+        }
+
+        @Override
+        public void removeDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.remove(dataPointId, l);
+        }
+    }
+}
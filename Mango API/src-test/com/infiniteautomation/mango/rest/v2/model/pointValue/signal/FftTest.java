@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FftTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testForwardMatchesDft() {
+        Random random = new Random(1);
+        //Power of 2 and Bluestein lengths
+        for(int n : new int[] {1, 2, 3, 7, 8, 12, 64, 100, 127}) {
+            double[] re = new double[n];
+            double[] im = new double[n];
+            for(int i = 0; i < n; i++) {
+                re[i] = random.nextDouble();
+                im[i] = random.nextDouble();
+            }
+            double[][] expected = dft(re, im);
+            new Fft(n).forward(re, im);
+            assertArrayEquals("re n=" + n, expected[0], re, DELTA);
+            assertArrayEquals("im n=" + n, expected[1], im, DELTA);
+        }
+    }
+
+    @Test
+    public void testRealForwardPacking() {
+        Random random = new Random(2);
+        for(int n : new int[] {2, 3, 8, 9, 10, 15}) {
+            double[] a = new double[n];
+            for(int i = 0; i < n; i++)
+                a[i] = random.nextDouble();
+            double[][] expected = dft(a.clone(), new double[n]);
+            new Fft(n).realForward(a);
+
+            assertEquals(expected[0][0], a[0], DELTA);
+            if(n % 2 == 0) {
+                assertEquals(expected[0][n / 2], a[1], DELTA);
+                for(int k = 1; k < n / 2; k++) {
+                    assertEquals(expected[0][k], a[2 * k], DELTA);
+                    assertEquals(expected[1][k], a[2 * k + 1], DELTA);
+                }
+            }else {
+                int last = (n - 1) / 2;
+                for(int k = 1; k < last; k++) {
+                    assertEquals(expected[0][k], a[2 * k], DELTA);
+                    assertEquals(expected[1][k], a[2 * k + 1], DELTA);
+                }
+                assertEquals(expected[0][last], a[n - 1], DELTA);
+                assertEquals(expected[1][last], a[1], DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testRealRoundTrip() {
+        Random random = new Random(3);
+        for(int n : new int[] {2, 5, 16, 33}) {
+            double[] signal = new double[n];
+            for(int i = 0; i < n; i++)
+                signal[i] = random.nextDouble();
+            double[] a = signal.clone();
+            Fft fft = new Fft(n);
+            fft.realForward(a);
+            fft.realInverse(a);
+            assertArrayEquals(signal, a, DELTA);
+        }
+    }
+
+    @Test
+    public void testResampleHoldsValues() {
+        PointValueColumns columns = new PointValueColumns(1);
+        FixedRateResampler resampler = new FixedRateResampler(0, 10, columns);
+        resampler.accept(5, 1);
+        resampler.accept(32, 2);
+        resampler.finish(50);
+
+        assertEquals(4, columns.size());
+        assertArrayEquals(new long[] {10, 20, 30, 40}, Arrays.copyOf(columns.getTimes(), 4));
+        assertArrayEquals(new double[] {1, 1, 1, 2}, columns.trimToSize(), 0);
+        assertEquals(10d, columns.getAverageSamplePeriodMs(), 0);
+    }
+
+    @Test
+    public void testStftFindsFrequency() {
+        //1 kHz sampling of a 125 Hz sine, bin 16 of a 128 sample window
+        int windowSize = 128;
+        List<StftWindowModel> windows = new ArrayList<>();
+        StftProcessor processor = new StftProcessor(windowSize, 32, windows::add);
+        for(int i = 0; i < 1024; i++)
+            processor.accept(i, Math.sin(2 * Math.PI * 125 * i / 1000d));
+
+        assertEquals((1024 - windowSize) / 32 + 1, windows.size());
+        assertEquals(windows.size(), processor.getWindowCount());
+        for(StftWindowModel window : windows) {
+            double[] amplitudes = window.getAmplitudes();
+            int peak = 0;
+            for(int k = 1; k < amplitudes.length; k++)
+                if(amplitudes[k] > amplitudes[peak])
+                    peak = k;
+            assertEquals(16, peak);
+            assertTrue(Math.abs(amplitudes[peak] - 1) < 0.05);
+        }
+        assertEquals(0, windows.get(0).getTimestamp());
+        assertEquals(32, windows.get(1).getTimestamp());
+    }
+
+    private static double[][] dft(double[] re, double[] im) {
+        int n = re.length;
+        double[] outRe = new double[n];
+        double[] outIm = new double[n];
+        for(int k = 0; k < n; k++) {
+            for(int t = 0; t < n; t++) {
+                double angle = -2 * Math.PI * ((long)k * t % n) / n;
+                outRe[k] += re[t] * Math.cos(angle) - im[t] * Math.sin(angle);
+                outIm[k] += re[t] * Math.sin(angle) + im[t] * Math.cos(angle);
+            }
+        }
+        return new double[][] {outRe, outIm};
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+import com.serotonin.m2m2.vo.role.Role;
+
+public class DaoNotificationWebSocketHandlerTest extends MangoTestBase {
+
+    private static final Role SECRET_ROLE = new Role(1000, "secret");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @Override
+    public void after() {
+        super.after();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testPayloadPerRoles() throws IOException {
+        TestHandler handler = new TestHandler(0);
+        WebSocketSession secret = handler.connect(createUser("secret1", SECRET_ROLE));
+        WebSocketSession plain = handler.connect(createUser("plain", PermissionHolder.USER_ROLE));
+        WebSocketSession secretToo = handler.connect(createUser("secret2", SECRET_ROLE));
+
+        handler.notify("update", createPoint(1, "first"), null);
+
+        //Sessions with the same roles share the notification
+        assertEquals(2, handler.modelsCreated);
+        String secretMessage = handler.messages.get(secret).get(0);
+        assertSame(secretMessage, handler.messages.get(secretToo).get(0));
+        String plainMessage = handler.messages.get(plain).get(0);
+        assertNotEquals(secretMessage, plainMessage);
+
+        assertEquals("first", object(secretMessage).get("name").asText());
+        assertEquals("hidden", object(secretMessage).get("secret").asText());
+        assertEquals("first", object(plainMessage).get("name").asText());
+        assertNull(object(plainMessage).get("secret"));
+    }
+
+    @Test
+    public void testCoalescedNotificationOrder() throws IOException {
+        TestHandler handler = new TestHandler(1000);
+        WebSocketSession session = handler.connect(createUser("user", PermissionHolder.USER_ROLE));
+
+        handler.notify("create", createPoint(1, "a1"), null);
+        handler.notify("update", createPoint(2, "b1"), null);
+        handler.notify("update", createPoint(1, "a2"), null);
+        handler.notify("update", createPoint(2, "b2"), null);
+        handler.notify("update", createPoint(1, "a3"), null);
+        handler.notify("delete", createPoint(2, "b2"), null);
+        assertTrue(handler.messages.get(session).isEmpty());
+        assertEquals(1, scheduler.tasks.size());
+
+        scheduler.runTasks();
+        List<String> messages = handler.messages.get(session);
+        assertEquals(3, messages.size());
+        //The update of a created object is sent as its creation, in the place of the creation
+        assertNotification(messages.get(0), "add", "a3");
+        assertNotification(messages.get(1), "update", "b2");
+        assertNotification(messages.get(2), "delete", "b2");
+
+        //Updates after the flush are sent in the next one
+        handler.notify("update", createPoint(1, "a4"), null);
+        assertEquals(3, messages.size());
+        scheduler.runTasks();
+        assertEquals(4, messages.size());
+        assertNotification(messages.get(3), "update", "a4");
+    }
+
+    private void assertNotification(String message, String action, String name) throws IOException {
+        JsonNode payload = mapper.readTree(message).get("payload");
+        assertEquals(action, payload.get("action").asText());
+        assertEquals(name, payload.get("object").get("name").asText());
+    }
+
+    private JsonNode object(String message) throws IOException {
+        JsonNode object = mapper.readTree(message).get("payload").get("object");
+        assertNotNull(object);
+        return object;
+    }
+
+    private User createUser(String username, Role role) {
+        User user = new User();
+        user.setUsername(username);
+        user.setRoles(Collections.singleton(role));
+        return user;
+    }
+
+    private DataPointVO createPoint(int id, String name) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setName(name);
+        return vo;
+    }
+
+    /**
+     * Creates a model with a secret field for users with the secret role and records the messages sent
+     */
+    private class TestHandler extends DaoNotificationWebSocketHandler<DataPointVO> {
+        final Map<WebSocketSession, User> users = new HashMap<>();
+        final Map<WebSocketSession, List<String>> messages = new HashMap<>();
+        int modelsCreated;
+
+        TestHandler(int coalescePeriod) {
+            this.coalescePeriod = coalescePeriod;
+            this.jacksonMapper = mapper;
+            this.scheduledExecutor = scheduler;
+        }
+
+        WebSocketSession connect(User user) {
+            WebSocketSession session = new StandardWebSocketSession(null, new HashMap<>(), null, null);
+            users.put(session, user);
+            messages.put(session, new ArrayList<>());
+            sessions.add(session);
+            return session;
+        }
+
+        @Override
+        protected User getUser(WebSocketSession session) {
+            return users.get(session);
+        }
+
+        @Override
+        protected void notify(WebSocketSession session, String jsonMessage) {
+            messages.get(session).add(jsonMessage);
+        }
+
+        @Override
+        protected boolean hasPermission(PermissionHolder user, DataPointVO vo) {
+            return true;
+        }
+
+        @Override
+        protected Object createModel(DataPointVO vo, PermissionHolder user) {
+            modelsCreated++;
+            Map<String, Object> model = new LinkedHashMap<>();
+            model.put("xid", vo.getXid());
+            model.put("name", vo.getName());
+            if (user.getRoles().contains(SECRET_ROLE)) {
+                model.put("secret", "hidden");
+            }
+            return model;
+        }
+
+        @Override
+        protected boolean isModelPerUser() {
+            return true;
+        }
+
+        @Override
+        protected void handleDaoEvent(DaoEvent<? extends DataPointVO> event) {
+            this.notify(event);
+        }
+    }
+
+    /**
+     * Keeps the scheduled tasks for the test to run
+     */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            return super.schedule(() -> {}, 1, TimeUnit.DAYS);
+        }
+
+        void runTasks() {
+            List<Runnable> run = new ArrayList<>(tasks);
+            tasks.clear();
+            run.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.model.RestModelMapper;
+import com.infiniteautomation.mango.rest.v2.model.RestModelMapping;
+import com.infiniteautomation.mango.rest.v2.model.event.EventActionEnum;
+import com.infiniteautomation.mango.rest.v2.model.event.EventInstanceModel;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class EventsWebSocketHandlerTest extends MangoTestBase {
+
+    private static final int FAILING_ID = 13;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testQueuedEventIsNotChanged() throws IOException {
+        TestHandler handler = new TestHandler(false);
+        EventInstance evt = createEvent(1);
+
+        handler.raised(evt);
+        //Returns to normal before the sender runs
+        evt.returnToNormal(2000, ReturnCause.RETURN_TO_NORMAL);
+        handler.returnToNormal(evt);
+        handler.sender.runTasks();
+
+        assertEquals(2, handler.messages.size());
+        JsonNode raised = mapper.readTree(handler.messages.get(0));
+        assertEquals(EventActionEnum.RAISED.name(), raised.get("notificationType").asText());
+        assertNotEquals(2000, raised.get("payload").get("rtnTimestamp").asLong());
+        JsonNode rtn = mapper.readTree(handler.messages.get(1));
+        assertEquals(EventActionEnum.RETURN_TO_NORMAL.name(), rtn.get("notificationType").asText());
+        assertEquals(2000, rtn.get("payload").get("rtnTimestamp").asLong());
+    }
+
+    @Test
+    public void testBatchSkipsEventThatFailsToMap() throws IOException {
+        TestHandler handler = new TestHandler(true);
+
+        handler.raised(createEvent(1));
+        handler.raised(createEvent(FAILING_ID));
+        handler.raised(createEvent(2));
+        handler.sender.runTasks();
+
+        assertEquals(1, handler.messages.size());
+        JsonNode batch = mapper.readTree(handler.messages.get(0));
+        assertEquals(EventsWebSocketHandler.NOTIFICATION_TYPE_BATCH, batch.get("notificationType").asText());
+        JsonNode notifications = batch.get("payload");
+        assertEquals(2, notifications.size());
+        assertEquals(1, notifications.get(0).get("payload").get("id").asInt());
+        assertEquals(2, notifications.get(1).get("payload").get("id").asInt());
+    }
+
+    @Test
+    public void testOverflowIsCounted() throws IOException {
+        TestHandler handler = new TestHandler(false);
+        ReflectionTestUtils.setField(handler, "maxQueued", 2);
+
+        for (int i = 1; i <= 5; i++) {
+            handler.raised(createEvent(i));
+        }
+        handler.sender.runTasks();
+
+        assertEquals(3, handler.messages.size());
+        JsonNode overflow = mapper.readTree(handler.messages.get(2));
+        assertEquals(EventsWebSocketHandler.NOTIFICATION_TYPE_OVERFLOW, overflow.get("notificationType").asText());
+        assertEquals(3, overflow.get("payload").get(EventActionEnum.RAISED.name()).get(AlarmLevels.URGENT.name()).asInt());
+        assertTrue(handler.sender.tasks.isEmpty());
+    }
+
+    @Test
+    public void testRejectedSenderDoesNotStopNotifications() throws IOException {
+        TestHandler handler = new TestHandler(false);
+
+        //The sender is shut down, the event is discarded
+        handler.sender.rejecting = true;
+        handler.raised(createEvent(1));
+        assertTrue(handler.sender.tasks.isEmpty());
+
+        handler.sender.rejecting = false;
+        handler.raised(createEvent(2));
+        handler.sender.runTasks();
+
+        assertEquals(1, handler.messages.size());
+        assertEquals(2, mapper.readTree(handler.messages.get(0)).get("payload").get("id").asInt());
+    }
+
+    private EventInstance createEvent(int id) {
+        EventInstance evt = new EventInstance(new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP), 1000, true,
+                AlarmLevels.URGENT, new TranslatableMessage("common.default", "testing"), null);
+        evt.setId(id);
+        return evt;
+    }
+
+    /**
+     * Maps the fields of the events that the tests check, fails for the event with FAILING_ID
+     */
+    private static class TestEventMapping implements RestModelMapping<EventInstance, EventInstanceModel> {
+
+        @Override
+        public Class<? extends EventInstance> fromClass() {
+            return EventInstance.class;
+        }
+
+        @Override
+        public Class<? extends EventInstanceModel> toClass() {
+            return EventInstanceModel.class;
+        }
+
+        @Override
+        public EventInstanceModel map(Object from, PermissionHolder user, RestModelMapper mapper) {
+            EventInstance evt = (EventInstance)from;
+            if (evt.getId() == FAILING_ID) {
+                throw new IllegalStateException("Unmappable event");
+            }
+            EventInstanceModel model = new EventInstanceModel();
+            model.setId(evt.getId());
+            model.setActiveTimestamp(evt.getActiveTimestamp());
+            model.setRtnApplicable(evt.isRtnApplicable());
+            model.setRtnTimestamp(evt.getRtnTimestamp());
+            model.setRtnCause(evt.getRtnCause());
+            model.setAlarmLevel(evt.getAlarmLevel());
+            return model;
+        }
+    }
+
+    /**
+     * Records the messages sent to an open session
+     */
+    private class TestHandler extends EventsWebSocketHandler {
+        final TestSender sender;
+        final User testUser = new User();
+        final List<String> messages = new ArrayList<>();
+
+        TestHandler(boolean batchNotifications) {
+            this(new TestSender(), batchNotifications);
+        }
+
+        private TestHandler(TestSender sender, boolean batchNotifications) {
+            super(new RestModelMapper(Optional.of(Collections.singletonList(new TestEventMapping()))), null, sender);
+            this.sender = sender;
+            this.jacksonMapper = mapper;
+
+            WebSocketSession session = new StandardWebSocketSession(null, new HashMap<>(), null, null) {
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+            };
+            ReflectionTestUtils.setField(this, "session", session);
+            ReflectionTestUtils.setField(this, "user", testUser);
+            ReflectionTestUtils.setField(this, "maxQueued", 1000);
+            ReflectionTestUtils.setField(this, "batchNotifications", batchNotifications);
+            changeLevels(EnumSet.allOf(AlarmLevels.class));
+            changeActions(EnumSet.allOf(EventActionEnum.class));
+        }
+
+        @Override
+        protected User getUser(WebSocketSession session) {
+            return testUser;
+        }
+
+        @Override
+        protected void sendStringMessageAsync(WebSocketSession session, String message) {
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Keeps the tasks for the test to run
+     */
+    private static class TestSender extends EventNotificationSender {
+        final List<Runnable> tasks = new ArrayList<>();
+        boolean rejecting;
+
+        TestSender() {
+            super(1);
+            terminate();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) {
+                throw new RejectedExecutionException("Sender terminated");
+            }
+            tasks.add(task);
+        }
+
+        void runTasks() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
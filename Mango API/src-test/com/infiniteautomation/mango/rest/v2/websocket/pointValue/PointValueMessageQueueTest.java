@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.websocket.WebSocketBacklog;
+
+public class PointValueMessageQueueTest {
+
+    @Test
+    public void testCoalescesOnlyValueMessages() {
+        WebSocketBacklog backlog = new WebSocketBacklog(0);
+        PointValueMessageQueue queue = new PointValueMessageQueue(new AtomicInteger(), 100, backlog);
+        queue.setCoalesce(true);
+
+        queue.add(PointValueEventType.UPDATE, "update1");
+        queue.add(PointValueEventType.CHANGE, "change1");
+        queue.add(PointValueEventType.ATTRIBUTE_CHANGE, "attributes");
+        queue.add(PointValueEventType.SET, "set1");
+        queue.add(PointValueEventType.LOGGED, "logged1");
+        queue.add(PointValueEventType.TERMINATE, "terminate");
+        queue.add(PointValueEventType.INITIALIZE, "initialize");
+        queue.add(PointValueEventType.BACKDATE, "backdate1");
+
+        assertEquals(Arrays.asList("change1", "attributes", "logged1", "terminate", "initialize", "backdate1"), drain(queue));
+        assertEquals(2, backlog.getMerged());
+        assertEquals(0, backlog.getDropped());
+    }
+
+    @Test
+    public void testStartCoalescingMergesHeldValues() {
+        WebSocketBacklog backlog = new WebSocketBacklog(0);
+        AtomicInteger queued = new AtomicInteger();
+        PointValueMessageQueue queue = new PointValueMessageQueue(queued, 100, backlog);
+
+        queue.add(PointValueEventType.UPDATE, "update1");
+        queue.add(PointValueEventType.UPDATE, "update2");
+        queue.add(PointValueEventType.TERMINATE, "terminate");
+        queue.add(PointValueEventType.INITIALIZE, "initialize");
+        queue.add(PointValueEventType.UPDATE, "update3");
+        queue.add(PointValueEventType.UPDATE, "update4");
+        queue.add(PointValueEventType.UPDATE, "update5");
+        assertEquals(7, queued.get());
+
+        queue.setCoalesce(true);
+        assertEquals(4, queued.get());
+        assertEquals(3, backlog.getMerged());
+        assertEquals(Arrays.asList("update2", "terminate", "initialize", "update5"), drain(queue));
+        assertEquals(0, queued.get());
+    }
+
+    @Test
+    public void testLimitIsPerSession() {
+        WebSocketBacklog backlog = new WebSocketBacklog(0);
+        AtomicInteger queued = new AtomicInteger();
+        PointValueMessageQueue first = new PointValueMessageQueue(queued, 4, backlog);
+        PointValueMessageQueue second = new PointValueMessageQueue(queued, 4, backlog);
+
+        first.add(PointValueEventType.UPDATE, "first1");
+        first.add(PointValueEventType.UPDATE, "first2");
+        first.add(PointValueEventType.UPDATE, "first3");
+        second.add(PointValueEventType.UPDATE, "second1");
+        assertEquals(4, queued.get());
+
+        //At the limit of the session a queue drops its own oldest value
+        second.add(PointValueEventType.UPDATE, "second2");
+        first.add(PointValueEventType.UPDATE, "first4");
+        assertEquals(4, queued.get());
+        assertEquals(2, backlog.getDropped());
+        assertEquals(Arrays.asList("first2", "first3", "first4"), drain(first));
+        assertEquals(Arrays.asList("second2"), drain(second));
+        assertEquals(0, queued.get());
+    }
+
+    @Test
+    public void testStatusMessagesAreNeverDropped() {
+        WebSocketBacklog backlog = new WebSocketBacklog(0);
+        AtomicInteger queued = new AtomicInteger();
+        PointValueMessageQueue first = new PointValueMessageQueue(queued, 2, backlog);
+        PointValueMessageQueue second = new PointValueMessageQueue(queued, 2, backlog);
+
+        first.add(PointValueEventType.UPDATE, "first1");
+        first.add(PointValueEventType.UPDATE, "first2");
+        second.add(PointValueEventType.TERMINATE, "terminate");
+        second.add(PointValueEventType.INITIALIZE, "initialize");
+        second.add(PointValueEventType.ATTRIBUTE_CHANGE, "attributes");
+        assertEquals(5, queued.get());
+
+        //A queue without values drops the new value
+        second.add(PointValueEventType.UPDATE, "second1");
+        assertEquals(1, backlog.getDropped());
+        assertEquals(Arrays.asList("terminate", "initialize", "attributes"), drain(second));
+
+        first.clear();
+        assertEquals(0, queued.get());
+        assertTrue(first.isEmpty());
+    }
+
+    private List<String> drain(PointValueMessageQueue queue) {
+        List<String> messages = new ArrayList<>();
+        String message;
+        while((message = queue.poll()) != null)
+            messages.add(message);
+        return messages;
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketResponseStatus;
+import com.infiniteautomation.mango.rest.v2.websocket.WebSocketBacklog;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class PointValueWebSocketHandlerTest extends MangoTestBase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testAlreadyRegisteredIsReported() throws IOException {
+        TestHandler handler = new TestHandler(10);
+        DataPointVO first = createPoint();
+        DataPointVO second = createPoint();
+
+        handler.handleTextMessage(null, register(first.getXid()));
+        JsonNode result = payload(handler.backlog.messages.get(0));
+        assertEquals(1, result.get("registered").size());
+        assertEquals(0, result.get("alreadyRegistered").size());
+
+        handler.handleTextMessage(null, register(first.getXid(), second.getXid(), "missing"));
+        result = payload(handler.backlog.messages.get(1));
+        assertEquals(1, result.get("registered").size());
+        assertEquals(second.getXid(), result.get("registered").get(0).get("xid").asText());
+        assertEquals(1, result.get("alreadyRegistered").size());
+        assertEquals(first.getXid(), result.get("alreadyRegistered").get(0).asText());
+        assertEquals(1, result.get("notFound").size());
+        assertEquals("missing", result.get("notFound").get(0).asText());
+    }
+
+    @Test
+    public void testTooManyXidsAreRejected() throws IOException {
+        TestHandler handler = new TestHandler(2);
+        DataPointVO first = createPoint();
+        DataPointVO second = createPoint();
+        DataPointVO third = createPoint();
+
+        handler.handleTextMessage(null, register(first.getXid(), second.getXid(), third.getXid()));
+
+        assertTrue(handler.backlog.messages.isEmpty());
+        assertEquals(0, handler.hub.getPointCount());
+        assertEquals(1, handler.messages.size());
+        assertEquals(MangoWebSocketResponseStatus.ERROR.name(), mapper.readTree(handler.messages.get(0)).get("status").asText());
+    }
+
+    private TextMessage register(String... xids) throws IOException {
+        PointValueBulkRegistrationModel model = new PointValueBulkRegistrationModel();
+        model.setDataPointXids(Arrays.asList(xids));
+        model.setEventTypes(EnumSet.of(PointValueEventType.UPDATE));
+        return new TextMessage(mapper.writeValueAsString(model));
+    }
+
+    private JsonNode payload(String message) throws IOException {
+        JsonNode response = mapper.readTree(message);
+        assertEquals(MangoWebSocketResponseStatus.OK.name(), response.get("status").asText());
+        return response.get("payload");
+    }
+
+    private DataPointVO createPoint() {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().insert(ds);
+
+        DataPointVO vo = new DataPointVO();
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setXid(DataPointDao.getInstance().generateUniqueXid());
+        vo.setName("Test point");
+        vo.setDataSourceId(ds.getId());
+        DataPointDao.getInstance().insert(vo);
+        return vo;
+    }
+
+    /**
+     * An open session of an admin, records the messages sent
+     */
+    private class TestHandler extends PointValueWebSocketHandler {
+        final PointValueWebSocketHub hub;
+        final RecordingBacklog backlog = new RecordingBacklog();
+        final User user = createUsers(1, PermissionHolder.SUPERADMIN_ROLE).get(0);
+        final List<String> messages = new ArrayList<>();
+
+        TestHandler(int maxBulkXids) {
+            this(new PointValueWebSocketHub(mapper), maxBulkXids);
+        }
+
+        private TestHandler(PointValueWebSocketHub hub, int maxBulkXids) {
+            super(Common.getBean(PermissionService.class), hub);
+            this.hub = hub;
+            this.jacksonMapper = mapper;
+
+            WebSocketSession session = new StandardWebSocketSession(null, new HashMap<>(), null, null) {
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+            };
+            ReflectionTestUtils.setField(this, "session", session);
+            ReflectionTestUtils.setField(this, "backlog", backlog);
+            ReflectionTestUtils.setField(this, "maxQueued", 1000);
+            ReflectionTestUtils.setField(this, "maxBulkXids", maxBulkXids);
+        }
+
+        @Override
+        protected User getUser(WebSocketSession session) {
+            return user;
+        }
+
+        @Override
+        protected void sendStringMessageAsync(WebSocketSession session, String message) {
+            messages.add(message);
+        }
+    }
+
+    private static class RecordingBacklog extends WebSocketBacklog {
+        final List<String> messages = new ArrayList<>();
+
+        RecordingBacklog() {
+            super(0);
+        }
+
+        @Override
+        public void send(WebSocketSession session, String message) {
+            messages.add(message);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.module.Module;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+public class PointValueWebSocketHubTest extends MangoTestBase {
+
+    protected static final TestRuntimeManager runtimeManager = new TestRuntimeManager();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public void after() {
+        super.after();
+        runtimeManager.listeners.clear();
+    }
+
+    @Test
+    public void testSubscribeSendsStatusAndEvents() throws IOException {
+        PointValueWebSocketHub hub = new PointValueWebSocketHub(mapper);
+        DataPointVO vo = createPoint();
+        RecordingSubscriber subscriber = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+
+        hub.subscribe(vo, subscriber);
+        assertEquals(1, hub.getPointCount());
+        assertEquals(1, subscriber.types.size());
+        assertEquals(PointValueEventType.REGISTERED, subscriber.types.get(0));
+        assertEquals(vo.getXid(), payload(subscriber.messages.get(0)).get("xid").asText());
+
+        DataPointListener listener = runtimeManager.listeners.get(vo.getId());
+        assertNotNull(listener);
+        listener.pointUpdated(new PointValueTime(1.5d, 1000));
+        listener.pointChanged(new PointValueTime(1.5d, 1000), new PointValueTime(2.5d, 2000));
+
+        //Only the subscribed type is sent
+        assertEquals(2, subscriber.types.size());
+        assertEquals(PointValueEventType.UPDATE, subscriber.types.get(1));
+        JsonNode update = payload(subscriber.messages.get(1));
+        assertEquals(PointValueEventType.UPDATE.name(), update.get("event").asText());
+        assertEquals(1.5d, update.get("value").get("value").asDouble(), 0);
+    }
+
+    @Test
+    public void testSubscribersShareListenerAndMessage() {
+        PointValueWebSocketHub hub = new PointValueWebSocketHub(mapper);
+        DataPointVO vo = createPoint();
+        RecordingSubscriber first = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+        RecordingSubscriber second = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+
+        hub.register(vo, first);
+        DataPointListener listener = runtimeManager.listeners.get(vo.getId());
+        hub.register(vo, second);
+        assertSame(listener, runtimeManager.listeners.get(vo.getId()));
+        assertEquals(1, hub.getPointCount());
+
+        listener.pointUpdated(new PointValueTime(1.5d, 1000));
+        assertEquals(1, first.messages.size());
+        assertSame(first.messages.get(0), second.messages.get(0));
+    }
+
+    @Test
+    public void testListenerRemovedWithLastSubscriber() {
+        PointValueWebSocketHub hub = new PointValueWebSocketHub(mapper);
+        DataPointVO vo = createPoint();
+        RecordingSubscriber first = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+        RecordingSubscriber second = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+        hub.register(vo, first);
+        hub.register(vo, second);
+        DataPointListener listener = runtimeManager.listeners.get(vo.getId());
+
+        hub.unsubscribe(vo.getId(), first);
+        assertSame(listener, runtimeManager.listeners.get(vo.getId()));
+        listener.pointUpdated(new PointValueTime(1.5d, 1000));
+        assertTrue(first.messages.isEmpty());
+        assertEquals(1, second.messages.size());
+
+        hub.unsubscribe(vo.getId(), second);
+        assertNull(runtimeManager.listeners.get(vo.getId()));
+        assertEquals(0, hub.getPointCount());
+
+        //Unsubscribing again does nothing
+        hub.unsubscribe(vo.getId(), second);
+        assertEquals(0, hub.getPointCount());
+    }
+
+    @Test
+    public void testGoneSubscriberIsRemoved() {
+        PointValueWebSocketHub hub = new PointValueWebSocketHub(mapper);
+        DataPointVO vo = createPoint();
+        RecordingSubscriber subscriber = new RecordingSubscriber(EnumSet.of(PointValueEventType.UPDATE));
+        hub.register(vo, subscriber);
+        DataPointListener listener = runtimeManager.listeners.get(vo.getId());
+
+        subscriber.open = false;
+        listener.pointUpdated(new PointValueTime(1.5d, 1000));
+        assertNull(runtimeManager.listeners.get(vo.getId()));
+        assertEquals(0, hub.getPointCount());
+    }
+
+    @Test
+    public void testStatusDoesNotListen() {
+        PointValueWebSocketHub hub = new PointValueWebSocketHub(mapper);
+        DataPointVO vo = createPoint();
+
+        PointValueEventModel status = hub.getStatus(vo);
+        assertEquals(vo.getXid(), status.getXid());
+        assertEquals(PointValueEventType.REGISTERED, status.getEvent());
+        assertNull(runtimeManager.listeners.get(vo.getId()));
+        assertEquals(0, hub.getPointCount());
+    }
+
+    private JsonNode payload(String message) throws IOException {
+        return mapper.readTree(message).get("payload");
+    }
+
+    private DataPointVO createPoint() {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().insert(ds);
+
+        DataPointVO vo = new DataPointVO();
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setXid(DataPointDao.getInstance().generateUniqueXid());
+        vo.setName("Test point");
+        vo.setDataSourceId(ds.getId());
+        DataPointDao.getInstance().insert(vo);
+        return vo;
+    }
+
+    static class RecordingSubscriber implements PointValueWebSocketHub.Subscriber {
+        final Set<PointValueEventType> eventTypes;
+        final List<PointValueEventType> types = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+        boolean open = true;
+
+        RecordingSubscriber(Set<PointValueEventType> eventTypes) {
+            this.eventTypes = eventTypes;
+        }
+
+        @Override
+        public Set<PointValueEventType> getEventTypes() {
+            return eventTypes;
+        }
+
+        @Override
+        public boolean send(PointValueEventType type, String message) {
+            if(!open)
+                return false;
+            types.add(type);
+            messages.add(message);
+            return true;
+        }
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        return new TestLifecycle(modules, enableH2Web, h2WebPort, runtimeManager);
+    }
+
+    class TestLifecycle extends MockMangoLifecycle {
+
+        public TestLifecycle(List<Module> modules, boolean enableWebConsole, int webPort, TestRuntimeManager runtimeManager) {
+            super(modules, enableWebConsole, webPort);
+            this.runtimeManager = runtimeManager;
+        }
+
+    }
+
+    static class TestRuntimeManager extends MockRuntimeManager {
+
+        Map<Integer, DataPointListener> listeners = new HashMap<>();
+
+        @Override
+        public void addDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.put(dataPointId, l);
+        }
+
+        @Override
+        public void removeDataPointListener(int dataPointId, DataPointListener l) {
+            listeners.remove(dataPointId, l);
+        }
+    }
+}
@@ -44,6 +44,7 @@ import com.infiniteautomation.mango.rest.v2.mapping.HtmlHttpMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.JScienceModule;
 import com.infiniteautomation.mango.rest.v2.mapping.JsonStreamMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.MangoRestV2JacksonModule;
+import com.infiniteautomation.mango.rest.v2.mapping.PointValueTimeStreamBinaryMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.PointValueTimeStreamCsvMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.SerotoninJsonMessageConverter;
 import com.infiniteautomation.mango.rest.v2.mapping.SqlMessageConverter;
@@ -101,6 +102,7 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
         converters.add(new SerotoninJsonMessageConverter());
         converters.add(new SqlMessageConverter());
         converters.add(new PointValueTimeStreamCsvMessageConverter(csvMapper()));
+        converters.add(new PointValueTimeStreamBinaryMessageConverter());
         converters.add(new GenericCSVMessageConverter(csvObjectMapper()));
         converters.add(new StringHttpMessageConverter(StandardCharsets.UTF_8));
     }
@@ -143,6 +145,7 @@ public class MangoRestDispatcherConfiguration implements WebMvcConfigurer {
         .mediaType("sjson", MediaTypes.SEROTONIN_JSON)
         .mediaType("csv", MediaTypes.CSV_V2)
         .mediaType("csv2", MediaTypes.CSV_V2)
+        .mediaType("bin", PointValueTimeStreamBinaryMessageConverter.POINT_VALUES_BINARY)
         .mediaType("txt", MediaType.TEXT_PLAIN);
     }
 
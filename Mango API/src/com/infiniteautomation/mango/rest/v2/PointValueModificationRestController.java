@@ -26,6 +26,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.XidPointValueTimeModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.emport.PointValueTimeDeleteResult;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.emport.PointValueTimeImportResult;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.PointValueRollupCache;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
@@ -63,11 +64,13 @@ public class PointValueModificationRestController {
 
     private final DataPointDao dataPointDao;
     private final PermissionService permissionService;
+    private final PointValueRollupCache rollupCache;
 
     @Autowired
-    public PointValueModificationRestController(DataPointDao dataPointDao, PermissionService permissionService) {
+    public PointValueModificationRestController(DataPointDao dataPointDao, PermissionService permissionService, PointValueRollupCache rollupCache) {
         this.dataPointDao = dataPointDao;
         this.permissionService = permissionService;
+        this.rollupCache = rollupCache;
     }
 
     @ApiOperation(
@@ -225,6 +228,7 @@ public class PointValueModificationRestController {
                 }else {
                     rt.savePointValueDirectToCache(pvt, null, true, true, fireEvents);
                 }
+                rollupCache.invalidate(vo.getId(), timestamp);
                 totalProcessed++;
             }else {
                 totalSkipped++;
@@ -277,6 +281,7 @@ public class PointValueModificationRestController {
         public void deleteValue(ZonedDateTime timestamp) {
             if(valid && timestamp != null) {
                 totalProcessed += Common.runtimeManager.purgeDataPointValue(vo.getId(), timestamp.toInstant().toEpochMilli(), dao);
+                rollupCache.invalidate(vo.getId(), timestamp.toInstant().toEpochMilli());
             }else {
                 totalSkipped++;
             }
@@ -54,6 +54,8 @@ import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgePointValuesRes
 import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.PointValueRollupCache;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.StatisticsQuantizerPool;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.MultiPointLatestDatabaseStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.MultiPointSimplifyLatestDatabaseStream;
@@ -66,6 +68,7 @@ import com.infiniteautomation.mango.rest.v2.model.pointValue.query.XidRollupTime
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.XidTimeRangeQueryModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeStatisticsQueryInfo;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.PointValueRollupStore;
 import com.infiniteautomation.mango.rest.v2.model.time.TimePeriod;
 import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporaryResourceManager;
@@ -120,13 +123,21 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
     private final MangoTaskTemporaryResourceManager<PurgePointValuesResponseModel> resourceManager;
     private final PermissionService permissionService;
     private final DataPointService dataPointService;
+    private final PointValueRollupCache rollupCache;
+    private final StatisticsQuantizerPool quantizerPool;
+    private final PointValueRollupStore rollupStore;
 
     @Autowired
     public PointValueRestController(TemporaryResourceWebSocketHandler websocket,
-            PermissionService permissionService, DataPointService dataPointService) {
+            PermissionService permissionService, DataPointService dataPointService,
+            PointValueRollupCache rollupCache, StatisticsQuantizerPool quantizerPool,
+            PointValueRollupStore rollupStore) {
         this.resourceManager = new MangoTaskTemporaryResourceManager<>(permissionService, websocket);
         this.permissionService = permissionService;
         this.dataPointService = dataPointService;
+        this.rollupCache = rollupCache;
+        this.quantizerPool = quantizerPool;
+        this.rollupStore = rollupStore;
     }
 
     @ApiOperation(
@@ -757,6 +768,10 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
             @RequestParam(required = false)
             PointValueField[] fields,
 
+            @ApiParam(value = "Number of threads to quantize the points with, limited by the server", required = false, allowMultiple = false)
+            @RequestParam(value = "parallelism", required = false, defaultValue="1")
+            int parallelism,
+
             @AuthenticationPrincipal User user
             ) {
 
@@ -768,6 +783,7 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
         ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
                 from, to, dateTimeFormat, timezone, rollup, timePeriod, limit,
                 true, false, false, PointValueTimeCacheControl.NONE, null, null, truncate, fields);
+        info.setParallelism(parallelism);
 
         return generateStream(user, info, xids);
     }
@@ -837,7 +853,7 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
 
         ZonedDateTimeStatisticsQueryInfo info = new ZonedDateTimeStatisticsQueryInfo(from, to, dateTimeFormat, timezone, useCache, fields);
         Map<Integer, DataPointVO> voMap = buildMap(user, xids, info.getRollup());
-        return ResponseEntity.ok(new MultiPointStatisticsStream(info, voMap, this.dao));
+        return ResponseEntity.ok(new MultiPointStatisticsStream(info, voMap, this.dao, rollupStore));
     }
 
     /**
@@ -1097,6 +1113,7 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
         else
             to = ZonedDateTime.ofInstant(Instant.ofEpochMilli(current), zoneId);
 
+        rollupCache.invalidate(vo.getId(), from.toInstant().toEpochMilli());
         return ResponseEntity.ok(Common.runtimeManager.purgeDataPointValuesBetween(vo.getId(), from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli()));
     }
 
@@ -1198,13 +1215,16 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
                             permissionService.ensureDataSourceEditPermission(user, ds);
 
                             //Do purge based on settings
-                            if(model.isPurgeAll())
+                            if(model.isPurgeAll()) {
                                 Common.runtimeManager.purgeDataPointValuesWithoutCount(dp.getId());
-                            else if(model.isUseTimeRange())
+                                rollupCache.invalidate(dp.getId());
+                            }else if(model.isUseTimeRange()) {
                                 Common.runtimeManager.purgeDataPointValuesBetween(dp.getId(), model.getTimeRange().getFrom().getTime(), model.getTimeRange().getTo().getTime());
-                            else {
+                                rollupCache.invalidate(dp.getId(), model.getTimeRange().getFrom().getTime());
+                            }else {
                                 long before = DateUtils.minus(Common.timer.currentTimeMillis(), TimePeriodType.convertFrom(model.getDuration().getType()), model.getDuration().getPeriods());
                                 Common.runtimeManager.purgeDataPointValuesWithoutCount(dp.getId(), before);
+                                rollupCache.invalidate(dp.getId());
                             }
                             result.getSuccessfullyPurged().add(xid);
                         }catch(NotFoundException e) {
@@ -1328,9 +1348,9 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
         // Are we using rollup
         if (info.getRollup() != RollupEnum.NONE) {
             if(info.getRollup() == RollupEnum.POINT_DEFAULT)
-                return ResponseEntity.ok(new MultiDataPointDefaultRollupStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao));
+                return ResponseEntity.ok(new MultiDataPointDefaultRollupStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao, rollupCache, quantizerPool));
             else
-                return ResponseEntity.ok(new MultiDataPointStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao));
+                return ResponseEntity.ok(new MultiDataPointStatisticsQuantizerStream<T, INFO>(info, voMap, this.dao, rollupCache, quantizerPool));
         } else {
             if(info.isUseSimplify()) {
                 //Ensure no Simplify support
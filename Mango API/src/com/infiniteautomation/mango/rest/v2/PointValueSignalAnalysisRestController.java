@@ -22,17 +22,23 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
 import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.signal.Fft;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.signal.FixedRateResampler;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.signal.PointValueColumns;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.signal.SampleConsumer;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.signal.StftModel;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
-import com.serotonin.m2m2.view.quantize2.FftGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.User;
 
@@ -55,6 +61,9 @@ public class PointValueSignalAnalysisRestController {
     //TODO Lowpass filter
     //TODO Bandpass filter
 
+    //Upper bound on the samples a resampled range may produce, the times, values and transform of 4M samples take about 100MB
+    public static final long MAX_RESAMPLED_SAMPLES = 1 << 22;
+
     private final PermissionService permissionService;
 
     @Autowired
@@ -96,32 +105,26 @@ public class PointValueSignalAnalysisRestController {
             @RequestParam(value = "limit", required = false)
             Integer limit,
 
+            @ApiParam(value = "Resample the values to a fixed period in ms, each sample holds the latest value at or before it", required = false, allowMultiple = false)
+            @RequestParam(value = "resamplePeriod", required = false)
+            Long resamplePeriod,
+
             @AuthenticationPrincipal User user
             ) {
 
-        DataPointVO vo = DataPointDao.getInstance().getByXid(xid);
-        if (vo == null) {
-            throw new NotFoundRestException();
-        }else {
-            if(!permissionService.hasDataPointReadPermission(user, vo))
-                throw new AccessDeniedException();
-        }
+        DataPointVO vo = getDataPoint(xid, user);
 
         ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
                 from, to, null, timezone, RollupEnum.NONE, null, limit,
                 true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
-        FftGenerator generator = buildFFT(vo, info);
-
-        double sampleRateHz;
-        if(pollPeriod != null)
-            sampleRateHz = 1000d / pollPeriod;
-        else
-            sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
+        validateResamplePeriod(info, resamplePeriod);
+        PointValueColumns columns = buildColumns(vo, info, resamplePeriod);
 
-        if(generator.getValues().length == 0)
+        if(columns.size() == 0)
             return ResponseEntity.ok(new ArrayList<>());
-        else
-            return ResponseEntity.ok(generate(generator, sampleRateHz, true));
+
+        double sampleRateHz = sampleRateHz(pollPeriod, resamplePeriod, columns.getAverageSamplePeriodMs());
+        return ResponseEntity.ok(generate(columns.trimToSize(), sampleRateHz, true));
     }
 
     @ApiOperation(
@@ -158,9 +161,101 @@ public class PointValueSignalAnalysisRestController {
             @RequestParam(value = "limit", required = false)
             Integer limit,
 
+            @ApiParam(value = "Resample the values to a fixed period in ms, each sample holds the latest value at or before it", required = false, allowMultiple = false)
+            @RequestParam(value = "resamplePeriod", required = false)
+            Long resamplePeriod,
+
             @AuthenticationPrincipal User user
             ) {
 
+        DataPointVO vo = getDataPoint(xid, user);
+
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
+                from, to, null, timezone, RollupEnum.NONE, null, limit,
+                true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+        validateResamplePeriod(info, resamplePeriod);
+        PointValueColumns columns = buildColumns(vo, info, resamplePeriod);
+
+        if(columns.size() == 0)
+            return ResponseEntity.ok(new ArrayList<>());
+
+        double sampleRateHz = sampleRateHz(pollPeriod, resamplePeriod, columns.getAverageSamplePeriodMs());
+        return ResponseEntity.ok(generate(columns.trimToSize(), sampleRateHz, false));
+    }
+
+    @ApiOperation(
+            value = "Perform a short time FFT on a data point's values for the given time range",
+            notes = "From time inclusive, To time exclusive. Numeric,Multistate,Binary types supported. " +
+                    "Values are processed in overlapping Hann windows as they are read so only one window is held in memory, " +
+                    "the amplitude spectrum of each window is written as soon as it is computed.",
+            response = StftModel.class
+            )
+    @RequestMapping(method = RequestMethod.GET, value = "/stft/{xid}")
+    public ResponseEntity<StftModel> shortTimeFFT(
+            HttpServletRequest request,
+            @ApiParam(value = "Point xid", required = true, allowMultiple = false)
+            @PathVariable String xid,
+
+            @ApiParam(value = "From time", required = false, allowMultiple = false)
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME)
+            ZonedDateTime from,
+
+            @ApiParam(value = "To time", required = false, allowMultiple = false)
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME)
+            ZonedDateTime to,
+
+            @ApiParam(value = "Time zone", required = false, allowMultiple = false)
+            @RequestParam(value = "timezone", required = false)
+            String timezone,
+
+            @ApiParam(value = "Point poll period ms, if not supplied will be autodected", required = false, allowMultiple = false)
+            @RequestParam(value = "pollPeriod", required = false)
+            Long pollPeriod,
+
+            @ApiParam(value = "Resample the values to a fixed period in ms, each sample holds the latest value at or before it", required = false, allowMultiple = false)
+            @RequestParam(value = "resamplePeriod", required = false)
+            Long resamplePeriod,
+
+            @ApiParam(value = "Number of samples in each window", required = false, allowMultiple = false)
+            @RequestParam(value = "windowSize", required = false, defaultValue = "1024")
+            int windowSize,
+
+            @ApiParam(value = "Number of samples between the start of each window, defaults to half the window size", required = false, allowMultiple = false)
+            @RequestParam(value = "hop", required = false)
+            Integer hop,
+
+            @AuthenticationPrincipal User user
+            ) {
+
+        DataPointVO vo = getDataPoint(xid, user);
+
+        if(windowSize < 2)
+            throw new BadRequestException(new TranslatableMessage("validate.invalidValueForField", "windowSize"));
+        if(hop == null)
+            hop = Math.max(1, windowSize / 2);
+        else if(hop < 1)
+            throw new BadRequestException(new TranslatableMessage("validate.invalidValueForField", "hop"));
+
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
+                from, to, null, timezone, RollupEnum.NONE, null, null,
+                true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+        validateResamplePeriod(info, resamplePeriod);
+
+        //The values are read while the response is written
+        return ResponseEntity.ok(new StftModel(windowSize, hop,
+                consumer -> stream(vo, info, resamplePeriod, consumer),
+                averageSamplePeriodMs -> sampleRateHz(pollPeriod, resamplePeriod, averageSamplePeriodMs)));
+    }
+
+    /**
+     * Get a data point the user can read
+     * @param xid
+     * @param user
+     * @return
+     */
+    protected DataPointVO getDataPoint(String xid, User user) {
         DataPointVO vo = DataPointDao.getInstance().getByXid(xid);
         if (vo == null) {
             throw new NotFoundRestException();
@@ -168,47 +263,68 @@ public class PointValueSignalAnalysisRestController {
             if(!permissionService.hasDataPointReadPermission(user, vo))
                 throw new AccessDeniedException();
         }
+        return vo;
+    }
 
-        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
-                from, to, null, timezone, RollupEnum.NONE, null, limit,
-                true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
-        FftGenerator generator = buildFFT(vo, info);
+    protected void validateResamplePeriod(ZonedDateTimeRangeQueryInfo info, Long resamplePeriod) {
+        if(resamplePeriod == null)
+            return;
+        if(resamplePeriod <= 0)
+            throw new BadRequestException(new TranslatableMessage("validate.invalidValueForField", "resamplePeriod"));
+        //The resampler writes a sample at from and every period before to
+        long range = info.getToMillis() - info.getFromMillis();
+        if((range + resamplePeriod - 1) / resamplePeriod > MAX_RESAMPLED_SAMPLES)
+            throw new BadRequestException(new TranslatableMessage("rest.validate.signal.tooManySamples", MAX_RESAMPLED_SAMPLES));
+    }
 
-        double sampleRateHz;
-        if(pollPeriod != null)
-            sampleRateHz = 1000d / pollPeriod;
+    protected double sampleRateHz(Long pollPeriod, Long resamplePeriod, double averageSamplePeriodMs) {
+        if(resamplePeriod != null)
+            return 1000d / resamplePeriod;
+        else if(pollPeriod != null)
+            return 1000d / pollPeriod;
         else
-            sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
-
-        if(generator.getValues().length == 0)
-            return ResponseEntity.ok(new ArrayList<>());
-        else
-            return ResponseEntity.ok(generate(generator, sampleRateHz, false));
+            return 1000d / averageSamplePeriodMs;
     }
 
     /**
-     * Fill the FFT generator with data
+     * Read the values of the point into primitive columns
      * @param vo
      * @param info
-     * @param pollPeriod
+     * @param resamplePeriod - optional period to resample to
      * @return
      */
-    protected FftGenerator buildFFT(DataPointVO vo, ZonedDateTimeRangeQueryInfo info){
+    protected PointValueColumns buildColumns(DataPointVO vo, ZonedDateTimeRangeQueryInfo info, Long resamplePeriod) {
+        PointValueColumns columns = new PointValueColumns();
+        stream(vo, info, resamplePeriod, columns);
+        return columns;
+    }
+
+    /**
+     * Push the values of the point from the database into a consumer without collecting them
+     * @param vo
+     * @param info
+     * @param resamplePeriod - optional period to resample to
+     * @param consumer
+     */
+    protected void stream(DataPointVO vo, ZonedDateTimeRangeQueryInfo info, Long resamplePeriod, SampleConsumer consumer) {
         PointValueDao pvd = Common.databaseProxy.newPointValueDao();
-        List<PointValueTime> data = new ArrayList<>();
-        //Make the call to get the data and quantize it
+        FixedRateResampler resampler = null;
+        if(resamplePeriod != null) {
+            resampler = new FixedRateResampler(info.getFromMillis(), resamplePeriod, consumer);
+            consumer = resampler;
+        }
+        SampleConsumer target = consumer;
         pvd.getPointValuesBetween(vo.getId(), info.getFromMillis(), info.getToMillis(),
                 new MappedRowCallback<PointValueTime>() {
             @Override
             public void row(PointValueTime pvt, int row) {
-                data.add(pvt);
+                target.accept(pvt.getTime(), pvt.getDoubleValue());
             }
         });
-        FftGenerator generator = new FftGenerator(data.size());
-        for(PointValueTime pvt : data)
-            generator.data(pvt);
-        return generator;
+        if(resampler != null)
+            resampler.finish(info.getToMillis());
     }
+
     /**
      *
      * Depending on if fftData.length is even or odd we need to pull out
@@ -226,18 +342,18 @@ public class PointValueSignalAnalysisRestController {
      *  fftData[2*i+1] = Im[i], 0<i<(length-1)/2
      *  fftData[1] = Im[(length-1)/2]
      *
-     * @param generator
+     * @param fftData - signal, transformed in place
      * @param sampleRateHz
      * @param fft
      * @return
      */
-    protected List<FftValue> generate(FftGenerator generator, double sampleRateHz, boolean fft) {
+    protected List<FftValue> generate(double[] fftData, double sampleRateHz, boolean fft) {
+        Fft transform = new Fft(fftData.length);
         if(fft)
-            generator.fft();
+            transform.realForward(fftData);
         else
-            generator.ifft();
+            transform.realInverse(fftData);
 
-        double[] fftData = generator.getValues();
         double dataLength = fftData.length;
         List<FftValue> values = new ArrayList<>(fftData.length);
 
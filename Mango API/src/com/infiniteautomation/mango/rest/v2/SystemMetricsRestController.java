@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,6 +18,10 @@ import org.springframework.web.bind.annotation.RestController;
 import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.rest.v2.model.ValueMonitorModel;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryMetrics;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatisticsModel;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketSessionTracker;
+import com.infiniteautomation.mango.rest.v2.websocket.WebSocketBacklogModel;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.util.exception.NotFoundException;
 import com.serotonin.m2m2.Common;
@@ -44,9 +49,11 @@ public class SystemMetricsRestController {
     //Permissions Definition for Internal Metrics
     private final PermissionService service;
     private final SystemMetricsReadPermissionDefinition definition;
+    private final MangoWebSocketSessionTracker sessionTracker;
     @Autowired
-    public SystemMetricsRestController(PermissionService service) {
+    public SystemMetricsRestController(PermissionService service, @Qualifier("mangoWebSocketSessionTrackerV2") MangoWebSocketSessionTracker sessionTracker) {
         this.service = service;
+        this.sessionTracker = sessionTracker;
         this.definition = (SystemMetricsReadPermissionDefinition) ModuleRegistry.getPermissionDefinition(SystemMetricsReadPermissionDefinition.PERMISSION);
     }
 
@@ -85,4 +92,26 @@ public class SystemMetricsRestController {
         }
         throw new NotFoundException();
     }
+
+    @ApiOperation(
+            value = "Get the most recent slow point value queries",
+            notes = "Queries taking longer than rest.pointValues.slowQueryThreshold ms, newest first. Totals for all point value queries are System Metrics."
+            )
+    @RequestMapping(method = RequestMethod.GET, value="/slow-point-value-queries")
+    public List<PointValueQueryStatisticsModel> getSlowPointValueQueries(@AuthenticationPrincipal User user) {
+        MangoPermission permission = definition.getPermission();
+        service.ensurePermission(user, permission);
+        return PointValueQueryMetrics.getSlowQueries();
+    }
+
+    @ApiOperation(
+            value = "Get the send backlogs of open web socket sessions",
+            notes = "Messages handed to the container but not yet written and the messages sent, dropped and merged for slow clients"
+            )
+    @RequestMapping(method = RequestMethod.GET, value="/websocket-backlogs")
+    public List<WebSocketBacklogModel> getWebSocketBacklogs(@AuthenticationPrincipal User user) {
+        MangoPermission permission = definition.getPermission();
+        service.ensurePermission(user, permission);
+        return sessionTracker.getBacklogs();
+    }
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.mapping;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeBinaryWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream.StreamContentType;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointStatisticsQuantizerStream;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.MultiPointLatestDatabaseStream;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.MultiPointTimeRangeDatabaseStream;
+
+/**
+ * Message converter to write point value streams in the binary columnar format of
+ * PointValueTimeBinaryWriter, requested with an Accept header of application/vnd.mango.point-values
+ *
+ * @see PointValueTimeBinaryWriter
+ */
+public class PointValueTimeStreamBinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType POINT_VALUES_BINARY = new MediaType("application", "vnd.mango.point-values");
+
+    public PointValueTimeStreamBinaryMessageConverter() {
+        super(POINT_VALUES_BINARY);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MultiPointLatestDatabaseStream.class.isAssignableFrom(clazz)
+                || MultiPointTimeRangeDatabaseStream.class.isAssignableFrom(clazz)
+                || MultiDataPointStatisticsQuantizerStream.class.isAssignableFrom(clazz)
+                || MultiDataPointDefaultRollupStatisticsQuantizerStream.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<? extends Object> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Reading point values in binary format is not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        PointValueTimeStream<?,?> stream = (PointValueTimeStream<?,?>)object;
+        stream.setContentType(StreamContentType.BINARY);
+        PointValueTimeBinaryWriter writer = new PointValueTimeBinaryWriter(stream.getQueryInfo(), outputMessage.getBody());
+        stream.start(writer);
+        stream.streamData(writer);
+        stream.finish(writer);
+        writer.finish();
+    }
+}
@@ -7,7 +7,11 @@ package com.infiniteautomation.mango.rest.v2.model.pointValue;
 import java.io.IOException;
 
 import com.goebl.simplify.Point;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
@@ -92,11 +96,28 @@ public class DataPointVOPointValueTimeBookend implements DataPointValueTime {
     @Override
     public void writeEntry(PointValueTimeWriter writer, boolean useXid, boolean allowTimestamp)
             throws IOException {
-        for(PointValueField field : writer.getInfo().getFields()) {
-            if(!allowTimestamp && field == PointValueField.TIMESTAMP)
-                continue;
-            field.writeValue(this, writer.getInfo(), writer.getTranslations(), useXid, writer);
-        } 
+        LatestQueryInfo info = writer.getInfo();
+        Translations translations = writer.getTranslations();
+        for(PointValueField field : info.getFields()) {
+            switch(field) {
+                case TIMESTAMP:
+                    if(allowTimestamp)
+                        writer.writeTimestamp(pvt.getTime());
+                    break;
+                case VALUE:
+                case RAW:
+                    //Numeric values go straight to the primitive writer
+                    DataValue value = pvt.getValue();
+                    if(value != null && value.getDataType() == DataTypes.NUMERIC)
+                        writer.writeNumericValue(useXid ? vo.getXid() : field.getFieldName(), vo, value.getDoubleValue(), field == PointValueField.RAW);
+                    else
+                        field.writeValue(this, info, translations, useXid, writer);
+                    break;
+                default:
+                    field.writeValue(this, info, translations, useXid, writer);
+                    break;
+            }
+        }
     }
     
     @Override
@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Writes point values in a compact binary columnar format.
+ *
+ * Rows are buffered into typed columns and written out in frames of up to FRAME_ROWS rows so memory use is
+ * bounded. A column's buffers grow with the rows it has values for and columns without values in a frame are
+ * dropped when it is written, so points that stop appearing in a single array don't keep their columns. Field names become column names, fields of nested objects are named with their path joined
+ * by dots, for example first.value, and array elements inside a row use their index as the path segment.
+ *
+ * All numbers are big endian. A stream is the magic bytes MPVC and a version byte followed by frames,
+ * each frame starts with a type byte:
+ *
+ * SERIES_START - string name, the name is empty for a single array, otherwise it is the xid of the point
+ * ROWS - varint row count, varint column count, then per column a string name, a type byte, a presence bitmap of
+ *   (rows + 7) / 8 bytes where bit (row % 8) of byte (row / 8) is set if the row has a value, then the present values
+ * SERIES_END - no content
+ * END - no content, last frame of the stream
+ * ERROR - string message, the query failed and this is the last frame of the stream instead of END
+ *
+ * Column value encodings:
+ *
+ * LONG - zig zag varint of the difference from the previous present value in the frame, the first from 0
+ * DOUBLE - 8 byte IEEE 754
+ * BOOLEAN - 1 byte, 0 or 1
+ * STRING - varint length then UTF-8 bytes
+ * NULL - no values, the column was only written with nulls
+ *
+ * Varints are unsigned LEB128.
+ */
+public class PointValueTimeBinaryWriter extends PointValueTimeWriter {
+
+    public static final byte[] MAGIC = {'M', 'P', 'V', 'C'};
+    public static final byte VERSION = 1;
+    public static final int FRAME_ROWS = 4096;
+
+    public static final byte FRAME_END = 0;
+    public static final byte FRAME_SERIES_START = 1;
+    public static final byte FRAME_ROWS_TYPE = 2;
+    public static final byte FRAME_SERIES_END = 3;
+    public static final byte FRAME_ERROR = 4;
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_LONG = 1;
+    public static final byte TYPE_DOUBLE = 2;
+    public static final byte TYPE_BOOLEAN = 3;
+    public static final byte TYPE_STRING = 4;
+
+    /**
+     * What an open start call represents, used to match the end calls
+     */
+    private enum Scope {
+        //Structure outside of the series that carries no data
+        IGNORED,
+        SERIES,
+        ROW,
+        //Single row in its own series, written by the statistics stream
+        ROW_SERIES,
+        NESTED_OBJECT,
+        NESTED_ARRAY
+    }
+
+    private final DataOutputStream out;
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+    //Column name prefixes of the nested objects and arrays of the current row
+    private final Deque<String> prefixes = new ArrayDeque<>();
+    //Next element index of the nested arrays of the current row
+    private final Deque<int[]> arrayIndexes = new ArrayDeque<>();
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final byte[] varintBuffer = new byte[10];
+    private boolean seriesOpen;
+    private boolean inRow;
+    private int rows;
+    private String prefix = "";
+
+    public PointValueTimeBinaryWriter(LatestQueryInfo info, OutputStream out) throws IOException {
+        super(info);
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    @Override
+    public void writeDataPointValue(DataPointValueTime value) throws IOException {
+        startRow();
+        if(info.isMultiplePointsPerArray()) {
+            writeStartObject(value.getVo().getXid());
+            value.writeEntry(this, false, true);
+            writeEndObject();
+        }else {
+            value.writeEntry(this, false, true);
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeDataPointValues(List<DataPointValueTime> currentValues, long timestamp) throws IOException {
+        startRow();
+        if(info.fieldsContains(PointValueField.TIMESTAMP))
+            writeTimestamp(timestamp);
+        for(DataPointValueTime value : currentValues) {
+            if(info.isMultiplePointsPerArray()) {
+                writeStartObject(value.getVo().getXid());
+                value.writeEntry(this, false, false);
+                writeEndObject();
+            }else {
+                value.writeEntry(this, false, false);
+            }
+        }
+        endRow();
+    }
+
+    @Override
+    public void writeStringField(String name, String value) throws IOException {
+        if(value == null)
+            writeNullField(name);
+        else
+            column(name).setString(rowIndex(), value);
+    }
+
+    @Override
+    public void writeDoubleField(String name, double value) throws IOException {
+        column(name).setDouble(rowIndex(), value);
+    }
+
+    @Override
+    public void writeIntegerField(String name, int value) throws IOException {
+        column(name).setLong(rowIndex(), value);
+    }
+
+    @Override
+    public void writeLongField(String name, long value) throws IOException {
+        column(name).setLong(rowIndex(), value);
+    }
+
+    @Override
+    public void writeBooleanField(String name, Boolean value) throws IOException {
+        if(value == null)
+            writeNullField(name);
+        else
+            column(name).setBoolean(rowIndex(), value);
+    }
+
+    @Override
+    public void writeNullField(String name) throws IOException {
+        if(inRow)
+            column(name);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        if(inRow) {
+            startNestedArray(null);
+        }else {
+            startSeries("");
+            scopes.push(Scope.SERIES);
+        }
+    }
+
+    @Override
+    public void writeStartArray(String name) throws IOException {
+        if(inRow) {
+            startNestedArray(name);
+        }else {
+            startSeries(name);
+            scopes.push(Scope.SERIES);
+        }
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        Scope scope = scopes.poll();
+        if(scope == Scope.NESTED_ARRAY) {
+            arrayIndexes.pop();
+            popPrefix();
+        }else if(scope == Scope.SERIES) {
+            endSeries();
+        }
+    }
+
+    @Override
+    public void writeStartObject(String name) throws IOException {
+        if(inRow) {
+            pushPrefix(name);
+            scopes.push(Scope.NESTED_OBJECT);
+        }else {
+            //Statistics for one point
+            startSeries(name);
+            scopes.push(Scope.ROW_SERIES);
+            inRow = true;
+        }
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        if(inRow) {
+            pushPrefix(null);
+            scopes.push(Scope.NESTED_OBJECT);
+        }else if(scopes.peek() == Scope.SERIES) {
+            startRow();
+        }else {
+            scopes.push(Scope.IGNORED);
+        }
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        Scope scope = scopes.poll();
+        if(scope == Scope.NESTED_OBJECT) {
+            popPrefix();
+        }else if(scope == Scope.ROW) {
+            inRow = false;
+            rows++;
+        }else if(scope == Scope.ROW_SERIES) {
+            inRow = false;
+            rows++;
+            endSeries();
+        }
+    }
+
+    /**
+     * Write any buffered rows, close open series and write the end of the stream
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if(seriesOpen)
+            endSeries();
+        out.writeByte(FRAME_END);
+        out.flush();
+    }
+
+    /**
+     * Write the complete rows and end the stream with an error, a row that was being written is dropped
+     */
+    @Override
+    public void writeError(TranslatableMessage message) throws IOException {
+        if(inRow) {
+            for(Column column : columns.values())
+                column.clear(rows);
+            inRow = false;
+        }
+        flushRows();
+        out.writeByte(FRAME_ERROR);
+        writeString(message.translate(translations));
+        out.flush();
+    }
+
+    private void startRow() throws IOException {
+        if(!seriesOpen)
+            startSeries("");
+        if(rows == FRAME_ROWS)
+            flushRows();
+        scopes.push(Scope.ROW);
+        inRow = true;
+    }
+
+    private void endRow() {
+        scopes.pop();
+        inRow = false;
+        rows++;
+    }
+
+    private int rowIndex() throws IOException {
+        if(!inRow)
+            throw new IOException("Field written outside of a row");
+        return rows;
+    }
+
+    private void startSeries(String name) throws IOException {
+        if(seriesOpen)
+            endSeries();
+        out.writeByte(FRAME_SERIES_START);
+        writeString(name == null ? "" : name);
+        seriesOpen = true;
+    }
+
+    private void endSeries() throws IOException {
+        flushRows();
+        out.writeByte(FRAME_SERIES_END);
+        seriesOpen = false;
+    }
+
+    private void startNestedArray(String name) {
+        pushPrefix(name);
+        arrayIndexes.push(new int[1]);
+        scopes.push(Scope.NESTED_ARRAY);
+    }
+
+    /**
+     * Push the path of a nested object, unnamed objects inside arrays use their index
+     */
+    private void pushPrefix(String name) {
+        prefixes.push(prefix);
+        if(name == null && !arrayIndexes.isEmpty() && scopes.peek() == Scope.NESTED_ARRAY)
+            name = Integer.toString(arrayIndexes.peek()[0]++);
+        if(name != null)
+            prefix = prefix + name + DOT;
+    }
+
+    private void popPrefix() {
+        prefix = prefixes.pop();
+    }
+
+    private Column column(String name) {
+        String fullName = prefix.isEmpty() ? name : prefix + name;
+        Column column = columns.get(fullName);
+        if(column == null) {
+            column = new Column(fullName);
+            columns.put(fullName, column);
+        }
+        column.used = true;
+        return column;
+    }
+
+    private void flushRows() throws IOException {
+        if(rows == 0)
+            return;
+        //Keep the columns of this frame for the next one, drop the rest
+        List<Column> used = new ArrayList<>(columns.size());
+        for(Iterator<Column> it = columns.values().iterator(); it.hasNext();) {
+            Column column = it.next();
+            if(column.used)
+                used.add(column);
+            else
+                it.remove();
+        }
+
+        out.writeByte(FRAME_ROWS_TYPE);
+        writeVarint(rows);
+        writeVarint(used.size());
+        for(Column column : used) {
+            column.write(this, rows);
+            column.reset();
+        }
+        rows = 0;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        int length = 0;
+        while((value & ~0x7FL) != 0) {
+            varintBuffer[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        varintBuffer[length++] = (byte)value;
+        out.write(varintBuffer, 0, length);
+    }
+
+    /**
+     * Values of one column for the rows of the current frame, the buffers grow up to FRAME_ROWS as rows are set
+     */
+    private static class Column {
+        private static final int INITIAL_ROWS = 64;
+
+        private final String name;
+        private byte type = TYPE_NULL;
+        private boolean used;
+        private int count;
+        private byte[] presence = new byte[INITIAL_ROWS / 8];
+        //Long values, raw double bits or booleans as 0 and 1
+        private long[] values = new long[0];
+        private String[] strings;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        void setLong(int row, long value) {
+            if(type == TYPE_DOUBLE) {
+                setDouble(row, value);
+                return;
+            }
+            if(type != TYPE_LONG && !convertTo(TYPE_LONG)) {
+                setString(row, Long.toString(value));
+                return;
+            }
+            ensureValues(row);
+            values[row] = value;
+            present(row);
+        }
+
+        void setDouble(int row, double value) {
+            if(type != TYPE_DOUBLE && !convertTo(TYPE_DOUBLE)) {
+                setString(row, Double.toString(value));
+                return;
+            }
+            ensureValues(row);
+            values[row] = Double.doubleToRawLongBits(value);
+            present(row);
+        }
+
+        void setBoolean(int row, boolean value) {
+            if(type != TYPE_BOOLEAN && !convertTo(TYPE_BOOLEAN)) {
+                setString(row, Boolean.toString(value));
+                return;
+            }
+            ensureValues(row);
+            values[row] = value ? 1 : 0;
+            present(row);
+        }
+
+        void setString(int row, String value) {
+            if(type != TYPE_STRING)
+                convertTo(TYPE_STRING);
+            strings = grow(strings, row);
+            strings[row] = value;
+            present(row);
+        }
+
+        /**
+         * Change the type of the column, a column without values can take any type, longs widen to doubles
+         * and anything can be converted to strings
+         * @return false if the conversion isn't possible
+         */
+        private boolean convertTo(byte newType) {
+            if(count == 0) {
+                type = newType;
+                return true;
+            }
+            if(type == TYPE_LONG && newType == TYPE_DOUBLE) {
+                for(int row = 0; row < values.length; row++)
+                    if(isPresent(row))
+                        values[row] = Double.doubleToRawLongBits(values[row]);
+                type = TYPE_DOUBLE;
+                return true;
+            }
+            if(newType == TYPE_STRING) {
+                if(strings == null || strings.length < values.length)
+                    strings = Arrays.copyOf(strings == null ? new String[0] : strings, values.length);
+                for(int row = 0; row < values.length; row++)
+                    if(isPresent(row))
+                        strings[row] = toString(values[row]);
+                type = TYPE_STRING;
+                return true;
+            }
+            return false;
+        }
+
+        private void ensureValues(int row) {
+            if(row >= values.length)
+                values = Arrays.copyOf(values, capacity(values.length, row));
+        }
+
+        private static String[] grow(String[] strings, int row) {
+            if(strings == null)
+                return new String[capacity(0, row)];
+            if(row >= strings.length)
+                return Arrays.copyOf(strings, capacity(strings.length, row));
+            return strings;
+        }
+
+        /**
+         * @return the length to hold row, doubling up to FRAME_ROWS
+         */
+        private static int capacity(int length, int row) {
+            int capacity = Math.max(INITIAL_ROWS, length);
+            while(capacity <= row)
+                capacity <<= 1;
+            return Math.min(capacity, FRAME_ROWS);
+        }
+
+        private String toString(long value) {
+            switch(type) {
+                case TYPE_DOUBLE:
+                    return Double.toString(Double.longBitsToDouble(value));
+                case TYPE_BOOLEAN:
+                    return Boolean.toString(value != 0);
+                default:
+                    return Long.toString(value);
+            }
+        }
+
+        private void present(int row) {
+            if(row >> 3 >= presence.length)
+                presence = Arrays.copyOf(presence, (capacity(presence.length * 8, row) + 7) / 8);
+            if(!isPresent(row)) {
+                presence[row >> 3] |= 1 << (row & 7);
+                count++;
+            }
+        }
+
+        /**
+         * Remove the value of a row that will not be written
+         */
+        void clear(int row) {
+            if(isPresent(row)) {
+                presence[row >> 3] &= ~(1 << (row & 7));
+                count--;
+            }
+        }
+
+        private boolean isPresent(int row) {
+            return row >> 3 < presence.length && (presence[row >> 3] & (1 << (row & 7))) != 0;
+        }
+
+        void write(PointValueTimeBinaryWriter writer, int rows) throws IOException {
+            DataOutputStream out = writer.out;
+            writer.writeString(name);
+            out.writeByte(type);
+            int presenceBytes = (rows + 7) / 8;
+            out.write(presence, 0, Math.min(presenceBytes, presence.length));
+            for(int i = presence.length; i < presenceBytes; i++)
+                out.writeByte(0);
+            long previous = 0;
+            for(int row = 0; row < rows; row++) {
+                if(!isPresent(row))
+                    continue;
+                switch(type) {
+                    case TYPE_LONG:
+                        long delta = values[row] - previous;
+                        writer.writeVarint((delta << 1) ^ (delta >> 63));
+                        previous = values[row];
+                        break;
+                    case TYPE_DOUBLE:
+                        out.writeLong(values[row]);
+                        break;
+                    case TYPE_BOOLEAN:
+                        out.writeByte((int)values[row]);
+                        break;
+                    case TYPE_STRING:
+                        writer.writeString(strings[row]);
+                        break;
+                }
+            }
+        }
+
+        void reset() {
+            Arrays.fill(presence, (byte)0);
+            if(strings != null)
+                Arrays.fill(strings, null);
+            count = 0;
+            type = TYPE_NULL;
+            used = false;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import com.infiniteautomation.mango.statistics.AnalogStatistics;
 import com.infiniteautomation.mango.statistics.StartsAndRuntimeList;
 import com.infiniteautomation.mango.statistics.ValueChangeCounter;
 import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 
@@ -63,6 +64,16 @@ public class PointValueTimeCsvWriter extends PointValueTimeJsonWriter {
         this.jgen.writeEndObject();
     }
 
+    /**
+     * The columns are fixed by the header so the error is a line of its own
+     */
+    @Override
+    public void writeError(TranslatableMessage message) throws IOException {
+        this.jgen.flush();
+        this.jgen.writeRaw(ERROR + ": " + message.translate(translations) + "\n");
+        this.jgen.flush();
+    }
+
     @Override
     public void writeAllStatistics(StatisticsGenerator statisticsGenerator, DataPointVO vo, boolean rendered, boolean raw)
             throws IOException {
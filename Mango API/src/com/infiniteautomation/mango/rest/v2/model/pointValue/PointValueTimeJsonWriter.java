@@ -9,7 +9,9 @@ import java.io.IOException;
 import java.util.List;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 
 /**
  * @author Terry Packer
@@ -65,17 +67,27 @@ public class PointValueTimeJsonWriter extends PointValueTimeWriter {
     }
 
     @Override
-    public void writeDoubleField(String name, Double value) throws IOException {
+    public void writeTextField(String name, CharSequence value) throws IOException {
+        if(value instanceof String) {
+            this.jgen.writeStringField(name, (String)value);
+        }else {
+            this.jgen.writeFieldName(name);
+            this.jgen.writeString(toChars(value), 0, value.length());
+        }
+    }
+
+    @Override
+    public void writeDoubleField(String name, double value) throws IOException {
         this.jgen.writeNumberField(name, value);
     }
 
     @Override
-    public void writeIntegerField(String name, Integer value) throws IOException {
+    public void writeIntegerField(String name, int value) throws IOException {
         this.jgen.writeNumberField(name, value);
     }
 
     @Override
-    public void writeLongField(String name, Long value) throws IOException {
+    public void writeLongField(String name, long value) throws IOException {
         this.jgen.writeNumberField(name, value);
     }
 
@@ -118,4 +130,20 @@ public class PointValueTimeJsonWriter extends PointValueTimeWriter {
     public void writeEndObject() throws IOException {
         this.jgen.writeEndObject();
     }
+
+    /**
+     * Writes an error entry into the open array or object, the structure is left open
+     */
+    @Override
+    public void writeError(TranslatableMessage message) throws IOException {
+        JsonStreamContext context = jgen.getOutputContext();
+        if(context.inArray()) {
+            jgen.writeStartObject();
+            jgen.writeStringField(ERROR, message.translate(translations));
+            jgen.writeEndObject();
+        }else if(context.inObject()) {
+            jgen.writeStringField(ERROR, message.translate(translations));
+        }
+        jgen.flush();
+    }
 }
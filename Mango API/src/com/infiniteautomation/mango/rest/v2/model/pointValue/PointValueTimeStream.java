@@ -18,7 +18,8 @@ public interface PointValueTimeStream<T, INFO extends LatestQueryInfo> {
     
     public enum StreamContentType {
         JSON,
-        CSV
+        CSV,
+        BINARY
     }
     
     public INFO getQueryInfo();
@@ -29,7 +30,7 @@ public interface PointValueTimeStream<T, INFO extends LatestQueryInfo> {
     public void finish(PointValueTimeWriter writer) throws IOException ;
     
     /**
-     * Set the content type of the stream CSV or JSON
+     * Set the content type of the stream JSON, CSV or BINARY
      * @param type
      */
     public void setContentType(StreamContentType type);
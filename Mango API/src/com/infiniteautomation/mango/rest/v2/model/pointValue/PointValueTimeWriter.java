@@ -5,8 +5,11 @@
 package com.infiniteautomation.mango.rest.v2.model.pointValue;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.measure.converter.UnitConverter;
 import javax.measure.unit.Unit;
 
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
@@ -18,6 +21,7 @@ import com.infiniteautomation.mango.statistics.ValueChangeCounter;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.stats.IValueTime;
@@ -75,10 +79,18 @@ public abstract class PointValueTimeWriter {
     public static final String STARTS_AND_RUNTIMES = "startsAndRuntimes";
 
     public static final String XID = "xid";
+    public static final String ERROR = "error";
 
     protected final LatestQueryInfo info;
     protected final Translations translations;
 
+    //Converters to the rendered unit per data point id, the last one used is kept out of the map
+    private final Map<Integer, UnitConverter> converters = new HashMap<>();
+    private DataPointVO lastConverterVo;
+    private UnitConverter lastConverter;
+    //Reused to pass rendered text to the output without creating a String
+    private char[] textBuffer = new char[32];
+
     public PointValueTimeWriter(LatestQueryInfo info){
         this.info = info;
         this.translations = Common.getTranslations();
@@ -87,9 +99,9 @@ public abstract class PointValueTimeWriter {
     /* Methods Used for Point Values */
 
     public abstract void writeStringField(String name, String value) throws IOException;
-    public abstract void writeDoubleField(String name, Double value) throws IOException;
-    public abstract void writeIntegerField(String name, Integer value) throws IOException;
-    public abstract void writeLongField(String name, Long value) throws IOException;
+    public abstract void writeDoubleField(String name, double value) throws IOException;
+    public abstract void writeIntegerField(String name, int value) throws IOException;
+    public abstract void writeLongField(String name, long value) throws IOException;
     public abstract void writeBooleanField(String name, Boolean value) throws IOException;
     public abstract void writeNullField(String name) throws IOException;
     public abstract void writeStartArray() throws IOException;
@@ -99,6 +111,56 @@ public abstract class PointValueTimeWriter {
     public abstract void writeStartObject() throws IOException;
     public abstract void writeEndObject() throws IOException;
 
+    /**
+     * Write text that may be a reused buffer, writers that can take characters override this
+     * @param name
+     * @param value - only valid during the call
+     * @throws IOException
+     */
+    public void writeTextField(String name, CharSequence value) throws IOException {
+        writeStringField(name, value.toString());
+    }
+
+    /**
+     * Copy text into the text buffer
+     * @param value
+     * @return the text buffer
+     */
+    protected char[] toChars(CharSequence value) {
+        int length = value.length();
+        if(textBuffer.length < length)
+            textBuffer = new char[Math.max(length, textBuffer.length * 2)];
+        if(value instanceof StringBuffer)
+            ((StringBuffer)value).getChars(0, length, textBuffer, 0);
+        else if(value instanceof StringBuilder)
+            ((StringBuilder)value).getChars(0, length, textBuffer, 0);
+        else
+            for(int i = 0; i < length; i++)
+                textBuffer[i] = value.charAt(i);
+        return textBuffer;
+    }
+
+    public void writeDoubleField(String name, Double value) throws IOException {
+        if(value == null)
+            writeNullField(name);
+        else
+            writeDoubleField(name, value.doubleValue());
+    }
+
+    public void writeIntegerField(String name, Integer value) throws IOException {
+        if(value == null)
+            writeNullField(name);
+        else
+            writeIntegerField(name, value.intValue());
+    }
+
+    public void writeLongField(String name, Long value) throws IOException {
+        if(value == null)
+            writeNullField(name);
+        else
+            writeLongField(name, value.longValue());
+    }
+
     /* Full Value Write Methods */
     /**
      * Write many values at the same time
@@ -115,6 +177,14 @@ public abstract class PointValueTimeWriter {
      */
     public abstract void writeDataPointValue(DataPointValueTime value) throws IOException;
 
+    /**
+     * Mark the values written so far as incomplete after the query failed part way through,
+     * nothing is written after it
+     * @param message
+     * @throws IOException
+     */
+    public abstract void writeError(TranslatableMessage message) throws IOException;
+
     /**
      * @param name
      * @param vo
@@ -126,7 +196,7 @@ public abstract class PointValueTimeWriter {
      */
     protected void writeDataValue(String name, DataPointVO vo, DataValue value, Long timestamp, boolean rendered, boolean raw) throws IOException{
         if(rendered) {
-            writeStringField(name, info.getRenderedString(vo, value));
+            writeTextField(name, info.getRenderedText(vo, value));
         }else {
             if(value == null) {
                 writeNullField(name);
@@ -142,10 +212,7 @@ public abstract class PointValueTimeWriter {
                         writeIntegerField(name, value.getIntegerValue());
                         break;
                     case DataTypes.NUMERIC:
-                        if(vo.getRenderedUnit() != Unit.ONE && !raw)
-                            writeDoubleField(name, vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value.getDoubleValue()));
-                        else
-                            writeDoubleField(name, value.getDoubleValue());
+                        writeNumericValue(name, vo, value.getDoubleValue(), raw);
                         break;
                     case DataTypes.IMAGE:
                         writeStringField(name, info.writeImageLink(timestamp, vo.getId()));
@@ -154,6 +221,39 @@ public abstract class PointValueTimeWriter {
         }
     }
 
+    /**
+     * Write a numeric value, converted to the rendered unit of the point unless raw
+     * @param name
+     * @param vo
+     * @param value
+     * @param raw - do not use the rendered unit for conversion
+     * @throws IOException
+     */
+    public void writeNumericValue(String name, DataPointVO vo, double value, boolean raw) throws IOException {
+        if(vo.getRenderedUnit() != Unit.ONE && !raw)
+            writeDoubleField(name, getRenderedUnitConverter(vo).convert(value));
+        else
+            writeDoubleField(name, value);
+    }
+
+    /**
+     * Get the converter from the unit of a point to its rendered unit, created once per point for the life of this writer
+     * @param vo
+     * @return
+     */
+    protected UnitConverter getRenderedUnitConverter(DataPointVO vo) {
+        if(vo == lastConverterVo)
+            return lastConverter;
+        UnitConverter converter = converters.get(vo.getId());
+        if(converter == null) {
+            converter = vo.getUnit().getConverterTo(vo.getRenderedUnit());
+            converters.put(vo.getId(), converter);
+        }
+        lastConverterVo = vo;
+        lastConverter = converter;
+        return converter;
+    }
+
     public void writeTimestamp(Long timestamp) throws IOException {
         if(timestamp == null)
             writeNullField(TIMESTAMP);
@@ -181,15 +281,12 @@ public abstract class PointValueTimeWriter {
 
     public void writeAnalogStatistic(String name, DataPointVO vo, Double value, boolean rendered, boolean raw) throws IOException {
         if(rendered) {
-            writeStringField(name, info.getRenderedString(vo, value));
+            writeTextField(name, info.getRenderedText(vo, value));
         }else {
             if (value == null) {
                 writeNullField(name);
             } else {
-                if(vo.getRenderedUnit() != Unit.ONE && !raw)
-                    writeDoubleField(name, vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(value));
-                else
-                    writeDoubleField(name, value);
+                writeNumericValue(name, vo, value, raw);
             }
         }
     }
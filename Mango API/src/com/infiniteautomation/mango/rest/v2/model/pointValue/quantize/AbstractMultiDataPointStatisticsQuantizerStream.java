@@ -5,6 +5,7 @@ package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -61,10 +62,13 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
      */
     protected void writePeriodStats(DataPointRollupPeriodValue generator) throws IOException{
         //Code limit
-        //TODO Cancel query via Exception
-        if(info.getLimit() != null && count >= info.getLimit())
+        if(info.getLimit() != null && count >= info.getLimit()) {
+            //Periods are written in time order in a single array
+            if(info.isSingleArray())
+                limitReached();
             return;
-        this.writer.writeDataPointValue(generator);
+        }
+        writeDataPointValue(generator);
         count++;
     }
 
@@ -90,25 +94,61 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
         currentDataPointId = value.getId();
     }
 
+    /**
+     * The periods after the last value read were not quantized
+     */
+    @Override
+    protected long getReclaimedRows() {
+        BucketCalculator bc = getBucketCalculator();
+        long end = bc.getEndTime().toInstant().toEpochMilli();
+        long periods = 0;
+        long remaining = 0;
+        long periodTo;
+        do {
+            periodTo = bc.getNextPeriodTo().toInstant().toEpochMilli();
+            periods++;
+            if(periodTo > currentTime)
+                remaining++;
+        }while(periodTo < end);
+
+        if(info.isSingleArray())
+            return remaining * voMap.size();
+        //Points are queried in order, the current point has the periods after the last value remaining
+        // and those not started yet have all their periods remaining
+        long notDone = 0;
+        for(DataPointStatisticsQuantizer<?> quantizer : quantizerMap.values())
+            if(!quantizer.isDone())
+                notDone++;
+        return notDone > 0 ? remaining + (notDone - 1) * periods : 0;
+    }
+
     protected void createQuantizerMap() {
+        createQuantizerMap(info.getFrom());
+    }
+
+    /**
+     * Create quantizers for periods starting at a time, must be a period boundary
+     * @param from
+     */
+    protected void createQuantizerMap(ZonedDateTime from) {
         for(Entry<Integer, DataPointVO> entry : voMap.entrySet()) {
             DataPointVO vo = entry.getValue();
             DataPointStatisticsQuantizer<?> quantizer;
             if(info.getRollup() == RollupEnum.POINT_DEFAULT && vo.getRollup() == RollupEnum.NONE.getId()) {
                 //Raw Data Stream
-                quantizer = new NoStatisticsDataPointQuantizer(vo, getBucketCalculator(), this);
+                quantizer = new NoStatisticsDataPointQuantizer(vo, getBucketCalculator(from), this);
             }else {
                 switch(vo.getPointLocator().getDataTypeId()) {
                     case DataTypes.ALPHANUMERIC:
                     case DataTypes.IMAGE:
-                        quantizer = new ValueChangeCounterDataPointQuantizer(vo, getBucketCalculator(), this);
+                        quantizer = new ValueChangeCounterDataPointQuantizer(vo, getBucketCalculator(from), this);
                         break;
                     case DataTypes.BINARY:
                     case DataTypes.MULTISTATE:
-                        quantizer = new StartsAndRuntimeListDataPointQuantizer(vo, getBucketCalculator(), this);
+                        quantizer = new StartsAndRuntimeListDataPointQuantizer(vo, getBucketCalculator(from), this);
                         break;
                     case DataTypes.NUMERIC:
-                        quantizer = new AnalogStatisticsDataPointQuantizer(vo, getBucketCalculator(), this);
+                        quantizer = new AnalogStatisticsDataPointQuantizer(vo, getBucketCalculator(from), this);
                         break;
                     default:
                         throw new RuntimeException("Unknown Data Type: " + vo.getPointLocator().getDataTypeId());
@@ -123,10 +163,19 @@ public abstract class AbstractMultiDataPointStatisticsQuantizerStream <T, INFO e
      * @return
      */
     protected BucketCalculator getBucketCalculator(){
+        return getBucketCalculator(info.getFrom());
+    }
+
+    /**
+     * Create a Bucket Calculator for periods starting at a time
+     * @param from
+     * @return
+     */
+    protected BucketCalculator getBucketCalculator(ZonedDateTime from){
         if(this.info.getTimePeriod() == null){
-            return  new BucketsBucketCalculator(info.getFrom(), info.getTo(), 1);
+            return  new BucketsBucketCalculator(from, info.getTo(), 1);
         }else{
-            return new TimePeriodBucketCalculator(info.getFrom(), info.getTo(), TimePeriodType.convertFrom(this.info.getTimePeriod().getType()), this.info.getTimePeriod().getPeriods());
+            return new TimePeriodBucketCalculator(from, info.getTo(), TimePeriodType.convertFrom(this.info.getTimePeriod().getType()), this.info.getTimePeriod().getPeriods());
         }
     }
 }
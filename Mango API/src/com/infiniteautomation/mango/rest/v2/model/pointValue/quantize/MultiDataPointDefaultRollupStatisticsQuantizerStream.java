@@ -35,7 +35,12 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
     private final boolean useSimplify;
 
     public MultiDataPointDefaultRollupStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao) {
-        super(info, voMap, dao);
+        this(info, voMap, dao, null, null);
+    }
+
+    public MultiDataPointDefaultRollupStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao,
+            PointValueRollupCache rollupCache, StatisticsQuantizerPool quantizerPool) {
+        super(info, voMap, dao, rollupCache, quantizerPool);
         this.valueMap = new HashMap<>(voMap.size());
         boolean useSimp = false;
         for(DataPointVO vo : voMap.values()) {
@@ -54,7 +59,7 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
             return;
         }
         createQuantizerMap();
-        dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), null, this);
+        query(callback -> dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), null, callback));
 
         //Fast forward to end to fill any gaps at the end
         for(DataPointStatisticsQuantizer<?> quant : this.quantizerMap.values()) {
@@ -90,7 +95,7 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
                         currentValues.add(value);
                     else {
                         if(currentValues.size() > 0) {
-                            writer.writeDataPointValues(currentValues, currentValues.get(0).getTime());
+                            writeDataPointValues(currentValues, currentValues.get(0).getTime());
                             currentValues.clear();
                         }
                         currentTime = value.getTime();
@@ -100,7 +105,7 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
 
                 //Finish the current values
                 if(currentValues.size() > 0)
-                    writer.writeDataPointValues(currentValues, currentValues.get(0).getTime());
+                    writeDataPointValues(currentValues, currentValues.get(0).getTime());
             }
         }else {
             Iterator<DataPointVO> it = processed.keySet().iterator();
@@ -108,13 +113,13 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
                 DataPointVO key = it.next();
                 List<DataPointValueTime> values = processed.get(key);
                 if(!info.isSingleArray())
-                    this.writer.writeStartArray(key.getXid());
+                    writeStartArray(key.getXid());
                 for(DataPointValueTime value : values) {
-                    writer.writeDataPointValue(value);
+                    writeDataPointValue(value);
                     count++;
                 }
                 if(!info.isSingleArray())
-                    writer.writeEndArray();
+                    writeEndArray();
             }
         }
     }
@@ -222,6 +227,11 @@ public class MultiDataPointDefaultRollupStatisticsQuantizerStream <T, INFO exten
         }
     }
 
+    @Override
+    protected MultiDataPointStatisticsQuantizerStream<T, INFO> createPartitionStream(Map<Integer, DataPointVO> partition) {
+        return new MultiDataPointDefaultRollupStatisticsQuantizerStream<T, INFO>(info, partition, dao, rollupCache, null);
+    }
+
     @Override
     protected RollupEnum getRollup(DataPointVO vo) {
         return RollupEnum.convertTo(vo.getRollup());
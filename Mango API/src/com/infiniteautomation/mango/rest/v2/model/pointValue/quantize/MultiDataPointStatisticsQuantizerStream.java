@@ -5,14 +5,24 @@
 package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.infiniteautomation.mango.quantize.BucketCalculator;
 import com.infiniteautomation.mango.quantize.BucketsBucketCalculator;
@@ -20,10 +30,14 @@ import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.DataPointValueTime;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryCancelledException.Reason;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
 import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
@@ -41,19 +55,45 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
     private long lastFullPeriodToMillis;
     //Track when we are moving to a new timestamp within time ordered queries
     private Long lastTime;
+    //Period boundaries of single array queries, null for other queries
+    private BucketCalculator boundaryCalculator;
+    private long boundaryCalculatorEnd;
+    private long nextBoundary;
+
+    //Statistics of elapsed periods, null if the query can't use the cache
+    protected final PointValueRollupCache rollupCache;
+    //Cached periods at the start of the query for each point, written before the quantized periods
+    private final Map<Integer, List<StatisticsGenerator>> cachedPeriods;
+    //Periods ending before this time can be cached
+    private long cacheableBefore;
+    private boolean writingCachedPeriods;
+
+    //Pool to quantize partitions of the points in multiple array queries, null to quantize on the calling thread
+    protected final StatisticsQuantizerPool quantizerPool;
+    //Hand-off to the stream writing the response when this stream quantizes a partition of its points
+    private Partition partition;
 
     public MultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao) {
+        this(info, voMap, dao, null, null);
+    }
+
+    public MultiDataPointStatisticsQuantizerStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao,
+            PointValueRollupCache rollupCache, StatisticsQuantizerPool quantizerPool) {
         super(info, voMap, dao);
+        this.quantizerPool = quantizerPool;
         this.periodStats = new LinkedHashMap<>();
         this.currentValueTimeMap = new HashMap<>();
         this.lastFullPeriodToMillis = periodToMillis;
+        this.rollupCache = rollupCache != null && rollupCache.isEnabled() && canCache() ? rollupCache : null;
+        this.cachedPeriods = new LinkedHashMap<>();
     }
 
     @Override
     public void firstValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
         DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getId());
         if(!info.isSingleArray())
-            writer.writeStartArray(quantizer.vo.getXid());
+            writeStartArray(quantizer.vo.getXid());
+        writeCachedPeriods(value.getId());
         updateQuantizers(value);
         quantizer.firstValue(value, index, bookend);
     }
@@ -80,8 +120,11 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
                         q.row(row.value, row.index);
                     }
                 }
+                fastForwardToBoundary(value.getTime());
                 currentValueTimeMap.put(value.getId(), new IdPointValueTimeRow(value, index));
             }else {
+                if(lastTime == null)
+                    fastForwardToBoundary(value.getTime());
                 //cache the value so as not to trigger quantization until all values are ready
                 currentValueTimeMap.put(value.getId(), new IdPointValueTimeRow(value, index));
             }
@@ -96,6 +139,13 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
     @Override
     public void lastValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
         DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getId());
+        if(bookend && boundaryCalculator != null) {
+            //The bookends at the end of the query, finish the periods of all points before them together
+            for(Entry<Integer, IdPointValueTimeRow> entry : currentValueTimeMap.entrySet())
+                this.quantizerMap.get(entry.getKey()).row(entry.getValue().value, entry.getValue().index);
+            currentValueTimeMap.clear();
+            fastForwardToBoundary(value.getTime());
+        }
         IdPointValueTimeRow row = this.currentValueTimeMap.remove(value.getId());
         if(row != null) {
             quantizer.row(row.value, row.index);
@@ -104,34 +154,162 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
         //This will definitely be the last time we see this point
         if(!info.isSingleArray()) {
             quantizer.done();
-            writer.writeEndArray();
+            writeEndArray();
         }
     }
 
     @Override
     public void streamData(PointValueTimeWriter writer) throws IOException {
-        createQuantizerMap();
-        dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), null, this);
+        int parallelism = quantizerPool == null ? 1 : Math.min(info.getParallelism(), quantizerPool.getMaxParallelism());
+        if(!info.isSingleArray() && parallelism > 1 && voMap.size() > 1) {
+            //The partitions run their own queries, cancelling this query cancels them
+            ParallelQuantizer parallel = new ParallelQuantizer(parallelism);
+            if(parallel.start()) {
+                query(callback -> parallel.stream());
+                return;
+            }
+            //The pool is saturated, quantize on this thread
+        }
+
+        ZonedDateTime from = info.getFrom();
+        if(rollupCache != null) {
+            cacheableBefore = Common.timer.currentTimeMillis() - rollupCache.getSettlePeriod();
+            from = loadCachedPeriods();
+        }
+        createQuantizerMap(from);
+        if(info.isSingleArray() && voMap.size() > 1) {
+            boundaryCalculator = getBucketCalculator(from);
+            boundaryCalculatorEnd = boundaryCalculator.getEndTime().toInstant().toEpochMilli();
+            nextBoundary = nextBoundary();
+        }
+
+        if(info.isSingleArray() && !cachedPeriods.isEmpty()) {
+            //Write the cached periods in time order, every point has the same number
+            int periods = cachedPeriods.values().iterator().next().size();
+            writingCachedPeriods = true;
+            for(int i = 0; i < periods; i++) {
+                for(Entry<Integer, List<StatisticsGenerator>> entry : cachedPeriods.entrySet())
+                    quantizedStatistics(new DataPointStatisticsGenerator(voMap.get(entry.getKey()), entry.getValue().get(i)));
+            }
+            writingCachedPeriods = false;
+            cachedPeriods.clear();
+        }
+        long fromMillis = from.toInstant().toEpochMilli();
+        query(callback -> dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), fromMillis, info.getToMillis(), !info.isSingleArray(), null, callback));
+    }
+
+    /**
+     * Single array queries with more than one point hold each period until every point has completed it.
+     * Once the values pass a period boundary no point can add to the periods before it, so all
+     * quantizers are fast forwarded to the boundary and the rows are written without waiting
+     * for the next value of sparse points.
+     *
+     * @param time - time of the next value, all values before it have been quantized
+     * @throws IOException
+     */
+    private void fastForwardToBoundary(long time) throws IOException {
+        if(boundaryCalculator == null || time < nextBoundary)
+            return;
+        long boundary;
+        do {
+            boundary = nextBoundary;
+            nextBoundary = nextBoundary();
+        }while(nextBoundary <= time);
+
+        for(DataPointStatisticsQuantizer<?> quantizer : this.quantizerMap.values())
+            quantizer.fastForward(boundary);
+    }
+
+    private long nextBoundary() {
+        long next = boundaryCalculator.getNextPeriodTo().toInstant().toEpochMilli();
+        return next >= boundaryCalculatorEnd ? Long.MAX_VALUE : next;
+    }
+
+    /**
+     * Can the periods of this query be cached, only time periods of statistics are
+     * @return
+     */
+    private boolean canCache() {
+        if(info.getTimePeriod() == null)
+            return false;
+        if(info.getRollup() == RollupEnum.POINT_DEFAULT) {
+            for(DataPointVO vo : voMap.values())
+                if(vo.getRollup() == RollupEnum.NONE.getId())
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find the periods at the start of the query that are cached for every point, the last
+     * period is always quantized from the values.
+     *
+     * @return start of the first period to quantize
+     */
+    private ZonedDateTime loadCachedPeriods() {
+        BucketCalculator bc = getBucketCalculator();
+        ZonedDateTime periodStart = bc.getStartTime();
+        ZonedDateTime periodEnd = bc.getNextPeriodTo();
+        Instant end = bc.getEndTime().toInstant();
+        List<StatisticsGenerator> found = new ArrayList<>(voMap.size());
+        while(periodEnd.toInstant().isBefore(end)) {
+            found.clear();
+            for(DataPointVO vo : voMap.values()) {
+                StatisticsGenerator generator = rollupCache.get(vo, info.getTimePeriod(), info.getZoneId(),
+                        periodStart.toInstant().toEpochMilli(), periodEnd.toInstant().toEpochMilli());
+                if(generator == null)
+                    return periodStart;
+                found.add(generator);
+            }
+            Iterator<StatisticsGenerator> it = found.iterator();
+            for(Integer id : voMap.keySet())
+                cachedPeriods.computeIfAbsent(id, k -> new ArrayList<>()).add(it.next());
+            periodStart = periodEnd;
+            periodEnd = bc.getNextPeriodTo();
+        }
+        return periodStart;
+    }
+
+    /**
+     * Write the cached periods of a point that come before its first value
+     * @param dataPointId
+     * @throws IOException
+     */
+    private void writeCachedPeriods(int dataPointId) throws IOException {
+        List<StatisticsGenerator> periods = cachedPeriods.remove(dataPointId);
+        if(periods == null)
+            return;
+        DataPointVO vo = voMap.get(dataPointId);
+        writingCachedPeriods = true;
+        for(StatisticsGenerator generator : periods)
+            quantizedStatistics(new DataPointStatisticsGenerator(vo, generator));
+        writingCachedPeriods = false;
     }
 
     protected void writePeriodStats(List<DataPointValueTime> generators) throws IOException {
         //Code limit
-        //TODO Cancel query via Exception
-        if(info.getLimit() != null && count >= info.getLimit())
+        if(info.getLimit() != null && count >= info.getLimit()) {
+            //Periods are written in time order in a single array
+            if(info.isSingleArray())
+                limitReached();
             return;
+        }
 
         if(info.isSingleArray() && voMap.size() > 1) {
             if(generators.size() > 0)
-                this.writer.writeDataPointValues(generators, generators.get(0).getTime());
+                writeDataPointValues(generators, generators.get(0).getTime());
         }else {
             for(DataPointValueTime gen: generators)
-                this.writer.writeDataPointValue(gen);
+                writeDataPointValue(gen);
         }
         count++;
     }
 
     @Override
     public void quantizedStatistics(DataPointStatisticsGenerator generator) throws IOException {
+        if(rollupCache != null && !writingCachedPeriods && generator.getGenerator().getPeriodEndTime() <= cacheableBefore)
+            rollupCache.put(generator.getVo(), info.getTimePeriod(), info.getZoneId(), generator.getGenerator());
+
         //Collect the stats for this period
         if(info.isSingleArray() && voMap.size() > 1) {
             //Do we have any entries for this period
@@ -154,7 +332,17 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
 
     @Override
     public void finish(PointValueTimeWriter writer) throws IOException {
+        //Nothing more can be written once the limit is reached
+        if(getCancelReason() != Reason.LIMIT)
+            finishQuantizers();
+        super.finish(writer);
+    }
 
+    /**
+     * Finish the periods of all points after the query
+     * @throws IOException
+     */
+    private void finishQuantizers() throws IOException {
         if(info.isSingleArray() && voMap.size() > 1) {
 
             //Fast forward to end to fill any gaps at the end and stream out data in time
@@ -196,13 +384,68 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
             }
 
             //For any with 0 data TODO Check for is open?
-            for(DataPointStatisticsQuantizer<?> q : this.quantizerMap.values()) {
+            for(Entry<Integer, DataPointStatisticsQuantizer<?>> entry : this.quantizerMap.entrySet()) {
+                DataPointStatisticsQuantizer<?> q = entry.getValue();
                 if(!q.isDone()) {
+                    writeCachedPeriods(entry.getKey());
                     q.done();
                 }
             }
         }
-        super.finish(writer);
+    }
+
+    @Override
+    protected void writeDataPointValue(DataPointValueTime value) throws IOException {
+        if(partition != null)
+            handOff(value);
+        else
+            super.writeDataPointValue(value);
+    }
+
+    @Override
+    protected void writeStartArray(String xid) throws IOException {
+        if(partition != null)
+            handOff(xid);
+        else
+            super.writeStartArray(xid);
+    }
+
+    @Override
+    protected void writeEndArray() throws IOException {
+        if(partition != null)
+            handOff(Partition.END_ARRAY);
+        else
+            super.writeEndArray();
+    }
+
+    /**
+     * Quantize a partition of the points of a parallel query on a pool thread, the arrays and
+     * values are handed to the stream writing the response instead of a writer.
+     * @param partition
+     * @throws IOException
+     */
+    private void quantizePartition(Partition partition) throws IOException {
+        this.partition = partition;
+        streamData(null);
+        finishQuantizers();
+    }
+
+    /**
+     * Wait for room in the hand-off queue of the partition
+     * @param event
+     * @throws IOException - if the query was cancelled or the response is no longer being written
+     */
+    private void handOff(Object event) throws IOException {
+        try {
+            while(!partition.queue.offer(event, Partition.WAIT_MS, TimeUnit.MILLISECONDS)) {
+                if(partition.abandoned)
+                    throw new InterruptedIOException("Response is no longer being written");
+                checkCancelled();
+            }
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
     }
 
     /**
@@ -214,6 +457,173 @@ public class MultiDataPointStatisticsQuantizerStream<T, INFO extends ZonedDateTi
         return info.getRollup();
     }
 
+    /**
+     * Create a stream to quantize some of the points of this query, override as necessary
+     * @param partition
+     * @return
+     */
+    protected MultiDataPointStatisticsQuantizerStream<T, INFO> createPartitionStream(Map<Integer, DataPointVO> partition) {
+        return new MultiDataPointStatisticsQuantizerStream<T, INFO>(info, partition, dao, rollupCache, null);
+    }
+
+    /**
+     * Quantizes partitions of the points on the pool and writes the arrays of each partition
+     * in order of point id, as the query would return them. The pool threads take the partitions
+     * in order and hand their values over through a bounded queue, so the partition being written
+     * is always being quantized and the others wait once their queues are full. At most parallelism
+     * partitions of this query are quantized at once.
+     */
+    private final class ParallelQuantizer {
+        private final int parallelism;
+        private final List<Partition> partitions;
+        private final List<Future<?>> workers;
+        private final AtomicInteger nextPartition = new AtomicInteger();
+
+        ParallelQuantizer(int parallelism) {
+            List<Integer> ids = new ArrayList<>(voMap.keySet());
+            Collections.sort(ids);
+            int count = Math.min(ids.size(), parallelism * 4);
+            this.parallelism = Math.min(parallelism, count);
+            this.partitions = new ArrayList<>(count);
+            this.workers = new ArrayList<>(this.parallelism);
+            for(int i = 0; i < count; i++) {
+                Map<Integer, DataPointVO> points = new LinkedHashMap<>();
+                for(Integer id : ids.subList(i * ids.size() / count, (i + 1) * ids.size() / count))
+                    points.put(id, voMap.get(id));
+                partitions.add(new Partition(points));
+            }
+        }
+
+        /**
+         * Submit the workers to the pool
+         * @return false if the pool could not take any
+         */
+        boolean start() {
+            try {
+                for(int i = 0; i < parallelism; i++)
+                    workers.add(quantizerPool.submit(this::quantizePartitions));
+            }catch(RejectedExecutionException e) {
+                //Quantize with the workers the pool accepted
+            }
+            return !workers.isEmpty();
+        }
+
+        void stream() throws IOException {
+            //Waiting for the partitions is quantizing, not reading from the database
+            Phase previous = statistics.enter(Phase.QUANTIZE);
+            try {
+                for(Partition partition : partitions)
+                    write(partition);
+            }finally {
+                statistics.exit(previous);
+                for(Partition partition : partitions)
+                    partition.abandoned = true;
+                awaitWorkers();
+            }
+        }
+
+        private void quantizePartitions() {
+            int index;
+            while((index = nextPartition.getAndIncrement()) < partitions.size()) {
+                Partition partition = partitions.get(index);
+                if(partition.abandoned)
+                    return;
+                try {
+                    MultiDataPointStatisticsQuantizerStream<T, INFO> stream = createPartitionStream(partition.points);
+                    stream.setParent(MultiDataPointStatisticsQuantizerStream.this);
+                    stream.quantizePartition(partition);
+                }catch(Throwable t) {
+                    partition.error = t;
+                }
+                partition.end();
+            }
+        }
+
+        private void write(Partition partition) throws IOException {
+            Object event;
+            //A failed write cancels this query and the partitions still quantizing
+            while((event = take(partition)) != Partition.END) {
+                if(event instanceof String) {
+                    writeStartArray((String)event);
+                }else if(event == Partition.END_ARRAY) {
+                    writeEndArray();
+                }else {
+                    if(info.getLimit() != null && count >= info.getLimit())
+                        continue;
+                    writeDataPointValue((DataPointValueTime)event);
+                    count++;
+                }
+            }
+            Throwable error = partition.error;
+            if(error instanceof IOException)
+                throw (IOException)error;
+            if(error != null)
+                throw new IOException(error);
+        }
+
+        private Object take(Partition partition) throws IOException {
+            try {
+                Object event;
+                while((event = partition.queue.poll(Partition.WAIT_MS, TimeUnit.MILLISECONDS)) == null)
+                    checkCancelled();
+                return event;
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Wait for the workers to stop so no partition query outlives the request
+         */
+        private void awaitWorkers() throws InterruptedIOException {
+            try {
+                for(Future<?> worker : workers)
+                    worker.get();
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }catch(ExecutionException e) {
+                //The workers record their errors in the partitions
+            }
+        }
+    }
+
+    /**
+     * The points of a partition and the queue its arrays and values are handed over through,
+     * bounded so a partition that is ahead of the response waits instead of buffering its output.
+     */
+    private static final class Partition {
+        static final Object END_ARRAY = new Object();
+        static final Object END = new Object();
+        static final int QUEUE_SIZE = 1024;
+        static final long WAIT_MS = 100;
+
+        final Map<Integer, DataPointVO> points;
+        //Xid at the start of an array, values, END_ARRAY and END
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        volatile Throwable error;
+        //Set once the response stops reading the queue
+        volatile boolean abandoned;
+
+        Partition(Map<Integer, DataPointVO> points) {
+            this.points = points;
+        }
+
+        /**
+         * Mark the end of the partition, after its values or error
+         */
+        void end() {
+            try {
+                while(!queue.offer(END, WAIT_MS, TimeUnit.MILLISECONDS))
+                    if(abandoned)
+                        return;
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      *
      * Container for intra interval samples
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
+
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.PointValueRollupStore;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.RollupAggregate;
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriod;
+import com.infiniteautomation.mango.rest.v2.model.time.TimePeriodType;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Cache of the statistics of elapsed rollup periods so repeated time period queries only
+ * read raw values for the periods that are not cached.
+ *
+ * Statistics are kept per series, a series is the periods of one data point for a time period and
+ * timezone. The statistics of a period don't depend on the rollup requested so all rollups share
+ * the same series. Series are evicted least recently used first once the total number of periods
+ * exceeds the maximum.
+ *
+ * A value saved or removed at a time changes the statistics of the period containing it and the start
+ * values of all periods after it, so invalidating a point at a time removes every period ending after it.
+ * While a point has cached periods a listener invalidates it from the time of every value backdated by the
+ * runtime, the core's data purge clears all caches through the PointValueRollupCachePurgeDefinition. Values
+ * written directly to the database must be invalidated by the code writing them.
+ *
+ * Periods that are not cached are assembled from the hours and days of the rollup store when it has
+ * them, so periods on hour boundaries are available before they have been read once.
+ *
+ * @see MultiDataPointStatisticsQuantizerStream
+ * @see PointValueRollupStore
+ */
+@Component
+public class PointValueRollupCache {
+
+    //Caches of the running contexts, cleared when values are purged
+    private static final Set<PointValueRollupCache> INSTANCES = ConcurrentHashMap.newKeySet();
+
+    private final int maxPeriods;
+    private final long settlePeriod;
+    private final PointValueRollupStore rollupStore;
+
+    private final LinkedHashMap<SeriesKey, NavigableMap<Long, StatisticsGenerator>> series;
+    private final Map<Integer, Set<SeriesKey>> pointSeries;
+    private final Map<Integer, BackdateListener> listeners;
+    private int size;
+
+    @Autowired
+    public PointValueRollupCache(PointValueRollupStore rollupStore) {
+        this(Common.envProps.getInt("rest.rollupCache.maxPeriods", 100000),
+                Common.envProps.getInt("rest.rollupCache.settlePeriod", 60000), rollupStore);
+    }
+
+    /**
+     * @param maxPeriods - total number of periods to hold, 0 disables the cache
+     * @param settlePeriod - ms after the end of a period before it is cached, allows for values saved late
+     */
+    public PointValueRollupCache(int maxPeriods, long settlePeriod) {
+        this(maxPeriods, settlePeriod, null);
+    }
+
+    /**
+     * @param maxPeriods - total number of periods to hold, 0 disables the cache
+     * @param settlePeriod - ms after the end of a period before it is cached, allows for values saved late
+     * @param rollupStore - stored hours and days for periods that are not cached, may be null
+     */
+    public PointValueRollupCache(int maxPeriods, long settlePeriod, PointValueRollupStore rollupStore) {
+        this.maxPeriods = maxPeriods;
+        this.settlePeriod = settlePeriod;
+        this.rollupStore = rollupStore;
+        this.series = new LinkedHashMap<>(16, 0.75f, true);
+        this.pointSeries = new HashMap<>();
+        this.listeners = new HashMap<>();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        INSTANCES.add(this);
+    }
+
+    @PreDestroy
+    public void terminate() {
+        INSTANCES.remove(this);
+        clear();
+    }
+
+    /**
+     * Clear every cache, used when values are removed from the database for many points
+     */
+    public static void clearAll() {
+        for(PointValueRollupCache cache : INSTANCES)
+            cache.clear();
+    }
+
+    public boolean isEnabled() {
+        return maxPeriods > 0 || (rollupStore != null && rollupStore.isEnabled());
+    }
+
+    /**
+     * @return ms after the end of a period before it can be cached
+     */
+    public long getSettlePeriod() {
+        return settlePeriod;
+    }
+
+    /**
+     * Get the statistics for a period
+     * @param vo
+     * @param timePeriod
+     * @param zoneId
+     * @param periodStart
+     * @param periodEnd
+     * @return null if not cached or stored
+     */
+    public StatisticsGenerator get(DataPointVO vo, TimePeriod timePeriod, ZoneId zoneId, long periodStart, long periodEnd) {
+        StatisticsGenerator generator = getCached(vo, timePeriod, zoneId, periodStart, periodEnd);
+        if(generator != null || rollupStore == null)
+            return generator;
+        RollupAggregate stored = rollupStore.getPeriod(vo, periodStart, periodEnd);
+        return stored == null ? null : stored.toGenerator();
+    }
+
+    private synchronized StatisticsGenerator getCached(DataPointVO vo, TimePeriod timePeriod, ZoneId zoneId, long periodStart, long periodEnd) {
+        NavigableMap<Long, StatisticsGenerator> periods = series.get(new SeriesKey(vo, timePeriod, zoneId));
+        if(periods == null)
+            return null;
+        StatisticsGenerator generator = periods.get(periodStart);
+        if(generator == null || generator.getPeriodEndTime() != periodEnd)
+            return null;
+        return generator;
+    }
+
+    /**
+     * Cache the statistics of an elapsed period
+     * @param vo
+     * @param timePeriod
+     * @param zoneId
+     * @param generator - completed statistics, must not be modified afterwards
+     */
+    public synchronized void put(DataPointVO vo, TimePeriod timePeriod, ZoneId zoneId, StatisticsGenerator generator) {
+        if(maxPeriods <= 0)
+            return;
+        SeriesKey key = new SeriesKey(vo, timePeriod, zoneId);
+        NavigableMap<Long, StatisticsGenerator> periods = series.get(key);
+        if(periods == null) {
+            periods = new TreeMap<>();
+            series.put(key, periods);
+            pointSeries.computeIfAbsent(key.dataPointId, this::addListener).add(key);
+        }else if(periods.size() >= maxPeriods) {
+            return;
+        }
+
+        if(periods.put(generator.getPeriodStartTime(), generator) == null)
+            size++;
+
+        //Evict least recently used series
+        Iterator<Entry<SeriesKey, NavigableMap<Long, StatisticsGenerator>>> it = series.entrySet().iterator();
+        while(size > maxPeriods && it.hasNext()) {
+            Entry<SeriesKey, NavigableMap<Long, StatisticsGenerator>> eldest = it.next();
+            if(eldest.getKey().equals(key))
+                continue;
+            size -= eldest.getValue().size();
+            removePointSeries(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all periods of a data point ending after a time
+     * @param dataPointId
+     * @param from
+     */
+    public synchronized void invalidate(int dataPointId, long from) {
+        if(rollupStore != null)
+            rollupStore.invalidate(dataPointId, from);
+        Set<SeriesKey> keys = pointSeries.get(dataPointId);
+        if(keys == null)
+            return;
+        for(SeriesKey key : keys) {
+            NavigableMap<Long, StatisticsGenerator> periods = series.get(key);
+            Entry<Long, StatisticsGenerator> containing = periods.floorEntry(from);
+            long start = containing != null && containing.getValue().getPeriodEndTime() > from ? containing.getKey() : from;
+            NavigableMap<Long, StatisticsGenerator> tail = periods.tailMap(start, true);
+            size -= tail.size();
+            tail.clear();
+        }
+    }
+
+    /**
+     * Remove all periods of a data point
+     * @param dataPointId
+     */
+    public synchronized void invalidate(int dataPointId) {
+        if(rollupStore != null)
+            rollupStore.invalidate(dataPointId);
+        Set<SeriesKey> keys = pointSeries.remove(dataPointId);
+        if(keys == null)
+            return;
+        removeListener(dataPointId);
+        for(SeriesKey key : keys)
+            size -= series.remove(key).size();
+    }
+
+    /**
+     * Remove all periods of all data points
+     */
+    public synchronized void clear() {
+        if(rollupStore != null)
+            rollupStore.clear();
+        for(Integer dataPointId : listeners.keySet())
+            Common.runtimeManager.removeDataPointListener(dataPointId, listeners.get(dataPointId));
+        listeners.clear();
+        pointSeries.clear();
+        series.clear();
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void removePointSeries(SeriesKey key) {
+        Set<SeriesKey> keys = pointSeries.get(key.dataPointId);
+        keys.remove(key);
+        if(keys.isEmpty()) {
+            pointSeries.remove(key.dataPointId);
+            removeListener(key.dataPointId);
+        }
+    }
+
+    /**
+     * Start listening for values backdated into a point, called when its first series is cached
+     * @return the set for the point's series
+     */
+    private Set<SeriesKey> addListener(int dataPointId) {
+        BackdateListener listener = new BackdateListener(dataPointId);
+        listeners.put(dataPointId, listener);
+        Common.runtimeManager.addDataPointListener(dataPointId, listener);
+        return new HashSet<>();
+    }
+
+    private void removeListener(int dataPointId) {
+        BackdateListener listener = listeners.remove(dataPointId);
+        if(listener != null)
+            Common.runtimeManager.removeDataPointListener(dataPointId, listener);
+    }
+
+    /**
+     * Invalidates the periods of a point from the time of each backdated value
+     */
+    private final class BackdateListener implements DataPointListener {
+        private final int dataPointId;
+
+        BackdateListener(int dataPointId) {
+            this.dataPointId = dataPointId;
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            invalidate(dataPointId, value.getTime());
+        }
+
+        @Override
+        public void pointInitialized() { }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) { }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void pointLogged(PointValueTime value) { }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) { }
+
+        @Override
+        public void pointTerminated(DataPointVO vo) { }
+
+        @Override
+        public String getListenerName() {
+            return "Rollup cache for DP id " + dataPointId;
+        }
+    }
+
+    private static final class SeriesKey {
+        final int dataPointId;
+        //Statistics type changes with the data type
+        final int dataTypeId;
+        final TimePeriodType periodType;
+        final int periods;
+        final ZoneId zoneId;
+
+        SeriesKey(DataPointVO vo, TimePeriod timePeriod, ZoneId zoneId) {
+            this.dataPointId = vo.getId();
+            this.dataTypeId = vo.getPointLocator().getDataTypeId();
+            this.periodType = timePeriod.getType();
+            this.periods = timePeriod.getPeriods();
+            this.zoneId = zoneId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataPointId, dataTypeId, periodType, periods, zoneId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof SeriesKey))
+                return false;
+            SeriesKey other = (SeriesKey) obj;
+            return dataPointId == other.dataPointId && dataTypeId == other.dataTypeId
+                    && periodType == other.periodType && periods == other.periods
+                    && zoneId.equals(other.zoneId);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+
+package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
+
+import com.serotonin.m2m2.module.PurgeDefinition;
+
+/**
+ * The scheduled purge removes values of any point before its purge period without notifying
+ * the runtime, so the cached periods are discarded after each purge.
+ */
+public class PointValueRollupCachePurgeDefinition extends PurgeDefinition {
+
+    @Override
+    public void execute(long runtime) {
+        PointValueRollupCache.clearAll();
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.quantize;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Threads shared by all requests that quantize the points of multiple array statistics queries in parallel.
+ * The partitions run blocking database queries so they have their own threads, the number of threads caps
+ * the partitions quantized at once across all requests and at most queueSize more wait for a thread.
+ *
+ * @see MultiDataPointStatisticsQuantizerStream
+ */
+@Component
+public class StatisticsQuantizerPool {
+
+    private final ThreadPoolExecutor executor;
+
+    public StatisticsQuantizerPool() {
+        this(Common.envProps.getInt("rest.statistics.maxParallelism", Runtime.getRuntime().availableProcessors()),
+                Common.envProps.getInt("rest.statistics.queueSize", 100));
+    }
+
+    /**
+     * @param maxParallelism - number of threads
+     * @param queueSize - number of partitions that can wait for a thread
+     */
+    public StatisticsQuantizerPool(int maxParallelism, int queueSize) {
+        int threads = Math.max(1, maxParallelism);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+            Thread thread = new Thread(r, "Statistics quantizer " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the maximum number of partitions quantized at once
+     */
+    public int getMaxParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Run a task on the pool
+     * @param task
+     * @return
+     * @throws RejectedExecutionException - if all threads are busy and the queue is full
+     */
+    public Future<?> submit(Runnable task) throws RejectedExecutionException {
+        return executor.submit(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -8,6 +8,7 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.TimeZone;
 
 import org.springframework.web.util.UriComponentsBuilder;
@@ -16,6 +17,7 @@ import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
 import com.infiniteautomation.mango.rest.v2.exception.ValidationFailedRestException;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueField;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.RollupEnum;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
 import com.infiniteautomation.mango.util.Functions;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
@@ -52,6 +54,9 @@ public class LatestQueryInfo {
     protected final boolean simplifyPrePostProcess = true; //Not in api
 
     protected final PointValueField[] fields;
+    protected Long timeout; //Ms the query may run for, null for the default
+    protected final PointValueQueryStatistics statistics;
+    protected final PointValueRendererCache renderers = new PointValueRendererCache();
 
     public LatestQueryInfo(ZonedDateTime from, String dateTimeFormat, String timezone,
             Integer limit, boolean multiplePointsPerArray, boolean singleArray, PointValueTimeCacheControl useCache,
@@ -104,6 +109,7 @@ public class LatestQueryInfo {
         else {
             this.fields = new PointValueField[]{ PointValueField.TIMESTAMP, PointValueField.VALUE};
         }
+        this.statistics = new PointValueQueryStatistics(this);
     }
 
 
@@ -155,6 +161,27 @@ public class LatestQueryInfo {
         return dateTimeFormatter;
     }
 
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the ms the query may run for before it is cancelled, defaults to rest.pointValues.queryTimeout
+     * @param timeout
+     */
+    public void setTimeout(Long timeout) {
+        if(timeout != null && timeout < 1)
+            throw new BadRequestException(new TranslatableMessage("rest.validate.timeout.invalid"));
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return figures for the query run with this info
+     */
+    public PointValueQueryStatistics getStatistics() {
+        return statistics;
+    }
+
     public boolean isUseSimplify() {
         return simplifyTolerance != null || simplifyTarget != null;
     }
@@ -181,7 +208,12 @@ public class LatestQueryInfo {
      * @return
      */
     public String getRenderedString(DataPointVO vo, PointValueTime pvt) {
-        return Functions.getRenderedText(vo, pvt);
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
+            return Functions.getRenderedText(vo, pvt);
+        }finally {
+            statistics.exit(previous);
+        }
     }
 
     /**
@@ -195,7 +227,12 @@ public class LatestQueryInfo {
             return "-";
         if (value == null)
             return "-";
-        return vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL);
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
+            return vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL);
+        }finally {
+            statistics.exit(previous);
+        }
     }
 
     /**
@@ -206,8 +243,50 @@ public class LatestQueryInfo {
     public String getRenderedString(DataPointVO vo, DataValue value) {
         if(value == null)
             return "-";
-        else
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
             return vo.getTextRenderer().getText(value, TextRenderer.HINT_FULL);
+        }finally {
+            statistics.exit(previous);
+        }
+    }
+
+    /**
+     * Render a value with the compiled renderer of its point, the text is only valid until the next
+     * value is rendered
+     * @param vo
+     * @param value
+     * @return
+     */
+    public CharSequence getRenderedText(DataPointVO vo, DataValue value) {
+        if(value == null)
+            return "-";
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
+            return renderers.render(vo, value);
+        }finally {
+            statistics.exit(previous);
+        }
+    }
+
+    /**
+     * Render a double value with the compiled renderer of the point, the text is only valid until
+     * the next value is rendered
+     * @param vo
+     * @param value
+     * @return
+     */
+    public CharSequence getRenderedText(DataPointVO vo, Double value) {
+        if (vo == null)
+            return "-";
+        if (value == null)
+            return "-";
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
+            return renderers.render(vo, value.doubleValue());
+        }finally {
+            statistics.exit(previous);
+        }
     }
 
     /**
@@ -218,7 +297,12 @@ public class LatestQueryInfo {
      * @return
      */
     public String getIntegralString(DataPointVO vo, Double integral) {
-        return Functions.getIntegralText(vo, integral);
+        Phase previous = statistics.enter(Phase.RENDER);
+        try {
+            return Functions.getIntegralText(vo, integral);
+        }finally {
+            statistics.exit(previous);
+        }
     }
 
     /**
@@ -260,4 +344,20 @@ public class LatestQueryInfo {
                 return true;
         return false;
     }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [from=" + from + ", limit=" + limit + ", singleArray=" + singleArray
+                + ", multiplePointsPerArray=" + multiplePointsPerArray + ", useCache=" + useCache
+                + ", simplifyTolerance=" + simplifyTolerance + ", simplifyTarget=" + simplifyTarget
+                + ", fields=" + Arrays.toString(fields) + ", timeout=" + timeout + toStringFields() + "]";
+    }
+
+    /**
+     * Fields of subclasses for toString, override as necessary
+     * @return
+     */
+    protected String toStringFields() {
+        return "";
+    }
 }
@@ -6,23 +6,19 @@ package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import com.infiniteautomation.mango.rest.v2.model.pointValue.DataPointVOPointValueTimeBookend;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.DataPointValueTime;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.LimitCounter;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
-import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.IAnnotated;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
@@ -38,8 +34,8 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
     protected long currentTime; //For writing multiple points single array NoSQL
     protected final List<DataPointValueTime> currentValues;
     protected int currentDataPointId;
-    //List of cached values per data point id, sorted in descending time order
-    protected final Map<Integer, List<IdPointValueTime>> cache;
+    //Cursor over the cached values per data point id, in the time order of the query
+    protected final Map<Integer, PointValueCacheCursor> cache;
     protected final Map<Integer, LimitCounter> limiters;  //For use with cache so we don't return too many values, assuming that caches sizes are small this should have minimal effects
     protected final List<DataPointValueTime> bookends;
 
@@ -64,10 +60,15 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
 
         //Are we to use just the cache?
         if(info.isUseCache() == PointValueTimeCacheControl.CACHE_ONLY) {
-            processCacheOnly();
+            Phase previous = statistics.enter(Phase.CACHE);
+            try {
+                processCacheOnly();
+            }finally {
+                statistics.exit(previous);
+            }
             return;
         }
-        this.dao.getLatestPointValues(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), !info.isSingleArray(), info.getLimit(), this);
+        query(callback -> this.dao.getLatestPointValues(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), !info.isSingleArray(), info.getLimit(), callback));
     }
 
     @Override
@@ -80,9 +81,9 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
         //Write out all our current values and the final bookend
         if(info.isSingleArray() && voMap.size() > 1) {
             if(currentValues.size() > 0)
-                writer.writeDataPointValues(currentValues, currentValues.get(0).getTime());
+                writeDataPointValues(currentValues, currentValues.get(0).getTime());
             if(bookends.size() > 0)
-                writer.writeDataPointValues(bookends, bookends.get(0).getTime());
+                writeDataPointValues(bookends, bookends.get(0).getTime());
         }else {
             if(!info.isSingleArray()) {
                 if(contentType == StreamContentType.JSON) {
@@ -131,7 +132,7 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
                     currentValues.add(value);
                 else {
                     if(currentValues.size() > 0) {
-                        writer.writeDataPointValues(currentValues, currentValues.get(0).getTime());
+                        writeDataPointValues(currentValues, currentValues.get(0).getTime());
                         currentValues.clear();
                     }
                     currentTime = value.getTime();
@@ -143,12 +144,12 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
                 //Writing multi-array, could be a multi-array of 1 though
                 if(currentDataPointId != value.getId()) {
                     if(currentDataPointId != Common.NEW_ID)
-                        writer.writeEndArray();
-                    writer.writeStartArray(this.voMap.get(value.getId()).getXid());
+                        writeEndArray();
+                    writeStartArray(this.voMap.get(value.getId()).getXid());
                     currentDataPointId = value.getId();
                 }
             }
-            writer.writeDataPointValue(value);
+            writeDataPointValue(value);
         }
     }
 
@@ -162,27 +163,26 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
      * @throws IOException
      */
     protected boolean processValueThroughCache(IdPointValueTime value, int index, boolean firstBookend, boolean lastBookend) throws IOException {
-        List<IdPointValueTime> pointCache = this.cache.get(value.getId());
-        if(pointCache != null) {
-            ListIterator<IdPointValueTime> it = pointCache.listIterator();
-            while(it.hasNext()) {
-                IdPointValueTime pvt = it.next();
-                if(pvt.getTime() > value.getTime()) {
+        PointValueCacheCursor cursor = this.cache.get(value.getId());
+        if(cursor == null)
+            return true;
+        Phase previous = statistics.enter(Phase.CACHE);
+        try {
+            while(cursor.hasNext()) {
+                if(cursor.precedes(value.getTime())) {
                     //Can't be a bookend
-                    processRow(pvt, index, false, false, true);
-                    it.remove();
-                }else if(pvt.getTime() == value.getTime()) {
+                    statistics.cacheHit();
+                    processRow(cursor.next(), index, false, false, true);
+                }else if(cursor.peekTime() == value.getTime()) {
                     //Could be a bookend
-                    processRow(pvt, index, firstBookend, lastBookend, true);
-                    it.remove();
-                    if(pointCache.size() == 0)
-                        this.cache.remove(value.getId());
+                    statistics.cacheHit();
+                    processRow(cursor.next(), index, firstBookend, lastBookend, true);
                     return false;
                 }else
                     break; //No more since we are in time order of the query
             }
-            if(pointCache.size() == 0)
-                this.cache.remove(value.getId());
+        }finally {
+            statistics.exit(previous);
         }
         return true;
     }
@@ -197,57 +197,34 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
     }
 
     /**
-     * Sort the cache based on our query info
-     * @param cache
+     * Is the query in descending time order
+     * @return
      */
-    protected void sortCache(List<IdPointValueTime> cache) {
-        Collections.sort(cache,
-                new Comparator<IdPointValueTime>() {
-            // Compare such that data sets are returned in time
-            // descending order
-            // which turns out is opposite of compare to method for
-            // PointValueTime objects
-            @Override
-            public int compare(IdPointValueTime o1,
-                    IdPointValueTime o2) {
-                if (o1.getTime() < o2.getTime())
-                    return 1;
-                if (o1.getTime() > o2.getTime())
-                    return -1;
-                return 0;
-            }
-        });
+    protected boolean isCacheDescending() {
+        return true;
     }
+
     /**
-     * Build the cache based on our Query Info
-     * @param voMap
-     * @param limit
+     * Build the cache cursors based on our Query Info, the cached values are read in place.
+     *
+     * The runtime replaces its cache list on every save and never modifies a list once it is published,
+     * so the list from getCacheCopy() is a consistent snapshot that can be read without holding the
+     * cache's lock. A limit is applied with a view of the newest values rather than getCacheCopy(limit),
+     * which copies them.
      * @return
      */
-    protected Map<Integer, List<IdPointValueTime>> buildCache() {
-        Map<Integer, List<IdPointValueTime>> map = new HashMap<>();
+    protected Map<Integer, PointValueCacheCursor> buildCache() {
+        Map<Integer, PointValueCacheCursor> map = new HashMap<>();
+        boolean descending = isCacheDescending();
         for(Integer id : voMap.keySet()) {
             DataPointRT rt = Common.runtimeManager.getDataPoint(id);
             if(rt != null) {
-                List<PointValueTime> cache;
-                if(info.getLimit() != null)
-                    cache = rt.getCacheCopy(info.getLimit());
-                else
-                    cache = rt.getCacheCopy();
-                List<IdPointValueTime> idPvtCache = new ArrayList<>(cache.size());
-                for(PointValueTime pvt : cache) {
-                    if(includeCachedPoint(pvt)) {
-                        if(pvt instanceof IAnnotated)
-                            idPvtCache.add(new AnnotatedIdPointValueTime(id, pvt.getValue(), pvt.getTime(), ((IAnnotated)pvt).getSourceMessage()));
-                        else
-                            idPvtCache.add(new IdPointValueTime(id, pvt.getValue(), pvt.getTime()));
-                    }
-                }
-
-                if(!idPvtCache.isEmpty()) {
-                    sortCache(idPvtCache);
-                    map.put(id, idPvtCache);
-                }
+                List<PointValueTime> cache = rt.getCacheCopy();
+                if(info.getLimit() != null && info.getLimit() < cache.size())
+                    cache = cache.subList(0, info.getLimit());
+                PointValueCacheCursor cursor = new PointValueCacheCursor(id, cache, descending, this::includeCachedPoint);
+                if(cursor.hasNext())
+                    map.put(id, cursor);
             }
         }
         return map;
@@ -259,18 +236,54 @@ public class MultiPointLatestDatabaseStream <T, INFO extends LatestQueryInfo> ex
      */
     protected void processCacheOnly() throws IOException{
         //Performance enhancement to return data within cache only
-        Iterator<Integer> it = voMap.keySet().iterator();
+        if(info.isSingleArray() && voMap.size() > 1) {
+            mergeCache(0);
+            return;
+        }
         int index = 0;
-        while(it.hasNext()) {
-            List<IdPointValueTime> values = cache.get(it.next());
-            int limitCount = 0;
-            for(IdPointValueTime value : values) {
-                processRow(value, index, false, false, true);
-                index++;
-                limitCount++;
-                if(info.getLimit() != null && limitCount >= info.getLimit())
-                    break;
-            }
+        for(Integer id : voMap.keySet())
+            index = processCursor(cache.get(id), index);
+    }
+
+    /**
+     * Process the values of one point's cache up to the limit
+     * @param cursor - may be null
+     * @param index
+     * @return the next index
+     * @throws IOException
+     */
+    protected int processCursor(PointValueCacheCursor cursor, int index) throws IOException {
+        if(cursor == null)
+            return index;
+        while(cursor.hasNext()) {
+            statistics.cacheHit();
+            processRow(cursor.next(), index, false, false, true);
+            index++;
+            if(info.getLimit() != null && cursor.getReturned() >= info.getLimit())
+                break;
+        }
+        return index;
+    }
+
+    /**
+     * Merge the caches of all points into one stream in the time order of the query
+     * @param index
+     * @return the next index
+     * @throws IOException
+     */
+    protected int mergeCache(int index) throws IOException {
+        PriorityQueue<PointValueCacheCursor> heads = new PriorityQueue<>(Math.max(1, cache.size()), PointValueCacheCursor.STREAM_ORDER);
+        for(PointValueCacheCursor cursor : cache.values())
+            if(cursor.hasNext())
+                heads.add(cursor);
+        while(!heads.isEmpty()) {
+            PointValueCacheCursor cursor = heads.poll();
+            statistics.cacheHit();
+            processRow(cursor.next(), index, false, false, true);
+            index++;
+            if(cursor.hasNext() && (info.getLimit() == null || cursor.getReturned() < info.getLimit()))
+                heads.add(cursor);
         }
+        return index;
     }
 }
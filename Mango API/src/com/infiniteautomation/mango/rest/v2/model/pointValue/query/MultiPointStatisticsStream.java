@@ -4,14 +4,23 @@
 package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueField;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.DataPointStatisticsGenerator;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.HourlyRollupBuilder;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.PointValueRollupStore;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.rollup.RollupAggregate;
 import com.infiniteautomation.mango.statistics.AnalogStatistics;
 import com.infiniteautomation.mango.statistics.StartsAndRuntimeList;
 import com.infiniteautomation.mango.statistics.ValueChangeCounter;
@@ -20,17 +29,33 @@ import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
  * TODO Fix up Map Generics in class definition
  *
+ * When the rollup store is enabled the statistics of a point are assembled from its stored hours and
+ * days, only the values before and after the stored periods are read. The raw values read are used
+ * to store the hours that are missing.
+ *
  * @author Terry Packer
  */
 public class MultiPointStatisticsStream extends MultiPointTimeRangeDatabaseStream<Map<String, Object>, ZonedDateTimeStatisticsQueryInfo> {
 
     private Map<Integer, StatisticsGenerator> statsMap;
+    private final PointValueRollupStore rollupStore;
+    //Builders storing the hours of the raw values read
+    private final Map<Integer, HourlyRollupBuilder> backfills;
+
+    //Range being read before or after the stored periods of a point
+    private boolean readingEdge;
+    private long edgeFrom;
+    private long edgeTo;
+    //Stored periods the edge follows, null for the edge before them
+    private RollupAggregate edgeAfter;
+    private RollupAggregate edge;
 
     /**
      * @param info
@@ -39,8 +64,91 @@ public class MultiPointStatisticsStream extends MultiPointTimeRangeDatabaseStrea
      */
     public MultiPointStatisticsStream(ZonedDateTimeStatisticsQueryInfo info, Map<Integer, DataPointVO> voMap,
             PointValueDao dao) {
+        this(info, voMap, dao, null);
+    }
+
+    /**
+     * @param info
+     * @param voMap
+     * @param dao
+     * @param rollupStore - may be null
+     */
+    public MultiPointStatisticsStream(ZonedDateTimeStatisticsQueryInfo info, Map<Integer, DataPointVO> voMap,
+            PointValueDao dao, PointValueRollupStore rollupStore) {
         super(info, voMap, dao);
         this.statsMap = new HashMap<>(voMap.size());
+        this.rollupStore = rollupStore;
+        this.backfills = new HashMap<>();
+    }
+
+    @Override
+    public void streamData(PointValueTimeWriter writer) throws IOException {
+        if(rollupStore == null || !rollupStore.isEnabled() || info.isUseCache() != PointValueTimeCacheControl.NONE) {
+            super.streamData(writer);
+            return;
+        }
+
+        long from = info.getFromMillis();
+        long to = info.getToMillis();
+        List<Integer> raw = new ArrayList<>();
+        Map<Integer, RollupAggregate> stored = new LinkedHashMap<>();
+        for(DataPointVO vo : voMap.values()) {
+            RollupAggregate covering = rollupStore.getCovering(vo, from, to);
+            //A value exactly at the start of the range is the start value of the statistics, so the stored
+            //period starting with it is read from the database
+            if(covering != null && covering.getPeriodStart() == from && covering.getFirstTime() != null && covering.getFirstTime() == from)
+                covering = rollupStore.getCovering(vo, from + 1, to);
+            if(covering == null)
+                raw.add(vo.getId());
+            else
+                stored.put(vo.getId(), covering);
+            HourlyRollupBuilder backfill = rollupStore.createBackfill(vo, to);
+            if(backfill != null)
+                backfills.put(vo.getId(), backfill);
+        }
+
+        if(!raw.isEmpty())
+            query(callback -> this.dao.wideBookendQuery(raw, from, to, !info.isSingleArray(), info.getLimit(), callback));
+
+        for(Entry<Integer, RollupAggregate> entry : stored.entrySet()) {
+            RollupAggregate aggregate = entry.getValue();
+            RollupAggregate head = readEdge(entry.getKey(), from, aggregate.getPeriodStart(), null);
+            RollupAggregate tail = readEdge(entry.getKey(), aggregate.getPeriodEnd(), to, aggregate);
+            if(head != null) {
+                head.append(aggregate);
+                aggregate = head;
+            }
+            if(tail != null)
+                aggregate.append(tail);
+            writeStatistics(voMap.get(entry.getKey()), aggregate.toGenerator());
+        }
+    }
+
+    /**
+     * Aggregate the values of a point in a range
+     * @param after - stored periods ending at the start of the range, null if the range is before them
+     * @return closed aggregate, null if the range is empty
+     */
+    private RollupAggregate readEdge(int dataPointId, long from, long to, RollupAggregate after) throws IOException {
+        if(from >= to)
+            return null;
+        this.readingEdge = true;
+        this.edgeFrom = from;
+        this.edgeTo = to;
+        this.edgeAfter = after;
+        try {
+            List<Integer> ids = Collections.singletonList(dataPointId);
+            query(callback -> this.dao.wideBookendQuery(ids, from, to, false, null, callback));
+            if(edge == null)
+                edge = RollupAggregate.create(dataPointId, voMap.get(dataPointId).getPointLocator().getDataTypeId(),
+                        from, to, after != null ? after.getCurrentValue() : null);
+            edge.close();
+            return edge;
+        }finally {
+            this.readingEdge = false;
+            this.edgeAfter = null;
+            this.edge = null;
+        }
     }
 
     @Override
@@ -48,6 +156,23 @@ public class MultiPointStatisticsStream extends MultiPointTimeRangeDatabaseStrea
             boolean lastBookend, boolean cached) throws IOException {
 
         final DataPointVO vo = voMap.get(value.getId());
+        HourlyRollupBuilder backfill = backfills.get(value.getId());
+        if(readingEdge) {
+            if(edge == null) {
+                //A value exactly at the start of the edge is not a bookend, at the start of the range it is the
+                //start value as it is for the statistics of the raw values
+                DataValue start = firstBookend || edgeAfter == null ? value.getValue() : edgeAfter.getCurrentValue();
+                edge = RollupAggregate.create(vo.getId(), vo.getPointLocator().getDataTypeId(), edgeFrom, edgeTo, start);
+            }
+            if(lastBookend)
+                edge.close();
+            else if(!firstBookend)
+                edge.add(value.getValue(), value.getTime());
+            backfill(backfill, value, firstBookend, lastBookend, edgeFrom, edgeTo);
+            return;
+        }
+        backfill(backfill, value, firstBookend, lastBookend, info.getFromMillis(), info.getToMillis());
+
         if(info.isUseCache() != PointValueTimeCacheControl.NONE && !cached)
             if(!processValueThroughCache(value, index, firstBookend, lastBookend))
                 return;
@@ -77,42 +202,75 @@ public class MultiPointStatisticsStream extends MultiPointTimeRangeDatabaseStrea
 
         if(lastBookend) {
             generator.done();
-            this.writer.writeStartObject(vo.getXid());
-            DataPointStatisticsGenerator gen = new DataPointStatisticsGenerator(vo, generator);
-
-            //Pre-process the fields
-            boolean rendered = false;
-            Set<PointValueField> fields = new HashSet<>();
-            for(PointValueField field: this.writer.getInfo().getFields()) {
-                if(field == PointValueField.RENDERED) {
-                    rendered = true;
-                }else if(field == PointValueField.ANNOTATION) {
-                    continue;
-                }else {
-                    fields.add(field);
-                }
-            }
+            writeStatistics(vo, generator);
+        }
+    }
 
-            //Remove the Value field we will write it after
-            fields.remove(PointValueField.VALUE);
+    /**
+     * Feed a raw value read from a range to the builder of the point's hours
+     */
+    private void backfill(HourlyRollupBuilder backfill, IdPointValueTime value, boolean firstBookend,
+            boolean lastBookend, long from, long to) {
+        if(backfill == null)
+            return;
+        if(firstBookend)
+            backfill.start(from, value.getValue());
+        else if(lastBookend)
+            backfill.advance(to);
+        else
+            backfill.add(value.getValue(), value.getTime());
+    }
+
+    private void writeStatistics(DataPointVO vo, StatisticsGenerator generator) throws IOException {
+        Phase previous = statistics.enter(Phase.WRITE);
+        try {
+            writeStatisticsObject(vo, generator);
+        }catch(IOException e) {
+            throw disconnected(e);
+        }finally {
+            statistics.exit(previous);
+        }
+        statistics.rowsEmitted(1);
+    }
+
+    private void writeStatisticsObject(DataPointVO vo, StatisticsGenerator generator) throws IOException {
+        this.writer.writeStartObject(vo.getXid());
+        DataPointStatisticsGenerator gen = new DataPointStatisticsGenerator(vo, generator);
 
-            for(PointValueField field: fields) {
-                field.writeValue(gen, info, Common.getTranslations(), false, writer);
+        //Pre-process the fields
+        boolean rendered = false;
+        Set<PointValueField> fields = new HashSet<>();
+        for(PointValueField field: this.writer.getInfo().getFields()) {
+            if(field == PointValueField.RENDERED) {
+                rendered = true;
+            }else if(field == PointValueField.ANNOTATION) {
+                continue;
+            }else {
+                fields.add(field);
             }
-            this.writer.writeAllStatistics(generator, vo, rendered, fields.contains(PointValueField.RAW));
+        }
 
-            this.writer.writeEndObject();
+        //Remove the Value field we will write it after
+        fields.remove(PointValueField.VALUE);
+
+        for(PointValueField field: fields) {
+            field.writeValue(gen, info, Common.getTranslations(), false, writer);
         }
+        this.writer.writeAllStatistics(generator, vo, rendered, fields.contains(PointValueField.RAW));
+
+        this.writer.writeEndObject();
     }
 
     @Override
     public void start(PointValueTimeWriter writer) throws IOException {
         this.writer = writer;
+        statistics.start();
         this.writer.writeStartObject();
     }
 
     @Override
     public void finish(PointValueTimeWriter writer) throws IOException {
         writer.writeEndObject();
+        statistics.stop();
     }
 }
@@ -6,16 +6,11 @@ package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
 import com.serotonin.m2m2.db.dao.PointValueDao;
-import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
-import com.serotonin.m2m2.rt.dataImage.IAnnotated;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
@@ -37,15 +32,20 @@ public class MultiPointTimeRangeDatabaseStream<T, INFO extends ZonedDateTimeRang
     
         //Can we use just the cache?
         if(info.isUseCache() == PointValueTimeCacheControl.CACHE_ONLY) {
-            processCacheOnly();
+            Phase previous = statistics.enter(Phase.CACHE);
+            try {
+                processCacheOnly();
+            }finally {
+                statistics.exit(previous);
+            }
             return;
         }
 
         //Do we need bookends?
         if(info.isBookend())
-            this.dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), this);
+            query(callback -> this.dao.wideBookendQuery(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), callback));
         else
-            this.dao.getPointValuesBetween(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), this);
+            query(callback -> this.dao.getPointValuesBetween(new ArrayList<Integer>(voMap.keySet()), info.getFromMillis(), info.getToMillis(), !info.isSingleArray(), info.getLimit(), callback));
     }
 
     @Override
@@ -69,86 +69,52 @@ public class MultiPointTimeRangeDatabaseStream<T, INFO extends ZonedDateTimeRang
     }
     
     @Override
-    protected boolean processValueThroughCache(IdPointValueTime value, int index, boolean firstBookend, boolean lastBookend) throws IOException {
-        List<IdPointValueTime> pointCache = this.cache.get(value.getId());
-        if(pointCache != null) {
-            ListIterator<IdPointValueTime> it = pointCache.listIterator();
-            while(it.hasNext()) {
-                IdPointValueTime pvt = it.next();
-                if(pvt.getTime() < value.getTime()) {
-                    //Can't be a bookend
-                    processRow(pvt, index, false, false, true);
-                    it.remove();
-                }else if(pvt.getTime() == value.getTime()) {
-                    //Could be a bookend
-                    processRow(pvt, index, firstBookend, lastBookend, true);
-                    it.remove();
-                    if(pointCache.size() == 0) {
-                        this.cache.remove(value.getId());
-                    }
-                    return false;
-                }else
-                    break; //No more since we are in time order of the query
-            }
-            if(pointCache.size() == 0)
-                this.cache.remove(value.getId());
-        }
-        return true;
+    protected boolean isCacheDescending() {
+        return false;
     }
 
     @Override
     protected void processCacheOnly() throws IOException{
-      //Performance enhancement to return data within cache only
-        Iterator<Integer> it = voMap.keySet().iterator();
+        //Performance enhancement to return data within cache only
         int index = 0;
-        while(it.hasNext()) {
-            Integer id = it.next();
-            List<IdPointValueTime> values = cache.get(id);
-            if(values == null || values.size() == 0) {
-                if(info.isBookend()) {
-                    processRow(new IdPointValueTime(id, null, info.getFromMillis()), index++, true, false, true);
-                    processRow(new IdPointValueTime(id, null, info.getToMillis()), index++, false, true, true);
-                }
-            }else { 
-                boolean first = true;
-                int limitCount = 0;
-                for(IdPointValueTime value : values) {
-                    if(first && info.isBookend()) {
-                        //Send out first value as bookend if necessary
-                        if(value.getTime() != info.getFromMillis()) {
-                            //The cache should have been pruned so the value is after the start of the query and thus a null bookend
-                            // is sent
-                            IdPointValueTime bookend = new IdPointValueTime(value.getId(), null, info.getFromMillis());
-                            processRow(bookend, index, true, false, true);
-                            processRow(value, index, false, false, true);
-                        }else
-                            processRow(value, index, false, false, true);
-                        first = false;
-                    }else
-                        processRow(value, index, false, false, true);
-                    index++;
-                    limitCount++;
-                    if(info.getLimit() != null && limitCount >= info.getLimit())
-                        break;
-                }
-                //Send out last value as bookend if necessary
-                if(info.isBookend()) {
-                    IdPointValueTime last = values.get(values.size() - 1);
-                    if(last.getTime() != info.getToMillis()) {
-                        IdPointValueTime bookend;
-                        if(last instanceof IAnnotated)
-                            bookend = new AnnotatedIdPointValueTime(last.getId(), last.getValue(), info.getToMillis(),((IAnnotated)last).getSourceMessage());
-                        else
-                            bookend = new IdPointValueTime(last.getId(), last.getValue(), info.getToMillis());
-                        processRow(bookend, index, false, true, true);
-                    }
-                }
+        if(info.isSingleArray() && voMap.size() > 1) {
+            //All first bookends are at the start of the query, last bookends are collected until the end
+            for(Integer id : voMap.keySet())
+                index = processFirstBookend(id, cache.get(id), index);
+            index = mergeCache(index);
+            for(Integer id : voMap.keySet())
+                index = processLastBookend(id, cache.get(id), index);
+        }else {
+            for(Integer id : voMap.keySet()) {
+                PointValueCacheCursor cursor = cache.get(id);
+                index = processFirstBookend(id, cursor, index);
+                index = processCursor(cursor, index);
+                index = processLastBookend(id, cursor, index);
             }
         }
     }
-    
-    @Override
-    protected void sortCache(List<IdPointValueTime> cache) {
-        Collections.sort(cache);
+
+    /**
+     * Send out a null first bookend if the cache has no value at the start of the query
+     */
+    private int processFirstBookend(Integer id, PointValueCacheCursor cursor, int index) throws IOException {
+        if(info.isBookend() && (cursor == null || cursor.peekTime() != info.getFromMillis()))
+            //The cache should have been pruned so the value is after the start of the query and thus a null bookend
+            // is sent
+            processRow(new IdPointValueTime(id, null, info.getFromMillis()), index++, true, false, true);
+        return index;
+    }
+
+    /**
+     * Send out the last cached value as the last bookend
+     */
+    private int processLastBookend(Integer id, PointValueCacheCursor cursor, int index) throws IOException {
+        if(info.isBookend()) {
+            IdPointValueTime bookend = cursor == null ? null : cursor.last(info.getToMillis());
+            if(bookend == null)
+                bookend = new IdPointValueTime(id, null, info.getToMillis());
+            processRow(bookend, index++, false, true, true);
+        }
+        return index;
     }
 }
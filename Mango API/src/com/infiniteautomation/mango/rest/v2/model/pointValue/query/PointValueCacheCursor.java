@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.IAnnotated;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Read only cursor over the cached values of a data point in the time order of a query.
+ *
+ * The runtime cache is held newest first so it is walked in place forwards for descending
+ * queries and backwards for ascending ones, the list is never modified. Only a list that
+ * is out of order is sorted into a copy. Values are only wrapped with the point id as they
+ * are taken from the cursor.
+ *
+ * @see MultiPointLatestDatabaseStream
+ */
+public class PointValueCacheCursor {
+
+    /**
+     * Orders cursors by the time of their next value, ties by point id
+     */
+    public static final Comparator<PointValueCacheCursor> STREAM_ORDER = (a, b) -> {
+        int result = a.descending ? Long.compare(b.peekTime(), a.peekTime()) : Long.compare(a.peekTime(), b.peekTime());
+        return result != 0 ? result : Integer.compare(a.id, b.id);
+    };
+
+    private final int id;
+    private final List<PointValueTime> values;
+    private final boolean descending;
+    private final Predicate<PointValueTime> include;
+    //Index of the next value and step through the list
+    private int position;
+    private final int step;
+    private int returned;
+
+    /**
+     * @param id - data point id
+     * @param values - snapshot of the cache, not modified
+     * @param descending - return values newest first
+     * @param include - values that fail are skipped
+     */
+    public PointValueCacheCursor(int id, List<PointValueTime> values, boolean descending, Predicate<PointValueTime> include) {
+        this.id = id;
+        this.descending = descending;
+        this.include = include;
+
+        //Walk forwards through a newest first list when the query is descending
+        boolean forwards;
+        if(isOrdered(values, true)) {
+            this.values = values;
+            forwards = descending;
+        }else if(isOrdered(values, false)) {
+            this.values = values;
+            forwards = !descending;
+        }else {
+            List<PointValueTime> sorted = new ArrayList<>(values);
+            Collections.sort(sorted, Collections.reverseOrder());
+            this.values = sorted;
+            forwards = descending;
+        }
+        this.step = forwards ? 1 : -1;
+        this.position = forwards ? 0 : this.values.size() - 1;
+        skipExcluded();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean hasNext() {
+        return position >= 0 && position < values.size();
+    }
+
+    /**
+     * @return time of the next value, only valid if hasNext()
+     */
+    public long peekTime() {
+        return values.get(position).getTime();
+    }
+
+    /**
+     * Does the next value come before a value at this time in the order of the query
+     * @param time
+     * @return
+     */
+    public boolean precedes(long time) {
+        return descending ? peekTime() > time : peekTime() < time;
+    }
+
+    /**
+     * Take the next value
+     * @return
+     */
+    public IdPointValueTime next() {
+        PointValueTime pvt = values.get(position);
+        position += step;
+        returned++;
+        skipExcluded();
+        return wrap(pvt, pvt.getTime());
+    }
+
+    /**
+     * @return the number of values taken from the cursor
+     */
+    public int getReturned() {
+        return returned;
+    }
+
+    /**
+     * Get the last included value in the order of the query, wrapped at a new time
+     * @param time
+     * @return null if no values are included
+     */
+    public IdPointValueTime last(long time) {
+        int start = step > 0 ? values.size() - 1 : 0;
+        for(int i = start; i >= 0 && i < values.size(); i -= step) {
+            PointValueTime pvt = values.get(i);
+            if(include.test(pvt))
+                return wrap(pvt, time);
+        }
+        return null;
+    }
+
+    private IdPointValueTime wrap(PointValueTime pvt, long time) {
+        if(pvt instanceof IAnnotated)
+            return new AnnotatedIdPointValueTime(id, pvt.getValue(), time, ((IAnnotated)pvt).getSourceMessage());
+        else
+            return new IdPointValueTime(id, pvt.getValue(), time);
+    }
+
+    private void skipExcluded() {
+        while(hasNext() && !include.test(values.get(position)))
+            position += step;
+    }
+
+    /**
+     * Check the order of the list, newest first if descending
+     */
+    private static boolean isOrdered(List<PointValueTime> values, boolean descending) {
+        for(int i = 1; i < values.size(); i++) {
+            long previous = values.get(i - 1).getTime();
+            long current = values.get(i).getTime();
+            if(descending ? previous < current : previous > current)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.io.IOException;
+
+/**
+ * Thrown from the callback of a point value query to stop the database from reading any more rows,
+ * the query statement is closed as the exception leaves the dao.
+ *
+ * @see PointValueTimeDatabaseStream#cancel(Reason)
+ */
+public class PointValueQueryCancelledException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /**
+         * The limit of the query was reached, the values written so far are the complete result
+         */
+        LIMIT,
+        /**
+         * The query ran past its deadline
+         */
+        DEADLINE,
+        /**
+         * The client went away, values can no longer be written
+         */
+        DISCONNECTED
+    }
+
+    private final Reason reason;
+
+    public PointValueQueryCancelledException(Reason reason) {
+        super("Point value query cancelled, " + reason);
+        this.reason = reason;
+    }
+
+    public PointValueQueryCancelledException(Reason reason, Throwable cause) {
+        super("Point value query cancelled, " + reason, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Find a cancellation in the cause chain of an exception, the dao may wrap exceptions thrown from the callback
+     * @param t
+     * @return null if the exception was not caused by a cancellation
+     */
+    public static PointValueQueryCancelledException find(Throwable t) {
+        while(t != null) {
+            if(t instanceof PointValueQueryCancelledException)
+                return (PointValueQueryCancelledException)t;
+            if(t.getCause() == t)
+                return null;
+            t = t.getCause();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryCancelledException.Reason;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * System metrics for point value queries, the totals of completed queries and the queries that were
+ * cancelled before the database finished reading them.
+ *
+ * Reclaimed rows are the rows a cancelled query did not have to produce, they are counted for
+ * statistics queries as the rollup periods that were not quantized.
+ *
+ * Queries taking longer than rest.pointValues.slowQueryThreshold ms are logged and the most recent
+ * are kept.
+ */
+public final class PointValueQueryMetrics {
+
+    private static final Log LOG = LogFactory.getLog(PointValueQueryMetrics.class);
+
+    public static final String MONITOR_ID_PREFIX = "com.infiniteautomation.mango.rest.v2.";
+    public static final String CANCELLED_MONITOR_ID_PREFIX = MONITOR_ID_PREFIX + "POINT_VALUE_QUERIES_CANCELLED_";
+    public static final String ROWS_RECLAIMED_MONITOR_ID = MONITOR_ID_PREFIX + "POINT_VALUE_QUERY_ROWS_RECLAIMED";
+
+    private static final String QUERIES = "POINT_VALUE_QUERIES";
+    private static final String SLOW_QUERIES = "POINT_VALUE_QUERIES_SLOW";
+    private static final String ROWS_SCANNED = "POINT_VALUE_QUERY_ROWS_SCANNED";
+    private static final String ROWS_EMITTED = "POINT_VALUE_QUERY_ROWS_EMITTED";
+    private static final String CACHE_HITS = "POINT_VALUE_QUERY_CACHE_HITS";
+    private static final String BYTES_WRITTEN = "POINT_VALUE_QUERY_BYTES_WRITTEN";
+
+    private static final int SLOW_QUERIES_KEPT = 50;
+
+    private static final Map<String, ValueMonitor<Long>> monitors = new HashMap<>();
+    private static final Map<Reason, Long> cancelled = new EnumMap<>(Reason.class);
+    private static long rowsReclaimed;
+    private static final Map<String, Long> totals = new HashMap<>();
+    private static final Deque<PointValueQueryStatisticsModel> slowQueries = new ArrayDeque<>(SLOW_QUERIES_KEPT);
+
+    private PointValueQueryMetrics() { }
+
+    /**
+     * Count a cancelled query
+     * @param reason
+     * @param reclaimedRows - rows the query did not have to produce
+     */
+    public static synchronized void cancelled(Reason reason, long reclaimedRows) {
+        long count = cancelled.getOrDefault(reason, 0L) + 1;
+        cancelled.put(reason, count);
+        monitor("POINT_VALUE_QUERIES_CANCELLED_" + reason).setValue(count);
+
+        if(reclaimedRows > 0) {
+            rowsReclaimed += reclaimedRows;
+            monitor("POINT_VALUE_QUERY_ROWS_RECLAIMED").setValue(rowsReclaimed);
+        }
+    }
+
+    /**
+     * Add a query that completed, whether it succeeded or not, to the totals
+     * @param statistics
+     * @param path - request path and query string
+     * @param requestNanos - nanoseconds from receiving the request to writing the last byte
+     * @param bytesWritten
+     */
+    public static void completed(PointValueQueryStatistics statistics, String path, long requestNanos, long bytesWritten) {
+        long threshold = Common.envProps.getInt("rest.pointValues.slowQueryThreshold", 10000) * 1000000L;
+        PointValueQueryStatisticsModel slow = null;
+        if(threshold > 0 && requestNanos >= threshold) {
+            slow = new PointValueQueryStatisticsModel(statistics, path, requestNanos, bytesWritten);
+            LOG.warn("Slow point value query " + slow);
+        }
+
+        synchronized(PointValueQueryMetrics.class) {
+            add(QUERIES, 1);
+            add(ROWS_SCANNED, statistics.getRowsScanned());
+            add(ROWS_EMITTED, statistics.getRowsEmitted());
+            add(CACHE_HITS, statistics.getCacheHits());
+            add(BYTES_WRITTEN, bytesWritten);
+            if(slow != null) {
+                add(SLOW_QUERIES, 1);
+                if(slowQueries.size() >= SLOW_QUERIES_KEPT)
+                    slowQueries.removeLast();
+                slowQueries.addFirst(slow);
+            }
+        }
+    }
+
+    private static void add(String name, long amount) {
+        long total = totals.getOrDefault(name, 0L) + amount;
+        totals.put(name, total);
+        monitor(name).setValue(total);
+    }
+
+    private static ValueMonitor<Long> monitor(String name) {
+        return monitors.computeIfAbsent(name, n -> Common.MONITORED_VALUES.<Long>create(MONITOR_ID_PREFIX + n)
+                .name(new TranslatableMessage("internal.monitor." + n))
+                .value(0L)
+                .build());
+    }
+
+    public static synchronized long getCancelled(Reason reason) {
+        return cancelled.getOrDefault(reason, 0L);
+    }
+
+    public static synchronized long getRowsReclaimed() {
+        return rowsReclaimed;
+    }
+
+    /**
+     * @return the most recent slow queries, newest first
+     */
+    public static synchronized List<PointValueQueryStatisticsModel> getSlowQueries() {
+        return new ArrayList<>(slowQueries);
+    }
+}
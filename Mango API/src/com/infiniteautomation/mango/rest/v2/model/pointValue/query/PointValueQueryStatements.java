@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Tracks the JDBC statements a point value query executes so they can be cancelled from another thread,
+ * a statement blocked in the database does not call back for rows so it can't see the cancellation itself.
+ *
+ * The SQL point value dao gets its connections through Spring's DataSourceUtils, while the query runs a
+ * connection that records its statements is bound to the Mango data source as the connection of the thread.
+ * The real connection is only taken from the pool if the dao uses it. Queries already running in a
+ * transaction and daos that don't use the data source are not tracked.
+ */
+final class PointValueQueryStatements {
+
+    private static final Log LOG = LogFactory.getLog(PointValueQueryStatements.class);
+
+    private final Set<Statement> open = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    @FunctionalInterface
+    interface Query {
+        void run() throws IOException;
+    }
+
+    /**
+     * Run a query on this thread recording the statements it executes
+     * @param query
+     * @throws IOException
+     */
+    void run(Query query) throws IOException {
+        DataSource dataSource = Common.databaseProxy.getDataSource();
+        if(dataSource == null || TransactionSynchronizationManager.hasResource(dataSource)) {
+            query.run();
+            return;
+        }
+        RecordingConnection recording = new RecordingConnection(dataSource);
+        TransactionSynchronizationManager.bindResource(dataSource, new ConnectionHolder(recording.proxy));
+        try {
+            query.run();
+        }finally {
+            TransactionSynchronizationManager.unbindResource(dataSource);
+            open.clear();
+            JdbcUtils.closeConnection(recording.target);
+        }
+    }
+
+    /**
+     * Cancel the statements being executed, the query can't use the connection after this. Safe to call from any thread.
+     */
+    void cancel() {
+        cancelled = true;
+        for(Statement statement : open)
+            cancel(statement);
+    }
+
+    private void cancel(Statement statement) {
+        try {
+            statement.cancel();
+        }catch(SQLException e) {
+            //Already closed or the driver can't cancel, the query stops at its next row
+            LOG.debug("Failed to cancel point value query statement", e);
+        }
+    }
+
+    /**
+     * Connection that takes the real connection from the pool when first used and records
+     * the statements created from it
+     */
+    private final class RecordingConnection {
+        final DataSource dataSource;
+        final Connection proxy;
+        Connection target;
+
+        RecordingConnection(DataSource dataSource) {
+            this.dataSource = dataSource;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (p, method, args) -> invoke(method, args));
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            switch(method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Point value query connection " + target;
+                case "close":
+                    //Closed after the query
+                    return null;
+                case "isClosed":
+                    if(target == null)
+                        return false;
+                    break;
+                default:
+                    break;
+            }
+            if(cancelled)
+                throw new SQLException("Point value query cancelled");
+            if(target == null)
+                target = dataSource.getConnection();
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            }catch(InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if(result instanceof Statement)
+                open.add((Statement) result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Figures for one point value query, where its time went and how many values it read and wrote.
+ *
+ * The time of the thread that starts the query is split into phases, time is counted for one phase at
+ * a time so a phase entered from another excludes its time from the outer one. Phases entered from
+ * other threads are not timed, partitions quantized on a pool only add to the counts.
+ *
+ * The statistics of a query answered over http are stored as a request attribute and written to the
+ * Server-Timing header and the point value query metrics by the PointValueQueryStatisticsFilter.
+ */
+public class PointValueQueryStatistics {
+
+    public static final String REQUEST_ATTRIBUTE = PointValueQueryStatistics.class.getName();
+
+    public enum Phase {
+        DATABASE("db"),
+        CACHE("cache"),
+        QUANTIZE("quantize"),
+        RENDER("render"),
+        WRITE("write");
+
+        private final String metricName;
+
+        private Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        /**
+         * @return name of the Server-Timing metric
+         */
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private final LatestQueryInfo info;
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder rowsEmitted = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+    private Thread owner;
+    //Phase being timed, rows are processed in the quantize phase unless another is entered
+    private Phase phase;
+    private long phaseStart;
+    private long startNanos;
+    private long stopNanos;
+
+    public PointValueQueryStatistics(LatestQueryInfo info) {
+        this.info = info;
+    }
+
+    /**
+     * Start timing the query on the calling thread and make the statistics available to the request
+     * being served, if any. Only the first call has any effect.
+     */
+    public void start() {
+        if(owner != null)
+            return;
+        owner = Thread.currentThread();
+        phase = Phase.QUANTIZE;
+        phaseStart = startNanos = System.nanoTime();
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if(attributes != null)
+            attributes.setAttribute(REQUEST_ATTRIBUTE, this, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Stop timing, the current phase is ended
+     */
+    public void stop() {
+        if(Thread.currentThread() != owner || stopNanos != 0)
+            return;
+        enter(phase);
+        stopNanos = phaseStart;
+    }
+
+    /**
+     * Time a phase until exit is called
+     * @param next
+     * @return the phase to pass to exit, null if this thread isn't timed
+     */
+    public Phase enter(Phase next) {
+        if(Thread.currentThread() != owner || stopNanos != 0)
+            return null;
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        phaseStart = now;
+        Phase previous = phase;
+        phase = next;
+        return previous;
+    }
+
+    /**
+     * Go back to timing the phase before enter was called
+     * @param previous - returned by enter
+     */
+    public void exit(Phase previous) {
+        if(previous != null)
+            enter(previous);
+    }
+
+    public void rowScanned() {
+        rowsScanned.increment();
+    }
+
+    public void rowsEmitted(int count) {
+        rowsEmitted.add(count);
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public LatestQueryInfo getInfo() {
+        return info;
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    public long getRowsEmitted() {
+        return rowsEmitted.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @param phase
+     * @return nanoseconds spent in a phase, the running phase is included up to now
+     */
+    public long getNanos(Phase phase) {
+        long nanos = phaseNanos[phase.ordinal()];
+        if(phase == this.phase && owner != null && stopNanos == 0)
+            nanos += System.nanoTime() - phaseStart;
+        return nanos;
+    }
+
+    /**
+     * @return nanoseconds from start to stop or now, 0 if not started
+     */
+    public long getNanos() {
+        if(owner == null)
+            return 0;
+        return (stopNanos != 0 ? stopNanos : System.nanoTime()) - startNanos;
+    }
+
+    /**
+     * @return System.nanoTime() when the query started, 0 if not started
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Format as the value of a Server-Timing header
+     * @param requestNanos - nanoseconds since the request was received
+     * @return
+     */
+    public String toServerTiming(long requestNanos) {
+        StringBuilder builder = new StringBuilder();
+        if(owner != null)
+            appendDuration(builder, "plan", requestNanos - (System.nanoTime() - startNanos));
+        for(Phase phase : Phase.values())
+            appendDuration(builder, phase.getMetricName(), getNanos(phase));
+        appendDuration(builder, "total", requestNanos);
+        builder.append(", rows;desc=\"scanned=").append(getRowsScanned())
+        .append(" emitted=").append(getRowsEmitted())
+        .append(" cached=").append(getCacheHits()).append('"');
+        return builder.toString();
+    }
+
+    private static void appendDuration(StringBuilder builder, String name, long nanos) {
+        if(builder.length() > 0)
+            builder.append(", ");
+        builder.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", Math.max(0, nanos) / 1000000d));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
+
+/**
+ * Figures of a completed point value query, times are in ms
+ */
+public class PointValueQueryStatisticsModel {
+
+    private long time;
+    private String path;
+    private String query;
+    private double duration;
+    private Map<String, Double> phases;
+    private long rowsScanned;
+    private long rowsEmitted;
+    private long cacheHits;
+    private long bytesWritten;
+
+    public PointValueQueryStatisticsModel() { }
+
+    /**
+     * @param statistics
+     * @param path - request path and query string
+     * @param requestNanos - nanoseconds from receiving the request to writing the last byte
+     * @param bytesWritten
+     */
+    public PointValueQueryStatisticsModel(PointValueQueryStatistics statistics, String path, long requestNanos, long bytesWritten) {
+        this.time = System.currentTimeMillis();
+        this.path = path;
+        this.query = String.valueOf(statistics.getInfo());
+        this.duration = requestNanos / 1000000d;
+        this.phases = new LinkedHashMap<>();
+        for(Phase phase : Phase.values())
+            phases.put(phase.getMetricName(), statistics.getNanos(phase) / 1000000d);
+        this.rowsScanned = statistics.getRowsScanned();
+        this.rowsEmitted = statistics.getRowsEmitted();
+        this.cacheHits = statistics.getCacheHits();
+        this.bytesWritten = bytesWritten;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    public Map<String, Double> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(Map<String, Double> phases) {
+        this.phases = phases;
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    public void setRowsScanned(long rowsScanned) {
+        this.rowsScanned = rowsScanned;
+    }
+
+    public long getRowsEmitted() {
+        return rowsEmitted;
+    }
+
+    public void setRowsEmitted(long rowsEmitted) {
+        this.rowsEmitted = rowsEmitted;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public void setCacheHits(long cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void setBytesWritten(long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    @Override
+    public String toString() {
+        return path + " took " + duration + "ms " + phases + ", rows scanned " + rowsScanned + ", rows emitted "
+                + rowsEmitted + ", cache hits " + cacheHits + ", bytes written " + bytesWritten + ", " + query;
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
+
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.unit.Unit;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.util.UnitUtil;
+import com.serotonin.m2m2.view.text.AnalogRenderer;
+import com.serotonin.m2m2.view.text.TextRenderer;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Renders the values of one query, the text renderer of each point is compiled the first time one of its
+ * values is rendered.
+ *
+ * Binary and multistate renderings are kept per state. Numeric values of points with an analog renderer
+ * are formatted by one DecimalFormat per point into a buffer that is reused for every value, with the
+ * format and suffix of the renderer and the conversion from the unit of the point to its rendered unit.
+ * All other renderers are used as they are.
+ *
+ * Not thread safe, the text returned is only valid until the next value is rendered.
+ */
+public class PointValueRendererCache {
+
+    //Renderers per data point id, the last one used is kept out of the map
+    private final Map<Integer, CompiledRenderer> renderers = new HashMap<>();
+    private DataPointVO lastVo;
+    private CompiledRenderer last;
+
+    private final StringBuffer buffer = new StringBuffer(32);
+    private final FieldPosition position = new FieldPosition(0);
+
+    /**
+     * @param vo
+     * @param value - not null
+     * @return rendered text
+     */
+    public CharSequence render(DataPointVO vo, DataValue value) {
+        return get(vo).render(value);
+    }
+
+    /**
+     * Render a numeric value of a point
+     * @param vo
+     * @param value
+     * @return rendered text
+     */
+    public CharSequence render(DataPointVO vo, double value) {
+        return get(vo).render(value);
+    }
+
+    private CompiledRenderer get(DataPointVO vo) {
+        if(vo == lastVo)
+            return last;
+        CompiledRenderer renderer = renderers.get(vo.getId());
+        if(renderer == null) {
+            renderer = compile(vo);
+            renderers.put(vo.getId(), renderer);
+        }
+        lastVo = vo;
+        last = renderer;
+        return renderer;
+    }
+
+    private CompiledRenderer compile(DataPointVO vo) {
+        TextRenderer textRenderer = vo.getTextRenderer();
+        switch(vo.getPointLocator().getDataTypeId()) {
+            case DataTypes.BINARY:
+            case DataTypes.MULTISTATE:
+                return new StateRenderer(textRenderer);
+            case DataTypes.NUMERIC:
+                CompiledRenderer renderer = null;
+                if(textRenderer instanceof AnalogRenderer)
+                    renderer = compileAnalog(vo, (AnalogRenderer)textRenderer);
+                return renderer != null ? renderer : new CompiledRenderer(textRenderer);
+            default:
+                return new CompiledRenderer(textRenderer);
+        }
+    }
+
+    /**
+     * Compile from the properties the renderer formats with, the units are those of the point
+     * @return the compiled renderer, null if the renderer can't format with its properties either
+     */
+    private CompiledRenderer compileAnalog(DataPointVO vo, AnalogRenderer textRenderer) {
+        DecimalFormat format;
+        try {
+            format = new DecimalFormat(textRenderer.getFormat());
+        }catch(RuntimeException e) {
+            return null;
+        }
+
+        Unit<?> unit = vo.getUnit() != null ? vo.getUnit() : Unit.ONE;
+        Unit<?> renderedUnit = vo.getRenderedUnit() != null ? vo.getRenderedUnit() : Unit.ONE;
+        UnitConverter converter = null;
+        if(!unit.equals(renderedUnit)) {
+            try {
+                converter = unit.getConverterTo(renderedUnit);
+            }catch(RuntimeException e) {
+                return null;
+            }
+        }
+
+        String suffix;
+        if(textRenderer.isUseUnitAsSuffix())
+            suffix = " " + UnitUtil.formatLocal(renderedUnit);
+        else
+            suffix = textRenderer.getSuffix() != null ? textRenderer.getSuffix() : "";
+        return new AnalogCompiledRenderer(textRenderer, format, converter, suffix);
+    }
+
+    /**
+     * Renders with the text renderer of the point
+     */
+    private static class CompiledRenderer {
+        protected final TextRenderer textRenderer;
+
+        CompiledRenderer(TextRenderer textRenderer) {
+            this.textRenderer = textRenderer;
+        }
+
+        CharSequence render(DataValue value) {
+            return textRenderer.getText(value, TextRenderer.HINT_FULL);
+        }
+
+        CharSequence render(double value) {
+            return textRenderer.getText(value, TextRenderer.HINT_FULL);
+        }
+    }
+
+    /**
+     * Keeps the text of every binary or multistate state rendered
+     */
+    private static class StateRenderer extends CompiledRenderer {
+        private final Map<Integer, String> states = new HashMap<>();
+
+        StateRenderer(TextRenderer textRenderer) {
+            super(textRenderer);
+        }
+
+        @Override
+        CharSequence render(DataValue value) {
+            int state;
+            switch(value.getDataType()) {
+                case DataTypes.BINARY:
+                    state = value.getBooleanValue() ? 1 : 0;
+                    break;
+                case DataTypes.MULTISTATE:
+                    state = value.getIntegerValue();
+                    break;
+                default:
+                    return super.render(value);
+            }
+            String text = states.get(state);
+            if(text == null) {
+                text = textRenderer.getText(value, TextRenderer.HINT_FULL);
+                states.put(state, text);
+            }
+            return text;
+        }
+    }
+
+    /**
+     * Formats into the shared buffer
+     */
+    private class AnalogCompiledRenderer extends CompiledRenderer {
+        private final DecimalFormat format;
+        private final UnitConverter converter;
+        private final String suffix;
+
+        AnalogCompiledRenderer(TextRenderer textRenderer, DecimalFormat format, UnitConverter converter, String suffix) {
+            super(textRenderer);
+            this.format = format;
+            this.converter = converter;
+            this.suffix = suffix;
+        }
+
+        @Override
+        CharSequence render(DataValue value) {
+            if(value.getDataType() == DataTypes.NUMERIC)
+                return render(value.getDoubleValue());
+            return super.render(value);
+        }
+
+        @Override
+        CharSequence render(double value) {
+            if(Double.isNaN(value) || Double.isInfinite(value))
+                return super.render(value);
+            buffer.setLength(0);
+            format.format(converter == null ? value : converter.convert(value), buffer, position);
+            buffer.append(suffix);
+            return buffer;
+        }
+    }
+}
@@ -5,33 +5,364 @@
 package com.infiniteautomation.mango.rest.v2.model.pointValue.query;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.infiniteautomation.mango.db.query.BookendQueryCallback;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.DataPointValueTime;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeWriter;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryCancelledException.Reason;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics.Phase;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 /**
+ * Queries are run through {@link #query(PointValueQuery)} with a callback that checks for cancellation
+ * before each row is processed. A query is cancelled when the client goes away, when it runs past its
+ * deadline and when it can't write any more values because the limit was reached. A query cancelled from
+ * another thread, by its deadline or a parent stream, also has its JDBC statements cancelled so a
+ * statement still executing in the database stops.
+ *
+ * Only a failed write to the response means the client has gone away. Any other failure, and a query
+ * past its deadline, leaves an error marker in the values already written so the response can't be
+ * mistaken for a complete one.
+ *
+ * The rows read, values written and the time spent in the database, processing and writing are
+ * recorded in the query's {@link PointValueQueryStatistics}.
  *
  * @author Terry Packer
  */
 public abstract class PointValueTimeDatabaseStream<T, INFO extends LatestQueryInfo> extends PointValueTimeQueryStream<T, INFO> implements BookendQueryCallback<IdPointValueTime>{
-    
 
-    
+    //Rows between checks of the deadline
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
     protected PointValueDao dao;
     protected PointValueTimeWriter writer;
-    
+    protected final PointValueQueryStatistics statistics;
+
+    //Callback to pass to the dao in place of this stream
+    protected final BookendQueryCallback<IdPointValueTime> callback;
+    private volatile Reason cancelled;
+    //Time the query must be done by
+    private long deadline = Long.MAX_VALUE;
+    private int rowsUntilDeadlineCheck;
+    private volatile boolean querying;
+    private volatile Thread queryThread;
+    private final PointValueQueryStatements statements = new PointValueQueryStatements();
+    //Stream this one is part of, cancelling it cancels this one
+    private PointValueTimeDatabaseStream<?, ?> parent;
+    //Streams that are part of this one and querying
+    private final Set<PointValueTimeDatabaseStream<?, ?>> children = ConcurrentHashMap.newKeySet();
+
     public PointValueTimeDatabaseStream(INFO info, Map<Integer, DataPointVO> voMap, PointValueDao dao) {
         super(info, voMap);
         this.dao = dao;
+        this.callback = new CancellableCallback();
+        this.statistics = info.getStatistics();
     }
-    
+
     @Override
     public void start(PointValueTimeWriter writer) throws IOException {
         this.writer = writer;
+        if(parent == null) {
+            statistics.start();
+            long timeout = info.getTimeout() != null ? info.getTimeout() : Common.envProps.getInt("rest.pointValues.queryTimeout", 0);
+            if(timeout > 0)
+                deadline = Common.timer.currentTimeMillis() + timeout;
+        }
         super.start(writer);
     }
+
+    @Override
+    public void finish(PointValueTimeWriter writer) throws IOException {
+        super.finish(writer);
+        if(parent == null)
+            statistics.stop();
+    }
+
+    /**
+     * Cancel the query, it stops at the next row. Safe to call from any thread.
+     * @param reason
+     */
+    public void cancel(Reason reason) {
+        if(cancelled == null)
+            cancelled = reason;
+        //The query thread sees the cancellation at its next row, other threads stop a statement blocked in the database
+        if(querying && Thread.currentThread() != queryThread)
+            statements.cancel();
+        for(PointValueTimeDatabaseStream<?, ?> child : children)
+            child.cancel(reason);
+    }
+
+    /**
+     * @return why the query was cancelled, null if it wasn't
+     */
+    public Reason getCancelReason() {
+        Reason reason = cancelled;
+        if(reason == null && parent != null)
+            reason = parent.getCancelReason();
+        return reason;
+    }
+
+    /**
+     * Run a query with the callback, a query cancelled because the limit was reached completes normally
+     * @param query
+     * @throws IOException - PointValueQueryCancelledException if the query was cancelled for any other reason
+     */
+    protected void query(PointValueQuery query) throws IOException {
+        queryThread = Thread.currentThread();
+        querying = true;
+        if(parent != null)
+            parent.children.add(this);
+        TimeoutTask deadlineTask = parent == null ? scheduleDeadline() : null;
+        Phase previous = statistics.enter(Phase.DATABASE);
+        try {
+            //The parent may have been cancelled before this was added to its children
+            if(parent != null && parent.getCancelReason() != null)
+                throw new PointValueQueryCancelledException(parent.getCancelReason());
+            statements.run(() -> query.run(callback));
+        }catch(IOException | RuntimeException e) {
+            PointValueQueryCancelledException cancellation = PointValueQueryCancelledException.find(e);
+            //A statement cancelled from another thread fails in the dao
+            Reason reason = getCancelReason();
+            if(cancellation == null && reason != null)
+                cancellation = new PointValueQueryCancelledException(reason, e);
+            if(cancellation == null) {
+                failed(e, new TranslatableMessage("rest.pointValues.queryFailed"));
+                throw e;
+            }
+            if(parent == null)
+                PointValueQueryMetrics.cancelled(cancellation.getReason(), getReclaimedRows());
+            if(cancellation.getReason() == Reason.DEADLINE)
+                failed(cancellation, new TranslatableMessage("rest.pointValues.queryDeadline"));
+            if(cancellation.getReason() != Reason.LIMIT)
+                throw cancellation;
+        }finally {
+            if(deadlineTask != null)
+                deadlineTask.cancel();
+            if(parent != null)
+                parent.children.remove(this);
+            statistics.exit(previous);
+            querying = false;
+            queryThread = null;
+        }
+    }
+
+    /**
+     * Cancel the query at its deadline even if the database has not returned a row
+     * @return null if the query has no deadline
+     */
+    private TimeoutTask scheduleDeadline() {
+        if(deadline == Long.MAX_VALUE)
+            return null;
+        return new TimeoutTask(new Date(deadline), new TimeoutClient() {
+            @Override
+            public void scheduleTimeout(long fireTime) {
+                cancel(Reason.DEADLINE);
+            }
+
+            @Override
+            public String getThreadName() {
+                return "Point value query deadline";
+            }
+        });
+    }
+
+    /**
+     * Mark the values written so far as incomplete, the client is still there to read them
+     * @param e
+     * @param message
+     */
+    private void failed(Exception e, TranslatableMessage message) {
+        if(parent != null || writer == null)
+            return;
+        try {
+            writer.writeError(message);
+        }catch(IOException | RuntimeException suppressed) {
+            e.addSuppressed(suppressed);
+        }
+    }
+
+    /**
+     * A write to the response failed, the client has gone away so the query is cancelled. Errors generating
+     * the output are not from the client and are returned as they are.
+     * @param e
+     * @return the exception to throw
+     */
+    protected IOException disconnected(IOException e) {
+        if(e instanceof PointValueQueryCancelledException || e instanceof JsonProcessingException)
+            return e;
+        cancel(Reason.DISCONNECTED);
+        return new PointValueQueryCancelledException(Reason.DISCONNECTED, e);
+    }
+
+    /**
+     * Write one value to the response
+     * @param value
+     * @throws IOException
+     */
+    protected void writeDataPointValue(DataPointValueTime value) throws IOException {
+        Phase previous = statistics.enter(Phase.WRITE);
+        try {
+            writer.writeDataPointValue(value);
+        }catch(IOException e) {
+            throw disconnected(e);
+        }finally {
+            statistics.exit(previous);
+        }
+        if(parent == null)
+            statistics.rowsEmitted(1);
+    }
+
+    /**
+     * Write the values of several points at the same time to the response
+     * @param values
+     * @param timestamp
+     * @throws IOException
+     */
+    protected void writeDataPointValues(List<DataPointValueTime> values, long timestamp) throws IOException {
+        Phase previous = statistics.enter(Phase.WRITE);
+        try {
+            writer.writeDataPointValues(values, timestamp);
+        }catch(IOException e) {
+            throw disconnected(e);
+        }finally {
+            statistics.exit(previous);
+        }
+        if(parent == null)
+            statistics.rowsEmitted(values.size());
+    }
+
+    /**
+     * Start the array of a point in a multiple array response
+     * @param xid
+     * @throws IOException
+     */
+    protected void writeStartArray(String xid) throws IOException {
+        try {
+            writer.writeStartArray(xid);
+        }catch(IOException e) {
+            throw disconnected(e);
+        }
+    }
+
+    /**
+     * End the array of a point in a multiple array response
+     * @throws IOException
+     */
+    protected void writeEndArray() throws IOException {
+        try {
+            writer.writeEndArray();
+        }catch(IOException e) {
+            throw disconnected(e);
+        }
+    }
+
+    /**
+     * Called when a value is not written because the limit was reached and no later value can be written
+     * either, the running query is cancelled.
+     * @throws IOException
+     */
+    protected void limitReached() throws IOException {
+        if(querying) {
+            cancel(Reason.LIMIT);
+            throw new PointValueQueryCancelledException(Reason.LIMIT);
+        }
+    }
+
+    /**
+     * Estimate the rows a cancelled query did not have to produce, override as necessary
+     * @return
+     */
+    protected long getReclaimedRows() {
+        return 0;
+    }
+
+    /**
+     * Make this stream part of another, it is cancelled with the other stream and shares its deadline.
+     * Must be called before start.
+     * @param parent
+     */
+    protected void setParent(PointValueTimeDatabaseStream<?, ?> parent) {
+        this.parent = parent;
+        this.deadline = parent.deadline;
+    }
+
+    /**
+     * Throw if the query was cancelled or is past its deadline
+     * @throws PointValueQueryCancelledException
+     */
+    protected void checkCancelled() throws PointValueQueryCancelledException {
+        Reason reason = getCancelReason();
+        if(reason != null)
+            throw new PointValueQueryCancelledException(reason);
+        if(deadline != Long.MAX_VALUE && --rowsUntilDeadlineCheck <= 0) {
+            rowsUntilDeadlineCheck = DEADLINE_CHECK_INTERVAL;
+            if(Common.timer.currentTimeMillis() >= deadline) {
+                cancel(Reason.DEADLINE);
+                throw new PointValueQueryCancelledException(Reason.DEADLINE);
+            }
+        }
+    }
+
+    /**
+     * A query of the dao
+     */
+    @FunctionalInterface
+    protected interface PointValueQuery {
+        void run(BookendQueryCallback<IdPointValueTime> callback) throws IOException;
+    }
+
+    /**
+     * Checks for cancellation before passing each row to the stream. Time in the stream is not counted
+     * as database time.
+     */
+    private final class CancellableCallback implements BookendQueryCallback<IdPointValueTime> {
+
+        @Override
+        public void firstValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
+            checkCancelled();
+            statistics.rowScanned();
+            Phase previous = statistics.enter(Phase.QUANTIZE);
+            try {
+                PointValueTimeDatabaseStream.this.firstValue(value, index, bookend);
+            }finally {
+                statistics.exit(previous);
+            }
+        }
+
+        @Override
+        public void row(IdPointValueTime value, int index) throws IOException {
+            checkCancelled();
+            statistics.rowScanned();
+            Phase previous = statistics.enter(Phase.QUANTIZE);
+            try {
+                PointValueTimeDatabaseStream.this.row(value, index);
+            }finally {
+                statistics.exit(previous);
+            }
+        }
+
+        @Override
+        public void lastValue(IdPointValueTime value, int index, boolean bookend) throws IOException {
+            checkCancelled();
+            statistics.rowScanned();
+            Phase previous = statistics.enter(Phase.QUANTIZE);
+            try {
+                PointValueTimeDatabaseStream.this.lastValue(value, index, bookend);
+            }finally {
+                statistics.exit(previous);
+            }
+        }
+    }
 }
@@ -64,7 +64,9 @@ public class XidLatestQueryInfoModel extends XidQueryInfoModel{
      * @throws ValidationFailedRestException
      */
     public  LatestQueryInfo createLatestQueryInfo(boolean multiplePointsPerArray, boolean singleArray) throws ValidationFailedRestException {
-        return new LatestQueryInfo(before, dateTimeFormat, timezone, limit, multiplePointsPerArray, singleArray, 
+        LatestQueryInfo info = new LatestQueryInfo(before, dateTimeFormat, timezone, limit, multiplePointsPerArray, singleArray, 
                 useCache, simplifyTolerance, simplifyTarget, fields);
+        info.setTimeout(timeout);
+        return info;
     }
 }
@@ -19,6 +19,7 @@ public abstract class XidQueryInfoModel {
     protected Double simplifyTolerance;
     protected Integer simplifyTarget;
     protected PointValueField[] fields;
+    protected Long timeout;
     
     public XidQueryInfoModel() { }
 
@@ -126,5 +127,17 @@ public abstract class XidQueryInfoModel {
     public void setFields(PointValueField[] fields) {
         this.fields = fields;
     }
+    /**
+     * @return the ms the query may run for
+     */
+    public Long getTimeout() {
+        return timeout;
+    }
+    /**
+     * @param timeout the timeout to set
+     */
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
     
 }
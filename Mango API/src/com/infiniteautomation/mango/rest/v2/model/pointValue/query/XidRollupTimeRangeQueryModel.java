@@ -22,6 +22,7 @@ public class XidRollupTimeRangeQueryModel extends XidQueryInfoModel{
     protected ZonedDateTime to;
     protected TimePeriod timePeriod;
     protected boolean truncate;
+    protected Integer parallelism;
 
     public XidRollupTimeRangeQueryModel() {
 
@@ -92,6 +93,20 @@ public class XidRollupTimeRangeQueryModel extends XidQueryInfoModel{
         this.truncate = truncate;
     }
 
+    /**
+     * @return the number of threads to quantize multiple arrays with
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism the parallelism to set
+     */
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
     /**
      *
      * @param multiplePointsPerArray
@@ -102,8 +117,12 @@ public class XidRollupTimeRangeQueryModel extends XidQueryInfoModel{
      */
     public ZonedDateTimeRangeQueryInfo createZonedDateTimeRangeQueryInfo(boolean multiplePointsPerArray,
             boolean singleArray, RollupEnum rollup) throws ValidationFailedRestException {
-        return new ZonedDateTimeRangeQueryInfo(from, to, dateTimeFormat, timezone,
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(from, to, dateTimeFormat, timezone,
                 rollup, timePeriod, limit, true, multiplePointsPerArray, singleArray,
                 PointValueTimeCacheControl.NONE, null, null, truncate, fields);
+        if(parallelism != null)
+            info.setParallelism(parallelism);
+        info.setTimeout(timeout);
+        return info;
     };
 }
@@ -104,9 +104,11 @@ public class XidTimeRangeQueryModel extends XidQueryInfoModel{
      */
     public ZonedDateTimeRangeQueryInfo createZonedDateTimeRangeQueryInfo(boolean multiplePointsPerArray,
             boolean singleArray) throws ValidationFailedRestException {
-        return new ZonedDateTimeRangeQueryInfo(from, to, dateTimeFormat, timezone,
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(from, to, dateTimeFormat, timezone,
                 RollupEnum.NONE, null, limit, bookend, multiplePointsPerArray,
                 singleArray, useCache, simplifyTolerance, simplifyTarget, false, fields);
+        info.setTimeout(timeout);
+        return info;
     };
 
 }
@@ -28,6 +28,7 @@ public class ZonedDateTimeRangeQueryInfo extends LatestQueryInfo {
     protected final RollupEnum rollup;
     protected final TimePeriod timePeriod;
     protected final boolean bookend; //Do we want virtual values at the to/from time if they don't already exist?
+    protected int parallelism = 1; //Number of threads to quantize the points of multiple array statistics with
 
 
     /**
@@ -126,4 +127,26 @@ public class ZonedDateTimeRangeQueryInfo extends LatestQueryInfo {
     public boolean isBookend() {
         return bookend;
     }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads to quantize the points of multiple array statistics queries with,
+     * limited by rest.statistics.maxParallelism
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1)
+            throw new BadRequestException(new TranslatableMessage("rest.validate.parallelism.invalid"));
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    protected String toStringFields() {
+        return ", to=" + to + ", rollup=" + rollup
+                + ", timePeriod=" + (timePeriod == null ? null : timePeriod.getPeriods() + " " + timePeriod.getType())
+                + ", bookend=" + bookend + ", parallelism=" + parallelism;
+    }
 }
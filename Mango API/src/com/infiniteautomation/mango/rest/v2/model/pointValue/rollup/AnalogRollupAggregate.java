@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+
+/**
+ * Aggregate of numeric values, presented as AnalogStatistics. As in AnalogStatistics the start value
+ * counts towards the minimum and maximum at the start of the period, the average is weighted by the time
+ * each value is in effect and the integral is in value seconds.
+ */
+public class AnalogRollupAggregate extends RollupAggregate {
+
+    private Double minimumValue;
+    private Long minimumTime;
+    private Double maximumValue;
+    private Long maximumTime;
+    private double sum;
+    //Value ms, divided by the ms covered for the average
+    private double weighted;
+    //Value seconds
+    private double integral;
+
+    public AnalogRollupAggregate(int dataPointId, long periodStart, long periodEnd, DataValue startValue) {
+        super(dataPointId, periodStart, periodEnd, startValue);
+        if(startValue != null) {
+            minimumValue = maximumValue = startValue.getDoubleValue();
+            minimumTime = maximumTime = periodStart;
+        }
+    }
+
+    private AnalogRollupAggregate(AnalogRollupAggregate copy) {
+        super(copy);
+        this.minimumValue = copy.minimumValue;
+        this.minimumTime = copy.minimumTime;
+        this.maximumValue = copy.maximumValue;
+        this.maximumTime = copy.maximumTime;
+        this.sum = copy.sum;
+        this.weighted = copy.weighted;
+        this.integral = copy.integral;
+    }
+
+    @Override
+    protected void valueAdded(DataValue value, long time) {
+        double d = value.getDoubleValue();
+        sum += d;
+        if(minimumValue == null || d < minimumValue) {
+            minimumValue = d;
+            minimumTime = time;
+        }
+        if(maximumValue == null || d > maximumValue) {
+            maximumValue = d;
+            maximumTime = time;
+        }
+    }
+
+    @Override
+    protected void accumulate(DataValue value, long duration) {
+        weighted += value.getDoubleValue() * duration;
+        integral += value.getDoubleValue() * (duration / 1000d);
+    }
+
+    @Override
+    protected void appended(RollupAggregate next) {
+        AnalogRollupAggregate analog = (AnalogRollupAggregate)next;
+        sum += analog.sum;
+        weighted += analog.weighted;
+        integral += analog.integral;
+        if(analog.minimumValue != null && (minimumValue == null || analog.minimumValue < minimumValue)) {
+            minimumValue = analog.minimumValue;
+            minimumTime = analog.minimumTime;
+        }
+        if(analog.maximumValue != null && (maximumValue == null || analog.maximumValue > maximumValue)) {
+            maximumValue = analog.maximumValue;
+            maximumTime = analog.maximumTime;
+        }
+    }
+
+    @Override
+    public RollupAggregate copy() {
+        return new AnalogRollupAggregate(this);
+    }
+
+    private static Double toDouble(DataValue value) {
+        return value == null ? null : value.getDoubleValue();
+    }
+
+    @Override
+    public StatisticsGenerator toGenerator() {
+        //Locals are prefixed so the names can't resolve to fields of AnalogStatistics
+        Double rollupStart = toDouble(startValue);
+        Double rollupFirst = toDouble(firstValue);
+        Long rollupFirstTime = firstTime;
+        Double rollupLast = toDouble(lastValue);
+        Long rollupLastTime = lastTime;
+        Double rollupMinimum = minimumValue;
+        Long rollupMinimumTime = minimumTime;
+        Double rollupMaximum = maximumValue;
+        Long rollupMaximumTime = maximumTime;
+        double rollupSum = sum;
+        int rollupCount = count;
+        //No value is known for any of the period without a start value or values
+        Double rollupAverage = covered > 0 ? weighted / covered : null;
+        Double rollupIntegral = covered > 0 ? integral : null;
+        double rollupDelta;
+        if(rollupLast == null)
+            rollupDelta = 0;
+        else
+            rollupDelta = rollupLast - (rollupStart != null ? rollupStart : rollupFirst);
+
+        return new AnalogStatistics(periodStart, periodEnd, nullStartValue()) {
+            @Override
+            public Double getMinimumValue() {
+                return rollupMinimum;
+            }
+
+            @Override
+            public Long getMinimumTime() {
+                return rollupMinimumTime;
+            }
+
+            @Override
+            public Double getMaximumValue() {
+                return rollupMaximum;
+            }
+
+            @Override
+            public Long getMaximumTime() {
+                return rollupMaximumTime;
+            }
+
+            @Override
+            public Double getAverage() {
+                return rollupAverage;
+            }
+
+            @Override
+            public Double getIntegral() {
+                return rollupIntegral;
+            }
+
+            @Override
+            public double getSum() {
+                return rollupSum;
+            }
+
+            @Override
+            public Double getStartValue() {
+                return rollupStart;
+            }
+
+            @Override
+            public Double getFirstValue() {
+                return rollupFirst;
+            }
+
+            @Override
+            public Long getFirstTime() {
+                return rollupFirstTime;
+            }
+
+            @Override
+            public Double getLastValue() {
+                return rollupLast;
+            }
+
+            @Override
+            public Long getLastTime() {
+                return rollupLastTime;
+            }
+
+            @Override
+            public int getCount() {
+                return rollupCount;
+            }
+
+            @Override
+            public double getDelta() {
+                return rollupDelta;
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import java.util.function.Consumer;
+
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+
+/**
+ * Builds the hourly aggregates of a point from its values in time order. An hour is passed to the
+ * sink once a value after it is added or the builder is advanced past its end. Hours are built from
+ * the first hour boundary at which the value in effect is known.
+ */
+public class HourlyRollupBuilder {
+
+    private final int dataPointId;
+    private final int dataTypeId;
+    //No hour ending after this is built
+    private final long end;
+    private final Consumer<RollupAggregate> sink;
+
+    private boolean started;
+    private DataValue lastValue;
+    private long lastTime;
+    //Start of the next hour to build
+    private long nextHour;
+    private RollupAggregate open;
+
+    /**
+     * @param dataPointId
+     * @param dataTypeId
+     * @param end - hours ending after this are not built, Long.MAX_VALUE for no end
+     * @param sink - receives the closed hours in time order
+     */
+    public HourlyRollupBuilder(int dataPointId, int dataTypeId, long end, Consumer<RollupAggregate> sink) {
+        this.dataPointId = dataPointId;
+        this.dataTypeId = dataTypeId;
+        this.end = end;
+        this.sink = sink;
+    }
+
+    /**
+     * The value in effect at a time is known
+     * @param time
+     * @param value - null if the point has no value at the time
+     */
+    public void start(long time, DataValue value) {
+        this.started = true;
+        this.lastValue = value;
+        this.lastTime = time;
+        this.nextHour = PointValueRollupStore.ceilHour(time);
+        this.open = null;
+    }
+
+    /**
+     * Add a value, values must be added in time order
+     * @param value
+     * @param time
+     */
+    public void add(DataValue value, long time) {
+        if(!started) {
+            //Known from the first value on
+            started = true;
+            nextHour = PointValueRollupStore.floorHour(time) + PointValueRollupStore.HOUR;
+        }else {
+            advance(time);
+        }
+        if(open != null)
+            open.add(value, time);
+        lastValue = value;
+        lastTime = time;
+    }
+
+    /**
+     * Close the hours ending at or before a time
+     * @param time
+     */
+    public void advance(long time) {
+        if(!started)
+            return;
+        while(true) {
+            if(open == null) {
+                if(time < nextHour || nextHour + PointValueRollupStore.HOUR > end)
+                    return;
+                open = RollupAggregate.create(dataPointId, dataTypeId, nextHour, nextHour + PointValueRollupStore.HOUR, lastValue);
+            }
+            if(time < open.getPeriodEnd())
+                return;
+            open.close();
+            sink.accept(open);
+            nextHour = open.getPeriodEnd();
+            open = null;
+        }
+    }
+
+    /**
+     * Discard the hour being built, building starts again at the hour after the last value
+     */
+    public void reset() {
+        open = null;
+        if(started)
+            nextHour = PointValueRollupStore.floorHour(lastTime) + PointValueRollupStore.HOUR;
+    }
+
+    /**
+     * Discard everything, building starts again after the next value
+     */
+    public void stop() {
+        started = false;
+        open = null;
+        lastValue = null;
+    }
+
+    /**
+     * @return time of the last value added, or the start time
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+}
@@ -0,0 +1,443 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Hourly and daily aggregates of the values of running data points, so statistics over long ranges
+ * are assembled from the coarsest stored periods and only the edges of the range are read from the
+ * database.
+ *
+ * The rollups of a point are maintained from the first query of its statistics until it is stopped.
+ * Hours are built as the point's values are logged and from the raw values read by queries, a day is
+ * built once all of its hours are stored. Periods are aligned to UTC hours and days. A value saved or
+ * removed before the latest value of a point removes the periods ending after it.
+ *
+ * The number of hours and days kept for each point is limited and so is the total number of periods of
+ * all points, once it is exceeded the rollups of the points whose statistics were least recently queried
+ * are removed. The rollups of a point are also removed when it is deleted or disabled.
+ *
+ * Enabled with rest.rollupStore.enabled in env.properties.
+ */
+@Component
+public class PointValueRollupStore {
+
+    public static final long HOUR = 3600000L;
+    public static final long DAY = 24 * HOUR;
+
+    private final boolean enabled;
+    private final int maxHours;
+    private final int maxDays;
+    private final int maxPeriods;
+    private final long settlePeriod;
+
+    //In order of their last query, guarded by itself
+    private final LinkedHashMap<Integer, PointRollups> points;
+    //Hours and days stored for all points
+    private final AtomicInteger size;
+
+    public PointValueRollupStore() {
+        this(Common.envProps.getBoolean("rest.rollupStore.enabled", false),
+                Common.envProps.getInt("rest.rollupStore.maxHours", 24 * 62),
+                Common.envProps.getInt("rest.rollupStore.maxDays", 3660),
+                Common.envProps.getInt("rest.rollupStore.maxPeriods", 1000000),
+                Common.envProps.getInt("rest.rollupStore.settlePeriod", 60000));
+    }
+
+    /**
+     * @param enabled
+     * @param maxHours - hours kept per point, the oldest are removed first
+     * @param maxDays - days kept per point, the oldest are removed first
+     * @param maxPeriods - hours and days kept for all points, the least recently queried points are removed first
+     * @param settlePeriod - ms after the end of an hour before it is built from values read by a query
+     */
+    public PointValueRollupStore(boolean enabled, int maxHours, int maxDays, int maxPeriods, long settlePeriod) {
+        this.enabled = enabled;
+        this.maxHours = maxHours;
+        this.maxDays = maxDays;
+        this.maxPeriods = maxPeriods;
+        this.settlePeriod = settlePeriod;
+        this.points = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = new AtomicInteger();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the statistics of the longest stored run of periods within a range, the first run found
+     * from the start of the range is used.
+     *
+     * @param vo
+     * @param from
+     * @param to
+     * @return a copy of the stored periods appended together, null if there are none
+     */
+    public RollupAggregate getCovering(DataPointVO vo, long from, long to) {
+        PointRollups rollups = getRollups(vo);
+        return rollups == null ? null : rollups.getCovering(from, to);
+    }
+
+    /**
+     * Get the statistics of a period starting and ending on hour boundaries
+     * @param vo
+     * @param from
+     * @param to
+     * @return null if the whole period is not stored
+     */
+    public RollupAggregate getPeriod(DataPointVO vo, long from, long to) {
+        if(from % HOUR != 0 || to % HOUR != 0)
+            return null;
+        RollupAggregate covering = getCovering(vo, from, to);
+        if(covering == null || covering.getPeriodStart() != from || covering.getPeriodEnd() != to)
+            return null;
+        return covering;
+    }
+
+    /**
+     * Create a builder to store the hours of the raw values a query reads, start it with the value at
+     * the start of the query. Hours are not stored if the values of the point are modified while the
+     * query runs.
+     *
+     * @param vo
+     * @param to - end of the query
+     * @return null if the point's rollups are not stored
+     */
+    public HourlyRollupBuilder createBackfill(DataPointVO vo, long to) {
+        PointRollups rollups = getRollups(vo);
+        if(rollups == null)
+            return null;
+        long version = rollups.getVersion();
+        long end = Math.min(to, Common.timer.currentTimeMillis() - settlePeriod);
+        return new HourlyRollupBuilder(vo.getId(), rollups.dataTypeId, end, hour -> {
+            rollups.offer(hour, version);
+            evict();
+        });
+    }
+
+    /**
+     * Remove all periods of a data point ending after a time
+     * @param dataPointId
+     * @param from
+     */
+    public void invalidate(int dataPointId, long from) {
+        PointRollups rollups;
+        synchronized(points) {
+            rollups = points.get(dataPointId);
+        }
+        if(rollups != null)
+            rollups.invalidate(from);
+    }
+
+    /**
+     * Remove all periods of a data point
+     * @param dataPointId
+     */
+    public void invalidate(int dataPointId) {
+        invalidate(dataPointId, Long.MIN_VALUE);
+    }
+
+    /**
+     * Remove all periods of all data points
+     */
+    public void clear() {
+        List<PointRollups> all;
+        synchronized(points) {
+            all = new ArrayList<>(points.values());
+        }
+        for(PointRollups rollups : all)
+            rollups.invalidate(Long.MIN_VALUE);
+    }
+
+    /**
+     * Stop maintaining the rollups of a data point and remove its periods
+     * @param dataPointId
+     */
+    public void remove(int dataPointId) {
+        PointRollups rollups;
+        synchronized(points) {
+            rollups = points.remove(dataPointId);
+        }
+        if(rollups != null)
+            discard(rollups);
+    }
+
+    /**
+     * @return number of hours and days stored for all points
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Deleted and disabled points no longer log values, their rollups are removed
+     * @param event
+     */
+    @EventListener
+    public void handleDataPointEvent(DaoEvent<? extends DataPointVO> event) {
+        if(event.getType() == DaoEventType.DELETE
+                || (event.getType() == DaoEventType.UPDATE && !event.getVo().isEnabled()))
+            remove(event.getVo().getId());
+    }
+
+    @PreDestroy
+    public void terminate() {
+        List<PointRollups> all;
+        synchronized(points) {
+            all = new ArrayList<>(points.values());
+            points.clear();
+        }
+        for(PointRollups rollups : all)
+            discard(rollups);
+    }
+
+    /**
+     * Get the rollups of a point, starting to maintain them if it is running
+     * @param vo
+     * @return null if the store is disabled or the point is not running
+     */
+    private PointRollups getRollups(DataPointVO vo) {
+        if(!enabled)
+            return null;
+        PointRollups rollups;
+        synchronized(points) {
+            rollups = points.get(vo.getId());
+        }
+        if(rollups != null && rollups.dataTypeId == vo.getPointLocator().getDataTypeId())
+            return rollups;
+        if(Common.runtimeManager.getDataPoint(vo.getId()) == null)
+            return null;
+
+        PointRollups created = new PointRollups(vo);
+        PointRollups replaced;
+        synchronized(points) {
+            replaced = points.get(vo.getId());
+            if(replaced != null && replaced != rollups)
+                return replaced;
+            points.put(vo.getId(), created);
+        }
+        //The listener lock is not taken while holding ours
+        if(replaced != null)
+            discard(replaced);
+        Common.runtimeManager.addDataPointListener(vo.getId(), created);
+        return created;
+    }
+
+    /**
+     * Remove the rollups of the least recently queried points until the total number of periods
+     * is within the maximum, must not be called while holding the lock of a point's rollups
+     */
+    private void evict() {
+        while(size.get() > maxPeriods) {
+            PointRollups eldest;
+            synchronized(points) {
+                Iterator<PointRollups> it = points.values().iterator();
+                if(!it.hasNext())
+                    return;
+                eldest = it.next();
+                it.remove();
+            }
+            discard(eldest);
+        }
+    }
+
+    /**
+     * Stop maintaining rollups that have been removed from the points
+     */
+    private void discard(PointRollups rollups) {
+        Common.runtimeManager.removeDataPointListener(rollups.dataPointId, rollups);
+        rollups.discard();
+    }
+
+    public static long floorHour(long time) {
+        return Math.floorDiv(time, HOUR) * HOUR;
+    }
+
+    public static long ceilHour(long time) {
+        return -Math.floorDiv(-time, HOUR) * HOUR;
+    }
+
+    public static long floorDay(long time) {
+        return Math.floorDiv(time, DAY) * DAY;
+    }
+
+    /**
+     * The stored periods of one point, kept up to date from the values it logs
+     */
+    private final class PointRollups implements DataPointListener {
+
+        final int dataPointId;
+        final int dataTypeId;
+        final String xid;
+        final NavigableMap<Long, RollupAggregate> hours;
+        final NavigableMap<Long, RollupAggregate> days;
+        final HourlyRollupBuilder logged;
+        //Incremented when values are modified, hours built from values read before that are discarded
+        long version;
+        //Removed from the store, no more periods are stored
+        boolean discarded;
+
+        PointRollups(DataPointVO vo) {
+            this.dataPointId = vo.getId();
+            this.dataTypeId = vo.getPointLocator().getDataTypeId();
+            this.xid = vo.getXid();
+            this.hours = new TreeMap<>();
+            this.days = new TreeMap<>();
+            this.logged = new HourlyRollupBuilder(dataPointId, dataTypeId, Long.MAX_VALUE, this::store);
+        }
+
+        synchronized long getVersion() {
+            return version;
+        }
+
+        synchronized RollupAggregate getCovering(long from, long to) {
+            long start = ceilHour(from);
+            Long firstHour = hours.ceilingKey(start);
+            Long firstDay = days.ceilingKey(start);
+            if(firstHour == null && firstDay == null)
+                return null;
+            long time = firstHour == null ? firstDay : firstDay == null ? firstHour : Math.min(firstHour, firstDay);
+
+            RollupAggregate covering = null;
+            while(true) {
+                RollupAggregate next = days.get(time);
+                if(next == null || next.getPeriodEnd() > to) {
+                    next = hours.get(time);
+                    if(next == null || next.getPeriodEnd() > to)
+                        break;
+                }
+                if(covering == null)
+                    covering = next.copy();
+                else
+                    covering.append(next);
+                time = next.getPeriodEnd();
+            }
+            return covering;
+        }
+
+        /**
+         * Store an hour read by a query
+         */
+        synchronized void offer(RollupAggregate hour, long version) {
+            if(version != this.version || hours.containsKey(hour.getPeriodStart()))
+                return;
+            store(hour);
+        }
+
+        synchronized void invalidate(long from) {
+            int removed = hours.size() + days.size();
+            hours.tailMap(floorHour(from), true).clear();
+            days.tailMap(floorDay(from), true).clear();
+            size.addAndGet(hours.size() + days.size() - removed);
+            logged.reset();
+            version++;
+        }
+
+        synchronized void discard() {
+            invalidate(Long.MIN_VALUE);
+            logged.stop();
+            discarded = true;
+        }
+
+        /**
+         * Store a closed hour and build its day if all of the day's hours are stored
+         */
+        private void store(RollupAggregate hour) {
+            if(discarded)
+                return;
+            if(hours.put(hour.getPeriodStart(), hour) == null)
+                size.incrementAndGet();
+            while(hours.size() > maxHours) {
+                hours.pollFirstEntry();
+                size.decrementAndGet();
+            }
+
+            long day = floorDay(hour.getPeriodStart());
+            if(days.containsKey(day))
+                return;
+            NavigableMap<Long, RollupAggregate> dayHours = hours.subMap(day, true, day + DAY, false);
+            if(dayHours.size() < 24)
+                return;
+            RollupAggregate aggregate = null;
+            for(RollupAggregate h : dayHours.values()) {
+                if(aggregate == null)
+                    aggregate = h.copy();
+                else
+                    aggregate.append(h);
+            }
+            days.put(day, aggregate);
+            size.incrementAndGet();
+            while(days.size() > maxDays) {
+                days.pollFirstEntry();
+                size.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            synchronized(this) {
+                if(logged.isStarted() && value.getTime() < logged.getLastTime())
+                    invalidate(value.getTime());
+                else
+                    logged.add(value.getValue(), value.getTime());
+            }
+            evict();
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            invalidate(value.getTime());
+        }
+
+        @Override
+        public void pointTerminated(DataPointVO vo) {
+            //Values are not logged while the point is stopped
+            synchronized(points) {
+                points.remove(dataPointId, this);
+            }
+            PointValueRollupStore.this.discard(this);
+        }
+
+        @Override
+        public void pointInitialized() { }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) { }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) { }
+
+        @Override
+        public String getListenerName() {
+            return "Rollup store for DP " + xid;
+        }
+    }
+}
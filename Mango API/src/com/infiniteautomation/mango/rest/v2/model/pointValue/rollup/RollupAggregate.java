@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+
+/**
+ * Statistics of the values of a data point over a period that can be appended to the statistics of the
+ * following period, so the statistics of a long period can be assembled from stored hours and days.
+ *
+ * The statistics are those of the generator of the data type created with the start value and passed the
+ * values of the period. Time weighted statistics are accumulated for the time a value is known, from the
+ * start value or first value to the end of the period. Null values are ignored as the generators do. Once
+ * closed an aggregate is not modified, appending is done to a copy.
+ *
+ * @see PointValueRollupStore
+ */
+public abstract class RollupAggregate {
+
+    protected final int dataPointId;
+    protected final long periodStart;
+    protected long periodEnd;
+
+    protected final DataValue startValue;
+    protected DataValue firstValue;
+    protected Long firstTime;
+    protected DataValue lastValue;
+    protected Long lastTime;
+    protected int count;
+
+    //Value in effect from currentTime, null until a value is known
+    protected DataValue currentValue;
+    protected long currentTime;
+    //Ms of the period with a known value
+    protected long covered;
+    protected boolean closed;
+
+    protected RollupAggregate(int dataPointId, long periodStart, long periodEnd, DataValue startValue) {
+        this.dataPointId = dataPointId;
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+        this.startValue = startValue;
+        this.currentValue = startValue;
+        this.currentTime = periodStart;
+    }
+
+    protected RollupAggregate(RollupAggregate copy) {
+        this.dataPointId = copy.dataPointId;
+        this.periodStart = copy.periodStart;
+        this.periodEnd = copy.periodEnd;
+        this.startValue = copy.startValue;
+        this.firstValue = copy.firstValue;
+        this.firstTime = copy.firstTime;
+        this.lastValue = copy.lastValue;
+        this.lastTime = copy.lastTime;
+        this.count = copy.count;
+        this.currentValue = copy.currentValue;
+        this.currentTime = copy.currentTime;
+        this.covered = copy.covered;
+        this.closed = copy.closed;
+    }
+
+    /**
+     * Create an aggregate for the statistics of a data type
+     * @param dataPointId
+     * @param dataTypeId
+     * @param periodStart
+     * @param periodEnd
+     * @param startValue - value in effect at the start of the period, may be null
+     * @return
+     */
+    public static RollupAggregate create(int dataPointId, int dataTypeId, long periodStart, long periodEnd, DataValue startValue) {
+        switch(dataTypeId) {
+            case DataTypes.NUMERIC:
+                return new AnalogRollupAggregate(dataPointId, periodStart, periodEnd, startValue);
+            case DataTypes.BINARY:
+            case DataTypes.MULTISTATE:
+                return new StartsAndRuntimeRollupAggregate(dataPointId, periodStart, periodEnd, startValue);
+            case DataTypes.ALPHANUMERIC:
+            case DataTypes.IMAGE:
+                return new ValueChangeRollupAggregate(dataPointId, periodStart, periodEnd, startValue);
+            default:
+                throw new ShouldNeverHappenException("Invalid Data Type: " + dataTypeId);
+        }
+    }
+
+    /**
+     * Add a value, values must be added in time order
+     * @param value - ignored if null
+     * @param time - within the period
+     */
+    public void add(DataValue value, long time) {
+        if(closed)
+            throw new IllegalStateException("Aggregate is closed");
+        if(value == null)
+            return;
+        elapse(time);
+        if(firstValue == null) {
+            firstValue = value;
+            firstTime = time;
+        }
+        lastValue = value;
+        lastTime = time;
+        count++;
+        valueAdded(value, time);
+        currentValue = value;
+    }
+
+    /**
+     * Finish the time weighted statistics at the end of the period
+     */
+    public void close() {
+        if(closed)
+            return;
+        elapse(periodEnd);
+        closed = true;
+    }
+
+    /**
+     * Append the statistics of the period that follows this one
+     * @param next - closed aggregate starting at the end of this one
+     */
+    public void append(RollupAggregate next) {
+        if(!closed || !next.closed)
+            throw new IllegalStateException("Only closed aggregates can be appended");
+        if(next.periodStart != periodEnd)
+            throw new IllegalArgumentException("Aggregates are not adjacent");
+        if(firstValue == null) {
+            firstValue = next.firstValue;
+            firstTime = next.firstTime;
+        }
+        if(next.lastValue != null) {
+            lastValue = next.lastValue;
+            lastTime = next.lastTime;
+        }
+        count += next.count;
+        covered += next.covered;
+        currentValue = next.currentValue;
+        currentTime = next.currentTime;
+        appended(next);
+        periodEnd = next.periodEnd;
+    }
+
+    private void elapse(long time) {
+        if(currentValue != null && time > currentTime) {
+            covered += time - currentTime;
+            accumulate(currentValue, time - currentTime);
+        }
+        if(time > currentTime)
+            currentTime = time;
+    }
+
+    /**
+     * A value was added
+     */
+    protected abstract void valueAdded(DataValue value, long time);
+
+    /**
+     * A value was in effect for a duration
+     */
+    protected abstract void accumulate(DataValue value, long duration);
+
+    /**
+     * The statistics of the next period are being appended
+     */
+    protected abstract void appended(RollupAggregate next);
+
+    /**
+     * @return a copy that can be appended to
+     */
+    public abstract RollupAggregate copy();
+
+    /**
+     * @return the statistics as the generator the raw values of the period would produce, this aggregate must be closed
+     */
+    public abstract StatisticsGenerator toGenerator();
+
+    /**
+     * A start value for the generators, all their statistics are overridden
+     */
+    protected IdPointValueTime nullStartValue() {
+        return new IdPointValueTime(dataPointId, null, periodStart);
+    }
+
+    public int getDataPointId() {
+        return dataPointId;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public long getPeriodEnd() {
+        return periodEnd;
+    }
+
+    /**
+     * @return time of the first value added, null if there is none
+     */
+    public Long getFirstTime() {
+        return firstTime;
+    }
+
+    /**
+     * @return the value in effect at the end of the aggregated time
+     */
+    public DataValue getCurrentValue() {
+        return currentValue;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.infiniteautomation.mango.statistics.StartsAndRuntime;
+import com.infiniteautomation.mango.statistics.StartsAndRuntimeList;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+
+/**
+ * Aggregate of binary and multistate values, presented as StartsAndRuntimeList. As in StartsAndRuntimeList
+ * a state is started by a value that changes the value in effect, the start value only accumulates runtime.
+ * The proportions are of the whole period and the states are ordered by value.
+ */
+public class StartsAndRuntimeRollupAggregate extends RollupAggregate {
+
+    //Starts and runtime of each state
+    private final Map<DataValue, State> states;
+
+    public StartsAndRuntimeRollupAggregate(int dataPointId, long periodStart, long periodEnd, DataValue startValue) {
+        super(dataPointId, periodStart, periodEnd, startValue);
+        this.states = new LinkedHashMap<>();
+        if(startValue != null)
+            state(startValue);
+    }
+
+    private StartsAndRuntimeRollupAggregate(StartsAndRuntimeRollupAggregate copy) {
+        super(copy);
+        this.states = new LinkedHashMap<>();
+        for(State state : copy.states.values())
+            this.states.put(state.value, new State(state));
+    }
+
+    private State state(DataValue value) {
+        return states.computeIfAbsent(value, State::new);
+    }
+
+    @Override
+    protected void valueAdded(DataValue value, long time) {
+        if(currentValue == null || !currentValue.equals(value))
+            state(value).starts++;
+    }
+
+    @Override
+    protected void accumulate(DataValue value, long duration) {
+        state(value).runtime += duration;
+    }
+
+    @Override
+    protected void appended(RollupAggregate next) {
+        StartsAndRuntimeRollupAggregate sar = (StartsAndRuntimeRollupAggregate)next;
+        for(State state : sar.states.values()) {
+            State merged = state(state.value);
+            merged.starts += state.starts;
+            merged.runtime += state.runtime;
+        }
+    }
+
+    @Override
+    public RollupAggregate copy() {
+        return new StartsAndRuntimeRollupAggregate(this);
+    }
+
+    @Override
+    public StatisticsGenerator toGenerator() {
+        //Locals are prefixed so the names can't resolve to fields of StartsAndRuntimeList
+        DataValue rollupStart = startValue;
+        DataValue rollupFirst = firstValue;
+        Long rollupFirstTime = firstTime;
+        DataValue rollupLast = lastValue;
+        Long rollupLastTime = lastTime;
+        int rollupCount = count;
+        long duration = periodEnd - periodStart;
+        List<State> sorted = new ArrayList<>(states.values());
+        sorted.sort(Comparator.comparingDouble(state -> state.value.getDoubleValue()));
+        List<StartsAndRuntime> rollupData = new ArrayList<>(sorted.size());
+        for(State state : sorted) {
+            DataValue rollupValue = state.value;
+            int rollupStarts = state.starts;
+            long rollupRuntime = state.runtime;
+            double rollupProportion = duration > 0 ? (double)rollupRuntime / duration : 0;
+            rollupData.add(new StartsAndRuntime() {
+                @Override
+                public DataValue getDataValue() {
+                    return rollupValue;
+                }
+
+                @Override
+                public int getStarts() {
+                    return rollupStarts;
+                }
+
+                @Override
+                public long getRuntime() {
+                    return rollupRuntime;
+                }
+
+                @Override
+                public double getProportion() {
+                    return rollupProportion;
+                }
+            });
+        }
+
+        return new StartsAndRuntimeList(periodStart, periodEnd, nullStartValue()) {
+            @Override
+            public DataValue getStartValue() {
+                return rollupStart;
+            }
+
+            @Override
+            public DataValue getFirstValue() {
+                return rollupFirst;
+            }
+
+            @Override
+            public Long getFirstTime() {
+                return rollupFirstTime;
+            }
+
+            @Override
+            public DataValue getLastValue() {
+                return rollupLast;
+            }
+
+            @Override
+            public Long getLastTime() {
+                return rollupLastTime;
+            }
+
+            @Override
+            public int getCount() {
+                return rollupCount;
+            }
+
+            @Override
+            public List<StartsAndRuntime> getData() {
+                return rollupData;
+            }
+        };
+    }
+
+    private static final class State {
+        final DataValue value;
+        int starts;
+        long runtime;
+
+        State(DataValue value) {
+            this.value = value;
+        }
+
+        State(State copy) {
+            this.value = copy.value;
+            this.starts = copy.starts;
+            this.runtime = copy.runtime;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.rollup;
+
+import com.infiniteautomation.mango.statistics.ValueChangeCounter;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+
+/**
+ * Aggregate of alphanumeric and image values, presented as ValueChangeCounter
+ */
+public class ValueChangeRollupAggregate extends RollupAggregate {
+
+    public ValueChangeRollupAggregate(int dataPointId, long periodStart, long periodEnd, DataValue startValue) {
+        super(dataPointId, periodStart, periodEnd, startValue);
+    }
+
+    private ValueChangeRollupAggregate(ValueChangeRollupAggregate copy) {
+        super(copy);
+    }
+
+    @Override
+    protected void valueAdded(DataValue value, long time) {
+    }
+
+    @Override
+    protected void accumulate(DataValue value, long duration) {
+    }
+
+    @Override
+    protected void appended(RollupAggregate next) {
+    }
+
+    @Override
+    public RollupAggregate copy() {
+        return new ValueChangeRollupAggregate(this);
+    }
+
+    @Override
+    public StatisticsGenerator toGenerator() {
+        //Locals are prefixed so the names can't resolve to fields of ValueChangeCounter
+        DataValue rollupStart = startValue;
+        DataValue rollupFirst = firstValue;
+        Long rollupFirstTime = firstTime;
+        DataValue rollupLast = lastValue;
+        Long rollupLastTime = lastTime;
+        int rollupCount = count;
+
+        return new ValueChangeCounter(periodStart, periodEnd, nullStartValue()) {
+            @Override
+            public DataValue getStartValue() {
+                return rollupStart;
+            }
+
+            @Override
+            public DataValue getFirstValue() {
+                return rollupFirst;
+            }
+
+            @Override
+            public Long getFirstTime() {
+                return rollupFirstTime;
+            }
+
+            @Override
+            public DataValue getLastValue() {
+                return rollupLast;
+            }
+
+            @Override
+            public Long getLastTime() {
+                return rollupLastTime;
+            }
+
+            @Override
+            public int getCount() {
+                return rollupCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+/**
+ * Discrete Fourier transform of a fixed length operating on primitive arrays.
+ *
+ * Power of two lengths use an iterative radix-2 transform, all other lengths are computed exactly
+ * with Bluestein's algorithm on a power of two convolution. Tables and work arrays are created once
+ * so an instance can transform many signals of the same length without allocating, instances are
+ * not thread safe.
+ */
+public class Fft {
+
+    private final int n;
+    //Length of the radix-2 transform, n if it is a power of 2
+    private final int m;
+    private final double[] cos;
+    private final double[] sin;
+
+    //Bluestein chirp, kernel and work arrays, null for power of 2 lengths
+    private final double[] chirpRe;
+    private final double[] chirpIm;
+    private final double[] kernelRe;
+    private final double[] kernelIm;
+    private final double[] workRe;
+    private final double[] workIm;
+
+    public Fft(int n) {
+        if(n < 1)
+            throw new IllegalArgumentException("Length must be greater than 0");
+        this.n = n;
+        boolean powerOfTwo = (n & (n - 1)) == 0;
+        this.m = powerOfTwo ? n : Integer.highestOneBit(2 * n - 1) << 1;
+
+        this.cos = new double[m / 2];
+        this.sin = new double[m / 2];
+        for(int i = 0; i < m / 2; i++) {
+            double angle = 2 * Math.PI * i / m;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+
+        if(powerOfTwo) {
+            chirpRe = chirpIm = kernelRe = kernelIm = workRe = workIm = null;
+        }else {
+            chirpRe = new double[n];
+            chirpIm = new double[n];
+            kernelRe = new double[m];
+            kernelIm = new double[m];
+            workRe = new double[m];
+            workIm = new double[m];
+            long twoN = 2L * n;
+            for(int k = 0; k < n; k++) {
+                //k^2 mod 2n keeps the angle precise for large k
+                long square = ((long)k * k) % twoN;
+                double angle = Math.PI * square / n;
+                chirpRe[k] = Math.cos(angle);
+                chirpIm[k] = -Math.sin(angle);
+            }
+            kernelRe[0] = chirpRe[0];
+            kernelIm[0] = -chirpIm[0];
+            for(int k = 1; k < n; k++) {
+                kernelRe[k] = kernelRe[m - k] = chirpRe[k];
+                kernelIm[k] = kernelIm[m - k] = -chirpIm[k];
+            }
+            radix2(kernelRe, kernelIm, false);
+        }
+    }
+
+    public int length() {
+        return n;
+    }
+
+    /**
+     * Forward transform in place
+     * @param re - real parts, length n
+     * @param im - imaginary parts, length n
+     */
+    public void forward(double[] re, double[] im) {
+        if(workRe == null)
+            radix2(re, im, false);
+        else
+            bluestein(re, im);
+    }
+
+    /**
+     * Inverse transform in place, scaled by 1/n
+     * @param re - real parts, length n
+     * @param im - imaginary parts, length n
+     */
+    public void inverse(double[] re, double[] im) {
+        for(int i = 0; i < n; i++)
+            im[i] = -im[i];
+        forward(re, im);
+        for(int i = 0; i < n; i++) {
+            re[i] /= n;
+            im[i] = -im[i] / n;
+        }
+    }
+
+    /**
+     * Transform a real signal in place into the packed layout
+     *
+     * if length is even
+     *  a[2*k] = Re[k], 0<=k<n/2
+     *  a[2*k+1] = Im[k], 0<k<n/2
+     *  a[1] = Re[n/2]
+     *
+     * if length is odd
+     *  a[2*k] = Re[k], 0<=k<(n+1)/2
+     *  a[2*k+1] = Im[k], 0<k<(n-1)/2
+     *  a[1] = Im[(n-1)/2]
+     *
+     * @param a - real signal of length n
+     */
+    public void realForward(double[] a) {
+        double[] re = new double[n];
+        double[] im = new double[n];
+        System.arraycopy(a, 0, re, 0, n);
+        forward(re, im);
+
+        a[0] = re[0];
+        if(n == 1)
+            return;
+        if(n % 2 == 0) {
+            a[1] = re[n / 2];
+            for(int k = 1; k < n / 2; k++) {
+                a[2 * k] = re[k];
+                a[2 * k + 1] = im[k];
+            }
+        }else {
+            int last = (n - 1) / 2;
+            for(int k = 1; k < last; k++) {
+                a[2 * k] = re[k];
+                a[2 * k + 1] = im[k];
+            }
+            a[2 * last] = re[last];
+            a[1] = im[last];
+        }
+    }
+
+    /**
+     * Inverse of realForward, in place and scaled by 1/n
+     * @param a - packed spectrum of length n
+     */
+    public void realInverse(double[] a) {
+        if(n == 1)
+            return;
+        double[] re = new double[n];
+        double[] im = new double[n];
+        re[0] = a[0];
+        int half;
+        if(n % 2 == 0) {
+            half = n / 2;
+            re[half] = a[1];
+            for(int k = 1; k < half; k++) {
+                re[k] = a[2 * k];
+                im[k] = a[2 * k + 1];
+            }
+        }else {
+            half = (n - 1) / 2;
+            for(int k = 1; k < half; k++) {
+                re[k] = a[2 * k];
+                im[k] = a[2 * k + 1];
+            }
+            re[half] = a[2 * half];
+            im[half] = a[1];
+            half++;
+        }
+        //Spectrum of a real signal is conjugate symmetric
+        for(int k = 1; k < half; k++) {
+            re[n - k] = re[k];
+            im[n - k] = -im[k];
+        }
+        inverse(re, im);
+        System.arraycopy(re, 0, a, 0, n);
+    }
+
+    private void bluestein(double[] re, double[] im) {
+        for(int k = 0; k < n; k++) {
+            workRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+            workIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+        }
+        for(int k = n; k < m; k++) {
+            workRe[k] = 0;
+            workIm[k] = 0;
+        }
+        radix2(workRe, workIm, false);
+        for(int k = 0; k < m; k++) {
+            double r = workRe[k] * kernelRe[k] - workIm[k] * kernelIm[k];
+            workIm[k] = workRe[k] * kernelIm[k] + workIm[k] * kernelRe[k];
+            workRe[k] = r;
+        }
+        radix2(workRe, workIm, true);
+        for(int k = 0; k < n; k++) {
+            double r = workRe[k] / m;
+            double i = workIm[k] / m;
+            re[k] = r * chirpRe[k] - i * chirpIm[k];
+            im[k] = r * chirpIm[k] + i * chirpRe[k];
+        }
+    }
+
+    /**
+     * Unscaled radix-2 transform of length m in place
+     */
+    private void radix2(double[] re, double[] im, boolean inverse) {
+        for(int i = 1, j = 0; i < m; i++) {
+            int bit = m >> 1;
+            for(; (j & bit) != 0; bit >>= 1)
+                j ^= bit;
+            j ^= bit;
+            if(i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        double sign = inverse ? -1 : 1;
+        for(int size = 2; size <= m; size <<= 1) {
+            int half = size >> 1;
+            int step = m / size;
+            for(int i = 0; i < m; i += size) {
+                for(int j = 0; j < half; j++) {
+                    int a = i + j;
+                    int b = a + half;
+                    double c = cos[j * step];
+                    double s = sign * sin[j * step];
+                    double tRe = re[b] * c + im[b] * s;
+                    double tIm = im[b] * c - re[b] * s;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+/**
+ * Resamples a signal onto a fixed rate grid as it streams through.
+ *
+ * Point values hold until the next value so the sample at each grid time is the latest
+ * value at or before it, grid times before the first value are skipped.
+ */
+public class FixedRateResampler implements SampleConsumer {
+
+    private final long periodMs;
+    private final SampleConsumer downstream;
+
+    private long nextTime;
+    private boolean hasValue;
+    private double lastValue;
+
+    /**
+     * @param startTime - first time of the grid
+     * @param periodMs - period of the grid, must be greater than 0
+     * @param downstream - receives the resampled signal
+     */
+    public FixedRateResampler(long startTime, long periodMs, SampleConsumer downstream) {
+        if(periodMs <= 0)
+            throw new IllegalArgumentException("Period must be greater than 0");
+        this.periodMs = periodMs;
+        this.downstream = downstream;
+        this.nextTime = startTime;
+    }
+
+    @Override
+    public void accept(long time, double value) {
+        if(hasValue) {
+            emitUntil(time);
+        }else if(nextTime < time) {
+            //Align to the first grid time at or after the first value
+            long periods = (time - nextTime + periodMs - 1) / periodMs;
+            nextTime += periods * periodMs;
+        }
+        lastValue = value;
+        hasValue = true;
+    }
+
+    /**
+     * Hold the last value until the end of the range
+     * @param endTime - exclusive end of the grid
+     */
+    public void finish(long endTime) {
+        if(hasValue)
+            emitUntil(endTime);
+    }
+
+    public long getPeriodMs() {
+        return periodMs;
+    }
+
+    public double getSampleRateHz() {
+        return 1000d / periodMs;
+    }
+
+    private void emitUntil(long time) {
+        while(nextTime < time) {
+            downstream.accept(nextTime, lastValue);
+            nextTime += periodMs;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+import java.util.Arrays;
+
+/**
+ * Growable pair of time and value columns, holds a signal without a boxed object per sample.
+ *
+ * @see SampleConsumer
+ */
+public class PointValueColumns implements SampleConsumer {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    //Largest array the VM will reliably allocate
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private long[] times;
+    private double[] values;
+    private int size;
+
+    public PointValueColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointValueColumns(int initialCapacity) {
+        this.times = new long[Math.max(1, initialCapacity)];
+        this.values = new double[times.length];
+    }
+
+    @Override
+    public void accept(long time, double value) {
+        if(size == values.length)
+            grow();
+        times[size] = time;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the backing time column, only the first size() entries are valid
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the backing value column, only the first size() entries are valid
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Trim the columns to their size, returning the value column that is then exactly size() long
+     * @return
+     */
+    public double[] trimToSize() {
+        if(values.length != size) {
+            times = Arrays.copyOf(times, size);
+            values = Arrays.copyOf(values, size);
+        }
+        return values;
+    }
+
+    /**
+     * @return the average period between samples in ms, 0 if there are less than 2 samples
+     */
+    public double getAverageSamplePeriodMs() {
+        if(size < 2)
+            return 0;
+        return (double)(times[size - 1] - times[0]) / (size - 1);
+    }
+
+    private void grow() {
+        if(size == MAX_CAPACITY)
+            throw new IllegalStateException("Too many samples");
+        int capacity = (int)Math.min(MAX_CAPACITY, (long)size + (size >> 1) + 1);
+        times = Arrays.copyOf(times, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+/**
+ * Receives the samples of a signal in time order as primitives
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+    void accept(long time, double value);
+
+}
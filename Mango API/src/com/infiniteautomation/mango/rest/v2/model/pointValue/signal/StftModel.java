@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.infiniteautomation.mango.rest.v2.model.JSONStreamedArray;
+
+/**
+ * Result of a short time Fourier transform, the frequencies are shared by all windows.
+ *
+ * The windows are computed while they are written, each window is written as soon as it is
+ * transformed so memory use does not grow with the number of windows. The sample rate may depend
+ * on the samples read so it and the frequencies are written after the windows.
+ */
+@JsonPropertyOrder({"windowSize", "hop", "windows", "sampleRateHz", "frequencies"})
+public class StftModel {
+
+    private final int windowSize;
+    private final int hop;
+    private final Consumer<SampleConsumer> source;
+    private final DoubleUnaryOperator sampleRateHz;
+    private StftProcessor processor;
+
+    /**
+     * @param windowSize
+     * @param hop
+     * @param source - pushes the samples of the signal into a consumer
+     * @param sampleRateHz - sample rate for the average sample period in ms of the samples read
+     */
+    public StftModel(int windowSize, int hop, Consumer<SampleConsumer> source, DoubleUnaryOperator sampleRateHz) {
+        this.windowSize = windowSize;
+        this.hop = hop;
+        this.source = source;
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    public JSONStreamedArray getWindows() {
+        return jgen -> {
+            processor = new StftProcessor(windowSize, hop, window -> {
+                try {
+                    jgen.writeObject(window);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try {
+                source.accept(processor);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * @return the sample rate, only known once the windows are written
+     */
+    public double getSampleRateHz() {
+        return sampleRateHz.applyAsDouble(processor == null ? 0 : processor.getAverageSamplePeriodMs());
+    }
+
+    public double[] getFrequencies() {
+        double rate = getSampleRateHz();
+        double[] frequencies = new double[windowSize / 2 + 1];
+        for(int k = 0; k < frequencies.length; k++)
+            frequencies[k] = k * rate / windowSize;
+        return frequencies;
+    }
+}
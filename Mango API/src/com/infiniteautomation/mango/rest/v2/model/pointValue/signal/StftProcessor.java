@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+import java.util.function.Consumer;
+
+/**
+ * Short time Fourier transform over overlapping windows of a streaming signal.
+ *
+ * Only the samples of the current window are held, each time a hop worth of new samples has
+ * arrived after the window is full the window is multiplied by a Hann window and transformed.
+ * The amplitude spectrum from DC to the Nyquist frequency of each window is passed to the window
+ * consumer as soon as it is computed, no windows are kept.
+ */
+public class StftProcessor implements SampleConsumer {
+
+    private final int windowSize;
+    private final int hop;
+    private final Fft fft;
+    private final double[] window;
+    private final double windowSum;
+
+    //Ring buffers of the current window
+    private final long[] times;
+    private final double[] values;
+    private int position;
+    private int buffered;
+    private int sinceLastWindow;
+
+    private final double[] re;
+    private final double[] im;
+    private final Consumer<StftWindowModel> windowConsumer;
+    private long windowCount;
+
+    //Used to find the average sample period
+    private long firstTime;
+    private long lastTime;
+    private long count;
+
+    /**
+     * @param windowSize - number of samples per window, greater than 1
+     * @param hop - number of samples between the start of windows, greater than 0
+     * @param windowConsumer - receives each window as it is computed
+     */
+    public StftProcessor(int windowSize, int hop, Consumer<StftWindowModel> windowConsumer) {
+        if(windowSize < 2)
+            throw new IllegalArgumentException("Window size must be greater than 1");
+        if(hop < 1)
+            throw new IllegalArgumentException("Hop must be greater than 0");
+        this.windowSize = windowSize;
+        this.hop = hop;
+        this.fft = new Fft(windowSize);
+        this.window = new double[windowSize];
+        double sum = 0;
+        for(int i = 0; i < windowSize; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (windowSize - 1));
+            sum += window[i];
+        }
+        this.windowSum = sum;
+        this.times = new long[windowSize];
+        this.values = new double[windowSize];
+        this.re = new double[windowSize];
+        this.im = new double[windowSize];
+        this.windowConsumer = windowConsumer;
+    }
+
+    @Override
+    public void accept(long time, double value) {
+        if(count == 0)
+            firstTime = time;
+        lastTime = time;
+        count++;
+
+        times[position] = time;
+        values[position] = value;
+        position = (position + 1) % windowSize;
+        if(buffered < windowSize)
+            buffered++;
+        sinceLastWindow++;
+
+        if(buffered == windowSize && (windowCount == 0 ? sinceLastWindow >= windowSize : sinceLastWindow >= hop)) {
+            transform();
+            sinceLastWindow = 0;
+        }
+    }
+
+    private void transform() {
+        //The oldest sample is at the current position
+        for(int i = 0; i < windowSize; i++) {
+            re[i] = values[(position + i) % windowSize] * window[i];
+            im[i] = 0;
+        }
+        fft.forward(re, im);
+
+        int bins = windowSize / 2 + 1;
+        double[] amplitudes = new double[bins];
+        for(int k = 0; k < bins; k++) {
+            double amplitude = Math.hypot(re[k], im[k]) / windowSum;
+            //Single sided spectrum, energy of the mirrored bins is folded in
+            if(k != 0 && !(windowSize % 2 == 0 && k == windowSize / 2))
+                amplitude *= 2;
+            amplitudes[k] = amplitude;
+        }
+        windowCount++;
+        windowConsumer.accept(new StftWindowModel(times[position], amplitudes));
+    }
+
+    /**
+     * @return number of windows transformed
+     */
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    /**
+     * @return the average period between samples in ms, 0 if there are less than 2 samples
+     */
+    public double getAverageSamplePeriodMs() {
+        if(count < 2)
+            return 0;
+        return (double)(lastTime - firstTime) / (count - 1);
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue.signal;
+
+/**
+ * Amplitude spectrum of one window of a short time Fourier transform
+ */
+public class StftWindowModel {
+
+    private long timestamp;
+    private double[] amplitudes;
+
+    public StftWindowModel() { }
+
+    public StftWindowModel(long timestamp, double[] amplitudes) {
+        this.timestamp = timestamp;
+        this.amplitudes = amplitudes;
+    }
+
+    /**
+     * @return time of the first sample in the window
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return amplitude of each frequency bin
+     */
+    public double[] getAmplitudes() {
+        return amplitudes;
+    }
+
+    public void setAmplitudes(double[] amplitudes) {
+        this.amplitudes = amplitudes;
+    }
+}
@@ -4,6 +4,16 @@
  */
 package com.infiniteautomation.mango.rest.v2.websocket;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -16,10 +26,26 @@ import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
 
 /**
+ * Sends notifications of DAO events to the sessions that may see them. Sessions are grouped by their
+ * notification key, the notification is created and serialized once per group.
+ *
+ * When web.websocket.dao.coalescePeriod is set, notifications are sent at most that many ms after the
+ * event and the updates of an object in that time are sent as one notification of its latest state.
+ *
  * @author Jared Wiltshire
  */
 public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO> extends MultiSessionWebSocketHandler {
 
+    /**
+     * Ms to collect notifications before sending them, 0 to send them as they happen
+     */
+    @Value("${web.websocket.dao.coalescePeriod:0}")
+    protected int coalescePeriod;
+
+    //Notifications waiting to be sent, updates are keyed by the id of their object. Guarded by itself.
+    private final Map<Object, PendingNotification> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
     /**
      * @param action add, update or delete
      * @param vo
@@ -28,61 +54,135 @@ public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO>
     public void notify(String action, T vo, T originalVo) {
         if (sessions.isEmpty()) return;
 
-        Object message = null;
-        String jsonMessage = null;
+        if (coalescePeriod > 0) {
+            enqueue(action, vo, originalVo);
+        } else {
+            broadcast(action, vo, originalVo);
+        }
+    }
 
+    /**
+     * Send a notification to every session that may see it
+     * @param action
+     * @param vo
+     * @param originalVo
+     */
+    protected void broadcast(String action, T vo, T originalVo) {
+        Object sharedMessage = null;
         if (!this.isModelPerUser()) {
-            message = createNotification(action, vo, originalVo, null);
+            sharedMessage = createNotification(action, vo, originalVo, null);
+        }
+
+        //Serialized notification per key, null if there is none for the key
+        Map<Object, String> messages = new HashMap<>();
 
-            if (!this.isViewPerUser()) {
-                ObjectWriter writer;
-                Class<?> view = this.defaultView();
-                if (view != null) {
-                    writer = this.jacksonMapper.writerWithView(view);
+        for (WebSocketSession session : sessions) {
+            User user = getUser(session);
+            if (user != null && hasPermission(user, vo) && isSubscribed(session, action, vo, originalVo)) {
+                Object key = notificationKey(user);
+                String jsonMessage;
+                if (messages.containsKey(key)) {
+                    jsonMessage = messages.get(key);
                 } else {
-                    writer = this.jacksonMapper.writer();
+                    jsonMessage = serialize(action, vo, originalVo, user, sharedMessage);
+                    messages.put(key, jsonMessage);
                 }
 
-                try {
-                    jsonMessage = writer.writeValueAsString(message);
-                } catch (JsonProcessingException e) {
-                    log.warn("Failed to write object as JSON", e);
-                    return;
+                if (jsonMessage != null) {
+                    notify(session, jsonMessage);
                 }
             }
         }
+    }
 
-        for (WebSocketSession session : sessions) {
-            User user = getUser(session);
-            if (user != null && hasPermission(user, vo) && isSubscribed(session, action, vo, originalVo)) {
-                Object userMessage = message;
-                String userJsonMessage = jsonMessage;
-
-                if (userMessage == null) {
-                    userMessage = createNotification(action, vo, originalVo, user);
-                    if (userMessage == null) {
-                        continue;
-                    }
-                }
-                if (userJsonMessage == null) {
-                    try {
-                        ObjectWriter writer;
-                        Class<?> view = this.viewForUser(user);
-                        if (view != null) {
-                            writer = this.jacksonMapper.writerWithView(view);
-                        } else {
-                            writer = this.jacksonMapper.writer();
-                        }
-
-                        userJsonMessage = writer.writeValueAsString(userMessage);
-                    } catch (JsonProcessingException e) {
-                        log.warn("Failed to write object as JSON", e);
-                        continue;
-                    }
-                }
+    private String serialize(String action, T vo, T originalVo, User user, Object sharedMessage) {
+        Object userMessage = sharedMessage;
+        if (userMessage == null) {
+            userMessage = createNotification(action, vo, originalVo, user);
+            if (userMessage == null) {
+                return null;
+            }
+        }
 
-                notify(session, userJsonMessage);
+        try {
+            ObjectWriter writer;
+            Class<?> view = this.isViewPerUser() ? this.viewForUser(user) : this.defaultView();
+            if (view != null) {
+                writer = this.jacksonMapper.writerWithView(view);
+            } else {
+                writer = this.jacksonMapper.writer();
             }
+
+            return writer.writeValueAsString(userMessage);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to write object as JSON", e);
+            return null;
+        }
+    }
+
+    /**
+     * Users with the same key are sent the same notification. The key is the view and, when the model
+     * is created per user, the roles of the user. Override if the model depends on anything else.
+     *
+     * @param user
+     * @return
+     */
+    protected Object notificationKey(User user) {
+        Class<?> view = this.isViewPerUser() ? this.viewForUser(user) : this.defaultView();
+        if (!this.isModelPerUser()) {
+            return view;
+        }
+        return Arrays.asList(user.getRoles(), view);
+    }
+
+    private void enqueue(String action, T vo, T originalVo) {
+        synchronized (pending) {
+            PendingNotification existing = null;
+            if ("update".equals(action)) {
+                existing = pending.get(vo.getId());
+            }
+
+            if (existing != null) {
+                //Keep the action and the original of the first notification
+                existing.vo = vo;
+            } else if ("create".equals(action) || "update".equals(action)) {
+                pending.put(vo.getId(), new PendingNotification(action, vo, originalVo));
+            } else {
+                pending.put(new Object(), new PendingNotification(action, vo, originalVo));
+            }
+
+            if (flushTask == null) {
+                flushTask = scheduledExecutor.schedule(this::flush, coalescePeriod, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flush() {
+        List<PendingNotification> notifications;
+        synchronized (pending) {
+            notifications = new ArrayList<>(pending.values());
+            pending.clear();
+            flushTask = null;
+        }
+
+        for (PendingNotification notification : notifications) {
+            try {
+                broadcast(notification.action, notification.vo, notification.originalVo);
+            } catch (Exception e) {
+                log.error("Error sending DAO notification", e);
+            }
+        }
+    }
+
+    private class PendingNotification {
+        final String action;
+        final T originalVo;
+        T vo;
+
+        PendingNotification(String action, T vo, T originalVo) {
+            this.action = action;
+            this.vo = vo;
+            this.originalVo = originalVo;
         }
     }
 
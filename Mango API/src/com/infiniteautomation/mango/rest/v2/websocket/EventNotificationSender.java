@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Threads that serialize and send event notifications for the events web sockets so the event
+ * manager only has to queue them. Sized by web.websocket.events.senderThreads.
+ */
+@Component
+public class EventNotificationSender {
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public EventNotificationSender(@Value("${web.websocket.events.senderThreads:2}") int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "Events websocket sender " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @PreDestroy
+    public void terminate() {
+        executor.shutdownNow();
+    }
+}
@@ -3,17 +3,24 @@
  */
 package com.infiniteautomation.mango.rest.v2.websocket;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
@@ -34,6 +41,7 @@ import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.event.AlarmLevels;
 import com.serotonin.m2m2.rt.event.DataPointEventLevelSummary;
 import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.ReturnCause;
 import com.serotonin.m2m2.rt.event.UserEventLevelSummary;
 import com.serotonin.m2m2.rt.event.UserEventListener;
 import com.serotonin.m2m2.vo.User;
@@ -41,6 +49,16 @@ import com.serotonin.m2m2.vo.Validatable;
 import com.serotonin.m2m2.vo.permission.PermissionException;
 
 /**
+ * Notifies a session of the events of its user. The event manager only queues the events with a snapshot
+ * of their return to normal and acknowledgement, so later changes to the event instance are not sent with
+ * an earlier action. The events are mapped, serialized and sent by the EventNotificationSender, an event
+ * that fails to map is logged and skipped. Queued events are discarded if the sender is shut down.
+ *
+ * The queue of a session holds up to web.websocket.events.maxQueued events, events beyond that are
+ * counted by action and level and the counts are sent as an OVERFLOW notification. Subscriptions that
+ * set batchNotifications receive the events of every web.websocket.events.flushInterval ms as one
+ * BATCH notification containing the event notifications.
+ *
  * @author Terry Packer
  *
  */
@@ -52,6 +70,8 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
     public static final String REQUEST_TYPE_SUBSCRIPTION = "SUBSCRIPTION";
     public static final String REQUEST_TYPE_DATA_POINT_SUMMARY = "DATA_POINT_SUMMARY";
     public static final String REQUEST_TYPE_ALL_ACTIVE_EVENTS = "ALL_ACTIVE_EVENTS";
+    public static final String NOTIFICATION_TYPE_BATCH = "BATCH";
+    public static final String NOTIFICATION_TYPE_OVERFLOW = "OVERFLOW";
 
     @JsonTypeInfo(use=JsonTypeInfo.Id.NAME, include=JsonTypeInfo.As.PROPERTY, property="requestType")
     @JsonSubTypes({
@@ -87,6 +107,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         private Set<EventActionEnum> actions;
         private boolean sendActiveSummary;
         private boolean sendUnacknowledgedSummary;
+        private boolean batchNotifications;
 
         @Override
         public void validate(ProcessResult response) { }
@@ -120,6 +141,14 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             this.sendUnacknowledgedSummary = sendUnacknowledgedSummary;
         }
 
+        public boolean isBatchNotifications() {
+            return batchNotifications;
+        }
+
+        public void setBatchNotifications(boolean batchNotifications) {
+            this.batchNotifications = batchNotifications;
+        }
+
     }
 
     public static class EventsSubscriptionResponse {
@@ -141,18 +170,38 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
 
     private final RestModelMapper modelMapper;
     private final EventInstanceService service;
+    private final EventNotificationSender sender;
 
     private volatile Set<AlarmLevels> levels;
     private volatile EnumSet<EventActionEnum> actions;
+    private volatile boolean batchNotifications;
     private WebSocketSession session;
     private User user;
     private final Object lock = new Object();
 
+    /**
+     * Events queued per session before they are only counted
+     */
+    @Value("${web.websocket.events.maxQueued:1000}")
+    private int maxQueued;
+
+    /**
+     * Ms between the notifications of subscriptions that batch them
+     */
+    @Value("${web.websocket.events.flushInterval:250}")
+    private int flushInterval;
+
+    //Guarded by the queue
+    private final Deque<QueuedEvent> queue = new ArrayDeque<>();
+    private Map<EventActionEnum, Map<AlarmLevels, Integer>> overflow;
+    private boolean flushing;
+
     @Autowired
-    public EventsWebSocketHandler(RestModelMapper modelMapper, EventInstanceService service) {
+    public EventsWebSocketHandler(RestModelMapper modelMapper, EventInstanceService service, EventNotificationSender sender) {
         super(true);
         this.modelMapper = modelMapper;
         this.service = service;
+        this.sender = sender;
     }
 
     @Override
@@ -230,6 +279,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
                         if(!emptySubscriptions) {
                             changeLevels(levels);
                             changeActions(actions);
+                            this.batchNotifications = subscription.isBatchNotifications();
                             initialize();
                             session.getAttributes().put(SUBSCRIPTION_ATTRIBUTE, Boolean.TRUE);
                         }
@@ -240,6 +290,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
                         }else {
                             changeActions(actions);
                             changeLevels(levels);
+                            this.batchNotifications = subscription.isBatchNotifications();
                         }
                     }
                 }
@@ -305,9 +356,8 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         }
     }
 
-    protected void notify(EventActionEnum action, EventInstance event, WebSocketSession session) {
+    protected void notify(EventActionEnum action, EventInstanceModel instanceModel, WebSocketSession session) {
         try {
-            EventInstanceModel instanceModel = modelMapper.map(event, EventInstanceModel.class, user);
             sendRawMessage(session, new WebSocketNotification<EventInstanceModel>(action.name(), instanceModel));
         } catch(WebSocketSendException e) {
             log.warn("Error notifying websocket session", e);
@@ -321,6 +371,158 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
         }
     }
 
+    /**
+     * Queue an event to be sent by the sender, only counted if the queue is full
+     * @param action
+     * @param event
+     */
+    protected void enqueue(EventActionEnum action, EventInstance event) {
+        synchronized(queue) {
+            if (queue.size() >= maxQueued) {
+                if (overflow == null) {
+                    overflow = new EnumMap<>(EventActionEnum.class);
+                }
+                overflow.computeIfAbsent(action, a -> new EnumMap<>(AlarmLevels.class)).merge(event.getAlarmLevel(), 1, Integer::sum);
+            } else {
+                queue.add(new QueuedEvent(action, event));
+            }
+
+            if (!flushing) {
+                flushing = true;
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock on the queue
+     */
+    private void scheduleFlush() {
+        try {
+            if (batchNotifications && flushInterval > 0) {
+                scheduledExecutor.schedule(() -> {
+                    try {
+                        sender.execute(this::flush);
+                    } catch (RejectedExecutionException e) {
+                        synchronized(queue) {
+                            discard(e);
+                        }
+                    }
+                }, flushInterval, TimeUnit.MILLISECONDS);
+            } else {
+                sender.execute(this::flush);
+            }
+        } catch (RejectedExecutionException e) {
+            discard(e);
+        }
+    }
+
+    /**
+     * Drop the queued events when they can't be sent, must hold the lock on the queue
+     */
+    private void discard(RejectedExecutionException e) {
+        log.warn("Discarding " + queue.size() + " event notifications for websocket session " + session.getId(), e);
+        queue.clear();
+        overflow = null;
+        flushing = false;
+    }
+
+    /**
+     * @return the model of the event as it was when queued, null if it can't be mapped
+     */
+    private EventInstanceModel map(QueuedEvent queued) {
+        try {
+            EventInstanceModel model = modelMapper.map(queued.event, EventInstanceModel.class, user);
+            model.setRtnTimestamp(queued.rtnTimestamp);
+            model.setRtnCause(queued.rtnCause);
+            model.setRtnMessage(queued.rtnMessage);
+            model.setAcknowledgedTimestamp(queued.acknowledgedTimestamp);
+            model.setAcknowledgedByUserId(queued.acknowledgedByUserId);
+            model.setAcknowledgedByUsername(queued.acknowledgedByUsername);
+            return model;
+        } catch (Exception e) {
+            log.error("Error mapping event " + queued.event.getId() + " for websocket session " + session.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Send the queued events, runs on one sender thread at a time
+     */
+    private void flush() {
+        List<QueuedEvent> events;
+        Map<EventActionEnum, Map<AlarmLevels, Integer>> overflowed;
+        synchronized(queue) {
+            events = new ArrayList<>(queue);
+            queue.clear();
+            overflowed = overflow;
+            overflow = null;
+        }
+
+        try {
+            if (session.isOpen()) {
+                if (batchNotifications) {
+                    List<WebSocketNotification<EventInstanceModel>> batch = new ArrayList<>(events.size());
+                    for (QueuedEvent queued : events) {
+                        EventInstanceModel model = map(queued);
+                        if (model != null) {
+                            batch.add(new WebSocketNotification<EventInstanceModel>(queued.action.name(), model));
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        sendRawMessage(session, new WebSocketNotification<>(NOTIFICATION_TYPE_BATCH, batch));
+                    }
+                } else {
+                    for (QueuedEvent queued : events) {
+                        EventInstanceModel model = map(queued);
+                        if (model != null) {
+                            notify(queued.action, model, session);
+                        }
+                    }
+                }
+
+                if (overflowed != null) {
+                    sendRawMessage(session, new WebSocketNotification<>(NOTIFICATION_TYPE_OVERFLOW, overflowed));
+                }
+            }
+        } catch(WebSocketSendException e) {
+            log.warn("Error notifying websocket session", e);
+        } catch (Exception e) {
+            log.error("Error notifying websocket session", e);
+        } finally {
+            synchronized(queue) {
+                if (queue.isEmpty() && overflow == null) {
+                    flushing = false;
+                } else {
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    private static final class QueuedEvent {
+        final EventActionEnum action;
+        final EventInstance event;
+        //The state of the event that changes after it is raised
+        final Long rtnTimestamp;
+        final ReturnCause rtnCause;
+        final TranslatableMessage rtnMessage;
+        final Long acknowledgedTimestamp;
+        final Integer acknowledgedByUserId;
+        final String acknowledgedByUsername;
+
+        QueuedEvent(EventActionEnum action, EventInstance event) {
+            this.action = action;
+            this.event = event;
+            this.rtnTimestamp = event.getRtnTimestamp();
+            this.rtnCause = event.getRtnCause();
+            this.rtnMessage = event.getRtnMessage();
+            this.acknowledgedTimestamp = event.getAcknowledgedTimestamp();
+            this.acknowledgedByUserId = event.getAcknowledgedByUserId();
+            this.acknowledgedByUsername = event.getAcknowledgedByUsername();
+        }
+    }
+
     public void initialize() {
         Common.eventManager.addUserEventListener(this);
     }
@@ -362,13 +564,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             log.debug("Event raised, notifying session " + session.getId() + ": " + evt.toString());
         }
 
-        try{
-            EventsWebSocketHandler.this.notify(EventActionEnum.RAISED, evt, session);
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error notifying of event raised", e);
-            }
-        }
+        enqueue(EventActionEnum.RAISED, evt);
     }
 
     @Override
@@ -391,13 +587,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             log.debug("Event return to normal, notifying session " + session.getId() + ": " + evt.toString());
         }
 
-        try{
-            EventsWebSocketHandler.this.notify(EventActionEnum.RETURN_TO_NORMAL, evt, session);
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error notifying of event return to normal", e);
-            }
-        }
+        enqueue(EventActionEnum.RETURN_TO_NORMAL, evt);
     }
 
     @Override
@@ -420,13 +610,7 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             log.debug("Event deactivated, notifying session " + session.getId() + ": " + evt.toString());
         }
 
-        try{
-            EventsWebSocketHandler.this.notify(EventActionEnum.DEACTIVATED, evt, session);
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error notifying of event deactivated", e);
-            }
-        }
+        enqueue(EventActionEnum.DEACTIVATED, evt);
     }
 
     @Override
@@ -449,12 +633,6 @@ public class EventsWebSocketHandler extends MangoWebSocketHandler implements Use
             log.debug("Event acknowledged, notifying session " + session.getId() + ": " + evt.toString());
         }
 
-        try{
-            EventsWebSocketHandler.this.notify(EventActionEnum.ACKNOWLEDGED, evt, session);
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error notifying of event acknowledged", e);
-            }
-        }
+        enqueue(EventActionEnum.ACKNOWLEDGED, evt);
     }
 }
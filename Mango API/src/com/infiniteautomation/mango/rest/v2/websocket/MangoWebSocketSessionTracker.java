@@ -5,8 +5,11 @@ package com.infiniteautomation.mango.rest.v2.websocket;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -69,6 +72,11 @@ public final class MangoWebSocketSessionTracker {
      */
     private final Set<WebSocketSession> jwtSessions = ConcurrentHashMap.newKeySet();
 
+    /**
+     * Send backlogs of the sessions whose handlers hold back messages for slow clients
+     */
+    private final Map<WebSocketSession, WebSocketBacklog> backlogs = new ConcurrentHashMap<>();
+
     private String httpSessionIdForSession(WebSocketSession session) {
         return (String) session.getAttributes().get(MangoWebSocketHandshakeInterceptor.HTTP_SESSION_ID_ATTR);
     }
@@ -250,6 +258,8 @@ public final class MangoWebSocketSessionTracker {
     }
 
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
+        backlogs.remove(session);
+
         String httpSessionId = this.httpSessionIdForSession(session);
         if (httpSessionId != null) {
             sessionsByHttpSessionId.remove(httpSessionId, session);
@@ -277,6 +287,26 @@ public final class MangoWebSocketSessionTracker {
         }
     }
 
+    /**
+     * Track the send backlog of a session until it is closed
+     * @param session
+     * @param backlog
+     */
+    public void trackBacklog(WebSocketSession session, WebSocketBacklog backlog) {
+        if (session.isOpen()) {
+            backlogs.put(session, backlog);
+        }
+    }
+
+    /**
+     * @return the send backlogs of the open sessions that have one
+     */
+    public List<WebSocketBacklogModel> getBacklogs() {
+        List<WebSocketBacklogModel> models = new ArrayList<>(backlogs.size());
+        backlogs.forEach((session, backlog) -> models.add(new WebSocketBacklogModel(session, backlog)));
+        return models;
+    }
+
     public class CloseSessionTask extends TimeoutClient {
         private final WebSocketSession session;
 
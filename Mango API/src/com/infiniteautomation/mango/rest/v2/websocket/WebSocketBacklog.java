@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
+
+/**
+ * The messages of one web socket session that were handed to Jetty but are not written yet. Handlers
+ * hold messages back while the backlog is full and count the messages they drop or merge as a result.
+ *
+ * The backlogs of open sessions are listed by the MangoWebSocketSessionTracker.
+ */
+public class WebSocketBacklog {
+
+    private final int maxBacklog;
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+
+    private final WriteCallback callback = new WriteCallback() {
+        @Override
+        public void writeFailed(Throwable x) {
+            backlog.decrementAndGet();
+        }
+
+        @Override
+        public void writeSuccess() {
+            backlog.decrementAndGet();
+        }
+    };
+
+    /**
+     * @param maxBacklog - messages not yet written before the backlog is full, 0 for no limit
+     */
+    public WebSocketBacklog(int maxBacklog) {
+        this.maxBacklog = maxBacklog;
+    }
+
+    /**
+     * Send a message without blocking, it is added to the backlog until written
+     * @param session
+     * @param message
+     */
+    public void send(WebSocketSession session, String message) {
+        if (!session.isOpen()) {
+            throw new WebSocketClosedException();
+        }
+
+        backlog.incrementAndGet();
+        try {
+            JettyWebSocketSession jettySession = (JettyWebSocketSession) session;
+            jettySession.getNativeSession().getRemote().sendString(message, callback);
+            sent.increment();
+        } catch (Exception e) {
+            backlog.decrementAndGet();
+            throw new WebSocketSendException(e);
+        }
+    }
+
+    /**
+     * @return true if messages should be held back
+     */
+    public boolean isFull() {
+        return maxBacklog > 0 && backlog.get() >= maxBacklog;
+    }
+
+    /**
+     * Count a message that was discarded
+     */
+    public void dropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Count a message that was replaced by a later one before it was sent
+     */
+    public void merged() {
+        merged.increment();
+    }
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getMerged() {
+        return merged.sum();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * The send backlog of an open web socket session
+ */
+public class WebSocketBacklogModel {
+
+    private String sessionId;
+    private String path;
+    private String username;
+    private int backlog;
+    private int maxBacklog;
+    private long sent;
+    private long dropped;
+    private long merged;
+
+    public WebSocketBacklogModel() { }
+
+    public WebSocketBacklogModel(WebSocketSession session, WebSocketBacklog backlog) {
+        this.sessionId = session.getId();
+        this.path = session.getUri() == null ? null : session.getUri().getPath();
+        User user = (User) session.getAttributes().get(MangoWebSocketHandshakeInterceptor.USER_ATTR);
+        this.username = user == null ? null : user.getUsername();
+        this.backlog = backlog.getBacklog();
+        this.maxBacklog = backlog.getMaxBacklog();
+        this.sent = backlog.getSent();
+        this.dropped = backlog.getDropped();
+        this.merged = backlog.getMerged();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public void setMaxBacklog(int maxBacklog) {
+        this.maxBacklog = maxBacklog;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public void setSent(long sent) {
+        this.sent = sent;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+
+    public long getMerged() {
+        return merged;
+    }
+
+    public void setMerged(long merged) {
+        this.merged = merged;
+    }
+}
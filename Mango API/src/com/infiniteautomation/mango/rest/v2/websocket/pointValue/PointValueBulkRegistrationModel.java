@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Registers the same events and options for many points in one message, points are unregistered
+ * when there are no event types
+ */
+public class PointValueBulkRegistrationModel {
+
+    @JsonProperty("xids")
+    private List<String> dataPointXids; //Data points to register against
+
+    @JsonProperty("eventTypes")
+    private Set<PointValueEventType> eventTypes; //Events to listen for
+
+    @JsonProperty("maxUpdateRate")
+    private Double maxUpdateRate; //Messages per second for each point, null for no limit
+
+    @JsonProperty("coalesce")
+    private boolean coalesce; //Only send the latest of the messages held back
+
+    public PointValueBulkRegistrationModel() {
+    }
+
+    public List<String> getDataPointXids() {
+        return dataPointXids == null ? Collections.emptyList() : dataPointXids;
+    }
+
+    public void setDataPointXids(List<String> dataPointXids) {
+        this.dataPointXids = dataPointXids;
+    }
+
+    public Set<PointValueEventType> getEventTypes() {
+        return eventTypes == null ? EnumSet.noneOf(PointValueEventType.class) : eventTypes;
+    }
+
+    public void setEventTypes(Set<PointValueEventType> eventTypes) {
+        this.eventTypes = eventTypes;
+    }
+
+    public Double getMaxUpdateRate() {
+        return maxUpdateRate;
+    }
+
+    public void setMaxUpdateRate(Double maxUpdateRate) {
+        this.maxUpdateRate = maxUpdateRate;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+}
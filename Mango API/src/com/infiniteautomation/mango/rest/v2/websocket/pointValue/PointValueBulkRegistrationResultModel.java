@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Response to a bulk registration, sent as one message
+ */
+public class PointValueBulkRegistrationResultModel {
+
+    @ApiModelProperty("Status and most recent value of each newly registered point")
+    @JsonProperty("registered")
+    private List<PointValueEventModel> registered = new ArrayList<>();
+
+    @ApiModelProperty("Xids of points that don't exist or can't be read")
+    @JsonProperty("notFound")
+    private List<String> notFound = new ArrayList<>();
+
+    @ApiModelProperty("Xids of points that were already registered, their event types and options are updated")
+    @JsonProperty("alreadyRegistered")
+    private List<String> alreadyRegistered = new ArrayList<>();
+
+    public PointValueBulkRegistrationResultModel() {
+    }
+
+    public List<PointValueEventModel> getRegistered() {
+        return registered;
+    }
+
+    public void setRegistered(List<PointValueEventModel> registered) {
+        this.registered = registered;
+    }
+
+    public List<String> getNotFound() {
+        return notFound;
+    }
+
+    public void setNotFound(List<String> notFound) {
+        this.notFound = notFound;
+    }
+
+    public List<String> getAlreadyRegistered() {
+        return alreadyRegistered;
+    }
+
+    public void setAlreadyRegistered(List<String> alreadyRegistered) {
+        this.alreadyRegistered = alreadyRegistered;
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.infiniteautomation.mango.rest.v2.websocket.WebSocketBacklog;
+
+/**
+ * The messages of one point value subscription that are held back, in the order they are sent.
+ *
+ * Only value messages are coalesced or dropped, the INITIALIZE, ATTRIBUTE_CHANGE and TERMINATE messages
+ * that change the state of the point are always kept. When coalescing a value message replaces the value
+ * message held back just before it. The number of messages held back is limited per session, the count is
+ * shared by the queues of all subscriptions of the session. At the limit the oldest value message of the
+ * queue is dropped for a new one, or the new one is dropped if the queue holds no value messages.
+ *
+ * Not thread safe.
+ */
+class PointValueMessageQueue {
+
+    static final Set<PointValueEventType> VALUE_EVENTS = EnumSet.of(PointValueEventType.UPDATE, PointValueEventType.CHANGE,
+            PointValueEventType.SET, PointValueEventType.LOGGED, PointValueEventType.BACKDATE);
+
+    private final Deque<HeldMessage> messages = new ArrayDeque<>();
+    private final AtomicInteger sessionQueued;
+    private final int maxQueued;
+    private final WebSocketBacklog backlog;
+    private boolean coalesce;
+
+    /**
+     * @param sessionQueued - messages held back by all subscriptions of the session
+     * @param maxQueued - limit of the messages held back by the session
+     * @param backlog - of the session, counts the messages merged and dropped
+     */
+    PointValueMessageQueue(AtomicInteger sessionQueued, int maxQueued, WebSocketBacklog backlog) {
+        this.sessionQueued = sessionQueued;
+        this.maxQueued = maxQueued;
+        this.backlog = backlog;
+    }
+
+    /**
+     * Hold back a message
+     * @param type
+     * @param message
+     */
+    void add(PointValueEventType type, String message) {
+        boolean value = VALUE_EVENTS.contains(type);
+        HeldMessage last = messages.peekLast();
+        if(value && coalesce && last != null && last.isValue()) {
+            messages.pollLast();
+            messages.add(new HeldMessage(type, message));
+            backlog.merged();
+            return;
+        }
+        if(value && sessionQueued.get() >= maxQueued && !dropOldestValue()) {
+            backlog.dropped();
+            return;
+        }
+        messages.add(new HeldMessage(type, message));
+        sessionQueued.incrementAndGet();
+    }
+
+    /**
+     * @return the next message to send, null if there is none
+     */
+    String poll() {
+        HeldMessage held = messages.poll();
+        if(held == null)
+            return null;
+        sessionQueued.decrementAndGet();
+        return held.message;
+    }
+
+    boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    /**
+     * Start or stop coalescing, the consecutive value messages already held back are coalesced when starting
+     * @param coalesce
+     */
+    void setCoalesce(boolean coalesce) {
+        if(coalesce && !this.coalesce) {
+            HeldMessage previous = null;
+            for(Iterator<HeldMessage> it = messages.descendingIterator(); it.hasNext();) {
+                HeldMessage held = it.next();
+                if(previous != null && previous.isValue() && held.isValue()) {
+                    it.remove();
+                    sessionQueued.decrementAndGet();
+                    backlog.merged();
+                }else {
+                    previous = held;
+                }
+            }
+        }
+        this.coalesce = coalesce;
+    }
+
+    /**
+     * Discard all messages
+     */
+    void clear() {
+        sessionQueued.addAndGet(-messages.size());
+        messages.clear();
+    }
+
+    private boolean dropOldestValue() {
+        for(Iterator<HeldMessage> it = messages.iterator(); it.hasNext();) {
+            if(it.next().isValue()) {
+                it.remove();
+                sessionQueued.decrementAndGet();
+                backlog.dropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class HeldMessage {
+        final PointValueEventType type;
+        final String message;
+
+        HeldMessage(PointValueEventType type, String message) {
+            this.type = type;
+            this.message = message;
+        }
+
+        boolean isValue() {
+            return VALUE_EVENTS.contains(type);
+        }
+    }
+}
@@ -21,6 +21,12 @@ public class PointValueRegistrationModel {
     @JsonProperty("eventTypes")
     private Set<PointValueEventType> eventTypes; //Events to listen for
 
+    @JsonProperty("maxUpdateRate")
+    private Double maxUpdateRate; //Messages per second for the point, null for no limit
+
+    @JsonProperty("coalesce")
+    private boolean coalesce; //Only send the latest of the messages held back
+
 
     public PointValueRegistrationModel(){
     }
@@ -41,4 +47,20 @@ public class PointValueRegistrationModel {
         this.eventTypes = eventTypes;
     }
 
+    public Double getMaxUpdateRate() {
+        return maxUpdateRate;
+    }
+
+    public void setMaxUpdateRate(Double maxUpdateRate) {
+        this.maxUpdateRate = maxUpdateRate;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
 }
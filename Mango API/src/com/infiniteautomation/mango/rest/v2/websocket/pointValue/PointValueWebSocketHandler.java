@@ -4,68 +4,121 @@
 
 package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.util.UriComponentsBuilder;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.infiniteautomation.mango.db.query.ConditionSortLimit;
 import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketErrorType;
 import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketHandler;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketResponseModel;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketResponseStatus;
+import com.infiniteautomation.mango.rest.v2.websocket.WebSocketBacklog;
 import com.infiniteautomation.mango.rest.v2.websocket.WebSocketSendException;
 import com.infiniteautomation.mango.spring.service.PermissionService;
-import com.infiniteautomation.mango.util.Functions;
 import com.serotonin.m2m2.Common;
-import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
-import com.serotonin.m2m2.rt.dataImage.DataPointListener;
-import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.User;
 
+import net.jazdw.rql.parser.ASTNode;
+
 /**
- * Event handler for single web socket session to publish events for multiple data points
+ * Event handler for single web socket session to publish events for multiple data points, the events
+ * are received from the shared PointValueWebSocketHub
+ *
+ * Each subscription may limit the messages per second of its point, messages over the rate and
+ * messages arriving while the send backlog of the session is full are held back. Subscriptions that
+ * coalesce only keep the latest of consecutive value messages, the session holds back up to
+ * web.websocket.pointValue.maxQueued messages and then drops the oldest value messages. Messages that
+ * change the state of the point are never coalesced or dropped, see PointValueMessageQueue.
+ *
+ * A message with xids instead of xid registers many points at once, the points are read in bulk and
+ * their statuses are returned in one PointValueBulkRegistrationResultModel. The events of the new
+ * subscriptions are held back until that message is sent. Messages with more than
+ * web.websocket.pointValue.maxBulkXids xids are rejected.
  *
  * @author Terry Packer
  * @author Jared Wiltshire
  */
 public class PointValueWebSocketHandler extends MangoWebSocketHandler {
 
-    private final Map<Integer, PointValueWebSocketListener> pointIdToListenerMap = new HashMap<>();
+    /**
+     * Xids per query when registering in bulk
+     */
+    private static final int BULK_QUERY_SIZE = 500;
+
+    private final Map<Integer, PointValueSubscription> pointIdToSubscriptionMap = new HashMap<>();
     private boolean connectionClosed = false;
     private WebSocketSession session;
     private final PermissionService permissionService;
+    private final PointValueWebSocketHub hub;
+    private WebSocketBacklog backlog;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Messages handed to Jetty but not written before messages are held back
+     */
+    @Value("${web.websocket.pointValue.maxBacklog:1000}")
+    private int maxBacklog;
+
+    /**
+     * Value messages held back by all subscriptions of the session
+     */
+    @Value("${web.websocket.pointValue.maxQueued:1000}")
+    private int maxQueued;
+
+    /**
+     * Ms to wait before sending held back messages while the backlog is full
+     */
+    @Value("${web.websocket.pointValue.backlogRetryMs:100}")
+    private int backlogRetryMs;
 
-    public PointValueWebSocketHandler(PermissionService permissionService){
+    /**
+     * Xids in one bulk registration message
+     */
+    @Value("${web.websocket.pointValue.maxBulkXids:10000}")
+    private int maxBulkXids;
+
+    public PointValueWebSocketHandler(PermissionService permissionService, PointValueWebSocketHub hub){
         this.permissionService = permissionService;
+        this.hub = hub;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         super.afterConnectionEstablished(session);
+        this.backlog = new WebSocketBacklog(maxBacklog);
         this.session = session;
+        this.sessionTracker.trackBacklog(session, backlog);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         super.afterConnectionClosed(session, status);
 
-        synchronized(pointIdToListenerMap) {
+        synchronized(pointIdToSubscriptionMap) {
             if (!this.connectionClosed) {
                 this.connectionClosed = true;
-                for (Entry<Integer, PointValueWebSocketListener> entry : pointIdToListenerMap.entrySet()) {
-                    PointValueWebSocketListener pub = entry.getValue();
-                    pub.terminate();
+                for (PointValueSubscription subscription : pointIdToSubscriptionMap.values()) {
+                    hub.unsubscribe(subscription.dataPointId, subscription);
+                    subscription.cancel();
                 }
+                pointIdToSubscriptionMap.clear();
             }
         }
 
@@ -83,49 +136,12 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
             if (user == null) {
                 return;
             }
-            PointValueRegistrationModel model = this.jacksonMapper.readValue(message.getPayload(), PointValueRegistrationModel.class);
-
-            // Handle message.getPayload() here
-            DataPointVO vo = DataPointDao.getInstance().getByXid(model.getDataPointXid());
-            if (vo == null) {
-                this.sendErrorMessage(session,MangoWebSocketErrorType.SERVER_ERROR,
-                        new TranslatableMessage("rest.error.pointNotFound", model.getDataPointXid()));
-                return;
+            JsonNode payload = this.jacksonMapper.readTree(message.getPayload());
+            if (payload.has("xids")) {
+                handleBulkRegistration(session, user, this.jacksonMapper.treeToValue(payload, PointValueBulkRegistrationModel.class));
+            } else {
+                handleRegistration(session, user, this.jacksonMapper.treeToValue(payload, PointValueRegistrationModel.class));
             }
-
-            //Check permissions
-            if(!permissionService.hasDataPointReadPermission(user, vo)){
-                this.sendErrorMessage(session, MangoWebSocketErrorType.PERMISSION_DENIED,
-                        new TranslatableMessage("permission.exception.readDataPoint", user.getUsername()));
-                return;
-            }
-
-            Set<PointValueEventType> eventsTypes = model.getEventTypes();
-            int dataPointId = vo.getId();
-
-            synchronized(pointIdToListenerMap) {
-                if (this.connectionClosed) {
-                    return;
-                }
-
-                PointValueWebSocketListener publisher = pointIdToListenerMap.get(dataPointId);
-
-                if (publisher != null) {
-                    if (eventsTypes.isEmpty()) {
-                        publisher.terminate();
-                        pointIdToListenerMap.remove(dataPointId);
-                    } else {
-                        publisher.setEventTypes(eventsTypes);
-                    }
-                } else if (!eventsTypes.isEmpty()) {
-                    publisher = new PointValueWebSocketListener(vo, eventsTypes);
-                    publisher.initialize();
-                    //Immediately send the most recent Point Value and the status of the data point
-                    publisher.sendPointStatus();
-                    pointIdToListenerMap.put(dataPointId, publisher);
-                }
-            }
-
         } catch (WebSocketSendException e) {
             log.warn("Error sending websocket message", e);
         } catch (Exception e) {
@@ -141,228 +157,245 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
         }
     }
 
-    protected void sendMessage(Object payload) throws JsonProcessingException, Exception {
-        super.sendMessage(session, payload);
-    }
-
-    /**
-     * @author Terry Packer
-     * @author Jared Wiltshire
-     */
-    public class PointValueWebSocketListener implements DataPointListener {
-        private DataPointVO vo;
-        private DataPointRT rt;
-        private UriComponentsBuilder imageServletBuilder;
-        private volatile EnumSet<PointValueEventType> eventTypes;
-
-        public PointValueWebSocketListener(DataPointVO vo,  Set<PointValueEventType> eventTypes) {
-            this.vo = vo;
-
-            //If we are an image type we should build the URLS
-            if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-                imageServletBuilder = UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg");
+    private void handleRegistration(WebSocketSession session, User user, PointValueRegistrationModel model) throws JsonProcessingException {
+        // Handle message.getPayload() here
+        DataPointVO vo = DataPointDao.getInstance().getByXid(model.getDataPointXid());
+        if (vo == null) {
+            this.sendErrorMessage(session,MangoWebSocketErrorType.SERVER_ERROR,
+                    new TranslatableMessage("rest.error.pointNotFound", model.getDataPointXid()));
+            return;
+        }
 
-            this.setEventTypes(eventTypes);
+        //Check permissions
+        if(!permissionService.hasDataPointReadPermission(user, vo)){
+            this.sendErrorMessage(session, MangoWebSocketErrorType.PERMISSION_DENIED,
+                    new TranslatableMessage("permission.exception.readDataPoint", user.getUsername()));
+            return;
         }
 
-        private void sendNotification(PointValueEventType eventType, PointValueTime pvt) throws JsonProcessingException, Exception {
-            boolean enabled = false;
-            boolean pointEnabled = false;
-            Map<String,Object> attributes = null;
-            Double convertedValue = null;
-            String renderedValue = null;
-            DataPointRT dprt = rt;
-            if (dprt != null) {
-                enabled = true; //We are enabled
-                pointEnabled = true; //Must be if we are running
-                if (pvt == null) {
-                    pvt = dprt.getPointValue(); //Get the value
-                }
-                attributes = new HashMap<>(dprt.getAttributes());
-                renderedValue = Functions.getRenderedText(vo, pvt);
-                if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC && (pvt != null)) {
-                    convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
-                }
-            }else {
-                pointEnabled = DataPointDao.getInstance().isEnabled(vo.getId());
+        synchronized(pointIdToSubscriptionMap) {
+            if (this.connectionClosed) {
+                return;
             }
 
-            PointValueTimeModel pvtModel = null;
-            if (pvt != null) {
-                pvtModel = new PointValueTimeModel(pvt);
-                if (vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE) {
-                    pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
-                }
+            PointValueSubscription subscription = updateSubscription(vo.getId(), model.getEventTypes(), model.getMaxUpdateRate(), model.isCoalesce());
+            if (subscription != null) {
+                //Immediately sends the most recent Point Value and the status of the data point
+                hub.subscribe(vo, subscription);
             }
-            sendMessage(new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue));
         }
+    }
 
-        /**
-         * Initial response upon new registration
-         */
-        public void sendPointStatus() {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                rt = Common.runtimeManager.getDataPoint(vo.getId()); //Set us up
-                sendNotification(PointValueEventType.REGISTERED, null);
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+    private void handleBulkRegistration(WebSocketSession session, User user, PointValueBulkRegistrationModel model) throws JsonProcessingException {
+        if (model.getDataPointXids().size() > maxBulkXids) {
+            this.sendErrorMessage(session, MangoWebSocketErrorType.SERVER_ERROR,
+                    new TranslatableMessage("rest.validate.websocket.tooManyXids", maxBulkXids));
+            return;
         }
 
-        @Override
-        public void pointInitialized() {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                rt = Common.runtimeManager.getDataPoint(vo.getId()); //Set us up
+        Map<String, DataPointVO> points = getReadableDataPoints(user, model.getDataPointXids());
 
-                if (this.eventTypes.contains(PointValueEventType.INITIALIZE)) {
-                    sendNotification(PointValueEventType.INITIALIZE, null);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
+        PointValueBulkRegistrationResultModel result = new PointValueBulkRegistrationResultModel();
+        List<DataPointVO> registered = new ArrayList<>();
+        List<PointValueSubscription> held = new ArrayList<>();
+        synchronized(pointIdToSubscriptionMap) {
+            if (this.connectionClosed) {
+                return;
             }
-        }
 
-        @Override
-        public void pointUpdated(PointValueTime newValue) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
+            for (String xid : model.getDataPointXids()) {
+                DataPointVO vo = points.get(xid);
+                if (vo == null) {
+                    result.getNotFound().add(xid);
+                    continue;
                 }
-
-                if (this.eventTypes.contains(PointValueEventType.UPDATE)) {
-                    sendNotification(PointValueEventType.UPDATE, newValue);
+                if (pointIdToSubscriptionMap.containsKey(vo.getId()) && !model.getEventTypes().isEmpty()) {
+                    //Its events and options are updated, no status is sent
+                    result.getAlreadyRegistered().add(xid);
+                }
+                PointValueSubscription subscription = updateSubscription(vo.getId(), model.getEventTypes(), model.getMaxUpdateRate(), model.isCoalesce());
+                if (subscription != null) {
+                    subscription.hold();
+                    held.add(subscription);
+                    hub.register(vo, subscription);
+                    registered.add(vo);
                 }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
             }
         }
 
-        @Override
-        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
+        try {
+            //The most recent Point Values and statuses of the data points in one message
+            for (DataPointVO vo : registered) {
+                result.getRegistered().add(hub.getStatus(vo));
+            }
+            backlog.send(session, this.jacksonMapper.writeValueAsString(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, result)));
+        } finally {
+            for (PointValueSubscription subscription : held) {
+                subscription.release();
+            }
+        }
+    }
 
-                if (this.eventTypes.contains(PointValueEventType.CHANGE)) {
-                    sendNotification(PointValueEventType.CHANGE, newValue);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
+    /**
+     * Create, update or remove the subscription to a point, the lock on pointIdToSubscriptionMap must be held
+     * @return the subscription if one was created
+     */
+    private PointValueSubscription updateSubscription(int dataPointId, Set<PointValueEventType> eventsTypes, Double maxUpdateRate, boolean coalesce) {
+        PointValueSubscription subscription = pointIdToSubscriptionMap.get(dataPointId);
+
+        if (subscription != null) {
+            if (eventsTypes.isEmpty()) {
+                hub.unsubscribe(dataPointId, subscription);
+                subscription.cancel();
+                pointIdToSubscriptionMap.remove(dataPointId);
+            } else {
+                subscription.setEventTypes(eventsTypes);
+                subscription.setRate(maxUpdateRate, coalesce);
             }
+            return null;
+        } else if (!eventsTypes.isEmpty()) {
+            subscription = new PointValueSubscription(dataPointId, eventsTypes);
+            subscription.setRate(maxUpdateRate, coalesce);
+            pointIdToSubscriptionMap.put(dataPointId, subscription);
+            return subscription;
         }
+        return null;
+    }
 
-        @Override
-        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
+    /**
+     * Get the points the user can read, by xid
+     * @param user
+     * @param xids
+     * @return
+     */
+    private Map<String, DataPointVO> getReadableDataPoints(User user, List<String> xids) {
+        Map<String, DataPointVO> points = new HashMap<>(xids.size());
+        for (int i = 0; i < xids.size(); i += BULK_QUERY_SIZE) {
+            List<Object> batch = new ArrayList<>(xids.subList(i, Math.min(i + BULK_QUERY_SIZE, xids.size())));
+            ConditionSortLimit conditions = DataPointDao.getInstance().rqlToCondition(new ASTNode("in", "xid", batch), null, null, user);
+            DataPointDao.getInstance().customizedQuery(conditions, (vo, index) -> {
+                if (permissionService.hasDataPointReadPermission(user, vo)) {
+                    points.put(vo.getXid(), vo);
                 }
+            });
+        }
+        return points;
+    }
 
-                if (this.eventTypes.contains(PointValueEventType.SET)) {
-                    sendNotification(PointValueEventType.SET, newValue);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+    /**
+     * The subscription of this session to one point
+     */
+    private class PointValueSubscription implements PointValueWebSocketHub.Subscriber {
+        private final int dataPointId;
+        private volatile EnumSet<PointValueEventType> eventTypes;
+
+        //Guarded by this
+        private long intervalMs;
+        private long nextSend;
+        private final PointValueMessageQueue queue = new PointValueMessageQueue(queued, maxQueued, backlog);
+        private ScheduledFuture<?> flushTask;
+        private boolean holding;
+        private boolean cancelled;
+
+        PointValueSubscription(int dataPointId, Set<PointValueEventType> eventTypes) {
+            this.dataPointId = dataPointId;
+            this.setEventTypes(eventTypes);
         }
 
-        @Override
-        public void pointBackdated(PointValueTime value) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
+        /**
+         * Re-set the event types
+         * @param eventTypes
+         */
+        void setEventTypes(Set<PointValueEventType> eventTypes) {
+            this.eventTypes = EnumSet.copyOf(eventTypes);
+        }
 
-                if (this.eventTypes.contains(PointValueEventType.BACKDATE)) {
-                    sendNotification(PointValueEventType.BACKDATE, value);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+        /**
+         * @param maxUpdateRate - messages per second, null for no limit
+         * @param coalesce - only keep the latest of consecutive value messages held back
+         */
+        synchronized void setRate(Double maxUpdateRate, boolean coalesce) {
+            this.intervalMs = maxUpdateRate != null && maxUpdateRate > 0 ? (long)Math.ceil(1000d / maxUpdateRate) : 0;
+            queue.setCoalesce(coalesce);
         }
 
         @Override
-        public void attributeChanged(Map<String, Object> attributes) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.ATTRIBUTE_CHANGE)) {
-                    sendMessage(new PointValueEventModel(vo.getXid(), true, true, attributes, PointValueEventType.ATTRIBUTE_CHANGE, null, null, null));
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+        public Set<PointValueEventType> getEventTypes() {
+            return eventTypes;
         }
 
         @Override
-        public void pointTerminated(DataPointVO dp) {
+        public boolean send(PointValueEventType type, String message) {
             try {
                 if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
+                    return false;
                 }
-
-                this.rt = null;
-                if (this.eventTypes.contains(PointValueEventType.TERMINATE)){
-                    sendMessage(new PointValueEventModel(vo.getXid(), false, dp.isEnabled(), null, PointValueEventType.TERMINATE, null, null, null));
+                if (type == PointValueEventType.REGISTERED) {
+                    backlog.send(session, message);
+                } else {
+                    offer(type, message);
                 }
             } catch (WebSocketSendException e) {
                 log.warn("Error sending websocket message", e);
             } catch (Exception e) {
                 log.error(e);
+                return false;
             }
+            return true;
         }
 
         /**
-         * Re-set the event types
-         * @param eventTypes
+         * Send a message now or hold it back if the rate is exceeded or the backlog is full
          */
-        public void setEventTypes(Set<PointValueEventType> eventTypes) {
-            this.eventTypes = EnumSet.copyOf(eventTypes);
+        private synchronized void offer(PointValueEventType type, String message) {
+            if (cancelled) {
+                return;
+            }
+            long now = Common.timer.currentTimeMillis();
+            if (!holding && queue.isEmpty() && now >= nextSend && !backlog.isFull()) {
+                backlog.send(session, message);
+                nextSend = now + intervalMs;
+                return;
+            }
+
+            queue.add(type, message);
+            scheduleFlush(now);
         }
 
-        public void initialize() {
-            Common.runtimeManager.addDataPointListener(vo.getId(), this);
+        /**
+         * Hold back all messages until released
+         */
+        synchronized void hold() {
+            holding = true;
         }
 
-        public void terminate() {
-            Common.runtimeManager.removeDataPointListener(vo.getId(), this);
+        /**
+         * Send the messages held back since hold() as the rate and backlog allow
+         */
+        synchronized void release() {
+            holding = false;
+            scheduleFlush(Common.timer.currentTimeMillis());
         }
 
-        @Override
-        public void pointLogged(PointValueTime value) {
+        /**
+         * Send the messages held back that the rate and backlog allow
+         */
+        private synchronized void flush() {
+            flushTask = null;
+            if (cancelled || !session.isOpen()) {
+                return;
+            }
             try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.LOGGED)) {
-                    sendNotification(PointValueEventType.LOGGED, value);
+                long now = Common.timer.currentTimeMillis();
+                while (now >= nextSend && !backlog.isFull()) {
+                    String message = queue.poll();
+                    if (message == null) {
+                        return;
+                    }
+                    backlog.send(session, message);
+                    nextSend = now + intervalMs;
                 }
+                scheduleFlush(now);
             } catch (WebSocketSendException e) {
                 log.warn("Error sending websocket message", e);
             } catch (Exception e) {
@@ -370,9 +403,21 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
             }
         }
 
-        @Override
-        public String getListenerName() {
-            return "Websocket for DP " + this.vo.getXid() + "'s point values.";
+        private void scheduleFlush(long now) {
+            if (holding || flushTask != null || queue.isEmpty()) {
+                return;
+            }
+            long delay = backlog.isFull() ? Math.max(backlogRetryMs, nextSend - now) : nextSend - now;
+            flushTask = scheduledExecutor.schedule(this::flush, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            queue.clear();
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
         }
     }
 }
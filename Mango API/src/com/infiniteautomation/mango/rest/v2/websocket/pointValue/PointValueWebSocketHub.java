@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.websocket.pointValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeModel;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketResponseModel;
+import com.infiniteautomation.mango.rest.v2.websocket.MangoWebSocketResponseStatus;
+import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
+import com.infiniteautomation.mango.util.Functions;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Shares one data point listener per point between all point value web socket sessions. Each event is
+ * serialized once, when the first session subscribed to its type needs it, and the same frame is sent
+ * to every session subscribed to that type.
+ *
+ * Read permission is checked when a session subscribes, the frames are the same for every user.
+ *
+ * @see PointValueWebSocketHandler
+ */
+@Component
+public class PointValueWebSocketHub {
+
+    private static final String IMAGE_VALUE_PATH = "/imageValue/{ts}_{id}.jpg";
+
+    private final Log log = LogFactory.getLog(PointValueWebSocketHub.class);
+
+    /**
+     * A session's subscription to the events of one point
+     */
+    public interface Subscriber {
+
+        Set<PointValueEventType> getEventTypes();
+
+        /**
+         * @param type
+         * @param message - serialized response
+         * @return false if the subscriber is gone and should be removed
+         */
+        boolean send(PointValueEventType type, String message);
+    }
+
+    private final ObjectMapper jacksonMapper;
+    private final Map<Integer, PointHub> hubs = new HashMap<>();
+
+    @Autowired
+    public PointValueWebSocketHub(@Qualifier(MangoRuntimeContextConfiguration.REST_OBJECT_MAPPER_NAME) ObjectMapper jacksonMapper) {
+        this.jacksonMapper = jacksonMapper;
+    }
+
+    /**
+     * Subscribe to the events of a point and send the subscriber the current value and status of the point
+     * @param vo
+     * @param subscriber
+     */
+    public void subscribe(DataPointVO vo, Subscriber subscriber) {
+        register(vo, subscriber);
+
+        String message = encode(vo, () -> getStatus(vo));
+        if(message != null && !subscriber.send(PointValueEventType.REGISTERED, message))
+            unsubscribe(vo.getId(), subscriber);
+    }
+
+    /**
+     * Subscribe to the events of a point without sending its status
+     * @param vo
+     * @param subscriber
+     */
+    public void register(DataPointVO vo, Subscriber subscriber) {
+        synchronized(hubs) {
+            PointHub hub = hubs.get(vo.getId());
+            if(hub == null) {
+                hub = new PointHub(vo);
+                hubs.put(vo.getId(), hub);
+                hub.initialize();
+            }
+            hub.subscribers.add(subscriber);
+        }
+    }
+
+    /**
+     * @param vo
+     * @return the current value and status of a point, as sent when subscribing
+     */
+    public PointValueEventModel getStatus(DataPointVO vo) {
+        return createModel(vo, PointValueEventType.REGISTERED, Common.runtimeManager.getDataPoint(vo.getId()), null);
+    }
+
+    /**
+     * Remove a subscription, the listener of the point is removed with its last subscriber
+     * @param dataPointId
+     * @param subscriber
+     */
+    public void unsubscribe(int dataPointId, Subscriber subscriber) {
+        synchronized(hubs) {
+            PointHub hub = hubs.get(dataPointId);
+            if(hub != null && hub.subscribers.remove(subscriber) && hub.subscribers.isEmpty()) {
+                hubs.remove(dataPointId);
+                hub.terminate();
+            }
+        }
+    }
+
+    /**
+     * @return number of points with a listener
+     */
+    public int getPointCount() {
+        synchronized(hubs) {
+            return hubs.size();
+        }
+    }
+
+    /**
+     * @return the response containing the model, null if it can't be serialized
+     */
+    private String encode(DataPointVO vo, Supplier<PointValueEventModel> model) {
+        try {
+            return jacksonMapper.writeValueAsString(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, model.get()));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Error serializing point value event for DP " + vo.getXid(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param vo
+     * @param eventType
+     * @param dprt - the running point, null if it is not running
+     * @param pvt - the value of the event, null for the current value of the point
+     * @return the model of a point value event
+     */
+    private static PointValueEventModel createModel(DataPointVO vo, PointValueEventType eventType, DataPointRT dprt, PointValueTime pvt) {
+        boolean enabled = false;
+        boolean pointEnabled = false;
+        Map<String,Object> attributes = null;
+        Double convertedValue = null;
+        String renderedValue = null;
+        if (dprt != null) {
+            enabled = true; //We are enabled
+            pointEnabled = true; //Must be if we are running
+            if (pvt == null) {
+                pvt = dprt.getPointValue(); //Get the value
+            }
+            attributes = new HashMap<>(dprt.getAttributes());
+            renderedValue = Functions.getRenderedText(vo, pvt);
+            if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC && (pvt != null)) {
+                convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
+            }
+        }else {
+            pointEnabled = DataPointDao.getInstance().isEnabled(vo.getId());
+        }
+
+        PointValueTimeModel pvtModel = null;
+        if (pvt != null) {
+            pvtModel = new PointValueTimeModel(pvt);
+            //If we are an image type we should build the URLS
+            if (vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE) {
+                pvtModel.setValue(UriComponentsBuilder.fromPath(IMAGE_VALUE_PATH).buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
+            }
+        }
+        return new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue);
+    }
+
+    /**
+     * Listens to one point for all of its subscribers
+     */
+    private class PointHub implements DataPointListener {
+        private final int dataPointId;
+        private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+        private volatile DataPointVO vo;
+        private volatile DataPointRT rt;
+
+        PointHub(DataPointVO vo) {
+            this.dataPointId = vo.getId();
+            this.vo = vo;
+        }
+
+        void initialize() {
+            Common.runtimeManager.addDataPointListener(dataPointId, this);
+            this.rt = Common.runtimeManager.getDataPoint(dataPointId);
+        }
+
+        void terminate() {
+            Common.runtimeManager.removeDataPointListener(dataPointId, this);
+        }
+
+        /**
+         * Send an event to the subscribers of its type, serializing it for the first one
+         */
+        private void publish(PointValueEventType type, Supplier<PointValueEventModel> model) {
+            String message = null;
+            for(Subscriber subscriber : subscribers) {
+                if(!subscriber.getEventTypes().contains(type))
+                    continue;
+                if(message == null) {
+                    message = encode(vo, model);
+                    if(message == null)
+                        return;
+                }
+                if(!subscriber.send(type, message))
+                    unsubscribe(dataPointId, subscriber);
+            }
+        }
+
+        private void publishValue(PointValueEventType type, PointValueTime pvt) {
+            DataPointVO vo = this.vo;
+            DataPointRT rt = this.rt;
+            publish(type, () -> createModel(vo, type, rt, pvt));
+        }
+
+        @Override
+        public void pointInitialized() {
+            DataPointRT dprt = Common.runtimeManager.getDataPoint(dataPointId);
+            if(dprt != null)
+                this.vo = dprt.getVO();
+            this.rt = dprt;
+            publishValue(PointValueEventType.INITIALIZE, null);
+        }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) {
+            publishValue(PointValueEventType.UPDATE, newValue);
+        }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+            publishValue(PointValueEventType.CHANGE, newValue);
+        }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+            publishValue(PointValueEventType.SET, newValue);
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            publishValue(PointValueEventType.BACKDATE, value);
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            publishValue(PointValueEventType.LOGGED, value);
+        }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) {
+            publish(PointValueEventType.ATTRIBUTE_CHANGE,
+                    () -> new PointValueEventModel(vo.getXid(), true, true, attributes, PointValueEventType.ATTRIBUTE_CHANGE, null, null, null));
+        }
+
+        @Override
+        public void pointTerminated(DataPointVO dp) {
+            this.rt = null;
+            publish(PointValueEventType.TERMINATE,
+                    () -> new PointValueEventModel(vo.getXid(), false, dp.isEnabled(), null, PointValueEventType.TERMINATE, null, null, null));
+        }
+
+        @Override
+        public String getListenerName() {
+            return "Websocket hub for DP " + vo.getXid() + "'s point values.";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.webapp;
+
+import java.io.IOException;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryMetrics;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueQueryStatistics;
+import com.infiniteautomation.mango.spring.ConditionalOnProperty;
+
+/**
+ * Counts the bytes written for point value queries, adds a Server-Timing header with the time of each
+ * phase of the query and adds the query to the point value query metrics when it completes.
+ *
+ * Headers can only be added until the response is committed, the Server-Timing header is added when
+ * the body is flushed or fills the response buffer. Responses that fit in the buffer get the times of
+ * the whole query, larger ones the times up to that point.
+ *
+ * @see PointValueQueryStatistics
+ */
+@Component
+@ConditionalOnProperty("${rest.enabled:true}")
+@WebFilter(
+        asyncSupported = true,
+        urlPatterns = {"/rest/v2/point-values/*"},
+        dispatcherTypes = {DispatcherType.REQUEST, DispatcherType.ASYNC})
+public class PointValueQueryStatisticsFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        long start = System.nanoTime();
+        StatisticsResponse wrapper = new StatisticsResponse(request, response, start);
+        try {
+            filterChain.doFilter(request, wrapper);
+        }finally {
+            PointValueQueryStatistics statistics = wrapper.getStatistics();
+            if(statistics != null) {
+                statistics.stop();
+                String path = request.getRequestURI();
+                if(request.getQueryString() != null)
+                    path += "?" + request.getQueryString();
+                PointValueQueryMetrics.completed(statistics, path, System.nanoTime() - start, wrapper.getBytesWritten());
+            }
+        }
+    }
+
+    private static final class StatisticsResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private final long start;
+        private CountingOutputStream out;
+        private boolean timingAdded;
+
+        StatisticsResponse(HttpServletRequest request, HttpServletResponse response, long start) {
+            super(response);
+            this.request = request;
+            this.start = start;
+        }
+
+        PointValueQueryStatistics getStatistics() {
+            return (PointValueQueryStatistics)request.getAttribute(PointValueQueryStatistics.REQUEST_ATTRIBUTE);
+        }
+
+        long getBytesWritten() {
+            return out == null ? 0 : out.count;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if(out == null)
+                out = new CountingOutputStream(super.getOutputStream());
+            return out;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        /**
+         * Add the header while it still can be
+         */
+        void addServerTiming() {
+            if(timingAdded || isCommitted())
+                return;
+            timingAdded = true;
+            PointValueQueryStatistics statistics = getStatistics();
+            if(statistics != null)
+                setHeader(SERVER_TIMING_HEADER, statistics.toServerTiming(System.nanoTime() - start));
+        }
+
+        private final class CountingOutputStream extends ServletOutputStream {
+            private final ServletOutputStream delegate;
+            long count;
+
+            CountingOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                beforeWrite(1);
+                delegate.write(b);
+                count++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                beforeWrite(len);
+                delegate.write(b, off, len);
+                count += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                addServerTiming();
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                addServerTiming();
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                delegate.setWriteListener(writeListener);
+            }
+
+            /**
+             * The response is committed once the buffer fills
+             */
+            private void beforeWrite(int len) {
+                if(!timingAdded && count + len >= getBufferSize())
+                    addServerTiming();
+            }
+        }
+    }
+}
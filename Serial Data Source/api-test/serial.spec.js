@@ -189,6 +189,7 @@ describe('Serial data source', function() {
             parity: 'NONE',
             readTimeout : 500,
             retries : 5,
+            pipelineQueueSize: 100,
             useTerminator: false,
             messageTerminator: ';',
             messageRegex: '.*',
@@ -212,6 +213,7 @@ describe('Serial data source', function() {
         assert.strictEqual(saved.parity, local.parity);
         assert.strictEqual(saved.readTimeout, local.readTimeout);
         assert.strictEqual(saved.retries, local.retries);
+        assert.strictEqual(saved.pipelineQueueSize, local.pipelineQueueSize);
         assert.strictEqual(saved.useTerminator, local.useTerminator);
         assert.strictEqual(saved.messageTerminator, local.messageTerminator);
         assert.strictEqual(saved.messageRegex, local.messageRegex);
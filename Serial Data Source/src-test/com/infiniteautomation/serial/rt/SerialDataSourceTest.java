@@ -4,13 +4,16 @@
  */
 package com.infiniteautomation.serial.rt;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -222,6 +225,74 @@ public class SerialDataSourceTest extends MangoTestBase {
     }
 
 
+    /**
+     * Messages are only dispatched to the points registered for the identifier in the message
+     */
+    @Test
+    public void testIdentifierDispatch(){
+        vo.setMessageRegex("(\\w+)=.*");
+        List<DataPointRT> points = new ArrayList<>();
+        for(int i = 0; i < 300; i++) {
+            DataPointRT point = SerialDataSourceTestData.getCustomPoint("sensor" + i, "sensor" + i, "\\w+=(\\d+);", 1, "sensor" + i, vo);
+            rt.addDataPoint(point);
+            points.add(point);
+        }
+
+        try {
+            assertTrue(rt.connect());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        }
+
+        proxy.getTestInputStream().pushToMockStream("sensor7=70;sensor299=2990;unknown=1;");
+        rt.serialEvent(new SerialPortProxyEvent(timer.currentTimeMillis()));
+
+        assertEquals("70", points.get(7).getPointValue().getStringValue());
+        assertEquals("2990", points.get(299).getPointValue().getStringValue());
+        assertTrue(points.get(0).getPointValue() == null);
+
+        for(DataPointRT point : points)
+            rt.removeDataPoint(point);
+    }
+
+    /**
+     * Push many messages through the port in a single event, more data than the max message size
+     *  arrives at once so messages must be framed as they are read
+     */
+    @Test
+    public void testReadManyMessages(){
+        int messageCount = 2000;
+        DataPointRT point = SerialDataSourceTestData.getCustomPoint("many", "many", "(v\\d+);", 1, "", vo);
+        rt.addDataPoint(point);
+
+        try {
+            assertTrue(rt.connect());
+        } catch (Exception e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        }
+
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < messageCount; i++)
+            input.append('v').append(i).append(';');
+        proxy.getTestInputStream().pushToMockStream(input.toString());
+        rt.serialEvent(new SerialPortProxyEvent(timer.currentTimeMillis()));
+
+        //All messages arrive at the same time so only the set of values is compared
+        Set<String> expected = new HashSet<>();
+        for(int i = 0; i < messageCount; i++)
+            expected.add("v" + i);
+        Set<String> decoded = new HashSet<>();
+        for(PointValueTime pvt : point.getLatestPointValues(messageCount))
+            decoded.add(pvt.getStringValue());
+        assertEquals(expected, decoded);
+        assertEquals("v" + (messageCount - 1), point.getPointValue().getStringValue());
+
+        rt.removeDataPoint(point);
+    }
+
+
     class SerialDataSourceSerialPortManager extends MockSerialPortManager {
 
         protected SerialPortProxy proxy;
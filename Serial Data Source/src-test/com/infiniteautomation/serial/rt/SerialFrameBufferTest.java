@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SerialFrameBufferTest {
+
+    private static final byte[] TERMINATOR = ";".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(16);
+        List<String> frames = new ArrayList<>();
+
+        assertEquals(5, buffer.read(stream("ab;cd"), null));
+        assertEquals(1, buffer.drainFrames(TERMINATOR, collect(frames)));
+        assertEquals(2, buffer.size());
+
+        assertEquals(4, buffer.read(stream("e;f;"), null));
+        assertEquals(2, buffer.drainFrames(TERMINATOR, collect(frames)));
+        assertEquals(0, buffer.size());
+
+        assertEquals(3, frames.size());
+        assertEquals("ab;", frames.get(0));
+        assertEquals("cde;", frames.get(1));
+        assertEquals("f;", frames.get(2));
+    }
+
+    @Test
+    public void testMultiByteTerminatorSplitAcrossReads() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(16);
+        List<String> frames = new ArrayList<>();
+        byte[] terminator = "\r\n".getBytes(StandardCharsets.UTF_8);
+
+        buffer.read(stream("abc\r"), null);
+        assertEquals(0, buffer.drainFrames(terminator, collect(frames)));
+        buffer.read(stream("\ndef"), null);
+        assertEquals(1, buffer.drainFrames(terminator, collect(frames)));
+
+        assertEquals("abc\r\n", frames.get(0));
+        assertEquals(3, buffer.size());
+    }
+
+    @Test
+    public void testCompactsToReuseSpace() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(8);
+        List<String> frames = new ArrayList<>();
+
+        buffer.read(stream("123;567"), null);
+        buffer.drainFrames(TERMINATOR, collect(frames));
+        //Only 1 byte is free at the end until the remainder is moved to the start
+        assertEquals(4, buffer.read(stream("89;x"), null));
+        buffer.drainFrames(TERMINATOR, collect(frames));
+
+        assertEquals("123;", frames.get(0));
+        assertEquals("56789;", frames.get(1));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(4);
+        ByteArrayInputStream in = stream("123456");
+        assertEquals(4, buffer.read(in, null));
+        assertEquals(0, buffer.read(in, null));
+    }
+
+    @Test
+    public void testNoMoreData() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(4);
+        ByteArrayInputStream in = stream("1234");
+        assertEquals(4, buffer.read(in, null));
+        assertEquals(-1, buffer.read(in, null));
+    }
+
+    @Test
+    public void testDrainAll() throws Exception {
+        SerialFrameBuffer buffer = new SerialFrameBuffer(16);
+        List<String> frames = new ArrayList<>();
+        buffer.read(stream("no terminator"), null);
+        buffer.drainAll(collect(frames));
+        assertEquals("no terminator", frames.get(0));
+        assertEquals(0, buffer.size());
+    }
+
+    private static ByteArrayInputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SerialFrameBuffer.SliceHandler collect(List<String> frames) {
+        return (data, offset, length) -> frames.add(new String(data, offset, length, StandardCharsets.UTF_8));
+    }
+}
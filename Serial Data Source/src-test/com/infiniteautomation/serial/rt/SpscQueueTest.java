@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SpscQueueTest {
+
+    @Test
+    public void testBounded() {
+        SpscQueue<Integer> queue = new SpscQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(2, queue.size());
+
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertTrue(queue.offer(3));
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 30000)
+    public void testProducerConsumerOrder() throws Exception {
+        int count = 1000000;
+        SpscQueue<Integer> queue = new SpscQueue<>(128);
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < count; i++) {
+                while(!queue.offer(i))
+                    Thread.yield();
+            }
+        });
+        producer.start();
+
+        for(int i = 0; i < count; i++) {
+            Integer value;
+            while((value = queue.poll()) == null)
+                Thread.yield();
+            assertEquals(i, value.intValue());
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -39,6 +39,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
     private float ioLogFileSizeMBytes;
     private int maxHistoricalIOLogs;
     private int retries;
+    private int pipelineQueueSize;
     
     
     public SerialDataSourceModel() {
@@ -75,6 +76,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
         vo.setIoLogFileSizeMBytes(ioLogFileSizeMBytes);
         vo.setMaxHistoricalIOLogs(maxHistoricalIOLogs);
         vo.setRetries(retries);
+        vo.setPipelineQueueSize(pipelineQueueSize);
         return vo;
     }
     
@@ -99,6 +101,7 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
         this.ioLogFileSizeMBytes = vo.getIoLogFileSizeMBytes();
         this.maxHistoricalIOLogs = vo.getMaxHistoricalIOLogs();
         this.retries = vo.getRetries();
+        this.pipelineQueueSize = vo.getPipelineQueueSize();
     }
 
     /**
@@ -352,6 +355,20 @@ public class SerialDataSourceModel extends AbstractDataSourceModel<SerialDataSou
     public void setRetries(int retries) {
         this.retries = retries;
     }
+
+    /**
+     * @return the pipelineQueueSize
+     */
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    /**
+     * @param pipelineQueueSize the pipelineQueueSize to set
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
     
     
 }
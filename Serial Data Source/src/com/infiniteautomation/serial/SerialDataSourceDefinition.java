@@ -80,6 +80,9 @@ public class SerialDataSourceDefinition extends DataSourceDefinition<SerialDataS
 
         if(ds.getRetries() < 0)
             response.addContextualMessage("retries", "validate.cannotBeNegative");
+
+        if(ds.getPipelineQueueSize() < 0)
+            response.addContextualMessage("pipelineQueueSize", "validate.cannotBeNegative");
     }
 
     @Override
@@ -5,10 +5,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -16,6 +24,7 @@ import com.infiniteautomation.mango.io.serial.SerialPortException;
 import com.infiniteautomation.mango.io.serial.SerialPortProxy;
 import com.infiniteautomation.mango.io.serial.SerialPortProxyEvent;
 import com.infiniteautomation.mango.io.serial.SerialPortProxyEventListener;
+import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.infiniteautomation.mango.regex.MatchCallback;
 import com.infiniteautomation.serial.vo.SerialDataSourceVO;
 import com.infiniteautomation.serial.vo.SerialPointLocatorVO;
@@ -36,7 +45,6 @@ import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.rt.dataSource.EventDataSource;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
 import com.serotonin.m2m2.util.timeout.TimeoutTask;
-import com.serotonin.util.queue.ByteQueue;
 
 public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> implements SerialPortProxyEventListener{
     private final Log LOG = LogFactory.getLog(SerialDataSourceRT.class);
@@ -45,19 +53,65 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     public static final int DATA_SOURCE_EXCEPTION_EVENT = 3;
     public static final int POINT_READ_PATTERN_MISMATCH_EVENT = 4;
 
-    private static final String HEX_REGEX = "^[0-9A-Fa-f]*$";
+    private static final long PIPELINE_STOP_TIMEOUT = 5000;
+    private static final long PIPELINE_IDLE_PARK_NANOS = 100000000L;
+
+    private static final Pattern HEX_PATTERN = Pattern.compile("^[0-9A-Fa-f]*$");
 
     private SerialPortProxy port; //Serial Communication Port
-    private ByteQueue buffer; //Max size is Max Message Size
+    private SerialFrameBuffer buffer; //Max size is Max Message Size
     private TimeoutTask timeoutTask; //Task to retrieve buffer contents after timeout
 
+    //Pipeline mode, messages are framed on the serial event thread and matched on the worker
+    private SpscQueue<ReceivedMessage> messageQueue;
+    private Thread matchWorker;
+    private volatile boolean matchWorkerRunning;
+    private final String queueSizeMonitorId;
+    private final String droppedMessagesMonitorId;
+    private final String messageLatencyMonitorId;
+    private ValueMonitor<Integer> queueSizeMonitor;
+    private ValueMonitor<Long> droppedMessagesMonitor;
+    private ValueMonitor<Long> messageLatencyMonitor;
+    private long droppedMessages;
+
     private RollingIOLog ioLog;
 
+    //Compiled patterns, only re-compiled if the settings they were compiled from change
+    private String messageRegex;
+    private Pattern messagePattern;
+    private String bytesTerminator;
+    private byte[] terminatorBytes;
+
+    //Points keyed by identifier, rebuilt when the point list changes
+    private volatile Map<String, List<PointMatchCallback>> dispatchTable = Collections.emptyMap();
+    //Set by the point callbacks when matching the current message fails
+    private boolean matchFailed;
+
     public SerialDataSourceRT(SerialDataSourceVO vo) {
         super(vo);
-        buffer = new ByteQueue(vo.getMaxMessageSize());
+        buffer = new SerialFrameBuffer(vo.getMaxMessageSize());
+        String monitorPrefix = SerialDataSourceRT.class.getCanonicalName() + "_" + vo.getXid();
+        queueSizeMonitorId = monitorPrefix + "_QUEUE_SIZE";
+        droppedMessagesMonitorId = monitorPrefix + "_DROPPED_MESSAGES";
+        messageLatencyMonitorId = monitorPrefix + "_MESSAGE_LATENCY";
     }
 
+    /**
+     * Get the compiled message regex, invalid or missing regexes are reported when a message is matched
+     * @return
+     */
+    private Pattern getMessagePattern() {
+        String regex = vo.getMessageRegex();
+        if(!StringUtils.equals(regex, messageRegex)) {
+            messageRegex = regex;
+            try {
+                messagePattern = regex == null ? null : Pattern.compile(regex);
+            }catch(PatternSyntaxException e) {
+                messagePattern = null;
+            }
+        }
+        return messagePattern;
+    }
 
     /**
      * Connect to a serial port
@@ -105,6 +159,8 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                 ioLog = new RollingIOLog(getIOLogFileName(vo.getId()), Common.getLogsDir(), fileSize, maxFiles);
                 ioLog.log("Data source started");
             }
+            if(vo.getPipelineQueueSize() > 0)
+                startPipeline();
             connected = this.connect();
         }catch(Exception e){
             LOG.debug("Error while initializing data source", e);
@@ -124,6 +180,7 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     @Override
     public void terminate() {
         super.terminate();
+        stopPipeline();
         if(this.port != null)
             try {
                 Common.serialPortManager.close(this.port);
@@ -261,30 +318,27 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                 return;
             }
 
-            //String msg = null;
             try{
+                //We either use a terminator and timeout OR just a Timeout
+                byte[] terminator = vo.getUseTerminator() ? getTerminatorBytes() : null;
+
                 //Read the data in from the port
                 //Don't read during timeout events as there could be no data and this would block till there is
                 if(!(evt instanceof TimeoutSerialEvent)){
                     InputStream in = this.port.getInputStream();
-                    int data;
                     //Read in all the data we can from the InputStream
-                    // this may not be the full message, or may read multiple messages
-                    while (( data = in.read()) > -1 ){
-                        if(buffer.size() >= this.vo.getMaxMessageSize()){
-                            buffer.popAll();
+                    // this may not be the full message, or may read multiple messages.
+                    // Process any complete messages as they arrive so the buffer only
+                    // has to hold one partial message at a time
+                    int read;
+                    while((read = buffer.read(in, this::logReceived)) > -1) {
+                        if(read == 0) {
+                            buffer.clear();
                             raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Max message size reached!"));
                             return; //Give up
                         }
-                        buffer.push(data);
-                    }
-                    //Log our buffer contents
-                    byte[] logMsg = buffer.peekAll();
-                    if(this.vo.isLogIO()) {
-                        if(this.vo.isHex())
-                            this.ioLog.log(true, logMsg);
-                        else
-                            this.ioLog.log("I: "+ new String(logMsg, StandardCharsets.UTF_8));
+                        if(terminator != null)
+                            buffer.drainFrames(terminator, this::matchFrame);
                     }
 
                     //Setup the timeout task
@@ -293,194 +347,293 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
                         if(this.timeoutTask != null)
                             this.timeoutTask.cancel();
                         this.timeoutTask = new TimeoutTask(this.vo.getReadTimeout(), new SerialTimeoutClient(this));
+                    }else if(terminator != null && this.timeoutTask != null) {
+                        //No remaining data so cancel the timeout
+                        this.timeoutTask.cancel();
                     }
+                }else if(terminator != null) {
+                    //Process any complete messages and discard the partial message that timed out
+                    buffer.drainFrames(terminator, this::matchFrame);
+                    buffer.clear();
+                }else {
+                    //No Terminator case, we are a timeout event so pop everything into the message and assume its a message
+                    buffer.drainAll(this::matchFrame);
                 }
+            }catch(Exception e){
+                LOG.error(e.getMessage(),e);
+                this.buffer.clear(); //Ensure we clear out the buffer...
+                raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed",e.getMessage()));
 
+            }
+        }//End synch
+    }
 
-                //We either use a terminator and timeout OR just a Timeout
-                if(vo.getUseTerminator()) {
-
-                    //If timeout then process the buffer
-                    //If serial event then read input and process buffer
+    /**
+     * Get the bytes of the message terminator, in hex mode the terminator is a hex string
+     * @return
+     */
+    private byte[] getTerminatorBytes() {
+        String terminator = vo.getMessageTerminator();
+        if(terminatorBytes == null || !StringUtils.equals(terminator, bytesTerminator)) {
+            bytesTerminator = terminator;
+            byte[] bytes = null;
+            if(terminator != null && vo.isHex()) {
+                try {
+                    bytes = convertToHex(terminator);
+                }catch(ConvertHexException e) {
+                    //Use the characters as is
+                }
+            }
+            if(bytes == null)
+                bytes = terminator == null ? new byte[0] : terminator.getBytes(StandardCharsets.UTF_8);
+            terminatorBytes = bytes;
+        }
+        return terminatorBytes;
+    }
 
-                    String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-                    //DS Information
-                    int pointIdentifierIndex = vo.getPointIdentifierIndex();
+    /**
+     * Log data as it is read from the port
+     */
+    private void logReceived(byte[] data, int offset, int length) {
+        if(this.vo.isLogIO()) {
+            if(this.vo.isHex())
+                this.ioLog.log(true, Arrays.copyOfRange(data, offset, offset + length));
+            else
+                this.ioLog.log("I: "+ new String(data, offset, length, StandardCharsets.UTF_8));
+        }
+    }
 
-                    //Create a String so we can use Regex and matching
-                    String msg = null;
-                    if(this.vo.isHex()){
-                        msg = convertFromHex(buffer.peekAll());
-                    }else{
-                        msg = new String(buffer.peekAll(), StandardCharsets.UTF_8);
-                    }
+    /**
+     * Match a framed message from the buffer against all points, or queue it for the worker in pipeline mode
+     */
+    private void matchFrame(byte[] data, int offset, int length) {
+        //Create a String so we can use Regex and matching
+        String message;
+        if(this.vo.isHex())
+            message = StreamUtils.dumpHex(data, offset, length);
+        else
+            message = new String(data, offset, length, StandardCharsets.UTF_8);
+        if(messageQueue != null)
+            enqueueMessage(message);
+        else
+            matchMessage(message);
+    }
 
-                    //Now we have a string that contains the entire contents of the buffer,
-                    // split on terminator, keep it on the end of the message and process any full messages
-                    // and pop them from the buffer
-                    String[] messages = splitMessages(msg, this.vo.getMessageTerminator());
-                    for(String message : messages) {
-                        //Does our message contain the terminator?
-                        //It should be impossible to have a non-terminated message
-                        // that is before a message with a terminator in the buffer
-                        // so it is assumed here that popping from the buffer will
-                        // not cause any issues. As the only data left in the buffer will
-                        // potentially be one incomplete message.
-                        if(canProcessTerminatedMessage(message, this.vo.getMessageTerminator())){
-                            //Pop off this message
-                            this.buffer.pop(message.length());
-                            if(LOG.isDebugEnabled())
-                                LOG.debug("Matching will use String: " + message);
-                            final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                            pointListChangeLock.readLock().lock();
-                            try {
-                                for(final DataPointRT dp: this.dataPoints){
-                                    SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-                                    MatchCallback callback = new MatchCallback(){
-
-                                        @Override
-                                        public void onMatch(String pointIdentifier, PointValueTime value) {
-                                            if(!updatePointValue(value, dp)){
-                                                matcherFailed.set(true);
-                                                raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-                                            }
-                                        }
-
-                                        @Override
-                                        public void pointPatternMismatch(String message, String messageRegex) {
-                                            //Ignore as this just isn't a message we care about
-                                        }
-
-                                        @Override
-                                        public void messagePatternMismatch(String message, String messageRegex) {
-                                            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-                                            matcherFailed.set(true);
-                                        }
-
-                                        @Override
-                                        public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-                                            //Don't Care
-                                        }
-
-                                        @Override
-                                        public void matchGeneralFailure(Exception e) {
-                                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-                                            matcherFailed.set(true);
-                                        }
-                                    };
-
-                                    try{
-                                        matchPointValue(message, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-                                    }catch(Exception e){
-                                        callback.matchGeneralFailure(e);
-                                    }
-                                }
-                            } finally {
-                                pointListChangeLock.readLock().unlock();
-                            }
+    /**
+     * Create the queue, monitors and worker used in pipeline mode
+     */
+    private void startPipeline() {
+        messageQueue = new SpscQueue<>(vo.getPipelineQueueSize());
+        droppedMessages = 0;
+        queueSizeMonitor = Common.MONITORED_VALUES.<Integer>create(queueSizeMonitorId)
+                .name(new TranslatableMessage("internal.monitor.SERIAL_QUEUE_SIZE", vo.getName()))
+                .value(0)
+                .build();
+        droppedMessagesMonitor = Common.MONITORED_VALUES.<Long>create(droppedMessagesMonitorId)
+                .name(new TranslatableMessage("internal.monitor.SERIAL_DROPPED_MESSAGES", vo.getName()))
+                .value(0L)
+                .build();
+        messageLatencyMonitor = Common.MONITORED_VALUES.<Long>create(messageLatencyMonitorId)
+                .name(new TranslatableMessage("internal.monitor.SERIAL_MESSAGE_LATENCY", vo.getName()))
+                .value(0L)
+                .build();
+
+        matchWorkerRunning = true;
+        matchWorker = new Thread(this::runMatchWorker, "Serial DS Match Worker " + vo.getXid());
+        matchWorker.setDaemon(true);
+        matchWorker.start();
+    }
 
-                            //Did we have a failure?
-                            //If no failures...
-                            if(!matcherFailed.get())
-                                returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                            returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
-                        }
+    /**
+     * Stop the worker, any messages still queued are discarded
+     */
+    private void stopPipeline() {
+        if(matchWorker == null)
+            return;
+        matchWorkerRunning = false;
+        LockSupport.unpark(matchWorker);
+        try {
+            matchWorker.join(PIPELINE_STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(matchWorker.isAlive())
+            LOG.warn("Serial match worker for " + vo.getXid() + " did not stop within " + PIPELINE_STOP_TIMEOUT + "ms");
+        matchWorker = null;
+        Common.MONITORED_VALUES.remove(queueSizeMonitorId);
+        Common.MONITORED_VALUES.remove(droppedMessagesMonitorId);
+        Common.MONITORED_VALUES.remove(messageLatencyMonitorId);
+    }
 
-                        if(evt instanceof TimeoutSerialEvent){
-                            //Clear the buffer
-                            this.buffer.popAll();
-                        }else{
-                            //Check to see if we have remaining data, if not cancel timeout
-                            if(this.buffer.size() == 0)
-                                if(this.timeoutTask != null)
-                                    this.timeoutTask.cancel();
-                        }
+    /**
+     * Hand a message to the worker, called holding the buffer lock so there is only ever one producer
+     * @param message
+     */
+    private void enqueueMessage(String message) {
+        if(messageQueue.offer(new ReceivedMessage(message, System.nanoTime()))) {
+            queueSizeMonitor.setValue(messageQueue.size());
+            LockSupport.unpark(matchWorker);
+        }else {
+            droppedMessagesMonitor.setValue(++droppedMessages);
+            if(LOG.isDebugEnabled())
+                LOG.debug("Pipeline queue full, dropped message: " + message);
+        }
+    }
 
-                    }
-                    return;
-                }else{
-                    //No Terminator case
-                    //Do we have a timeout generated message?
-                    if(evt instanceof TimeoutSerialEvent){
-                        String msg = null;
-                        //We are a timeout event so we have a timeout, pop everything into the message and assume its a message
-                        if(this.vo.isHex()){
-                            msg = convertFromHex(buffer.popAll());
-                        }else{
-                            msg = new String(buffer.popAll(), StandardCharsets.UTF_8);
-                        }
-                        //Just do a match on the Entire Message because we are not using Terminator
-                        //String messageRegex = ".*"; //Match everything
-                        //int pointIdentifierIndex = 0; //Whole message
-                        String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-                        //DS Information
-                        int pointIdentifierIndex = vo.getPointIdentifierIndex();
+    /**
+     * Match queued messages until the data source is terminated
+     */
+    private void runMatchWorker() {
+        while(matchWorkerRunning) {
+            ReceivedMessage received = messageQueue.poll();
+            if(received == null) {
+                LockSupport.parkNanos(this, PIPELINE_IDLE_PARK_NANOS);
+                continue;
+            }
+            queueSizeMonitor.setValue(messageQueue.size());
+            try {
+                matchMessage(received.message);
+            }catch(Exception e) {
+                LOG.error("Error matching serial message", e);
+            }
+            messageLatencyMonitor.setValue((System.nanoTime() - received.receivedNanos) / 1000000L);
+        }
+    }
 
+    /**
+     * Match a message against all points, updating any points identified in it.
+     *
+     * The message regex is run once and the extracted identifier is used to look up the points
+     * to evaluate in the dispatch table.
+     * @param message
+     */
+    private void matchMessage(String message) {
+        //DS Information
+        int pointIdentifierIndex = vo.getPointIdentifierIndex();
+        Pattern messagePattern = getMessagePattern();
+
+        if(LOG.isDebugEnabled())
+            LOG.debug("Matching will use String: " + message);
+        matchFailed = false;
+        pointListChangeLock.readLock().lock();
+        try {
+            if(!this.dataPoints.isEmpty()) {
+                if(messagePattern == null) {
+                    raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Message regex is not valid"));
+                    matchFailed = true;
+                }else {
+                    Matcher messageMatcher = messagePattern.matcher(message);
+                    if(messageMatcher.find()) {
                         if(LOG.isDebugEnabled())
-                            LOG.debug("Matching will use String: " + msg);
-                        final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                        pointListChangeLock.readLock().lock();
-                        try {
-                            for(final DataPointRT dp: this.dataPoints){
-                                SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-                                MatchCallback callback = new MatchCallback(){
-
-                                    @Override
-                                    public void onMatch(String pointIdentifier, PointValueTime pvt) {
-                                        if(!updatePointValue(pvt, dp)){
-                                            matcherFailed.set(true);
-                                            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-                                        }
-                                        buffer.popAll(); //Ensure we clear out the buffer...
-                                    }
-
-                                    @Override
-                                    public void pointPatternMismatch(String message, String messageRegex) {
-                                        //Ignore as this just isn't a message we care about
-                                    }
-
-                                    @Override
-                                    public void messagePatternMismatch(String message, String messageRegex) {
-                                        raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-                                        matcherFailed.set(true);
-                                    }
-
-                                    @Override
-                                    public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-                                        //Don't Care
-                                    }
-
-                                    @Override
-                                    public void matchGeneralFailure(Exception e) {
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-                                        matcherFailed.set(true);
-                                    }
-
-                                };
+                            LOG.debug("Message matched regex: " + messagePattern.pattern());
+                        String pointIdentifier = null;
+                        try{
+                            pointIdentifier = messageMatcher.group(pointIdentifierIndex);
+                        }catch(Exception e){
+                            //Point not identified, don't care
+                        }
+                        List<PointMatchCallback> callbacks = pointIdentifier == null ? null : dispatchTable.get(pointIdentifier);
+                        if(callbacks != null) {
+                            for(PointMatchCallback callback : callbacks) {
+                                SerialPointLocatorRT pl = callback.dp.getPointLocator();
                                 try{
-                                    matchPointValue(msg, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
+                                    matchPointValue(message, pointIdentifier, pl.getVo(), pl.getPattern(), vo.isHex(), LOG, callback);
                                 }catch(Exception e){
                                     callback.matchGeneralFailure(e);
                                 }
                             }
-                        } finally {
-                            pointListChangeLock.readLock().unlock();
                         }
-
-                        //Did we have a failure?
-                        //If no failures...
-                        if(!matcherFailed.get())
-                            returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                        returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+                    }else {
+                        raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch", messagePattern.pattern(), message));
+                        matchFailed = true;
                     }
                 }
-            }catch(Exception e){
-                LOG.error(e.getMessage(),e);
-                this.buffer.popAll(); //Ensure we clear out the buffer...
-                raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed",e.getMessage()));
+            }
+        } finally {
+            pointListChangeLock.readLock().unlock();
+        }
+
+        //Did we have a failure?
+        //If no failures...
+        if(!matchFailed)
+            returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
+        returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+    }
+
+    @Override
+    public void addDataPoint(DataPointRT dataPoint) {
+        pointListChangeLock.writeLock().lock();
+        try {
+            super.addDataPoint(dataPoint);
+            rebuildDispatchTable();
+        } finally {
+            pointListChangeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeDataPoint(DataPointRT dataPoint) {
+        pointListChangeLock.writeLock().lock();
+        try {
+            super.removeDataPoint(dataPoint);
+            rebuildDispatchTable();
+        } finally {
+            pointListChangeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index the points by their identifier, must be called holding the point list write lock
+     */
+    private void rebuildDispatchTable() {
+        Map<String, List<PointMatchCallback>> table = new HashMap<>();
+        for(DataPointRT dp : this.dataPoints) {
+            SerialPointLocatorRT pl = dp.getPointLocator();
+            table.computeIfAbsent(pl.getVo().getPointIdentifier(), k -> new ArrayList<>(1)).add(new PointMatchCallback(dp));
+        }
+        this.dispatchTable = table;
+    }
+
+    /**
+     * Callback for a point whose identifier was found in a message
+     */
+    private class PointMatchCallback implements MatchCallback {
+
+        private final DataPointRT dp;
 
+        PointMatchCallback(DataPointRT dp) {
+            this.dp = dp;
+        }
+
+        @Override
+        public void onMatch(String pointIdentifier, PointValueTime value) {
+            if(!updatePointValue(value, dp)){
+                matchFailed = true;
+                raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
             }
-        }//End synch
+        }
+
+        @Override
+        public void pointPatternMismatch(String message, String messageRegex) {
+            //Ignore as this just isn't a message we care about
+        }
+
+        @Override
+        public void messagePatternMismatch(String message, String messageRegex) {
+            raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
+            matchFailed = true;
+        }
+
+        @Override
+        public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+            //Don't Care
+        }
+
+        @Override
+        public void matchGeneralFailure(Exception e) {
+            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
+            matchFailed = true;
+        }
     }
 
     /**
@@ -559,7 +712,7 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
         int len = stringValue.length();
         if((len&1) == 1)
             throw new ConvertHexException("Odd value lengths not permitted");
-        if(!Pattern.matches(HEX_REGEX, stringValue))
+        if(!HEX_PATTERN.matcher(stringValue).matches())
             throw new ConvertHexException("Non-hex character detected.");
         byte[] data = new byte[len / 2];
         for (int i = 0; i < len; i += 2) {
@@ -611,7 +764,26 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
      * @return
      */
     public static String[] splitMessages(String message, String terminator){
-        return message.split("(?<=" + terminator + ")");
+        return splitMessages(message, createSplitPattern(terminator));
+    }
+
+    /**
+     * Split using a pattern created by createSplitPattern
+     * @param message
+     * @param splitPattern
+     * @return
+     */
+    public static String[] splitMessages(String message, Pattern splitPattern){
+        return splitPattern.split(message);
+    }
+
+    /**
+     * Create a pattern that splits after each terminator, keeping the terminator on the end of the message
+     * @param terminator
+     * @return
+     */
+    public static Pattern createSplitPattern(String terminator){
+        return Pattern.compile("(?<=" + terminator + ")");
     }
 
     public static boolean canProcessTerminatedMessage(String message, String terminator){
@@ -628,7 +800,25 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
      * @param log
      */
     public static void matchPointValue(String msg, String messageRegex, int pointIdentifierIndex, SerialPointLocatorVO plVo, boolean isHex, Log log, MatchCallback callback) throws Exception{
-        Pattern messagePattern = Pattern.compile(messageRegex);
+        matchPointValue(msg, Pattern.compile(messageRegex), pointIdentifierIndex, plVo, Pattern.compile(plVo.getValueRegex()), isHex, log, callback);
+    }
+
+    /**
+     * Match for 1 point using pre-compiled patterns
+     * @param msg
+     * @param messagePattern
+     * @param pointIdentifierIndex
+     * @param plVo
+     * @param pointValuePattern - compiled value regex of the point locator
+     * @param isHex
+     * @param log
+     * @param callback
+     * @throws Exception
+     */
+    public static void matchPointValue(String msg, Pattern messagePattern, int pointIdentifierIndex, SerialPointLocatorVO plVo, Pattern pointValuePattern, boolean isHex, Log log, MatchCallback callback) throws Exception{
+        if(messagePattern == null)
+            throw new ShouldNeverHappenException("Message regex is not valid");
+        String messageRegex = messagePattern.pattern();
         Matcher messageMatcher = messagePattern.matcher(msg);
         if(messageMatcher.find()){
             if(log.isDebugEnabled())
@@ -644,20 +834,7 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
             }
 
             if(plVo.getPointIdentifier().equals(pointIdentifier)){
-                if(log.isDebugEnabled())
-                    log.debug("Point Identified: " + pointIdentifier);
-                Pattern pointValuePattern = Pattern.compile(plVo.getValueRegex());
-                Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
-                if(pointValueMatcher.find()){
-                    String value = pointValueMatcher.group(plVo.getValueIndex());
-                    if(log.isDebugEnabled()){
-                        log.debug("Point Value matched regex: " + plVo.getValueRegex() + " and extracted value " + value);
-                    }
-                    PointValueTime pvt = convertToPointValue(value, plVo.getDataTypeId(), isHex);
-                    callback.onMatch(pointIdentifier, pvt);
-                } else {
-                    callback.pointPatternMismatch(msg, plVo.getValueRegex());
-                }
+                matchPointValue(msg, pointIdentifier, plVo, pointValuePattern, isHex, log, callback);
             }else{
                 callback.pointNotIdentified(msg, messageRegex, pointIdentifierIndex);
             }
@@ -666,6 +843,46 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
         }
     }
 
+    /**
+     * Extract the value for a point that has already been identified in the message
+     * @param msg
+     * @param pointIdentifier - identifier extracted from the message
+     * @param plVo
+     * @param pointValuePattern - compiled value regex of the point locator
+     * @param isHex
+     * @param log
+     * @param callback
+     * @throws Exception
+     */
+    public static void matchPointValue(String msg, String pointIdentifier, SerialPointLocatorVO plVo, Pattern pointValuePattern, boolean isHex, Log log, MatchCallback callback) throws Exception{
+        if(log.isDebugEnabled())
+            log.debug("Point Identified: " + pointIdentifier);
+        Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
+        if(pointValueMatcher.find()){
+            String value = pointValueMatcher.group(plVo.getValueIndex());
+            if(log.isDebugEnabled()){
+                log.debug("Point Value matched regex: " + plVo.getValueRegex() + " and extracted value " + value);
+            }
+            PointValueTime pvt = convertToPointValue(value, plVo.getDataTypeId(), isHex);
+            callback.onMatch(pointIdentifier, pvt);
+        } else {
+            callback.pointPatternMismatch(msg, plVo.getValueRegex());
+        }
+    }
+
+    /**
+     * Message waiting to be matched in pipeline mode
+     */
+    private static class ReceivedMessage {
+        private final String message;
+        private final long receivedNanos;
+
+        ReceivedMessage(String message, long receivedNanos) {
+            this.message = message;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
     /**
      * Class for timeout generated events
      * @author Terry Packer
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.io.InputStream;
+
+/**
+ * Fixed capacity receive buffer that frames messages on a terminator.
+ *
+ * Data is read from the port in bulk into the free space at the end of the buffer. The offset up to which
+ * the buffer has been searched for a terminator is remembered so only newly arrived bytes are scanned.
+ * Complete frames are handed to a handler as slices of the backing array, they are only copied when the
+ * unconsumed remainder is moved to the start of the buffer to make room for more data.
+ *
+ * Not thread safe, access must be synchronized externally.
+ */
+public class SerialFrameBuffer {
+
+    /**
+     * Receives a slice of the buffer, the slice is only valid for the duration of the call
+     */
+    @FunctionalInterface
+    public static interface SliceHandler {
+        void slice(byte[] data, int offset, int length) throws Exception;
+    }
+
+    private final byte[] data;
+    //Start of unconsumed data
+    private int start;
+    //End of data
+    private int end;
+    //Everything before this offset has been searched for a terminator
+    private int scanned;
+
+    public SerialFrameBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Read all available data from the stream, or until the buffer is full
+     *
+     * @param in
+     * @param received - receives the newly read data, may be null
+     * @return number of bytes read, 0 if the buffer is full and the stream has more data
+     *  or -1 if the stream has no more data
+     * @throws Exception
+     */
+    public int read(InputStream in, SliceHandler received) throws Exception {
+        compact();
+        int total = 0;
+        while(end < data.length) {
+            int read = in.read(data, end, data.length - end);
+            if(read <= 0)
+                break;
+            if(received != null)
+                received.slice(data, end, read);
+            end += read;
+            total += read;
+        }
+        if(total > 0)
+            return total;
+        if(end == data.length && in.available() > 0)
+            return 0;
+        return -1;
+    }
+
+    /**
+     * Hand each complete frame to the handler and remove it from the buffer.
+     *
+     * @param terminator - bytes that end a frame, they are included at the end of the frame
+     * @param handler
+     * @return number of frames handled
+     * @throws Exception from the handler, the frame that failed has already been removed
+     */
+    public int drainFrames(byte[] terminator, SliceHandler handler) throws Exception {
+        int frames = 0;
+        int from = Math.max(start, scanned - terminator.length + 1);
+        while(true) {
+            int index = indexOf(terminator, from);
+            if(index < 0) {
+                scanned = end;
+                break;
+            }
+            int frameStart = start;
+            int frameEnd = index + terminator.length;
+            start = frameEnd;
+            scanned = frameEnd;
+            from = frameEnd;
+            frames++;
+            handler.slice(data, frameStart, frameEnd - frameStart);
+        }
+        if(start == end)
+            clear();
+        return frames;
+    }
+
+    /**
+     * Hand all unconsumed data to the handler and clear the buffer
+     * @param handler
+     * @throws Exception
+     */
+    public void drainAll(SliceHandler handler) throws Exception {
+        int offset = start;
+        int length = end - start;
+        clear();
+        handler.slice(data, offset, length);
+    }
+
+    public void clear() {
+        start = 0;
+        end = 0;
+        scanned = 0;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Move the unconsumed data to the start of the buffer
+     */
+    private void compact() {
+        if(start == 0)
+            return;
+        int length = end - start;
+        if(length > 0)
+            System.arraycopy(data, start, data, 0, length);
+        scanned -= start;
+        start = 0;
+        end = length;
+    }
+
+    private int indexOf(byte[] terminator, int from) {
+        if(terminator.length == 0)
+            return -1;
+        int last = end - terminator.length;
+        byte first = terminator[0];
+        outer:
+        for(int i = from; i <= last; i++) {
+            if(data[i] != first)
+                continue;
+            for(int j = 1; j < terminator.length; j++) {
+                if(data[i + j] != terminator[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2020  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock free queue for exactly one producer thread and one consumer thread.
+ *
+ * The producer only writes the tail and the consumer only writes the head, so neither side
+ * needs a lock or compare and swap. If more than one thread produces, or more than one consumes,
+ * they must be serialized externally.
+ */
+public class SpscQueue<T> {
+
+    private final AtomicReferenceArray<T> elements;
+    private final int capacity;
+    //Next slot to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    //Next slot to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    public SpscQueue(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be greater than zero");
+        this.capacity = capacity;
+        this.elements = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Add an element, called by the producer only
+     * @param element
+     * @return false if the queue is full
+     */
+    public boolean offer(T element) {
+        long t = tail.get();
+        if(t - head.get() >= capacity)
+            return false;
+        elements.lazySet((int)(t % capacity), element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element, called by the consumer only
+     * @return the element or null if the queue is empty
+     */
+    public T poll() {
+        long h = head.get();
+        if(h >= tail.get())
+            return null;
+        int index = (int)(h % capacity);
+        T element = elements.get(index);
+        elements.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * @return approximate number of elements in the queue
+     */
+    public int size() {
+        return (int)Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
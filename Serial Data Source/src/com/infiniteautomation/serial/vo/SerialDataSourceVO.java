@@ -72,6 +72,8 @@ public class SerialDataSourceVO extends DataSourceVO {
     private int maxHistoricalIOLogs = 1;
     @JsonProperty
     private int retries = 1;
+    @JsonProperty
+    private int pipelineQueueSize = 0; //0 to match messages on the serial event thread
 
     @Override
     public TranslatableMessage getConnectionDescription() {
@@ -279,6 +281,14 @@ public class SerialDataSourceVO extends DataSourceVO {
         this.retries = retries;
     }
 
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
 
     public String getIoLogPath() {
         return new File(Common.getLogsDir(), SerialDataSourceRT.getIOLogFileName(getId())).getPath();
@@ -290,7 +300,7 @@ public class SerialDataSourceVO extends DataSourceVO {
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 6;
+    private static final int version = 7;
     //Track previous data types for field serialization
     private static final ObjectStreamField[] serialPersistentFields
     = {
@@ -320,6 +330,7 @@ public class SerialDataSourceVO extends DataSourceVO {
         out.writeFloat(ioLogFileSizeMBytes);
         out.writeInt(maxHistoricalIOLogs);
         out.writeInt(retries);
+        out.writeInt(pipelineQueueSize);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -544,6 +555,26 @@ public class SerialDataSourceVO extends DataSourceVO {
             ioLogFileSizeMBytes = in.readFloat();
             maxHistoricalIOLogs = in.readInt();
             retries = in.readInt();
+        }else if(ver == 7){
+            commPortId = SerializationHelper.readSafeUTF(in);
+            baudRate = in.readInt();
+            flowControlIn = FlowControl.fromValue(in.readInt());
+            flowControlOut = FlowControl.fromValue(in.readInt());
+            dataBits = DataBits.fromValue(in.readInt());
+            stopBits = StopBits.fromValue(in.readInt());
+            parity = Parity.fromValue(in.readInt());
+            messageTerminator = SerializationHelper.readSafeUTF(in);
+            readTimeout = in.readInt();
+            messageRegex = SerializationHelper.readSafeUTF(in);
+            pointIdentifierIndex = in.readInt();
+            useTerminator = in.readBoolean();
+            hex = in.readBoolean();
+            logIO = in.readBoolean();
+            maxMessageSize = in.readInt();
+            ioLogFileSizeMBytes = in.readFloat();
+            maxHistoricalIOLogs = in.readInt();
+            retries = in.readInt();
+            pipelineQueueSize = in.readInt();
         }
     }
 
@@ -67,6 +67,7 @@ const serialSourceModule = angular.module('maSerialDataSource', ['maUiApp'])
             modelType: 'SERIAL',
             name: '',
             parity: 'NONE',
+            pipelineQueueSize: 0,
             pointIdentifierIndex: 0,
             purgeSettings: {override: false, frequency: {periods: 1, type: 'YEARS'}},
             readTimeout: 1000,